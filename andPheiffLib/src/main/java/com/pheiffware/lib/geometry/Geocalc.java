@@ -22,7 +22,7 @@ public class Geocalc
 
     /**
      * Calculates where a ray 1st intersects a sphere.  Assumes ray's origin is outside of sphere (will return negative distance otherwise).
-     * Returns null if no intersection occurs.
+     * Returns null if no intersection occurs.  Allocates; see calcRaySphereDistance() for use in loops.
      *
      * @param sphere
      * @param origin
@@ -51,7 +51,7 @@ public class Geocalc
 
     /**
      * Calculates the distance from the origin of a ray to a sphere.  Assumes origin is not in sphere (will return negative distance otherwise).
-     * Returns Double.Nan if no intersection happens.
+     * Returns Double.Nan if no intersection happens.  Allocates; see calcRaySphereDistance() for use in loops.
      *
      * @param sphere
      * @param origin
@@ -119,4 +119,102 @@ public class Geocalc
         }
         return distanceRayToLine;
     }
+
+    /**
+     * Calculates the distance along a ray to where it first enters a sphere, without allocating.
+     *
+     * @param centerX
+     * @param centerY
+     * @param centerZ
+     * @param radius
+     * @param originX
+     * @param originY
+     * @param originZ
+     * @param directionX unit direction of the ray
+     * @param directionY
+     * @param directionZ
+     * @return distance along the ray, 0 if the origin is inside the sphere or Double.NaN if the ray misses
+     */
+    public static double calcRaySphereDistance(double centerX, double centerY, double centerZ, double radius, double originX, double originY, double originZ,
+                                               double directionX, double directionY, double directionZ)
+    {
+        double offsetX = originX - centerX;
+        double offsetY = originY - centerY;
+        double offsetZ = originZ - centerZ;
+        double c = offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ - radius * radius;
+        if (c <= 0)
+        {
+            return 0;
+        }
+        double b = offsetX * directionX + offsetY * directionY + offsetZ * directionZ;
+        //Outside and facing away
+        if (b >= 0)
+        {
+            return Double.NaN;
+        }
+        double discriminant = b * b - c;
+        if (discriminant < 0)
+        {
+            return Double.NaN;
+        }
+        return -b - Math.sqrt(discriminant);
+    }
+
+    /**
+     * Calculates the distance along a ray to where it crosses a line segment in the x-y plane (z is ignored), without allocating.
+     *
+     * @param x1         first end of the segment
+     * @param y1
+     * @param x2         second end of the segment
+     * @param y2
+     * @param originX
+     * @param originY
+     * @param directionX direction of the ray (x and y components of a 3D direction may be given)
+     * @param directionY
+     * @return distance along the ray, in multiples of the direction's length, or Double.NaN if the ray misses or is parallel to the segment
+     */
+    public static double calcRaySegmentDistance2D(double x1, double y1, double x2, double y2, double originX, double originY, double directionX, double directionY)
+    {
+        double segmentX = x2 - x1;
+        double segmentY = y2 - y1;
+        double denominator = directionX * segmentY - directionY * segmentX;
+        if (denominator == 0)
+        {
+            return Double.NaN;
+        }
+        double offsetX = x1 - originX;
+        double offsetY = y1 - originY;
+        double distance = (offsetX * segmentY - offsetY * segmentX) / denominator;
+        double segmentPosition = (offsetX * directionY - offsetY * directionX) / denominator;
+        if (distance < 0 || segmentPosition < 0 || segmentPosition > 1)
+        {
+            return Double.NaN;
+        }
+        return distance;
+    }
+
+    /**
+     * Calculates the squared distance from a point to a line segment, without allocating.
+     *
+     * @return squared distance to the nearest point on the segment
+     */
+    public static double calcPointSegmentDistanceSquared(double x1, double y1, double z1, double x2, double y2, double z2, double pointX, double pointY, double pointZ)
+    {
+        double segmentX = x2 - x1;
+        double segmentY = y2 - y1;
+        double segmentZ = z2 - z1;
+        double offsetX = pointX - x1;
+        double offsetY = pointY - y1;
+        double offsetZ = pointZ - z1;
+        double lengthSquared = segmentX * segmentX + segmentY * segmentY + segmentZ * segmentZ;
+        double position = 0;
+        if (lengthSquared > 0)
+        {
+            position = Math.max(0, Math.min(1, (offsetX * segmentX + offsetY * segmentY + offsetZ * segmentZ) / lengthSquared));
+        }
+        offsetX -= segmentX * position;
+        offsetY -= segmentY * position;
+        offsetZ -= segmentZ * position;
+        return offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ;
+    }
 }
@@ -0,0 +1,54 @@
+package com.pheiffware.lib.geometry.intersect;
+
+import com.pheiffware.lib.geometry.Vec3D;
+
+/**
+ * The contact points between 2 overlapping shapes, which share a normal.  Instances are reused, by passing them to the IntersectCalc methods which write their result into
+ * a given ContactManifold.
+ */
+public class ContactManifold
+{
+	//2D convex shapes touch at no more than 2 points
+	public static final int MAX_POINTS = 2;
+
+	//Unit normal facing out from the first shape towards the second
+	public final Vec3D normal = new Vec3D(0, 0, 0);
+
+	public final Vec3D[] points = new Vec3D[MAX_POINTS];
+
+	//Depth of each point along the normal
+	public final double[] penetrations = new double[MAX_POINTS];
+
+	public int numPoints;
+
+	public ContactManifold()
+	{
+		for (int i = 0; i < MAX_POINTS; i++)
+		{
+			points[i] = new Vec3D(0, 0, 0);
+		}
+	}
+
+	/**
+	 * @return the deepest penetration of any point, or 0 if there are none
+	 */
+	public final double getMaxPenetration()
+	{
+		double maxPenetration = 0;
+		for (int i = 0; i < numPoints; i++)
+		{
+			maxPenetration = Math.max(maxPenetration, penetrations[i]);
+		}
+		return maxPenetration;
+	}
+
+	final void addPoint(double x, double y, double z, double penetration)
+	{
+		Vec3D point = points[numPoints];
+		point.x = x;
+		point.y = y;
+		point.z = z;
+		penetrations[numPoints] = penetration;
+		numPoints++;
+	}
+}
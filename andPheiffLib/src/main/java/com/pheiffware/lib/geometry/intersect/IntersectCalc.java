@@ -12,10 +12,28 @@ public class IntersectCalc
 	 * 
 	 * @param sphere1
 	 * @param sphere2
-	 * @return
+	 * @return the intersection or null if there is none
 	 */
 	public static IntersectionInfo calcIntersect3D(final Sphere sphere1,
 			final Sphere sphere2)
+	{
+		IntersectionInfo result = new IntersectionInfo();
+		return calcIntersect3D(sphere1, sphere2, result) ? result : null;
+	}
+
+	/**
+	 * Calculates an intersection between 2 spheres, without allocating. The
+	 * intersection normal is a unit vector facing out from sphere1 towards
+	 * sphere2.
+	 * 
+	 * @param sphere1
+	 * @param sphere2
+	 * @param result
+	 *            receives the intersection (unchanged if there is none)
+	 * @return true if the spheres intersect
+	 */
+	public static boolean calcIntersect3D(final Sphere sphere1,
+			final Sphere sphere2, IntersectionInfo result)
 	{
 		double xdiff = sphere2.center.x - sphere1.center.x;
 		double ydiff = sphere2.center.y - sphere1.center.y;
@@ -26,12 +44,14 @@ public class IntersectCalc
 		double penetration = sphere2.radius + sphere1.radius - distance;
 		if (penetration <= 0)
 		{
-			return null;
+			return false;
 		}
 		else
 		{
-			return new IntersectionInfo(new Vec3D(xdiff, ydiff, zdiff),
-					penetration);
+			double invDistance = 1.0 / distance;
+			result.set(xdiff * invDistance, ydiff * invDistance, zdiff
+					* invDistance, penetration);
+			return true;
 		}
 	}
 
@@ -48,71 +68,436 @@ public class IntersectCalc
 	 */
 	public static IntersectionInfo calcIntersect2D(
 			LineSegment lineSegment, Sphere sphere)
+	{
+		IntersectionInfo result = new IntersectionInfo();
+		return calcIntersect2D(lineSegment, sphere.center, sphere.radius,
+				result) ? result : null;
+	}
+
+	/**
+	 * Calculates intersections between line segment and sphere in 2D (assumes
+	 * z's are equal), without allocating. The normal of the intersection is
+	 * facing toward the sphere and away from the line segment.
+	 * 
+	 * @param lineSegment
+	 * @param sphereCenter
+	 * @param sphereRadius
+	 * @param result
+	 *            receives the intersection (unchanged if there is none)
+	 * @return true if there is an intersection
+	 */
+	public static boolean calcIntersect2D(LineSegment lineSegment,
+			Vec3D sphereCenter, double sphereRadius, IntersectionInfo result)
 	{
 		// All references to line refer to the infinite line as opposed to the
 		// segment.
-		double centerToLineDistance = Vec3D.subDot(sphere.center,
+		double centerToLineDistance = Vec3D.subDot(sphereCenter,
 				lineSegment.p1, lineSegment.unitNormal);
 
 		// The center of the sphere is actually past the line.
 		if (centerToLineDistance < 0)
 		{
-			return null;
+			return false;
 		}
 
-		double linePenetration = sphere.radius - centerToLineDistance;
+		double linePenetration = sphereRadius - centerToLineDistance;
 
 		// The sphere is penetrating the line
 		if (linePenetration > 0)
 		{
-			Vec3D sphereCenter = sphere.center;
 			// Distance, projected along line, from p1 (can be negative)
 			double positionOnLine = lineSegment
 					.getProjectedPositionOnLine(sphereCenter);
 
 			// Quick check for no collision
-			if (positionOnLine <= -sphere.radius
-					|| positionOnLine >= lineSegment.length + sphere.radius)
+			if (positionOnLine <= -sphereRadius
+					|| positionOnLine >= lineSegment.length + sphereRadius)
 			{
-				return null;
+				return false;
+			}
+			else if (positionOnLine < 0)
+			{
+				return calcEndPointIntersect(lineSegment.p1, sphereCenter,
+						sphereRadius, result);
+			}
+			else if (positionOnLine > lineSegment.length)
+			{
+				return calcEndPointIntersect(lineSegment.p2, sphereCenter,
+						sphereRadius, result);
 			}
 			else
 			{
-				Vec3D collisionNormal;
-				double penetration;
-				if (positionOnLine < 0)
-				{
-					collisionNormal = Vec3D.sub(sphereCenter, lineSegment.p1);
-					double collisionNormalLength = collisionNormal.magnitude();
-					penetration = sphere.radius - collisionNormalLength;
-					if (penetration < 0)
-					{
-						return null;
-					}
-					collisionNormal.scaleBy(1.0f / collisionNormalLength);
-				}
-				else if (positionOnLine > lineSegment.length)
-				{
-					collisionNormal = Vec3D.sub(sphereCenter, lineSegment.p2);
-					double collisionNormalLength = collisionNormal.magnitude();
-					penetration = sphere.radius - collisionNormalLength;
-					if (penetration < 0)
-					{
-						return null;
-					}
-					collisionNormal.scaleBy(1.0f / collisionNormalLength);
-				}
-				else
-				{
-					collisionNormal = lineSegment.unitNormal;
-					penetration = linePenetration;
-				}
-				return new IntersectionInfo(collisionNormal, penetration);
+				Vec3D unitNormal = lineSegment.unitNormal;
+				result.set(unitNormal.x, unitNormal.y, unitNormal.z,
+						linePenetration);
+				return true;
 			}
 		}
 		else
 		{
-			return null;
+			return false;
+		}
+	}
+
+	/**
+	 * Intersection of a sphere with the end point of a line segment.
+	 */
+	private static boolean calcEndPointIntersect(Vec3D endPoint,
+			Vec3D sphereCenter, double sphereRadius, IntersectionInfo result)
+	{
+		double xdiff = sphereCenter.x - endPoint.x;
+		double ydiff = sphereCenter.y - endPoint.y;
+		double zdiff = sphereCenter.z - endPoint.z;
+		double collisionNormalLength = Math.sqrt(xdiff * xdiff + ydiff * ydiff
+				+ zdiff * zdiff);
+		double penetration = sphereRadius - collisionNormalLength;
+		if (penetration < 0)
+		{
+			return false;
+		}
+		double scale = 1.0f / collisionNormalLength;
+		result.set(xdiff * scale, ydiff * scale, zdiff * scale, penetration);
+		return true;
+	}
+
+	/**
+	 * Calculates when a sphere moving along a straight line first touches
+	 * another moving sphere, as a fraction of the motion.
+	 * 
+	 * @param center1
+	 *            center of sphere1 at the start of the motion
+	 * @param dx1
+	 *            displacement of sphere1 over the motion
+	 * @param dy1
+	 * @param dz1
+	 * @param radius1
+	 * @param center2
+	 *            center of sphere2 at the start of the motion
+	 * @param dx2
+	 *            displacement of sphere2 over the motion
+	 * @param dy2
+	 * @param dz2
+	 * @param radius2
+	 * @return fraction of the motion, in [0,1], at which the spheres first
+	 *         touch, or -1 if they don't touch during the motion or are
+	 *         already overlapping at the start
+	 */
+	public static double calcTimeOfImpact3D(Vec3D center1, double dx1,
+			double dy1, double dz1, double radius1, Vec3D center2,
+			double dx2, double dy2, double dz2, double radius2)
+	{
+		// Work in sphere1's frame, where sphere2 moves by the relative
+		// displacement and sphere1 is a point with the combined radius.
+		double px = center2.x - center1.x;
+		double py = center2.y - center1.y;
+		double pz = center2.z - center1.z;
+		double dx = dx2 - dx1;
+		double dy = dy2 - dy1;
+		double dz = dz2 - dz1;
+		return calcSweptPointTime(px, py, pz, dx, dy, dz, radius1 + radius2);
+	}
+
+	/**
+	 * Calculates when a sphere moving along a straight line first touches a
+	 * line segment in 2D (assumes z's are equal). As with calcIntersect2D,
+	 * only the side the line segment's normal faces is solid.
+	 * 
+	 * @param lineSegment
+	 * @param sphereCenter
+	 *            center of the sphere at the start of the motion
+	 * @param dx
+	 *            displacement of the sphere over the motion
+	 * @param dy
+	 * @param sphereRadius
+	 * @return fraction of the motion, in [0,1], at which the sphere first
+	 *         touches the line segment, or -1 if it doesn't touch during the
+	 *         motion or is already touching at the start
+	 */
+	public static double calcTimeOfImpact2D(LineSegment lineSegment,
+			Vec3D sphereCenter, double dx, double dy, double sphereRadius)
+	{
+		Vec3D unitNormal = lineSegment.unitNormal;
+		double startDistance = Vec3D.subDot(sphereCenter, lineSegment.p1,
+				unitNormal);
+		double normalDisplacement = dx * unitNormal.x + dy * unitNormal.y;
+
+		// Starts behind the line, or already touching it (handled by the
+		// discrete test), or not moving towards it.
+		if (startDistance < sphereRadius || normalDisplacement >= 0)
+		{
+			return -1;
+		}
+		double faceTime = (startDistance - sphereRadius) / -normalDisplacement;
+		if (faceTime > 1)
+		{
+			return -1;
+		}
+
+		// Position, along the line, of the sphere's center when it touches the
+		// infinite line
+		Vec3D direction = lineSegment.direction;
+		double positionOnLine = lineSegment
+				.getProjectedPositionOnLine(sphereCenter)
+				+ faceTime * (dx * direction.x + dy * direction.y);
+		if (positionOnLine >= 0 && positionOnLine <= lineSegment.length)
+		{
+			return faceTime;
+		}
+
+		// Missed the face, but may still clip an end point
+		double time1 = calcSweptPointTime(sphereCenter.x - lineSegment.p1.x,
+				sphereCenter.y - lineSegment.p1.y, 0, dx, dy, 0, sphereRadius);
+		double time2 = calcSweptPointTime(sphereCenter.x - lineSegment.p2.x,
+				sphereCenter.y - lineSegment.p2.y, 0, dx, dy, 0, sphereRadius);
+		if (time1 == -1)
+		{
+			return time2;
+		}
+		else if (time2 == -1)
+		{
+			return time1;
+		}
+		else
+		{
+			return Math.min(time1, time2);
+		}
+	}
+
+	/**
+	 * Calculates the contact manifold between 2 convex polygons in 2D (assumes
+	 * z's are equal), using the separating axis theorem. Either winding is
+	 * accepted.
+	 * 
+	 * The face of least penetration is the reference face. The most opposed
+	 * edge of the other polygon is clipped to the reference face's extent, and
+	 * its end points which are behind the reference face become the contact
+	 * points.
+	 * 
+	 * @param polygon1
+	 * @param polygon2
+	 * @param manifold
+	 *            receives the contact, with a normal facing out from polygon1
+	 *            towards polygon2
+	 * @return true if the polygons overlap
+	 */
+	public static boolean calcPolygonIntersect2D(Vec3D[] polygon1,
+			Vec3D[] polygon2, ContactManifold manifold)
+	{
+		double winding1 = calcWinding2D(polygon1);
+		int edge1 = findMaxSeparationEdge(polygon1, winding1, polygon2);
+		double separation1 = calcEdgeSeparation(polygon1, winding1, edge1,
+				polygon2);
+		if (separation1 > 0)
+		{
+			return false;
+		}
+		double winding2 = calcWinding2D(polygon2);
+		int edge2 = findMaxSeparationEdge(polygon2, winding2, polygon1);
+		double separation2 = calcEdgeSeparation(polygon2, winding2, edge2,
+				polygon1);
+		if (separation2 > 0)
+		{
+			return false;
+		}
+
+		// Prefer polygon1's face unless polygon2's is clearly better, so the
+		// reference face doesn't flip between nearly equal choices
+		if (separation2 > separation1 * 0.98 + 0.001)
+		{
+			clipIncidentEdge(polygon2, winding2, edge2, separation2, polygon1,
+					winding1, manifold);
+			manifold.normal.scaleBy(-1);
+		}
+		else
+		{
+			clipIncidentEdge(polygon1, winding1, edge1, separation1, polygon2,
+					winding2, manifold);
+		}
+		return true;
+	}
+
+	/**
+	 * @return 1 if the polygon winds counter-clockwise (in a y up frame),
+	 *         otherwise -1
+	 */
+	private static double calcWinding2D(Vec3D[] polygon)
+	{
+		double twiceArea = 0;
+		Vec3D previous = polygon[polygon.length - 1];
+		for (Vec3D point : polygon)
+		{
+			twiceArea += previous.x * point.y - point.x * previous.y;
+			previous = point;
+		}
+		return twiceArea >= 0 ? 1 : -1;
+	}
+
+	/**
+	 * @return index of the edge of polygon whose outward normal separates
+	 *         it most from other (least penetration)
+	 */
+	private static int findMaxSeparationEdge(Vec3D[] polygon, double winding,
+			Vec3D[] other)
+	{
+		int bestEdge = 0;
+		double bestSeparation = Double.NEGATIVE_INFINITY;
+		for (int edge = 0; edge < polygon.length; edge++)
+		{
+			double separation = calcEdgeSeparation(polygon, winding, edge,
+					other);
+			if (separation > bestSeparation)
+			{
+				bestSeparation = separation;
+				bestEdge = edge;
+			}
+		}
+		return bestEdge;
+	}
+
+	/**
+	 * @return the signed distance, along an edge's outward normal, from the
+	 *         edge to the deepest vertex of other
+	 */
+	private static double calcEdgeSeparation(Vec3D[] polygon, double winding,
+			int edge, Vec3D[] other)
+	{
+		Vec3D p1 = polygon[edge];
+		Vec3D p2 = polygon[(edge + 1) % polygon.length];
+		double dx = p2.x - p1.x;
+		double dy = p2.y - p1.y;
+		double scale = winding / Math.sqrt(dx * dx + dy * dy);
+		double normalX = dy * scale;
+		double normalY = -dx * scale;
+		double separation = Double.POSITIVE_INFINITY;
+		for (Vec3D point : other)
+		{
+			separation = Math.min(separation, (point.x - p1.x) * normalX
+					+ (point.y - p1.y) * normalY);
+		}
+		return separation;
+	}
+
+	/**
+	 * Writes the contact points of an incident polygon against a reference
+	 * face into the manifold, with the reference face's outward normal.
+	 */
+	private static void clipIncidentEdge(Vec3D[] reference,
+			double referenceWinding, int referenceEdge,
+			double referenceSeparation, Vec3D[] incident,
+			double incidentWinding, ContactManifold manifold)
+	{
+		Vec3D r1 = reference[referenceEdge];
+		Vec3D r2 = reference[(referenceEdge + 1) % reference.length];
+		double length = Math.sqrt((r2.x - r1.x) * (r2.x - r1.x)
+				+ (r2.y - r1.y) * (r2.y - r1.y));
+		double tangentX = (r2.x - r1.x) / length;
+		double tangentY = (r2.y - r1.y) / length;
+		double normalX = tangentY * referenceWinding;
+		double normalY = -tangentX * referenceWinding;
+
+		// The incident edge is the one whose outward normal is most opposed
+		// to the reference normal
+		int incidentEdge = 0;
+		double minDot = Double.POSITIVE_INFINITY;
+		for (int edge = 0; edge < incident.length; edge++)
+		{
+			Vec3D p1 = incident[edge];
+			Vec3D p2 = incident[(edge + 1) % incident.length];
+			double dx = p2.x - p1.x;
+			double dy = p2.y - p1.y;
+			double dot = incidentWinding * (dy * normalX - dx * normalY)
+					/ Math.sqrt(dx * dx + dy * dy);
+			if (dot < minDot)
+			{
+				minDot = dot;
+				incidentEdge = edge;
+			}
+		}
+		Vec3D i1 = incident[incidentEdge];
+		Vec3D i2 = incident[(incidentEdge + 1) % incident.length];
+
+		// Clip the incident edge, i1 + s * (i2 - i1) for s in [0,1], to the
+		// reference face's extent along its tangent
+		double lower = r1.x * tangentX + r1.y * tangentY;
+		double upper = lower + length;
+		double tangent1 = i1.x * tangentX + i1.y * tangentY;
+		double tangentDelta = (i2.x - i1.x) * tangentX + (i2.y - i1.y)
+				* tangentY;
+		double minS = 0;
+		double maxS = 1;
+		if (tangentDelta != 0)
+		{
+			double lowerS = (lower - tangent1) / tangentDelta;
+			double upperS = (upper - tangent1) / tangentDelta;
+			minS = Math.max(0, Math.min(lowerS, upperS));
+			maxS = Math.min(1, Math.max(lowerS, upperS));
+		}
+		else if (tangent1 < lower || tangent1 > upper)
+		{
+			maxS = -1;
+		}
+
+		manifold.numPoints = 0;
+		manifold.normal.x = normalX;
+		manifold.normal.y = normalY;
+		manifold.normal.z = 0;
+		if (minS <= maxS)
+		{
+			addClippedPoint(i1, i2, minS, r1, normalX, normalY, manifold);
+			if (maxS > minS)
+			{
+				addClippedPoint(i1, i2, maxS, r1, normalX, normalY, manifold);
+			}
+		}
+		if (manifold.numPoints == 0)
+		{
+			// Only possible through rounding: fall back to the separation
+			// along the reference normal
+			manifold.addPoint((r1.x + r2.x) * 0.5, (r1.y + r2.y) * 0.5, r1.z,
+					-referenceSeparation);
+		}
+	}
+
+	/**
+	 * Adds the point at parametric position s on the incident edge to the
+	 * manifold if it is behind the reference face.
+	 */
+	private static void addClippedPoint(Vec3D i1, Vec3D i2, double s,
+			Vec3D r1, double normalX, double normalY, ContactManifold manifold)
+	{
+		double x = i1.x + (i2.x - i1.x) * s;
+		double y = i1.y + (i2.y - i1.y) * s;
+		double separation = (x - r1.x) * normalX + (y - r1.y) * normalY;
+		if (separation <= 0)
+		{
+			manifold.addPoint(x, y, r1.z, -separation);
+		}
+	}
+
+	/**
+	 * Calculates when a point, starting at (px,py,pz) relative to the origin
+	 * and moving by (dx,dy,dz), first comes within radius of the origin.
+	 * 
+	 * @return time in [0,1] or -1 if it doesn't during the motion or starts
+	 *         within radius
+	 */
+	private static double calcSweptPointTime(double px, double py,
+			double pz, double dx, double dy, double dz, double radius)
+	{
+		// Solve |p + t*d| = radius for the first t: a*t^2 + 2*b*t + c = 0
+		double c = px * px + py * py + pz * pz - radius * radius;
+		double b = px * dx + py * dy + pz * dz;
+		if (c <= 0 || b >= 0)
+		{
+			return -1;
+		}
+		double a = dx * dx + dy * dy + dz * dz;
+		double discriminant = b * b - a * c;
+		if (discriminant < 0)
+		{
+			return -1;
 		}
+		double time = (-b - Math.sqrt(discriminant)) / a;
+		return time <= 1 ? time : -1;
 	}
 }
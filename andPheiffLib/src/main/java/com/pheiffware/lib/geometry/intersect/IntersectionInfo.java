@@ -2,10 +2,18 @@ package com.pheiffware.lib.geometry.intersect;
 
 import com.pheiffware.lib.geometry.Vec3D;
 
+/**
+ * The result of an intersection calculation.  Instances may be reused, by passing them to the IntersectCalc methods which write their result into a given IntersectionInfo.
+ */
 public class IntersectionInfo
 {
 	public final Vec3D intersectionNormal;
-	public final double penetration;
+	public double penetration;
+
+	public IntersectionInfo()
+	{
+		intersectionNormal = new Vec3D(0, 0, 0);
+	}
 
 	public IntersectionInfo(Vec3D intersectionNormal, double penetration)
 	{
@@ -14,4 +22,12 @@ public class IntersectionInfo
 		this.intersectionNormal = intersectionNormal;
 		this.penetration = penetration;
 	}
+
+	public final void set(double normalX, double normalY, double normalZ, double penetration)
+	{
+		intersectionNormal.x = normalX;
+		intersectionNormal.y = normalY;
+		intersectionNormal.z = normalZ;
+		this.penetration = penetration;
+	}
 }
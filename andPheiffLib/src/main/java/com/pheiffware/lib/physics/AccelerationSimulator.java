@@ -37,6 +37,9 @@ public class AccelerationSimulator
 	private final double maxVelocityDistance;
 	// The total distance traveled by the motor
 	private final double totalDistance;
+	// The velocity reached at the end of acceleration (less than maxVelocity
+	// for short moves)
+	private final double peakVelocity;
 
 	// Is the motor moving positive or negative?
 	private final double direction;
@@ -104,8 +107,20 @@ public class AccelerationSimulator
 		totalDistance = Math.abs(endPosition - startPosition);
 		direction = Math.signum(endPosition - startPosition);
 
-		// Should never happen in infinite case
-		if (accelerationDistance + decelerationDistance > totalDistance)
+		// Can only happen in the infinite case if deceleration is finite
+		if (accelerationDistance + decelerationDistance > totalDistance
+				&& acceleration == Double.POSITIVE_INFINITY)
+		{
+			/**
+			 * Special case, motor instantly reaches the velocity from which it
+			 * can decelerate over the whole distance.
+			 */
+			decelerationDistance = totalDistance;
+			decelerationTime = Math.sqrt(2.0 * totalDistance / deceleration);
+			maxVelocityTime = 0;
+			maxVelocityDistance = 0;
+		}
+		else if (accelerationDistance + decelerationDistance > totalDistance)
 		{
 			/**
 			 * Special case, motor cannot reach top speed before it has to start
@@ -129,7 +144,18 @@ public class AccelerationSimulator
 					- decelerationDistance;
 			maxVelocityTime = maxVelocityDistance / maxVelocity;
 		}
-
+		if (acceleration != Double.POSITIVE_INFINITY)
+		{
+			peakVelocity = acceleration * accelerationTime;
+		}
+		else if (maxVelocityTime == 0 && decelerationTime > 0)
+		{
+			peakVelocity = deceleration * decelerationTime;
+		}
+		else
+		{
+			peakVelocity = maxVelocity;
+		}
 	}
 
 	/**
@@ -176,15 +202,12 @@ public class AccelerationSimulator
 					- (accelerationTime + maxVelocityTime);
 
 			// Max velocity may not have been achieved.
-			double decelerationStartVelocity = accelerationTime
-					* accelerationTime * acceleration / 2.0;
-
 			return startPosition
 					+ direction
 					* (accelerationDistance + maxVelocityDistance
-							+ decelerationStartVelocity
-							* elapsedDecelerationTime - 0.5 * deceleration
-							* elapsedDecelerationTime * elapsedDecelerationTime);
+							+ peakVelocity * elapsedDecelerationTime - 0.5
+							* deceleration * elapsedDecelerationTime
+							* elapsedDecelerationTime);
 		}
 		else
 		{
@@ -193,6 +216,86 @@ public class AccelerationSimulator
 		}
 	}
 
+	/**
+	 * Returns the simulated velocity of the motor at the specified time. Like
+	 * position, velocity is signed by the direction of the move.
+	 * 
+	 * @param time
+	 *            The time to calculate the simulated velocity of the motor for
+	 * @return The simulated velocity of the motor at the specified time.
+	 */
+	public double getVelocityAtTime(double time)
+	{
+		if (time <= 0.0)
+		{
+			return 0;
+		}
+		else if (time <= accelerationTime)
+		{
+			return direction * acceleration * time;
+		}
+		else if (time <= accelerationTime + maxVelocityTime)
+		{
+			return direction * peakVelocity;
+		}
+		else if (time <= accelerationTime + maxVelocityTime + decelerationTime)
+		{
+			double elapsedDecelerationTime = time
+					- (accelerationTime + maxVelocityTime);
+			return direction
+					* (peakVelocity - deceleration * elapsedDecelerationTime);
+		}
+		else
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * The inverse of getPositionAtTime(): returns the time at which the motor
+	 * passes the given position, in closed form. Positions before the start
+	 * return 0 and positions past the end return the total time.
+	 * 
+	 * @param position
+	 *            The position to find the time for
+	 * @return The time at which the motor reaches position
+	 */
+	public double getTimeAtPosition(double position)
+	{
+		// Distance along the move
+		double distance = (position - startPosition) * direction;
+		if (distance <= 0.0 || totalDistance == 0.0)
+		{
+			return 0;
+		}
+		else if (distance >= totalDistance)
+		{
+			return getTotalTime();
+		}
+		else if (distance <= accelerationDistance)
+		{
+			// distance = acceleration * time^2 / 2
+			return Math.sqrt(2.0 * distance / acceleration);
+		}
+		else if (distance <= accelerationDistance + maxVelocityDistance)
+		{
+			return accelerationTime + (distance - accelerationDistance)
+					/ peakVelocity;
+		}
+		else
+		{
+			// Solve peakVelocity * t - deceleration * t^2 / 2 = remaining for
+			// the smaller root, in a form which does not cancel when
+			// deceleration is small
+			double remaining = distance - accelerationDistance
+					- maxVelocityDistance;
+			double discriminant = Math.max(0, peakVelocity * peakVelocity
+					- 2.0 * deceleration * remaining);
+			return accelerationTime + maxVelocityTime + 2.0 * remaining
+					/ (peakVelocity + Math.sqrt(discriminant));
+		}
+	}
+
 	/**
 	 * Checks if the motor will be finished moving by the specified elapsed time
 	 * <dl>
@@ -260,6 +363,15 @@ public class AccelerationSimulator
 		return maxVelocityTime;
 	}
 
+	/**
+	 * @return The velocity reached at the end of acceleration, which is less
+	 *         than the maximum velocity for short moves
+	 */
+	public double getPeakVelocity()
+	{
+		return peakVelocity;
+	}
+
 	public double getMaxVelocityDistance()
 	{
 		return maxVelocityDistance;
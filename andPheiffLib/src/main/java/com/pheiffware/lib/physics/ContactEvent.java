@@ -0,0 +1,35 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * A significant contact between 2 entities, as read from a ContactEventStream.  Instances are reused: ContactEventStream.poll() copies the next event into a
+ * caller-supplied ContactEvent.
+ */
+public class ContactEvent
+{
+    public PhysicalEntity entity1;
+    public PhysicalEntity entity2;
+
+    //Magnitude of the impulse which pushed the entities apart, along the normal
+    public double normalImpulse;
+
+    //Speed at which the entities were approaching along the normal, before the impulse
+    public double relativeVelocity;
+
+    //Approximate point of contact
+    public final Vec3D position = new Vec3D(0, 0, 0);
+
+    //Unit normal in direction from entity1 to entity2
+    public final Vec3D normal = new Vec3D(0, 0, 0);
+
+    //Simulation time of the step in which the contact was resolved
+    public double time;
+
+    @Override
+    public String toString()
+    {
+        return "ContactEvent{impulse=" + normalImpulse + ", relativeVelocity=" + relativeVelocity + ", position=" + position + ", time=" + time + "}";
+    }
+}
@@ -0,0 +1,249 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed capacity ring buffer of significant contacts, for audio and gameplay code running on another thread.  Enabled with PhysicsSystem.enableContactEvents().
+ * <p/>
+ * Publishing is lock free and does not allocate.  Contacts are published by the simulation thread or, when collisions are resolved in parallel, by the collision pool's
+ * threads.  A single consumer thread reads events with poll().  If the consumer falls behind, the buffer fills and further events are dropped (and counted) rather than
+ * blocking the simulation.
+ * <p/>
+ * Filtering: a contact is only significant if both its normal impulse and its approach velocity reach a threshold.  Significant contacts are then debounced per pair of
+ * entities: a contact is suppressed if the same pair had a significant contact less than the debounce interval ago.  A marble resting or rolling on the floor therefore
+ * reports its first impact, but not every step it remains in contact.
+ */
+public class ContactEventStream
+{
+    private final int capacity;
+    private final int mask;
+
+    //Event fields, indexed by slot
+    private final PhysicalEntity[] entity1;
+    private final PhysicalEntity[] entity2;
+    private final double[] normalImpulse;
+    private final double[] relativeVelocity;
+    private final double[] positionX;
+    private final double[] positionY;
+    private final double[] positionZ;
+    private final double[] normalX;
+    private final double[] normalY;
+    private final double[] normalZ;
+    private final double[] time;
+
+    //Sequence number of the event last written into each slot, published after the event's fields are written
+    private final AtomicLongArray publishedSequence;
+
+    //Sequence number of the next event to claim
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    //Sequence number of the next event to read (only written by the consumer)
+    private volatile long readSequence;
+
+    private final AtomicLong numDropped = new AtomicLong();
+    private final AtomicLong numDebounced = new AtomicLong();
+
+    private final double minImpulse;
+    private final double minRelativeVelocity;
+    private final double debounceInterval;
+
+    //Simulation time of the current step (only written by the simulation thread, before collisions are resolved)
+    private double currentTime;
+
+    /**
+     * @param capacity            maximum number of unread events, rounded up to a power of 2
+     * @param minImpulse          smallest normal impulse which is significant
+     * @param minRelativeVelocity smallest approach velocity which is significant
+     * @param debounceInterval    minimum simulation time between significant contacts of a pair for the later contact to be reported
+     */
+    public ContactEventStream(int capacity, double minImpulse, double minRelativeVelocity, double debounceInterval)
+    {
+        int roundedCapacity = 1;
+        while (roundedCapacity < capacity)
+        {
+            roundedCapacity <<= 1;
+        }
+        this.capacity = roundedCapacity;
+        mask = roundedCapacity - 1;
+        this.minImpulse = minImpulse;
+        this.minRelativeVelocity = minRelativeVelocity;
+        this.debounceInterval = debounceInterval;
+        entity1 = new PhysicalEntity[roundedCapacity];
+        entity2 = new PhysicalEntity[roundedCapacity];
+        normalImpulse = new double[roundedCapacity];
+        relativeVelocity = new double[roundedCapacity];
+        positionX = new double[roundedCapacity];
+        positionY = new double[roundedCapacity];
+        positionZ = new double[roundedCapacity];
+        normalX = new double[roundedCapacity];
+        normalY = new double[roundedCapacity];
+        normalZ = new double[roundedCapacity];
+        time = new double[roundedCapacity];
+        publishedSequence = new AtomicLongArray(roundedCapacity);
+        for (int slot = 0; slot < roundedCapacity; slot++)
+        {
+            publishedSequence.set(slot, -1);
+        }
+    }
+
+    /**
+     * Cheap check which producers make before working out a contact's position.
+     *
+     * @param normalImpulse
+     * @param relativeVelocity
+     * @return true if a contact with this impulse and approach velocity should be published
+     */
+    public final boolean isSignificant(double normalImpulse, double relativeVelocity)
+    {
+        return normalImpulse >= minImpulse && relativeVelocity >= minRelativeVelocity;
+    }
+
+    /**
+     * Producer: debounces and publishes a significant contact.  Never blocks.  The debounce state for a pair is kept by its movable entity (entity2, unless it is immovable),
+     * which is only ever resolved by one thread at a time.
+     *
+     * @param entity1
+     * @param entity2
+     * @param normalImpulse
+     * @param relativeVelocity
+     * @param position         approximate point of contact
+     * @param normal           unit normal in direction from entity1 to entity2
+     * @return true if the event was published, false if it was debounced or the buffer was full
+     */
+    public final boolean publish(PhysicalEntity entity1, PhysicalEntity entity2, double normalImpulse, double relativeVelocity, Vec3D position, Vec3D normal)
+    {
+        double time = currentTime;
+        boolean debounced;
+        if (entity2.inverseMass > 0)
+        {
+            debounced = !entity2.debounceContactEvent(entity1, time, debounceInterval);
+        }
+        else
+        {
+            debounced = !entity1.debounceContactEvent(entity2, time, debounceInterval);
+        }
+        if (debounced)
+        {
+            numDebounced.incrementAndGet();
+            return false;
+        }
+
+        long sequence;
+        do
+        {
+            sequence = writeSequence.get();
+            if (sequence - readSequence >= capacity)
+            {
+                numDropped.incrementAndGet();
+                return false;
+            }
+        }
+        while (!writeSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        this.entity1[slot] = entity1;
+        this.entity2[slot] = entity2;
+        this.normalImpulse[slot] = normalImpulse;
+        this.relativeVelocity[slot] = relativeVelocity;
+        positionX[slot] = position.x;
+        positionY[slot] = position.y;
+        positionZ[slot] = position.z;
+        normalX[slot] = normal.x;
+        normalY[slot] = normal.y;
+        normalZ[slot] = normal.z;
+        this.time[slot] = time;
+        publishedSequence.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Consumer only: copies the oldest unread event into the given event.  Events are read in the order they were claimed.  An event whose publication is still in progress
+     * (along with anything after it) is left for the next poll.
+     *
+     * @param event receives the event
+     * @return true if an event was read
+     */
+    public final boolean poll(ContactEvent event)
+    {
+        long sequence = readSequence;
+        int slot = (int) sequence & mask;
+        if (publishedSequence.get(slot) != sequence)
+        {
+            return false;
+        }
+        event.entity1 = entity1[slot];
+        event.entity2 = entity2[slot];
+        event.normalImpulse = normalImpulse[slot];
+        event.relativeVelocity = relativeVelocity[slot];
+        event.position.x = positionX[slot];
+        event.position.y = positionY[slot];
+        event.position.z = positionZ[slot];
+        event.normal.x = normalX[slot];
+        event.normal.y = normalY[slot];
+        event.normal.z = normalZ[slot];
+        event.time = time[slot];
+        //Don't keep entities alive after they have been read
+        entity1[slot] = null;
+        entity2[slot] = null;
+        readSequence = sequence + 1;
+        return true;
+    }
+
+    /**
+     * Called by the simulation thread at the start of each step.
+     *
+     * @param currentTime simulation time of the step
+     */
+    final void setCurrentTime(double currentTime)
+    {
+        this.currentTime = currentTime;
+    }
+
+    public final int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return number of events claimed but not yet read (approximate while events are being published)
+     */
+    public final int getSize()
+    {
+        return (int) (writeSequence.get() - readSequence);
+    }
+
+    /**
+     * @return number of significant contacts dropped because the buffer was full
+     */
+    public final long getNumDropped()
+    {
+        return numDropped.get();
+    }
+
+    /**
+     * @return number of significant contacts suppressed because the same pair had a recent significant contact
+     */
+    public final long getNumDebounced()
+    {
+        return numDebounced.get();
+    }
+
+    public final double getMinImpulse()
+    {
+        return minImpulse;
+    }
+
+    public final double getMinRelativeVelocity()
+    {
+        return minRelativeVelocity;
+    }
+
+    public final double getDebounceInterval()
+    {
+        return debounceInterval;
+    }
+}
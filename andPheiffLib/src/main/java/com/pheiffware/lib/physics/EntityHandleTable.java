@@ -0,0 +1,147 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.physics.entity.Entity;
+
+/**
+ * Maps stable entity handles to entities and their current position in the PhysicsSystem's storage arrays.  Entities move within those arrays when others are removed
+ * (swap-remove), so outside code refers to them by handle instead.
+ * <p/>
+ * A handle packs a slot number (low 32 bits) with the slot's generation (high 32 bits).  Freeing a slot increments its generation, so handles to removed entities are detected
+ * as stale, even after the slot has been reused.
+ */
+class EntityHandleTable
+{
+    //Never returned for a live entity
+    static final long INVALID_HANDLE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Entity[] slotEntities = new Entity[INITIAL_CAPACITY];
+    private int[] slotGenerations = new int[INITIAL_CAPACITY];
+
+    //Index of each slot's entity in the storage array for its kind of entity
+    private int[] slotIndices = new int[INITIAL_CAPACITY];
+
+    //Index of each slot's entity in the unpacked dynamic entity array, or -1
+    private int[] slotUnpackedIndices = new int[INITIAL_CAPACITY];
+
+    //Stack of free slots below numSlots
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int numFreeSlots;
+
+    //Number of slots ever used
+    private int numSlots;
+
+    /**
+     * Assigns a slot to an entity, which must not already have one.
+     *
+     * @return the slot
+     */
+    int allocate(Entity entity)
+    {
+        int slot;
+        if (numFreeSlots > 0)
+        {
+            slot = freeSlots[--numFreeSlots];
+        }
+        else
+        {
+            if (numSlots == slotEntities.length)
+            {
+                grow(slotEntities.length * 2);
+            }
+            slot = numSlots++;
+        }
+        slotEntities[slot] = entity;
+        slotIndices[slot] = -1;
+        slotUnpackedIndices[slot] = -1;
+        entity.setHandleSlot(slot);
+        return slot;
+    }
+
+    /**
+     * Frees a slot, invalidating all handles to it.
+     */
+    void free(int slot)
+    {
+        slotEntities[slot].setHandleSlot(-1);
+        slotEntities[slot] = null;
+        slotGenerations[slot]++;
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    /**
+     * Frees every slot in use.
+     */
+    void clear()
+    {
+        for (int slot = 0; slot < numSlots; slot++)
+        {
+            if (slotEntities[slot] != null)
+            {
+                free(slot);
+            }
+        }
+    }
+
+    long getHandle(int slot)
+    {
+        return ((long) slotGenerations[slot] << 32) | slot;
+    }
+
+    /**
+     * @return the handle's slot, or -1 if the handle is stale or invalid
+     */
+    int getSlot(long handle)
+    {
+        int slot = (int) handle;
+        if (slot < 0 || slot >= numSlots || slotEntities[slot] == null || slotGenerations[slot] != (int) (handle >>> 32))
+        {
+            return -1;
+        }
+        return slot;
+    }
+
+    Entity getEntity(int slot)
+    {
+        return slotEntities[slot];
+    }
+
+    int getIndex(int slot)
+    {
+        return slotIndices[slot];
+    }
+
+    void setIndex(int slot, int index)
+    {
+        slotIndices[slot] = index;
+    }
+
+    int getUnpackedIndex(int slot)
+    {
+        return slotUnpackedIndices[slot];
+    }
+
+    void setUnpackedIndex(int slot, int unpackedIndex)
+    {
+        slotUnpackedIndices[slot] = unpackedIndex;
+    }
+
+    private void grow(int capacity)
+    {
+        Entity[] newSlotEntities = new Entity[capacity];
+        System.arraycopy(slotEntities, 0, newSlotEntities, 0, numSlots);
+        slotEntities = newSlotEntities;
+        slotGenerations = copyOf(slotGenerations, capacity);
+        slotIndices = copyOf(slotIndices, capacity);
+        slotUnpackedIndices = copyOf(slotUnpackedIndices, capacity);
+        freeSlots = copyOf(freeSlots, capacity);
+    }
+
+    private int[] copyOf(int[] array, int capacity)
+    {
+        int[] newArray = new int[capacity];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+        return newArray;
+    }
+}
@@ -0,0 +1,39 @@
+package com.pheiffware.lib.physics;
+
+/**
+ * Schemes for advancing dynamic bodies' positions and velocities over a time
+ * step, from the forces accumulated during it. Selected with
+ * PhysicsSystem.setIntegrator(). Each scheme is run as its own loop over all
+ * dynamic bodies, so choosing one costs nothing per body.
+ */
+public enum Integrator
+{
+	/**
+	 * Assumes acceleration is constant over the step: x += v*t + a*t^2/2, v +=
+	 * a*t. Exact for constant forces, such as gravity, but forces which depend
+	 * on position (springs, attraction) gain energy every step: a spring's
+	 * energy grows by a factor of about 1 + (w*t)^2 / 2 per step, so it
+	 * eventually blows up at any step size. The original scheme, and the
+	 * default.
+	 */
+	CONSTANT_ACCELERATION,
+
+	/**
+	 * Updates velocity first, then moves with the new velocity: v += a*t, x +=
+	 * v*t. The cheapest scheme. Symplectic, so energy oscillates around the
+	 * true value instead of drifting, and springs stay stable for steps up to
+	 * about a third of their period (w*t < 2). First order accurate.
+	 */
+	SEMI_IMPLICIT_EULER,
+
+	/**
+	 * Velocity Verlet. Moves as CONSTANT_ACCELERATION does, but each step
+	 * first corrects the velocity predicted by the previous step with half the
+	 * change in acceleration since, giving v += (a_prev + a)*t/2 overall.
+	 * Symplectic and second order accurate. Identical to
+	 * CONSTANT_ACCELERATION while acceleration is constant. Requires the
+	 * previous step's acceleration, which is remembered per body (and
+	 * forgotten when a body sleeps).
+	 */
+	VELOCITY_VERLET
+}
@@ -0,0 +1,320 @@
+package com.pheiffware.lib.physics;
+
+/**
+ * Evaluates many motion profiles (AccelerationSimulator or SCurveSimulator
+ * moves) at once, or one profile over a grid of times, filling arrays of
+ * positions and velocities.
+ *
+ * Every profile is flattened into up to 7 constant jerk segments, stored in
+ * primitive arrays with each profile's segments next to each other. Evaluating
+ * a profile is a short scan of its segment end times followed by one cubic,
+ * with no virtual calls, object dereferences or per-phase formulas. Evaluating
+ * over a time grid walks the segments once, as sample times only increase.
+ *
+ * Results match the profiles' own getPositionAtTime() and getVelocityAtTime()
+ * to within rounding.
+ */
+public class MotionProfileBatch
+{
+	// Maximum number of segments in any profile, which is also the stride
+	// between profiles in the segment arrays
+	private static final int NUM_SEGMENTS = SCurveSimulator.NUM_SEGMENTS;
+
+	private int numProfiles;
+
+	private double[] startPosition;
+	private double[] endPosition;
+	private double[] direction;
+	private double[] totalTime;
+
+	// Indexed by profile * NUM_SEGMENTS + segment. Segments a profile doesn't
+	// use have 0 duration and come after the end of the move.
+	private double[] segmentStartTime;
+	// The last segment of each profile ends at infinity, so scans always stop
+	private double[] segmentEndTime;
+	// Unsigned distance, velocity, acceleration and jerk at the start of each
+	// segment
+	private double[] segmentDistance;
+	private double[] segmentVelocity;
+	private double[] segmentAcceleration;
+	private double[] segmentJerk;
+
+	public MotionProfileBatch()
+	{
+		this(16);
+	}
+
+	/**
+	 * @param initialCapacity
+	 *            number of profiles to make room for (grows as needed)
+	 */
+	public MotionProfileBatch(int initialCapacity)
+	{
+		allocate(Math.max(1, initialCapacity));
+	}
+
+	/**
+	 * Adds a trapezoidal profile.
+	 *
+	 * @param profile
+	 * @return index of the profile in the batch
+	 */
+	public int add(AccelerationSimulator profile)
+	{
+		int index = addProfile(profile.getStartPosition(),
+				profile.getEndPosition(), profile.getDirection());
+		double peakVelocity = profile.getPeakVelocity();
+		double acceleration = profile.getAcceleration();
+		double deceleration = profile.getDeceleration();
+		// An infinite acceleration lasts no time, so only shows up as the
+		// velocity the next segment starts at
+		setSegment(index, 0, profile.getAccelerationTime(), 0,
+				acceleration == Double.POSITIVE_INFINITY ? 0 : acceleration, 0);
+		setSegment(index, 1, profile.getMaxVelocityTime(), peakVelocity, 0, 0);
+		setSegment(index, 2, profile.getDecelerationTime(), peakVelocity,
+				deceleration == Double.POSITIVE_INFINITY ? 0 : -deceleration,
+				0);
+		for (int segment = 3; segment < NUM_SEGMENTS; segment++)
+		{
+			setSegment(index, segment, 0, 0, 0, 0);
+		}
+		calcSegmentTimes(index);
+		return index;
+	}
+
+	/**
+	 * Adds a jerk limited profile.
+	 *
+	 * @param profile
+	 * @return index of the profile in the batch
+	 */
+	public int add(SCurveSimulator profile)
+	{
+		int index = addProfile(profile.getStartPosition(),
+				profile.getEndPosition(), profile.getDirection());
+		for (int segment = 0; segment < NUM_SEGMENTS; segment++)
+		{
+			setSegment(index, segment, profile.getSegmentDuration(segment),
+					profile.getSegmentStartVelocity(segment),
+					profile.getSegmentStartAcceleration(segment),
+					profile.getSegmentJerk(segment));
+		}
+		calcSegmentTimes(index);
+		return index;
+	}
+
+	/**
+	 * Removes all profiles, keeping allocated storage.
+	 */
+	public void clear()
+	{
+		numProfiles = 0;
+	}
+
+	public int size()
+	{
+		return numProfiles;
+	}
+
+	/**
+	 * Evaluates every profile at the same time.
+	 *
+	 * @param time
+	 *            time since the start of the moves
+	 * @param positions
+	 *            receives each profile's position (indexed like the profiles)
+	 * @param velocities
+	 *            receives each profile's signed velocity, or null if not
+	 *            needed
+	 */
+	public void getPositionsAtTime(double time, double[] positions,
+			double[] velocities)
+	{
+		int numProfiles = this.numProfiles;
+		for (int i = 0; i < numProfiles; i++)
+		{
+			double position;
+			double velocity;
+			if (time <= 0)
+			{
+				position = startPosition[i];
+				velocity = 0;
+			}
+			else if (time >= totalTime[i])
+			{
+				position = endPosition[i];
+				velocity = 0;
+			}
+			else
+			{
+				int segment = i * NUM_SEGMENTS;
+				while (time > segmentEndTime[segment])
+				{
+					segment++;
+				}
+				double elapsed = time - segmentStartTime[segment];
+				double acceleration = segmentAcceleration[segment];
+				double jerk = segmentJerk[segment];
+				double startVelocity = segmentVelocity[segment];
+				position = startPosition[i]
+						+ direction[i]
+						* (segmentDistance[segment] + elapsed
+								* (startVelocity + elapsed
+										* (acceleration * 0.5 + elapsed * jerk
+												* (1.0 / 6.0))));
+				velocity = direction[i]
+						* (startVelocity + elapsed
+								* (acceleration + elapsed * jerk * 0.5));
+			}
+			positions[i] = position;
+			if (velocities != null)
+			{
+				velocities[i] = velocity;
+			}
+		}
+	}
+
+	/**
+	 * Evaluates one profile at evenly spaced times.
+	 *
+	 * @param profile
+	 *            index of the profile
+	 * @param startTime
+	 *            time of the first sample
+	 * @param timeStep
+	 *            time between samples (> 0)
+	 * @param numSamples
+	 * @param positions
+	 *            receives the position at each sample
+	 * @param velocities
+	 *            receives the signed velocity at each sample, or null if not
+	 *            needed
+	 */
+	public void getPositionsOverTime(int profile, double startTime,
+			double timeStep, int numSamples, double[] positions,
+			double[] velocities)
+	{
+		double profileStart = startPosition[profile];
+		double profileEnd = endPosition[profile];
+		double profileDirection = direction[profile];
+		double profileTotalTime = totalTime[profile];
+		int segment = profile * NUM_SEGMENTS;
+		for (int sample = 0; sample < numSamples; sample++)
+		{
+			double time = startTime + sample * timeStep;
+			double position;
+			double velocity;
+			if (time <= 0)
+			{
+				position = profileStart;
+				velocity = 0;
+			}
+			else if (time >= profileTotalTime)
+			{
+				position = profileEnd;
+				velocity = 0;
+			}
+			else
+			{
+				// Sample times only increase, so carry on from the last
+				// sample's segment
+				while (time > segmentEndTime[segment])
+				{
+					segment++;
+				}
+				double elapsed = time - segmentStartTime[segment];
+				double acceleration = segmentAcceleration[segment];
+				double jerk = segmentJerk[segment];
+				double startVelocity = segmentVelocity[segment];
+				position = profileStart
+						+ profileDirection
+						* (segmentDistance[segment] + elapsed
+								* (startVelocity + elapsed
+										* (acceleration * 0.5 + elapsed * jerk
+												* (1.0 / 6.0))));
+				velocity = profileDirection
+						* (startVelocity + elapsed
+								* (acceleration + elapsed * jerk * 0.5));
+			}
+			positions[sample] = position;
+			if (velocities != null)
+			{
+				velocities[sample] = velocity;
+			}
+		}
+	}
+
+	private int addProfile(double start, double end, double profileDirection)
+	{
+		if (numProfiles == startPosition.length)
+		{
+			allocate(numProfiles * 2);
+		}
+		int index = numProfiles++;
+		startPosition[index] = start;
+		endPosition[index] = end;
+		direction[index] = profileDirection;
+		return index;
+	}
+
+	private void setSegment(int index, int segment, double duration,
+			double velocity, double acceleration, double jerk)
+	{
+		int offset = index * NUM_SEGMENTS + segment;
+		// Holds duration until calcSegmentTimes()
+		segmentEndTime[offset] = duration;
+		segmentVelocity[offset] = velocity;
+		segmentAcceleration[offset] = acceleration;
+		segmentJerk[offset] = jerk;
+	}
+
+	/**
+	 * Works out when each segment of a profile starts and ends, and the
+	 * distance covered before it.
+	 */
+	private void calcSegmentTimes(int index)
+	{
+		double time = 0;
+		double distance = 0;
+		int first = index * NUM_SEGMENTS;
+		for (int segment = first; segment < first + NUM_SEGMENTS; segment++)
+		{
+			double duration = segmentEndTime[segment];
+			segmentStartTime[segment] = time;
+			segmentDistance[segment] = distance;
+			time += duration;
+			segmentEndTime[segment] = time;
+			distance += duration
+					* (segmentVelocity[segment] + duration
+							* (segmentAcceleration[segment] * 0.5 + duration
+									* segmentJerk[segment] * (1.0 / 6.0)));
+		}
+		totalTime[index] = time;
+		segmentEndTime[first + NUM_SEGMENTS - 1] = Double.POSITIVE_INFINITY;
+	}
+
+	private void allocate(int capacity)
+	{
+		startPosition = copyOf(startPosition, capacity, 1);
+		endPosition = copyOf(endPosition, capacity, 1);
+		direction = copyOf(direction, capacity, 1);
+		totalTime = copyOf(totalTime, capacity, 1);
+		segmentStartTime = copyOf(segmentStartTime, capacity, NUM_SEGMENTS);
+		segmentEndTime = copyOf(segmentEndTime, capacity, NUM_SEGMENTS);
+		segmentDistance = copyOf(segmentDistance, capacity, NUM_SEGMENTS);
+		segmentVelocity = copyOf(segmentVelocity, capacity, NUM_SEGMENTS);
+		segmentAcceleration = copyOf(segmentAcceleration, capacity,
+				NUM_SEGMENTS);
+		segmentJerk = copyOf(segmentJerk, capacity, NUM_SEGMENTS);
+	}
+
+	private double[] copyOf(double[] array, int capacity, int stride)
+	{
+		double[] newArray = new double[capacity * stride];
+		if (array != null)
+		{
+			System.arraycopy(array, 0, newArray, 0, numProfiles * stride);
+		}
+		return newArray;
+	}
+}
@@ -0,0 +1,115 @@
+package com.pheiffware.lib.physics;
+
+/**
+ * Plans coordinated moves of several axes, which start together and finish
+ * together.
+ *
+ * The slowest axis moves as fast as its limits allow. Every other axis is
+ * time scaled to take exactly as long: stretching a profile in time by a
+ * factor k divides its velocity by k, acceleration by k^2 and jerk by k^3, so
+ * each axis keeps the shape of its own optimal profile and never exceeds its
+ * limits. Axes which don't move are left with empty profiles.
+ *
+ * Note: axes are synchronized at the start and end of the move, not along
+ * it. Axes whose moves have different shapes are at different fractions of
+ * their moves in between, so a diagonal move is not a straight line.
+ */
+public class MultiAxisPlanner
+{
+	/**
+	 * Plans coordinated trapezoidal moves. All arrays are indexed by axis.
+	 *
+	 * @param startPositions
+	 * @param endPositions
+	 * @param maxVelocities
+	 * @param accelerations
+	 *            Can properly handle +inf
+	 * @param decelerations
+	 *            Can properly handle +inf
+	 * @return a profile for each axis, all with the same total time
+	 */
+	public static AccelerationSimulator[] planTrapezoidal(
+			double[] startPositions, double[] endPositions,
+			double[] maxVelocities, double[] accelerations,
+			double[] decelerations)
+	{
+		int numAxes = startPositions.length;
+		AccelerationSimulator[] profiles = new AccelerationSimulator[numAxes];
+		double totalTime = 0;
+		for (int axis = 0; axis < numAxes; axis++)
+		{
+			profiles[axis] = new AccelerationSimulator(startPositions[axis],
+					endPositions[axis], maxVelocities[axis],
+					accelerations[axis], decelerations[axis]);
+			totalTime = Math.max(totalTime, profiles[axis].getTotalTime());
+		}
+		for (int axis = 0; axis < numAxes; axis++)
+		{
+			double scale = calcTimeScale(profiles[axis].getTotalTime(),
+					totalTime);
+			if (scale != 1.0)
+			{
+				profiles[axis] = new AccelerationSimulator(
+						startPositions[axis], endPositions[axis],
+						maxVelocities[axis] / scale, accelerations[axis]
+								/ (scale * scale), decelerations[axis]
+								/ (scale * scale));
+			}
+		}
+		return profiles;
+	}
+
+	/**
+	 * Plans coordinated jerk limited moves. All arrays are indexed by axis.
+	 *
+	 * @param startPositions
+	 * @param endPositions
+	 * @param maxVelocities
+	 * @param maxAccelerations
+	 *            Can properly handle +inf
+	 * @param maxJerks
+	 *            Can properly handle +inf
+	 * @return a profile for each axis, all with the same total time
+	 */
+	public static SCurveSimulator[] planSCurve(double[] startPositions,
+			double[] endPositions, double[] maxVelocities,
+			double[] maxAccelerations, double[] maxJerks)
+	{
+		int numAxes = startPositions.length;
+		SCurveSimulator[] profiles = new SCurveSimulator[numAxes];
+		double totalTime = 0;
+		for (int axis = 0; axis < numAxes; axis++)
+		{
+			profiles[axis] = new SCurveSimulator(startPositions[axis],
+					endPositions[axis], maxVelocities[axis],
+					maxAccelerations[axis], maxJerks[axis]);
+			totalTime = Math.max(totalTime, profiles[axis].getTotalTime());
+		}
+		for (int axis = 0; axis < numAxes; axis++)
+		{
+			double scale = calcTimeScale(profiles[axis].getTotalTime(),
+					totalTime);
+			if (scale != 1.0)
+			{
+				profiles[axis] = new SCurveSimulator(startPositions[axis],
+						endPositions[axis], maxVelocities[axis] / scale,
+						maxAccelerations[axis] / (scale * scale),
+						maxJerks[axis] / (scale * scale * scale));
+			}
+		}
+		return profiles;
+	}
+
+	/**
+	 * @param time
+	 *            an axis's fastest time
+	 * @param totalTime
+	 *            time of the slowest axis
+	 * @return factor to stretch the axis's profile by, or 1 if it doesn't
+	 *         move
+	 */
+	private static double calcTimeScale(double time, double totalTime)
+	{
+		return time > 0 ? totalTime / time : 1.0;
+	}
+}
@@ -0,0 +1,278 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.utils.rollingAverage.RollingHistogram;
+
+/**
+ * Where a PhysicsSystem's time steps spend their time, and how much collision work they do.  Enabled with PhysicsSystem.enableMetrics().
+ * <p/>
+ * Each step is recorded once, when it ends, so recording costs a few System.nanoTime() calls and one uncontended lock per step.  Getters may be called from any thread.  Use
+ * snapshot() to read several values which are consistent with each other.
+ * <p/>
+ * Histograms cover a rolling window of the most recent steps and are bucketed by powers of 2 nanoseconds.
+ */
+public class PhysicsMetrics
+{
+    //Phases of a time step
+    public static final int PHASE_AI = 0;
+    public static final int PHASE_MOTION = 1;
+    public static final int PHASE_BROAD_PHASE = 2;
+    public static final int PHASE_NARROW_PHASE = 3;
+    public static final int NUM_PHASES = 4;
+
+    private static final String[] PHASE_NAMES = {"ai", "motion", "broad phase", "narrow phase"};
+
+    private final int windowSize;
+
+    private long numSteps;
+
+    //Duration of each phase, and of the whole step, in the last step
+    private final long[] lastPhaseNanos = new long[NUM_PHASES];
+    private long lastStepNanos;
+
+    private final long[] totalPhaseNanos = new long[NUM_PHASES];
+    private long totalStepNanos;
+
+    private final long[] maxPhaseNanos = new long[NUM_PHASES];
+    private long maxStepNanos;
+
+    private final RollingHistogram[] phaseHistograms = new RollingHistogram[NUM_PHASES];
+    private final RollingHistogram stepHistogram;
+
+    //Candidate pairs from the broad phase, and how many of those were actually colliding, in the last step
+    private int lastPairsTested;
+    private int lastCollisions;
+    private long totalPairsTested;
+    private long totalCollisions;
+
+    //Penetration found by the narrow phase (and then corrected)
+    private double lastTotalPenetration;
+    private double lastMaxPenetration;
+    private double maxPenetration;
+
+    /**
+     * @param windowSize number of most recent steps covered by the histograms
+     */
+    public PhysicsMetrics(int windowSize)
+    {
+        this.windowSize = windowSize;
+        for (int phase = 0; phase < NUM_PHASES; phase++)
+        {
+            phaseHistograms[phase] = new RollingHistogram(windowSize);
+        }
+        stepHistogram = new RollingHistogram(windowSize);
+    }
+
+    private PhysicsMetrics(PhysicsMetrics metrics)
+    {
+        windowSize = metrics.windowSize;
+        numSteps = metrics.numSteps;
+        System.arraycopy(metrics.lastPhaseNanos, 0, lastPhaseNanos, 0, NUM_PHASES);
+        System.arraycopy(metrics.totalPhaseNanos, 0, totalPhaseNanos, 0, NUM_PHASES);
+        System.arraycopy(metrics.maxPhaseNanos, 0, maxPhaseNanos, 0, NUM_PHASES);
+        lastStepNanos = metrics.lastStepNanos;
+        totalStepNanos = metrics.totalStepNanos;
+        maxStepNanos = metrics.maxStepNanos;
+        for (int phase = 0; phase < NUM_PHASES; phase++)
+        {
+            phaseHistograms[phase] = new RollingHistogram(metrics.phaseHistograms[phase]);
+        }
+        stepHistogram = new RollingHistogram(metrics.stepHistogram);
+        lastPairsTested = metrics.lastPairsTested;
+        lastCollisions = metrics.lastCollisions;
+        totalPairsTested = metrics.totalPairsTested;
+        totalCollisions = metrics.totalCollisions;
+        lastTotalPenetration = metrics.lastTotalPenetration;
+        lastMaxPenetration = metrics.lastMaxPenetration;
+        maxPenetration = metrics.maxPenetration;
+    }
+
+    /**
+     * Called by PhysicsSystem at the end of each step.
+     */
+    synchronized void recordStep(long[] phaseNanos, long stepNanos, int pairsTested, int collisions, double totalPenetration, double maxStepPenetration)
+    {
+        numSteps++;
+        for (int phase = 0; phase < NUM_PHASES; phase++)
+        {
+            long nanos = phaseNanos[phase];
+            lastPhaseNanos[phase] = nanos;
+            totalPhaseNanos[phase] += nanos;
+            maxPhaseNanos[phase] = Math.max(maxPhaseNanos[phase], nanos);
+            phaseHistograms[phase].addValue(nanos);
+        }
+        lastStepNanos = stepNanos;
+        totalStepNanos += stepNanos;
+        maxStepNanos = Math.max(maxStepNanos, stepNanos);
+        stepHistogram.addValue(stepNanos);
+        lastPairsTested = pairsTested;
+        lastCollisions = collisions;
+        totalPairsTested += pairsTested;
+        totalCollisions += collisions;
+        lastTotalPenetration = totalPenetration;
+        lastMaxPenetration = maxStepPenetration;
+        maxPenetration = Math.max(maxPenetration, maxStepPenetration);
+    }
+
+    /**
+     * @return a copy of all metrics, consistent with each other, which is no longer updated
+     */
+    public synchronized PhysicsMetrics snapshot()
+    {
+        return new PhysicsMetrics(this);
+    }
+
+    public synchronized void reset()
+    {
+        numSteps = 0;
+        for (int phase = 0; phase < NUM_PHASES; phase++)
+        {
+            lastPhaseNanos[phase] = 0;
+            totalPhaseNanos[phase] = 0;
+            maxPhaseNanos[phase] = 0;
+            phaseHistograms[phase].clear();
+        }
+        lastStepNanos = 0;
+        totalStepNanos = 0;
+        maxStepNanos = 0;
+        stepHistogram.clear();
+        lastPairsTested = 0;
+        lastCollisions = 0;
+        totalPairsTested = 0;
+        totalCollisions = 0;
+        lastTotalPenetration = 0;
+        lastMaxPenetration = 0;
+        maxPenetration = 0;
+    }
+
+    public static String getPhaseName(int phase)
+    {
+        return PHASE_NAMES[phase];
+    }
+
+    public synchronized long getNumSteps()
+    {
+        return numSteps;
+    }
+
+    public synchronized long getLastPhaseNanos(int phase)
+    {
+        return lastPhaseNanos[phase];
+    }
+
+    public synchronized long getMeanPhaseNanos(int phase)
+    {
+        return numSteps == 0 ? 0 : totalPhaseNanos[phase] / numSteps;
+    }
+
+    public synchronized long getMaxPhaseNanos(int phase)
+    {
+        return maxPhaseNanos[phase];
+    }
+
+    /**
+     * @param fraction in [0,1], for example 0.99
+     * @return estimated percentile of the phase's duration over the recent window (at most 2x too high, but never above the maximum)
+     */
+    public synchronized long getPhasePercentileNanos(int phase, double fraction)
+    {
+        return Math.min(maxPhaseNanos[phase], phaseHistograms[phase].getPercentile(fraction));
+    }
+
+    /**
+     * @return number of recent steps in which the phase took between RollingHistogram.getBucketLowerBound(bucket) and getBucketLowerBound(bucket + 1) nanoseconds
+     */
+    public synchronized int getPhaseHistogramCount(int phase, int bucket)
+    {
+        return phaseHistograms[phase].getCount(bucket);
+    }
+
+    public synchronized long getLastStepNanos()
+    {
+        return lastStepNanos;
+    }
+
+    public synchronized long getMeanStepNanos()
+    {
+        return numSteps == 0 ? 0 : totalStepNanos / numSteps;
+    }
+
+    public synchronized long getMaxStepNanos()
+    {
+        return maxStepNanos;
+    }
+
+    public synchronized long getStepPercentileNanos(double fraction)
+    {
+        return Math.min(maxStepNanos, stepHistogram.getPercentile(fraction));
+    }
+
+    public synchronized int getStepHistogramCount(int bucket)
+    {
+        return stepHistogram.getCount(bucket);
+    }
+
+    public synchronized int getLastPairsTested()
+    {
+        return lastPairsTested;
+    }
+
+    public synchronized long getTotalPairsTested()
+    {
+        return totalPairsTested;
+    }
+
+    /**
+     * @return number of candidate pairs in the last step which were actually colliding
+     */
+    public synchronized int getLastCollisions()
+    {
+        return lastCollisions;
+    }
+
+    public synchronized long getTotalCollisions()
+    {
+        return totalCollisions;
+    }
+
+    /**
+     * @return sum of the penetration of every collision in the last step
+     */
+    public synchronized double getLastTotalPenetration()
+    {
+        return lastTotalPenetration;
+    }
+
+    public synchronized double getLastMaxPenetration()
+    {
+        return lastMaxPenetration;
+    }
+
+    /**
+     * @return deepest penetration of any collision since the last reset
+     */
+    public synchronized double getMaxPenetration()
+    {
+        return maxPenetration;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("steps: ").append(numSteps);
+        builder.append(", step mean/p99/max: ").append(toMicros(getMeanStepNanos())).append('/').append(toMicros(getStepPercentileNanos(0.99))).append('/')
+                .append(toMicros(maxStepNanos)).append("us");
+        for (int phase = 0; phase < NUM_PHASES; phase++)
+        {
+            builder.append(", ").append(PHASE_NAMES[phase]).append(": ").append(toMicros(getMeanPhaseNanos(phase))).append('/')
+                    .append(toMicros(getPhasePercentileNanos(phase, 0.99))).append('/').append(toMicros(maxPhaseNanos[phase])).append("us");
+        }
+        builder.append(", pairs: ").append(lastPairsTested).append(", collisions: ").append(lastCollisions).append(", max penetration: ").append(maxPenetration);
+        return builder.toString();
+    }
+
+    private static long toMicros(long nanos)
+    {
+        return nanos / 1000;
+    }
+}
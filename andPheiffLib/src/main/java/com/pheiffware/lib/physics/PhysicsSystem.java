@@ -1,35 +1,166 @@
 package com.pheiffware.lib.physics;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import com.pheiffware.lib.utils.log.PLog;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.BruteForceBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.broadPhase.SpatialIndex;
+import com.pheiffware.lib.physics.broadPhase.SpatialQueryResults;
 import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
-import com.pheiffware.lib.simulation.Simulation;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PackedSphereStore;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.solver.ContactIslandSolver;
+import com.pheiffware.lib.physics.solver.ContactIslands;
+import com.pheiffware.lib.physics.solver.ContinuousCollisionDetector;
+import com.pheiffware.lib.physics.solver.SequentialImpulseSolver;
+import com.pheiffware.lib.physics.solver.SleepManager;
+import com.pheiffware.lib.simulation.InterpolatedSimulation;
 
-public class PhysicsSystem implements Simulation<List<Entity>>
+public class PhysicsSystem implements InterpolatedSimulation<List<Entity>>
 {
-	private static final int maxNumEntities = 1000;
+	// Initial capacity of each storage array. Arrays double in size as needed.
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Returned by getHandle() for entities which aren't in the system
+	public static final long INVALID_HANDLE = EntityHandleTable.INVALID_HANDLE;
+
+	// Identifies checkpoint data ("PHCK") and the version of its format
+	private static final int CHECKPOINT_MAGIC = 0x5048434B;
+	private static final int CHECKPOINT_VERSION = 2;
+
 	private int numEntities;
 	private int numStaticEntities;
 	private int numDynamicEntities;
-	private final Entity[] entities;
-	private final PhysicalEntity[] staticEntities;
-	private final PhysicalEntity[] dynamicEntities;
+	private Entity[] entities;
+	private PhysicalEntity[] staticEntities;
+	private PhysicalEntity[] dynamicEntities;
+
+	// Maps stable handles to entities and their index in the arrays above
+	private final EntityHandleTable handleTable = new EntityHandleTable();
+
+	// Set while a time step is running. Removals requested during a step are
+	// deferred until it ends.
+	private boolean inTimeStep;
+
+	// Handles of entities to remove at the end of the current time step
+	private long[] pendingRemovals = new long[16];
+	private int numPendingRemovals;
+
+	// Bounds of entities removed since the last time step. Sleeping entities
+	// touching them may have been resting on them, so are woken at the start
+	// of the next step.
+	private BoundingBox[] removedBounds = new BoundingBox[0];
+	private int numRemovedBounds;
+	private final BoundingBox removedUnion = new BoundingBox();
+	private final BoundingBox sleeperBoundingBox = new BoundingBox();
+
+	// Culls pairs of entities before they reach narrow phase collision resolution
+	private BroadPhase broadPhase;
+
+	// Candidate pairs found by the broad phase, reused every step
+	private final CollisionPairList collisionPairs = new CollisionPairList();
+
+	// Selects the narrow phase handler for each pair by shape type
+	private final CollisionDispatcher collisionDispatcher = new CollisionDispatcher();
+
+	// Reused by the narrow phase for every collision resolved sequentially
+	private final PhysicalEntityCollision collision = new PhysicalEntityCollision();
+
+	// Resolves independent contact islands in parallel (null to resolve
+	// sequentially)
+	private ContactIslandSolver islandSolver;
+
+	// Iteratively resolves all contacts together (null to resolve each pair
+	// once, as it is found)
+	private SequentialImpulseSolver contactSolver;
+
+	// Groups candidate pairs into contact islands, for the island solver and
+	// sleep management
+	private final ContactIslands contactIslands = new ContactIslands();
+
+	// Puts resting islands to sleep (null if sleeping is disabled)
+	private SleepManager sleepManager;
+
+	// Sweeps fast spheres to stop them tunnelling (null if disabled)
+	private ContinuousCollisionDetector continuousCollisionDetector;
+
+	// Optional packed storage for dynamic spheres (null if not in use)
+	private PackedSphereStore packedSphereStore;
+
+	// Dynamic entities which are not in packedSphereStore
+	private int numUnpackedDynamicEntities;
+	private PhysicalEntity[] unpackedDynamicEntities;
+
+	// Advances dynamic entities each step
+	private Integrator integrator = Integrator.CONSTANT_ACCELERATION;
 
 	private double totalRunTime;
 
+	// Set once an interpolated state has been requested. From then on, sphere
+	// centers are recorded at the start of every step.
+	private boolean recordPreviousCenters;
+
+	// Center of each dynamic sphere (indexed by system index) at the start of
+	// the last step
+	private double[] previousCenterX = new double[0];
+	private double[] previousCenterY = new double[0];
+	private double[] previousCenterZ = new double[0];
+
+	// Number of dynamic entities when previous centers were recorded
+	private int numPreviousCenters;
+
+	// Per phase timing and collision counts (null if disabled)
+	private PhysicsMetrics metrics;
+
+	// Duration of each phase in the current step and when the current phase
+	// started. Only maintained when metrics are enabled.
+	private final long[] phaseNanos = new long[PhysicsMetrics.NUM_PHASES];
+	private long phaseStartNanos;
+
+	// Significant contacts are published here for other threads (null if
+	// disabled)
+	private ContactEventStream contactEvents;
+
+	// Answers spatial queries. Brought up to date by the first query after
+	// entities have moved, been added or removed.
+	private final SpatialIndex spatialIndex = new SpatialIndex();
+	private boolean spatialIndexStale = true;
+
+	// Used by entities writing render snapshots
+	private final BoundingBox renderBoundingBox = new BoundingBox();
+
 	public PhysicsSystem()
 	{
+		this(new BruteForceBroadPhase());
+	}
+
+	/**
+	 * @param broadPhase
+	 *            used to find candidate colliding pairs each step
+	 */
+	public PhysicsSystem(BroadPhase broadPhase)
+	{
+		this.broadPhase = broadPhase;
 		numEntities = 0;
 		numStaticEntities = 0;
 		numDynamicEntities = 0;
-		entities = new Entity[maxNumEntities];
-		dynamicEntities = new PhysicalEntity[maxNumEntities];
-		staticEntities = new PhysicalEntity[maxNumEntities];
+		entities = new Entity[INITIAL_CAPACITY];
+		dynamicEntities = new PhysicalEntity[INITIAL_CAPACITY];
+		staticEntities = new PhysicalEntity[INITIAL_CAPACITY];
+		unpackedDynamicEntities = new PhysicalEntity[INITIAL_CAPACITY];
 		reset();
 	}
 
@@ -38,27 +169,97 @@ public class PhysicsSystem implements Simulation<List<Entity>>
 	 */
 	public void reset()
 	{
+		handleTable.clear();
+		numPendingRemovals = 0;
+		clearArray(entities, numEntities);
+		clearArray(staticEntities, numStaticEntities);
+		clearArray(dynamicEntities, numDynamicEntities);
+		clearArray(unpackedDynamicEntities, numUnpackedDynamicEntities);
 		numEntities = 0;
 		numStaticEntities = 0;
 		numDynamicEntities = 0;
+		numUnpackedDynamicEntities = 0;
+		if (packedSphereStore != null)
+		{
+			packedSphereStore.clear();
+		}
 		totalRunTime = 0f;
+		numPreviousCenters = 0;
+		spatialIndex.clear();
+		spatialIndexStale = true;
+	}
+
+	/**
+	 * Stores all dynamic sphere entities, current and future, in a
+	 * PackedSphereStore, which integrates them in one tight loop. The
+	 * SphereEntity objects remain usable as views over the packed data.
+	 */
+	public void usePackedSphereStorage()
+	{
+		if (packedSphereStore != null)
+		{
+			return;
+		}
+		packedSphereStore = new PackedSphereStore();
+		clearArray(unpackedDynamicEntities, numUnpackedDynamicEntities);
+		numUnpackedDynamicEntities = 0;
+		for (int i = 0; i < numDynamicEntities; i++)
+		{
+			addToMotionStorage(dynamicEntities[i]);
+		}
 	}
 
+	/**
+	 * Failures are rethrown rather than ending the process, so that whatever
+	 * is running the simulation (possibly alongside many others) can record
+	 * them. An InteractionException is wrapped in an IllegalStateException.
+	 */
 	@Override
 	public void performTimeStep(double elapsedTime) {
+		PhysicsMetrics metrics = this.metrics;
+		long stepStartNanos = 0;
+		if (metrics != null)
+		{
+			stepStartNanos = System.nanoTime();
+			phaseStartNanos = stepStartNanos;
+		}
+		totalRunTime += elapsedTime;
+		inTimeStep = true;
+		wakeSleepersNearRemovals();
+		if (recordPreviousCenters)
+		{
+			recordPreviousCenters();
+		}
 		try {
-			totalRunTime += elapsedTime;
-			try {
-				runAI(elapsedTime);
-				updateMotion(elapsedTime);
-				resolveCollisions(elapsedTime);
-			} catch (InteractionException e) {
-				PLog.error("FAIL!", e);
-				System.exit(0);
-			}
-		} catch (Exception e) {
-			PLog.error("FAIL!", e);
-			System.exit(0);
+			runAI(elapsedTime);
+			if (metrics != null)
+			{
+				endPhase(PhysicsMetrics.PHASE_AI);
+			}
+			if (continuousCollisionDetector != null)
+			{
+				continuousCollisionDetector.recordStartPositions(dynamicEntities, numDynamicEntities);
+			}
+			updateMotion(elapsedTime);
+			if (continuousCollisionDetector != null)
+			{
+				continuousCollisionDetector.detect(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities, spatialIndex);
+			}
+			if (metrics != null)
+			{
+				endPhase(PhysicsMetrics.PHASE_MOTION);
+			}
+			resolveCollisions(elapsedTime);
+		} catch (InteractionException e) {
+			throw new IllegalStateException("Time step failed", e);
+		} finally {
+			inTimeStep = false;
+		}
+		processPendingRemovals();
+		spatialIndexStale = true;
+		if (metrics != null)
+		{
+			recordMetrics(metrics, System.nanoTime() - stepStartNanos);
 		}
 	}
 
@@ -95,6 +296,271 @@ public class PhysicsSystem implements Simulation<List<Entity>>
 
 	}
 
+	/**
+	 * Copies state as copyState() does, but dynamic spheres are placed part way
+	 * between where they were at the start of the last step and where they are
+	 * now. Other entities are copied in their current state. Interpolation
+	 * starts with the first step after this is first called.
+	 */
+	@Override
+	public List<Entity> copyInterpolatedState(double alpha)
+	{
+		List<Entity> copyOfEntities = copyState();
+		if (!recordPreviousCenters)
+		{
+			recordPreviousCenters = true;
+			return copyOfEntities;
+		}
+		int dynamicStart = numEntities + numStaticEntities;
+		int numInterpolated = Math.min(numPreviousCenters, numDynamicEntities);
+		double backFraction = 1 - alpha;
+		for (int i = 0; i < numInterpolated; i++)
+		{
+			Entity copy = copyOfEntities.get(dynamicStart + i);
+			if (copy instanceof SphereEntity)
+			{
+				Vec3D center = ((SphereEntity) copy).getCenter();
+				center.subFrom((center.x - previousCenterX[i]) * backFraction, (center.y - previousCenterY[i]) * backFraction, (center.z - previousCenterZ[i]) * backFraction);
+			}
+		}
+		return copyOfEntities;
+	}
+
+	/**
+	 * Writes the placement of every physical entity into a reusable snapshot.
+	 * A flat alternative to copyState() for rendering: nothing is allocated
+	 * once the snapshot has grown to fit and nothing is shared with the
+	 * simulation, so the snapshot can be handed to a render thread. Must be
+	 * called from the thread running the simulation, between steps.
+	 * 
+	 * @param snapshot
+	 *            overwritten
+	 */
+	public void writeRenderSnapshot(RenderSnapshot snapshot)
+	{
+		snapshot.reset(numStaticEntities + numDynamicEntities, totalRunTime);
+		float[] data = snapshot.getInstanceData();
+		writeRenderInstances(snapshot, data, staticEntities, numStaticEntities);
+		writeRenderInstances(snapshot, data, dynamicEntities,
+				numDynamicEntities);
+	}
+
+	/**
+	 * Writes a snapshot as writeRenderSnapshot() does, but dynamic spheres are
+	 * placed part way between where they were at the start of the last step
+	 * and where they are now, as by copyInterpolatedState().
+	 * 
+	 * @param snapshot
+	 *            overwritten
+	 * @param alpha
+	 *            fraction of the way through the last step
+	 */
+	public void writeInterpolatedRenderSnapshot(RenderSnapshot snapshot,
+			double alpha)
+	{
+		writeRenderSnapshot(snapshot);
+		if (!recordPreviousCenters)
+		{
+			recordPreviousCenters = true;
+			return;
+		}
+		float[] data = snapshot.getInstanceData();
+		int numInterpolated = Math.min(numPreviousCenters, numDynamicEntities);
+		double backFraction = 1 - alpha;
+		for (int i = 0; i < numInterpolated; i++)
+		{
+			if (dynamicEntities[i] instanceof SphereEntity)
+			{
+				Vec3D center = ((SphereEntity) dynamicEntities[i]).getCenter();
+				int offset = (numStaticEntities + i)
+						* RenderSnapshot.FLOATS_PER_INSTANCE
+						+ RenderSnapshot.POSITION_OFFSET;
+				data[offset] = (float) (center.x - (center.x - previousCenterX[i])
+						* backFraction);
+				data[offset + 1] = (float) (center.y - (center.y - previousCenterY[i])
+						* backFraction);
+				data[offset + 2] = (float) (center.z - (center.z - previousCenterZ[i])
+						* backFraction);
+			}
+		}
+	}
+
+	private void writeRenderInstances(RenderSnapshot snapshot, float[] data,
+			PhysicalEntity[] array, int size)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			PhysicalEntity physicalEntity = array[i];
+			int offset = snapshot.addInstance(
+					handleTable.getHandle(physicalEntity.getHandleSlot()),
+					physicalEntity.getShapeType());
+			physicalEntity.writeRenderInstance(data, offset, renderBoundingBox);
+		}
+	}
+
+	private void recordPreviousCenters()
+	{
+		if (previousCenterX.length < numDynamicEntities)
+		{
+			previousCenterX = new double[dynamicEntities.length];
+			previousCenterY = new double[dynamicEntities.length];
+			previousCenterZ = new double[dynamicEntities.length];
+		}
+		for (int i = 0; i < numDynamicEntities; i++)
+		{
+			PhysicalEntity physicalEntity = dynamicEntities[i];
+			if (physicalEntity instanceof SphereEntity)
+			{
+				Vec3D center = ((SphereEntity) physicalEntity).getCenter();
+				previousCenterX[i] = center.x;
+				previousCenterY[i] = center.y;
+				previousCenterZ[i] = center.z;
+			}
+		}
+		numPreviousCenters = numDynamicEntities;
+	}
+
+	/**
+	 * Writes the state of every entity to a compact binary checkpoint. Only
+	 * state which changes as the simulation runs (positions, velocities, sleep
+	 * state) is written, so a checkpoint can only be restored into this system,
+	 * or one set up identically, containing the same entities.
+	 * 
+	 * Must be called between time steps.
+	 * 
+	 * @param buffer
+	 *            buffer to reuse (cleared first), or null to allocate one
+	 * @return the buffer written to, flipped ready for reading. This is a new,
+	 *         larger buffer if the given one was too small.
+	 */
+	public ByteBuffer saveCheckpoint(ByteBuffer buffer)
+	{
+		if (inTimeStep)
+		{
+			throw new IllegalStateException("Checkpoints cannot be saved during a time step");
+		}
+		int totalEntities = numEntities + numStaticEntities + numDynamicEntities;
+		if (buffer == null)
+		{
+			buffer = ByteBuffer.allocate(64 + totalEntities * 64);
+		}
+		while (true)
+		{
+			buffer.clear();
+			try
+			{
+				writeCheckpoint(buffer, totalEntities);
+				buffer.flip();
+				return buffer;
+			}
+			catch (BufferOverflowException e)
+			{
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	private void writeCheckpoint(ByteBuffer buffer, int totalEntities)
+	{
+		buffer.putInt(CHECKPOINT_MAGIC);
+		buffer.putInt(CHECKPOINT_VERSION);
+		buffer.putDouble(totalRunTime);
+		buffer.putInt(totalEntities);
+
+		// Handles first, so restore can check they all match before changing
+		// anything
+		writeHandles(buffer, entities, numEntities);
+		writeHandles(buffer, staticEntities, numStaticEntities);
+		writeHandles(buffer, dynamicEntities, numDynamicEntities);
+		writeStates(buffer, entities, numEntities);
+		writeStates(buffer, staticEntities, numStaticEntities);
+		writeStates(buffer, dynamicEntities, numDynamicEntities);
+	}
+
+	private void writeHandles(ByteBuffer buffer, Entity[] array, int size)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			buffer.putLong(handleTable.getHandle(array[i].getHandleSlot()));
+		}
+	}
+
+	private static void writeStates(ByteBuffer buffer, Entity[] array, int size)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			array[i].writeState(buffer);
+		}
+	}
+
+	/**
+	 * Restores a checkpoint written by saveCheckpoint(). The system must
+	 * contain exactly the entities it did when the checkpoint was saved,
+	 * although they may have been removed and added in between.
+	 * 
+	 * Caches carried between steps (broad phase ordering, warm starting
+	 * impulses) are discarded, so replaying from a checkpoint, with the same
+	 * inputs, always gives the same results.
+	 * 
+	 * Must be called between time steps.
+	 * 
+	 * @param buffer
+	 *            read from its current position
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not hold a supported checkpoint
+	 * @throws IllegalStateException
+	 *             if the checkpoint's entities don't match this system's
+	 */
+	public void restoreCheckpoint(ByteBuffer buffer)
+	{
+		if (inTimeStep)
+		{
+			throw new IllegalStateException("Checkpoints cannot be restored during a time step");
+		}
+		if (buffer.getInt() != CHECKPOINT_MAGIC)
+		{
+			throw new IllegalArgumentException("Not a physics system checkpoint");
+		}
+		int version = buffer.getInt();
+		if (version != CHECKPOINT_VERSION)
+		{
+			throw new IllegalArgumentException("Unsupported checkpoint version: " + version);
+		}
+		double checkpointRunTime = buffer.getDouble();
+		int totalEntities = buffer.getInt();
+		if (totalEntities != numEntities + numStaticEntities + numDynamicEntities)
+		{
+			throw new IllegalStateException("Checkpoint does not match the entities in this system");
+		}
+		int handlesStart = buffer.position();
+		for (int i = 0; i < totalEntities; i++)
+		{
+			if (getEntity(buffer.getLong()) == null)
+			{
+				throw new IllegalStateException("Checkpoint does not match the entities in this system");
+			}
+		}
+		for (int i = 0; i < totalEntities; i++)
+		{
+			Entity entity = getEntity(buffer.getLong(handlesStart + i * 8));
+			entity.readState(buffer);
+		}
+
+		totalRunTime = checkpointRunTime;
+		broadPhase.reset();
+		if (contactSolver != null)
+		{
+			contactSolver.reset();
+		}
+		if (sleepManager != null)
+		{
+			sleepManager.countSleepingEntities(dynamicEntities, numDynamicEntities);
+		}
+		numRemovedBounds = 0;
+		numPreviousCenters = 0;
+		spatialIndexStale = true;
+	}
+
 	private void runAI(double elapsedTime)
 	{
 		for (int i = 0; i < numEntities; i++)
@@ -117,96 +583,977 @@ public class PhysicsSystem implements Simulation<List<Entity>>
 		{
 			staticEntities[i].updateMotion(elapsedTime);
 		}
-		for (int i = 0; i < numDynamicEntities; i++)
+		// One loop per integrator, rather than choosing for every entity
+		switch (integrator)
+		{
+		case SEMI_IMPLICIT_EULER:
+			for (int i = 0; i < numUnpackedDynamicEntities; i++)
+			{
+				PhysicalEntity physicalEntity = unpackedDynamicEntities[i];
+				if (!physicalEntity.isSleeping())
+				{
+					physicalEntity.integrateSemiImplicitEuler(elapsedTime);
+				}
+			}
+			break;
+		case VELOCITY_VERLET:
+			for (int i = 0; i < numUnpackedDynamicEntities; i++)
+			{
+				PhysicalEntity physicalEntity = unpackedDynamicEntities[i];
+				if (!physicalEntity.isSleeping())
+				{
+					physicalEntity.integrateVelocityVerlet(elapsedTime);
+				}
+			}
+			break;
+		default:
+			for (int i = 0; i < numUnpackedDynamicEntities; i++)
+			{
+				PhysicalEntity physicalEntity = unpackedDynamicEntities[i];
+				if (!physicalEntity.isSleeping())
+				{
+					physicalEntity.updateMotion(elapsedTime);
+				}
+			}
+			break;
+		}
+		if (packedSphereStore != null)
 		{
-			dynamicEntities[i].updateMotion(elapsedTime);
+			packedSphereStore.integrate(elapsedTime, integrator);
 		}
 	}
 
-	private void resolveCollisions(double elapsedTime) throws InteractionException
+	/**
+	 * Selects the scheme used to advance dynamic entities each step. Symplectic
+	 * integrators stay stable at larger steps when forces depend on position
+	 * (see Integrator). Takes effect on the next time step.
+	 * 
+	 * @param integrator
+	 */
+	public void setIntegrator(Integrator integrator)
 	{
-		for (int i = 0; i < numStaticEntities; i++)
+		this.integrator = integrator;
+	}
+
+	public Integrator getIntegrator()
+	{
+		return integrator;
+	}
+
+	/**
+	 * Applies a uniform gravitational acceleration, for the current time step,
+	 * to every awake dynamic entity which does not ignore gravity. Packed
+	 * spheres receive it directly in their integration loop.
+	 * 
+	 * @param acceleration
+	 */
+	public void applyGravity(Vec3D acceleration)
+	{
+		for (int i = 0; i < numUnpackedDynamicEntities; i++)
 		{
-			PhysicalEntity staticEntity = staticEntities[i];
-			for (int j = 0; j < numDynamicEntities; j++)
+			PhysicalEntity physicalEntity = unpackedDynamicEntities[i];
+			if (!physicalEntity.ignoresGravity() && !physicalEntity.isSleeping())
 			{
-				PhysicalEntity entity2 = dynamicEntities[j];
-				staticEntity.resolveCollision(entity2, elapsedTime);
+				physicalEntity.addForce(acceleration, physicalEntity.mass);
 			}
 		}
-
-		int innerSize = numDynamicEntities;
-		int outerSize = numDynamicEntities - 1;
-		for (int i = 0; i < outerSize; i++)
+		if (packedSphereStore != null)
 		{
-			PhysicalEntity entity1 = dynamicEntities[i];
+			packedSphereStore.addGravity(acceleration);
+		}
+	}
 
-			for (int j = i + 1; j < innerSize; j++)
+	private void resolveCollisions(double elapsedTime) throws InteractionException
+	{
+		collisionPairs.clear();
+		broadPhase.findPairs(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities, collisionPairs);
+		if (metrics != null)
+		{
+			endPhase(PhysicsMetrics.PHASE_BROAD_PHASE);
+		}
+		if (islandSolver != null || sleepManager != null)
+		{
+			contactIslands.build(collisionPairs, dynamicEntities, numDynamicEntities);
+		}
+		if (sleepManager != null)
+		{
+			sleepManager.wakeIslands(contactIslands, dynamicEntities);
+		}
+		if (contactEvents != null)
+		{
+			contactEvents.setCurrentTime(totalRunTime);
+		}
+		if (contactSolver != null)
+		{
+			contactSolver.solve(collisionPairs, collisionDispatcher, dynamicEntities, numDynamicEntities, elapsedTime);
+		}
+		else if (islandSolver != null)
+		{
+			islandSolver.solve(collisionPairs, contactIslands, collisionDispatcher, elapsedTime);
+		}
+		else
+		{
+			collision.resetStatistics();
+			int numPairs = collisionPairs.size();
+			for (int i = 0; i < numPairs; i++)
 			{
-				PhysicalEntity entity2 = dynamicEntities[j];
-				entity1.resolveCollision(entity2, elapsedTime);
+				PhysicalEntity entity2 = collisionPairs.getEntity2(i);
+				if (entity2.isSleeping())
+				{
+					continue;
+				}
+				PhysicalEntity entity1 = collisionPairs.getEntity1(i);
+				int primitive1 = collisionPairs.getPrimitive1(i);
+				if (primitive1 == CollisionPairList.WHOLE_ENTITY)
+				{
+					collisionDispatcher.resolve(entity1, entity2, elapsedTime, collision);
+				}
+				else
+				{
+					collisionDispatcher.resolvePrimitive(entity1, primitive1, entity2, elapsedTime, collision);
+				}
 			}
 		}
+		if (sleepManager != null)
+		{
+			sleepManager.updateSleep(contactIslands, dynamicEntities, numDynamicEntities);
+		}
+		if (metrics != null)
+		{
+			endPhase(PhysicsMetrics.PHASE_NARROW_PHASE);
+		}
+	}
+
+	private void endPhase(int phase)
+	{
+		long now = System.nanoTime();
+		phaseNanos[phase] = now - phaseStartNanos;
+		phaseStartNanos = now;
+	}
+
+	private void recordMetrics(PhysicsMetrics metrics, long stepNanos)
+	{
+		PhysicalEntityCollision statistics;
+		if (contactSolver != null)
+		{
+			statistics = contactSolver.getCollisionStatistics();
+		}
+		else if (islandSolver != null)
+		{
+			statistics = islandSolver.getCollisionStatistics();
+		}
+		else
+		{
+			statistics = collision;
+		}
+		metrics.recordStep(phaseNanos, stepNanos, collisionPairs.size(), statistics.getNumCollisions(), statistics.getTotalPenetration(),
+				statistics.getMaxPenetration());
 	}
 
-	public void addEntity(Entity entity)
+	/**
+	 * Adds an entity, in O(1) amortized time. Safe to call from Entity.ai()
+	 * during a time step.
+	 * 
+	 * @param entity
+	 *            must not already be in a PhysicsSystem
+	 * @return a handle which can be used to remove the entity later
+	 */
+	public long addEntity(Entity entity)
 	{
 		if (entity instanceof PhysicalEntity)
 		{
 			PhysicalEntity physicalEntity = (PhysicalEntity) entity;
 			if (((PhysicalEntity) entity).mass == Float.POSITIVE_INFINITY)
 			{
+				int slot = allocateSlot(entity);
+				if (numStaticEntities == staticEntities.length)
+				{
+					staticEntities = copyOf(staticEntities, numStaticEntities * 2);
+				}
+				handleTable.setIndex(slot, numStaticEntities);
 				staticEntities[numStaticEntities] = physicalEntity;
 				numStaticEntities++;
+				spatialIndexStale = true;
+				return handleTable.getHandle(slot);
 			}
 			else
 			{
-				dynamicEntities[numDynamicEntities] = physicalEntity;
-				numDynamicEntities++;
+				return addDynamicEntity(physicalEntity);
 			}
 		}
 		else
 		{
+			int slot = allocateSlot(entity);
+			if (numEntities == entities.length)
+			{
+				Entity[] newEntities = new Entity[numEntities * 2];
+				System.arraycopy(entities, 0, newEntities, 0, numEntities);
+				entities = newEntities;
+			}
+			handleTable.setIndex(slot, numEntities);
 			entities[numEntities] = entity;
 			numEntities++;
+			return handleTable.getHandle(slot);
 		}
 	}
 
-	public void addDynamicEntity(PhysicalEntity physicalEntity)
+	public long addDynamicEntity(PhysicalEntity physicalEntity)
 	{
+		int slot = allocateSlot(physicalEntity);
+		if (numDynamicEntities == dynamicEntities.length)
+		{
+			dynamicEntities = copyOf(dynamicEntities, numDynamicEntities * 2);
+		}
+		handleTable.setIndex(slot, numDynamicEntities);
+		physicalEntity.setSystemIndex(numDynamicEntities);
 		dynamicEntities[numDynamicEntities] = physicalEntity;
 		numDynamicEntities++;
+		addToMotionStorage(physicalEntity);
+		spatialIndexStale = true;
+		return handleTable.getHandle(slot);
 	}
-	// TODO: Real,dynamic add/remove capability
 
-	public double getTotalRunTime()
+	private int allocateSlot(Entity entity)
 	{
-		return totalRunTime;
+		if (entity.getHandleSlot() != -1)
+		{
+			throw new IllegalStateException("Entity is already in a physics system");
+		}
+		return handleTable.allocate(entity);
 	}
 
-	/**
-	 * Randomizes the order physical entities are processed. This is for testing
-	 * only.
-	 * 
-	 * @param random
-	 */
-	public void randomizeEntityProcessingOrder_TESTING_ONLY(Random random)
+	private void addToMotionStorage(PhysicalEntity physicalEntity)
 	{
-		List<PhysicalEntity> physicalEntityList = new ArrayList<PhysicalEntity>(numDynamicEntities);
-		for (int i = 0; i < numDynamicEntities; i++)
+		if (packedSphereStore != null && physicalEntity instanceof SphereEntity)
 		{
-			physicalEntityList.add(dynamicEntities[i]);
+			packedSphereStore.add((SphereEntity) physicalEntity);
+			handleTable.setUnpackedIndex(physicalEntity.getHandleSlot(), -1);
 		}
-		Collections.shuffle(physicalEntityList, random);
-		for (int i = 0; i < numDynamicEntities; i++)
+		else
 		{
-			dynamicEntities[i] = physicalEntityList.get(i);
+			if (numUnpackedDynamicEntities == unpackedDynamicEntities.length)
+			{
+				unpackedDynamicEntities = copyOf(unpackedDynamicEntities, numUnpackedDynamicEntities * 2);
+			}
+			handleTable.setUnpackedIndex(physicalEntity.getHandleSlot(), numUnpackedDynamicEntities);
+			unpackedDynamicEntities[numUnpackedDynamicEntities] = physicalEntity;
+			numUnpackedDynamicEntities++;
 		}
 	}
 
-	public PhysicalEntity[] getPhysicalEntities()
+	/**
+	 * Removes an entity, in O(1) time. The last entity of the same kind takes
+	 * its place in storage, so processing order changes. If called during a
+	 * time step (for example from Entity.ai()), removal is deferred until the
+	 * step ends.
+	 * 
+	 * @param handle
+	 *            handle returned when the entity was added
+	 * @return false if the handle is stale (the entity was already removed)
+	 */
+	public boolean removeEntity(long handle)
 	{
-		return dynamicEntities;
+		int slot = handleTable.getSlot(handle);
+		if (slot == -1)
+		{
+			return false;
+		}
+		if (inTimeStep)
+		{
+			if (numPendingRemovals == pendingRemovals.length)
+			{
+				long[] newPendingRemovals = new long[numPendingRemovals * 2];
+				System.arraycopy(pendingRemovals, 0, newPendingRemovals, 0, numPendingRemovals);
+				pendingRemovals = newPendingRemovals;
+			}
+			pendingRemovals[numPendingRemovals++] = handle;
+		}
+		else
+		{
+			removeSlot(slot);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes an entity. See removeEntity(long).
+	 * 
+	 * @param entity
+	 * @return false if the entity is not in this system
+	 */
+	public boolean removeEntity(Entity entity)
+	{
+		return removeEntity(getHandle(entity));
+	}
+
+	/**
+	 * @param entity
+	 * @return the entity's handle or INVALID_HANDLE if it isn't in this system
+	 */
+	public long getHandle(Entity entity)
+	{
+		int slot = entity.getHandleSlot();
+		if (slot == -1 || handleTable.getEntity(slot) != entity)
+		{
+			return INVALID_HANDLE;
+		}
+		return handleTable.getHandle(slot);
+	}
+
+	/**
+	 * @param handle
+	 * @return the entity or null if the handle is stale
+	 */
+	public Entity getEntity(long handle)
+	{
+		int slot = handleTable.getSlot(handle);
+		return slot == -1 ? null : handleTable.getEntity(slot);
+	}
+
+	/**
+	 * Finds the first physical entity hit by a ray. Static and sleeping
+	 * entities are included. Spheres, line segments and polygons are tested
+	 * exactly (the latter two in the x-y plane), other entities by their
+	 * bounding boxes.
+	 * 
+	 * Queries use a bounding volume hierarchy over all physical entities,
+	 * which is refit or rebuilt by the first query after a time step or after
+	 * entities are added or removed. Queries don't allocate, but must not run
+	 * concurrently with each other or with a time step.
+	 * 
+	 * @param origin
+	 * @param direction
+	 *            unit direction of the ray
+	 * @param maxDistance
+	 *            hits farther along the ray are ignored
+	 * @param hit
+	 *            cleared, then receives the entity hit and its distance along
+	 *            the ray (0 if the origin is inside it)
+	 * @return true if an entity was hit
+	 */
+	public boolean raycast(Vec3D origin, Vec3D direction, double maxDistance,
+			SpatialQueryResults hit)
+	{
+		hit.clear();
+		updateSpatialIndex();
+		return spatialIndex.raycast(origin.x, origin.y, origin.z, direction.x,
+				direction.y, direction.z, maxDistance, hit);
+	}
+
+	/**
+	 * Finds every physical entity hit by a ray. See raycast().
+	 * 
+	 * @param origin
+	 * @param direction
+	 *            unit direction of the ray
+	 * @param maxDistance
+	 *            hits farther along the ray are ignored
+	 * @param hits
+	 *            cleared, then receives the entities hit, ordered by distance
+	 *            along the ray
+	 * @return number of entities hit
+	 */
+	public int raycastAll(Vec3D origin, Vec3D direction, double maxDistance,
+			SpatialQueryResults hits)
+	{
+		hits.clear();
+		updateSpatialIndex();
+		spatialIndex.raycastAll(origin.x, origin.y, origin.z, direction.x,
+				direction.y, direction.z, maxDistance, hits);
+		return hits.size();
+	}
+
+	/**
+	 * Finds every physical entity which overlaps a sphere. See raycast().
+	 * 
+	 * @param center
+	 * @param radius
+	 * @param results
+	 *            cleared, then receives the entities, in no particular order,
+	 *            with the distance from the center to each
+	 * @return number of entities found
+	 */
+	public int overlapSphere(Vec3D center, double radius,
+			SpatialQueryResults results)
+	{
+		results.clear();
+		updateSpatialIndex();
+		spatialIndex.overlapSphere(center.x, center.y, center.z, radius,
+				results);
+		return results.size();
+	}
+
+	/**
+	 * Finds every physical entity whose bounding box overlaps a box. See
+	 * raycast().
+	 * 
+	 * @param box
+	 * @param results
+	 *            cleared, then receives the entities, in no particular order
+	 * @return number of entities found
+	 */
+	public int overlapBox(BoundingBox box, SpatialQueryResults results)
+	{
+		results.clear();
+		updateSpatialIndex();
+		spatialIndex.overlapBox(box, results);
+		return results.size();
+	}
+
+	/**
+	 * Finds the physical entities nearest a point. See raycast().
+	 * 
+	 * @param point
+	 * @param k
+	 *            maximum number of entities to find
+	 * @param maxDistance
+	 *            entities farther away are ignored
+	 * @param results
+	 *            cleared, then receives up to k entities, nearest first, with
+	 *            the distance to each (0 if the point is inside)
+	 * @return number of entities found
+	 */
+	public int findNearest(Vec3D point, int k, double maxDistance,
+			SpatialQueryResults results)
+	{
+		results.clear();
+		if (k <= 0)
+		{
+			return 0;
+		}
+		updateSpatialIndex();
+		spatialIndex.findNearest(point.x, point.y, point.z, k, maxDistance,
+				results);
+		return results.size();
+	}
+
+	/**
+	 * Must be called after moving entities directly (other than by a time
+	 * step), before running spatial queries.
+	 */
+	public void invalidateSpatialIndex()
+	{
+		spatialIndexStale = true;
+	}
+
+	private void updateSpatialIndex()
+	{
+		if (spatialIndexStale)
+		{
+			spatialIndex.update(staticEntities, numStaticEntities,
+					dynamicEntities, numDynamicEntities);
+			spatialIndexStale = false;
+		}
+	}
+
+	private void processPendingRemovals()
+	{
+		for (int i = 0; i < numPendingRemovals; i++)
+		{
+			//The same entity may have been removed twice during the step
+			int slot = handleTable.getSlot(pendingRemovals[i]);
+			if (slot != -1)
+			{
+				removeSlot(slot);
+			}
+		}
+		numPendingRemovals = 0;
+	}
+
+	private void removeSlot(int slot)
+	{
+		Entity entity = handleTable.getEntity(slot);
+		int index = handleTable.getIndex(slot);
+		if (entity instanceof PhysicalEntity)
+		{
+			PhysicalEntity physicalEntity = (PhysicalEntity) entity;
+			if (physicalEntity.mass == Float.POSITIVE_INFINITY)
+			{
+				numStaticEntities--;
+				moveEntity(staticEntities, numStaticEntities, index);
+			}
+			else
+			{
+				numDynamicEntities--;
+				moveEntity(dynamicEntities, numDynamicEntities, index);
+				if (index < numDynamicEntities)
+				{
+					dynamicEntities[index].setSystemIndex(index);
+				}
+				if (index < numDynamicEntities && index < numPreviousCenters)
+				{
+					movePreviousCenter(index);
+				}
+				numPreviousCenters = Math.min(numPreviousCenters, numDynamicEntities);
+				physicalEntity.setSystemIndex(-1);
+				int unpackedIndex = handleTable.getUnpackedIndex(slot);
+				if (unpackedIndex == -1)
+				{
+					packedSphereStore.remove((SphereEntity) physicalEntity);
+				}
+				else
+				{
+					numUnpackedDynamicEntities--;
+					PhysicalEntity last = unpackedDynamicEntities[numUnpackedDynamicEntities];
+					unpackedDynamicEntities[unpackedIndex] = last;
+					unpackedDynamicEntities[numUnpackedDynamicEntities] = null;
+					handleTable.setUnpackedIndex(last.getHandleSlot(), unpackedIndex);
+				}
+			}
+			recordRemovedBounds(physicalEntity);
+			spatialIndexStale = true;
+		}
+		else
+		{
+			numEntities--;
+			moveEntity(entities, numEntities, index);
+		}
+		handleTable.free(slot);
+	}
+
+	/**
+	 * Keeps the previous center of the dynamic entity swapped into index,
+	 * which was at index numDynamicEntities. If it was added after centers
+	 * were recorded, its current center is used.
+	 */
+	private void movePreviousCenter(int index)
+	{
+		if (numDynamicEntities < numPreviousCenters)
+		{
+			previousCenterX[index] = previousCenterX[numDynamicEntities];
+			previousCenterY[index] = previousCenterY[numDynamicEntities];
+			previousCenterZ[index] = previousCenterZ[numDynamicEntities];
+		}
+		else if (dynamicEntities[index] instanceof SphereEntity)
+		{
+			Vec3D center = ((SphereEntity) dynamicEntities[index]).getCenter();
+			previousCenterX[index] = center.x;
+			previousCenterY[index] = center.y;
+			previousCenterZ[index] = center.z;
+		}
+	}
+
+	/**
+	 * Moves the entity at lastIndex into index (swap-remove) and updates its
+	 * handle table entry.
+	 */
+	private void moveEntity(Entity[] array, int lastIndex, int index)
+	{
+		Entity last = array[lastIndex];
+		array[index] = last;
+		array[lastIndex] = null;
+		handleTable.setIndex(last.getHandleSlot(), index);
+	}
+
+	/**
+	 * Sleeping entities aren't paired with anything they might be resting on,
+	 * so a removed entity's bounds are kept until the next time step, which
+	 * wakes any sleeper touching them. Keeps the sleeping count current if the
+	 * removed entity was itself asleep.
+	 */
+	private void recordRemovedBounds(PhysicalEntity removedEntity)
+	{
+		if (sleepManager == null)
+		{
+			return;
+		}
+		if (removedEntity.isSleeping())
+		{
+			sleepManager.sleepingEntityRemoved();
+		}
+		if (sleepManager.getNumSleepingEntities() == 0)
+		{
+			return;
+		}
+		if (numRemovedBounds == removedBounds.length)
+		{
+			BoundingBox[] newRemovedBounds = new BoundingBox[Math.max(16, numRemovedBounds * 2)];
+			System.arraycopy(removedBounds, 0, newRemovedBounds, 0, numRemovedBounds);
+			for (int i = numRemovedBounds; i < newRemovedBounds.length; i++)
+			{
+				newRemovedBounds[i] = new BoundingBox();
+			}
+			removedBounds = newRemovedBounds;
+		}
+		removedEntity.calcBoundingBox(removedBounds[numRemovedBounds++]);
+	}
+
+	/**
+	 * Wakes sleeping entities touching the bounds of any entity removed since
+	 * the last step, in one pass however many were removed. Runs before the
+	 * broad phase, so woken entities are paired this step.
+	 */
+	private void wakeSleepersNearRemovals()
+	{
+		if (numRemovedBounds == 0)
+		{
+			return;
+		}
+		if (getNumSleepingEntities() > 0)
+		{
+			removedUnion.set(removedBounds[0].minX, removedBounds[0].minY, removedBounds[0].minZ, removedBounds[0].maxX, removedBounds[0].maxY,
+					removedBounds[0].maxZ);
+			for (int i = 1; i < numRemovedBounds; i++)
+			{
+				BoundingBox bounds = removedBounds[i];
+				removedUnion.set(Math.min(removedUnion.minX, bounds.minX), Math.min(removedUnion.minY, bounds.minY),
+						Math.min(removedUnion.minZ, bounds.minZ), Math.max(removedUnion.maxX, bounds.maxX),
+						Math.max(removedUnion.maxY, bounds.maxY), Math.max(removedUnion.maxZ, bounds.maxZ));
+			}
+			for (int i = 0; i < numDynamicEntities; i++)
+			{
+				PhysicalEntity physicalEntity = dynamicEntities[i];
+				if (!physicalEntity.isSleeping())
+				{
+					continue;
+				}
+				physicalEntity.calcBoundingBox(sleeperBoundingBox);
+				if (!sleeperBoundingBox.overlapping(removedUnion))
+				{
+					continue;
+				}
+				for (int j = 0; j < numRemovedBounds; j++)
+				{
+					if (sleeperBoundingBox.overlapping(removedBounds[j]))
+					{
+						physicalEntity.wake();
+						break;
+					}
+				}
+			}
+		}
+		numRemovedBounds = 0;
+	}
+
+	/**
+	 * Pre-sizes storage for the given number of entities of each kind, to
+	 * avoid growing arrays while a simulation is running.
+	 * 
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity)
+	{
+		if (entities.length < capacity)
+		{
+			Entity[] newEntities = new Entity[capacity];
+			System.arraycopy(entities, 0, newEntities, 0, numEntities);
+			entities = newEntities;
+		}
+		if (staticEntities.length < capacity)
+		{
+			staticEntities = copyOf(staticEntities, capacity);
+		}
+		if (dynamicEntities.length < capacity)
+		{
+			dynamicEntities = copyOf(dynamicEntities, capacity);
+		}
+		if (unpackedDynamicEntities.length < capacity)
+		{
+			unpackedDynamicEntities = copyOf(unpackedDynamicEntities, capacity);
+		}
+	}
+
+	private static PhysicalEntity[] copyOf(PhysicalEntity[] array, int capacity)
+	{
+		PhysicalEntity[] newArray = new PhysicalEntity[capacity];
+		System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+		return newArray;
+	}
+
+	private static void clearArray(Entity[] array, int size)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			array[i] = null;
+		}
+	}
+
+	public double getTotalRunTime()
+	{
+		return totalRunTime;
+	}
+
+	/**
+	 * Changes the broad phase used to find candidate colliding pairs. Takes
+	 * effect on the next time step.
+	 * 
+	 * @param broadPhase
+	 */
+	public void setBroadPhase(BroadPhase broadPhase)
+	{
+		this.broadPhase = broadPhase;
+	}
+
+	public BroadPhase getBroadPhase()
+	{
+		return broadPhase;
+	}
+
+	/**
+	 * The dispatcher used to resolve collisions between whole entities.
+	 * Register handlers with it to support new pairs of shape types.
+	 * 
+	 * @return
+	 */
+	public CollisionDispatcher getCollisionDispatcher()
+	{
+		return collisionDispatcher;
+	}
+
+	/**
+	 * Resolve collisions by splitting candidate pairs into independent contact
+	 * islands and resolving islands in parallel on the given pool. Results are
+	 * bit-identical to sequential resolution regardless of the pool's
+	 * parallelism.
+	 * 
+	 * @param pool
+	 *            pool to use, or null to resolve sequentially on the
+	 *            simulation thread
+	 */
+	public void setCollisionPool(ForkJoinPool pool)
+	{
+		islandSolver = pool == null ? null : new ContactIslandSolver(pool);
+		connectContactEvents();
+	}
+
+	/**
+	 * Replaces one-shot pairwise collision resolution with an iterative
+	 * sequential impulse solver, which gathers all contacts for a step, warm
+	 * starts them from the last step and iterates. This keeps stacks stable at
+	 * larger time steps. When set, the collision pool is not used.
+	 * 
+	 * @param contactSolver
+	 *            solver or null to resolve each pair once
+	 */
+	public void setContactSolver(SequentialImpulseSolver contactSolver)
+	{
+		this.contactSolver = contactSolver;
+		connectContactEvents();
+	}
+
+	public SequentialImpulseSolver getContactSolver()
+	{
+		return contactSolver;
+	}
+
+	/**
+	 * Enables continuous collision detection for spheres. Any sphere which
+	 * moves further than displacementFraction of its radius in a step is swept
+	 * against line segments and other spheres, and moved back to its first
+	 * impact. This prevents fast spheres tunnelling through thin walls without
+	 * lowering the time step for the whole world.
+	 * 
+	 * @param displacementFraction
+	 *            fraction of a sphere's radius it must move in a step before
+	 *            it is swept
+	 */
+	public void enableContinuousCollisionDetection(double displacementFraction)
+	{
+		continuousCollisionDetector = new ContinuousCollisionDetector(displacementFraction);
+	}
+
+	public void disableContinuousCollisionDetection()
+	{
+		continuousCollisionDetector = null;
+	}
+
+	/**
+	 * @return the continuous collision detector or null if disabled
+	 */
+	public ContinuousCollisionDetector getContinuousCollisionDetector()
+	{
+		return continuousCollisionDetector;
+	}
+
+	/**
+	 * Enables per phase timing and collision counts, which can be read from
+	 * any thread. Costs a few System.nanoTime() calls per step.
+	 * 
+	 * @param windowSize
+	 *            number of most recent steps covered by histograms
+	 * @return the metrics, updated at the end of every step
+	 */
+	public PhysicsMetrics enableMetrics(int windowSize)
+	{
+		metrics = new PhysicsMetrics(windowSize);
+		return metrics;
+	}
+
+	public void disableMetrics()
+	{
+		metrics = null;
+	}
+
+	/**
+	 * @return metrics, or null if disabled
+	 */
+	public PhysicsMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Publishes significant contacts to a ring buffer, which one other
+	 * thread, such as an audio or gameplay thread, can poll. Publishing does
+	 * not lock or allocate.
+	 * 
+	 * @param capacity
+	 *            maximum number of unread events. Further events are dropped.
+	 * @param minImpulse
+	 *            smallest normal impulse which is published
+	 * @param minRelativeVelocity
+	 *            smallest approach velocity which is published
+	 * @param debounceInterval
+	 *            a pair's contacts are not published while it keeps having
+	 *            significant contacts less than this time apart
+	 * @return the stream to poll
+	 */
+	public ContactEventStream enableContactEvents(int capacity,
+			double minImpulse, double minRelativeVelocity,
+			double debounceInterval)
+	{
+		contactEvents = new ContactEventStream(capacity, minImpulse,
+				minRelativeVelocity, debounceInterval);
+		connectContactEvents();
+		return contactEvents;
+	}
+
+	public void disableContactEvents()
+	{
+		contactEvents = null;
+		connectContactEvents();
+	}
+
+	/**
+	 * @return contact event stream, or null if disabled
+	 */
+	public ContactEventStream getContactEvents()
+	{
+		return contactEvents;
+	}
+
+	private void connectContactEvents()
+	{
+		collision.setContactEvents(contactEvents);
+		if (islandSolver != null)
+		{
+			islandSolver.setContactEvents(contactEvents);
+		}
+		if (contactSolver != null)
+		{
+			contactSolver.setContactEvents(contactEvents);
+		}
+	}
+
+	/**
+	 * Enables sleeping. Contact islands (or lone entities) whose every member
+	 * has moved slower than sleepVelocity for stepsToSleep consecutive steps
+	 * are put to sleep: they are no longer integrated, affected by gravity or
+	 * collision tested against static geometry. A sleeping entity wakes when
+	 * an impulse or force is applied to it or an awake entity touches its
+	 * island.
+	 * 
+	 * @param sleepVelocity
+	 *            speed below which an entity is considered at rest
+	 * @param stepsToSleep
+	 *            consecutive steps at rest required before sleeping
+	 */
+	public void enableSleeping(double sleepVelocity, int stepsToSleep)
+	{
+		sleepManager = new SleepManager(sleepVelocity, stepsToSleep);
+	}
+
+	/**
+	 * Disables sleeping and wakes all sleeping entities.
+	 */
+	public void disableSleeping()
+	{
+		sleepManager = null;
+		numRemovedBounds = 0;
+		for (int i = 0; i < numDynamicEntities; i++)
+		{
+			dynamicEntities[i].wake();
+		}
+	}
+
+	/**
+	 * @return number of sleeping dynamic entities, as of the end of the last
+	 *         time step, less any of them removed since
+	 */
+	public int getNumSleepingEntities()
+	{
+		return sleepManager == null ? 0 : sleepManager.getNumSleepingEntities();
+	}
+
+	/**
+	 * @return number of awake dynamic entities, as of the end of the last
+	 *         time step, less any of them removed since
+	 */
+	public int getNumAwakeEntities()
+	{
+		return numDynamicEntities - getNumSleepingEntities();
+	}
+
+	/**
+	 * The number of candidate pairs passed to narrow phase collision
+	 * resolution during the last time step.
+	 * 
+	 * @return
+	 */
+	public int getNumCollisionPairsTested()
+	{
+		return collisionPairs.size();
+	}
+
+	/**
+	 * Randomizes the order physical entities are processed. This is for testing
+	 * only.
+	 * 
+	 * @param random
+	 */
+	public void randomizeEntityProcessingOrder_TESTING_ONLY(Random random)
+	{
+		List<PhysicalEntity> physicalEntityList = new ArrayList<PhysicalEntity>(numDynamicEntities);
+		for (int i = 0; i < numDynamicEntities; i++)
+		{
+			physicalEntityList.add(dynamicEntities[i]);
+		}
+		Collections.shuffle(physicalEntityList, random);
+		// Previous centers are indexed by system index, so move with their
+		// entities
+		double[] oldPreviousCenterX = previousCenterX.clone();
+		double[] oldPreviousCenterY = previousCenterY.clone();
+		double[] oldPreviousCenterZ = previousCenterZ.clone();
+		for (int i = 0; i < numDynamicEntities; i++)
+		{
+			PhysicalEntity physicalEntity = physicalEntityList.get(i);
+			int oldIndex = physicalEntity.getSystemIndex();
+			if (i < numPreviousCenters)
+			{
+				if (oldIndex < numPreviousCenters)
+				{
+					previousCenterX[i] = oldPreviousCenterX[oldIndex];
+					previousCenterY[i] = oldPreviousCenterY[oldIndex];
+					previousCenterZ[i] = oldPreviousCenterZ[oldIndex];
+				}
+				else if (physicalEntity instanceof SphereEntity)
+				{
+					// Added since centers were recorded
+					Vec3D center = ((SphereEntity) physicalEntity).getCenter();
+					previousCenterX[i] = center.x;
+					previousCenterY[i] = center.y;
+					previousCenterZ[i] = center.z;
+				}
+			}
+			dynamicEntities[i] = physicalEntity;
+			physicalEntity.setSystemIndex(i);
+			handleTable.setIndex(physicalEntity.getHandleSlot(), i);
+		}
+	}
+
+	public PhysicalEntity[] getPhysicalEntities()
+	{
+		return dynamicEntities;
 	}
 
 	public int getNumPhysicalEntities()
@@ -214,6 +1561,14 @@ public class PhysicsSystem implements Simulation<List<Entity>>
 		return numDynamicEntities;
 	}
 
+	/**
+	 * @return the packed sphere store, or null if packed storage is not in use
+	 */
+	public PackedSphereStore getPackedSphereStore()
+	{
+		return packedSphereStore;
+	}
+
 	@Override
 	public void applyExternalInput(String key, Object value) {
 		// Do nothing by default
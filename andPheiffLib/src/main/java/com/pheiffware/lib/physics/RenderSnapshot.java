@@ -0,0 +1,136 @@
+package com.pheiffware.lib.physics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A reusable, flat snapshot of every physical entity's placement, written by
+ * PhysicsSystem.writeRenderSnapshot(). Unlike copyState(), it shares nothing
+ * with the running simulation and, once grown to fit, writing it allocates
+ * nothing.
+ *
+ * Each instance is FLOATS_PER_INSTANCE consecutive floats, laid out for upload
+ * as per-instance vertex data: position (x, y, z), radius and orientation
+ * quaternion (x, y, z, w). Alongside each instance is the entity's handle and
+ * shape type (see CollisionDispatcher), so renderers can find the entity or
+ * pick a mesh. Static entities come first, followed by dynamic ones.
+ */
+public class RenderSnapshot
+{
+	public static final int FLOATS_PER_INSTANCE = 8;
+	public static final int POSITION_OFFSET = 0;
+	public static final int RADIUS_OFFSET = 3;
+	public static final int ORIENTATION_OFFSET = 4;
+
+	private float[] instanceData = new float[0];
+	private long[] handles = new long[0];
+	private int[] shapeTypes = new int[0];
+	private int size;
+
+	// Physics system run time when the snapshot was written
+	private double time;
+
+	// Copy of instanceData for upload (null until requested)
+	private FloatBuffer instanceBuffer;
+
+	/**
+	 * Empties the snapshot and makes room for the given number of instances.
+	 */
+	void reset(int capacity, double time)
+	{
+		if (handles.length < capacity)
+		{
+			// Leave room to grow, so adding a few entities doesn't reallocate
+			// every frame
+			capacity = Math.max(capacity, handles.length * 2);
+			instanceData = new float[capacity * FLOATS_PER_INSTANCE];
+			handles = new long[capacity];
+			shapeTypes = new int[capacity];
+		}
+		size = 0;
+		this.time = time;
+	}
+
+	/**
+	 * Adds an instance, whose data the caller then writes.
+	 *
+	 * @return offset of the instance's data in getInstanceData()
+	 */
+	int addInstance(long handle, int shapeType)
+	{
+		handles[size] = handle;
+		shapeTypes[size] = shapeType;
+		return size++ * FLOATS_PER_INSTANCE;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public double getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * @return instance data. Only the first size() * FLOATS_PER_INSTANCE
+	 *         entries are valid.
+	 */
+	public float[] getInstanceData()
+	{
+		return instanceData;
+	}
+
+	/**
+	 * Copies the instance data into a direct, native order buffer, which is
+	 * reused (and grown as needed) by later calls.
+	 *
+	 * @return the buffer, positioned at 0 with its limit at the end of the data
+	 */
+	public FloatBuffer getInstanceBuffer()
+	{
+		int numFloats = size * FLOATS_PER_INSTANCE;
+		if (instanceBuffer == null || instanceBuffer.capacity() < numFloats)
+		{
+			instanceBuffer = ByteBuffer.allocateDirect(instanceData.length * 4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+		instanceBuffer.clear();
+		instanceBuffer.put(instanceData, 0, numFloats);
+		instanceBuffer.flip();
+		return instanceBuffer;
+	}
+
+	/**
+	 * @param index
+	 * @return handle of the entity at the given instance
+	 */
+	public long getHandle(int index)
+	{
+		return handles[index];
+	}
+
+	public int getShapeType(int index)
+	{
+		return shapeTypes[index];
+	}
+
+	/**
+	 * @param handle
+	 * @return the instance of the entity with the given handle, or -1 if it is
+	 *         not in the snapshot. Linear time.
+	 */
+	public int findInstance(long handle)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (handles[i] == handle)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
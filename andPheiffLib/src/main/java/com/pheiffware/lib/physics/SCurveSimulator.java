@@ -0,0 +1,501 @@
+package com.pheiffware.lib.physics;
+
+/**
+ * Simulates a jerk limited ("S-curve") movement from an initial to final
+ * position. Like AccelerationSimulator, the move starts and ends at rest, but
+ * acceleration ramps up and down at a limited rate (jerk) instead of changing
+ * instantly, which is gentler on motors and mechanisms.
+ *
+ * The move is made of 7 segments, each with constant jerk:
+ * <ol>
+ * <li>Acceleration ramps up to its peak</li>
+ * <li>Constant acceleration</li>
+ * <li>Acceleration ramps down to 0, reaching peak velocity</li>
+ * <li>Coasting at peak velocity</li>
+ * <li>Deceleration ramps up</li>
+ * <li>Constant deceleration</li>
+ * <li>Deceleration ramps down to 0, arriving at rest</li>
+ * </ol>
+ * For short moves, maximum acceleration and/or maximum velocity are never
+ * attained and the corresponding segments have 0 length. Deceleration mirrors
+ * acceleration.
+ *
+ * This allows for infinite jerk (giving the same motion as
+ * AccelerationSimulator) and infinite acceleration.
+ *
+ * If moving in the negative direction, all distance quantities such as
+ * totalDistance will still be reported as positive.
+ */
+public class SCurveSimulator
+{
+	public static final int NUM_SEGMENTS = 7;
+
+	private final double startPosition;
+	private final double endPosition;
+	private final double maxVelocity;
+	private final double maxAcceleration;
+	private final double maxJerk;
+
+	// The total distance traveled by the motor
+	private final double totalDistance;
+
+	// Is the motor moving positive or negative?
+	private final double direction;
+
+	// The velocity and acceleration actually reached
+	private final double peakVelocity;
+	private final double peakAcceleration;
+
+	// Duration of each segment and the time each starts (with an extra entry
+	// for the end of the move)
+	private final double[] segmentDuration = new double[NUM_SEGMENTS];
+	private final double[] segmentStartTime = new double[NUM_SEGMENTS + 1];
+
+	// State at the start of each segment, as distance along the move and
+	// unsigned velocity and acceleration (with an extra entry for the end of
+	// the move)
+	private final double[] segmentStartDistance = new double[NUM_SEGMENTS + 1];
+	private final double[] segmentStartVelocity = new double[NUM_SEGMENTS];
+	private final double[] segmentStartAcceleration = new double[NUM_SEGMENTS];
+	private final double[] segmentJerk = new double[NUM_SEGMENTS];
+
+	/**
+	 * Limitations: maxVelocity, maxAcceleration, maxJerk must all be > 0.
+	 *
+	 * @param startPosition
+	 * @param endPosition
+	 * @param maxVelocity
+	 * @param maxAcceleration
+	 *            Can properly handle maxAcceleration = +inf
+	 * @param maxJerk
+	 *            Can properly handle maxJerk = +inf
+	 */
+	public SCurveSimulator(double startPosition, double endPosition,
+			double maxVelocity, double maxAcceleration, double maxJerk)
+	{
+		this.startPosition = startPosition;
+		this.endPosition = endPosition;
+		this.maxVelocity = maxVelocity;
+		this.maxAcceleration = maxAcceleration;
+		this.maxJerk = maxJerk;
+		totalDistance = Math.abs(endPosition - startPosition);
+		direction = Math.signum(endPosition - startPosition);
+
+		double velocity = maxVelocity;
+		if (calcRampDistance(velocity) * 2.0 > totalDistance)
+		{
+			/**
+			 * Special case, motor cannot reach top speed before it has to start
+			 * decelerating. Try the peak velocity which just reaches maximum
+			 * acceleration: v^2 / a + v * a / j = totalDistance.
+			 */
+			if (maxAcceleration != Double.POSITIVE_INFINITY)
+			{
+				double jerkTime = calcJerkTime(maxAcceleration);
+				velocity = maxAcceleration
+						/ 2.0
+						* (Math.sqrt(jerkTime * jerkTime + 4.0 * totalDistance
+								/ maxAcceleration) - jerkTime);
+			}
+			if (maxAcceleration == Double.POSITIVE_INFINITY
+					|| !reachesMaxAcceleration(velocity))
+			{
+				// Maximum acceleration is not reached either: j * t^3 =
+				// totalDistance / 2 for each ramp
+				double rampTime = Math.cbrt(totalDistance / (2.0 * maxJerk));
+				velocity = maxJerk * rampTime * rampTime;
+			}
+		}
+		peakVelocity = totalDistance == 0.0 ? 0.0 : velocity;
+
+		// Duration of each of the jerk ramps and of constant acceleration
+		double jerkTime;
+		double constantAccelerationTime;
+		if (reachesMaxAcceleration(peakVelocity))
+		{
+			jerkTime = calcJerkTime(maxAcceleration);
+			constantAccelerationTime = maxAcceleration == Double.POSITIVE_INFINITY ? 0.0
+					: peakVelocity / maxAcceleration - jerkTime;
+		}
+		else
+		{
+			jerkTime = Math.sqrt(peakVelocity / maxJerk);
+			constantAccelerationTime = 0.0;
+		}
+		if (jerkTime > 0.0)
+		{
+			peakAcceleration = maxJerk * jerkTime;
+		}
+		else
+		{
+			peakAcceleration = constantAccelerationTime > 0.0 ? maxAcceleration
+					: 0.0;
+		}
+		double cruiseTime = peakVelocity == 0.0 ? 0.0
+				: (totalDistance - 2.0 * calcRampDistance(peakVelocity))
+						/ peakVelocity;
+		cruiseTime = Math.max(0.0, cruiseTime);
+
+		segmentDuration[0] = jerkTime;
+		segmentDuration[1] = constantAccelerationTime;
+		segmentDuration[2] = jerkTime;
+		segmentDuration[3] = cruiseTime;
+		segmentDuration[4] = jerkTime;
+		segmentDuration[5] = constantAccelerationTime;
+		segmentDuration[6] = jerkTime;
+
+		// Acceleration at the start and end of each segment
+		double[] startAcceleration = { 0, peakAcceleration, peakAcceleration,
+				0, 0, -peakAcceleration, -peakAcceleration };
+		double[] endAcceleration = { peakAcceleration, peakAcceleration, 0, 0,
+				-peakAcceleration, -peakAcceleration, 0 };
+		double time = 0;
+		double distance = 0;
+		velocity = 0;
+		for (int segment = 0; segment < NUM_SEGMENTS; segment++)
+		{
+			double duration = segmentDuration[segment];
+			double acceleration = startAcceleration[segment];
+			double jerk = duration > 0.0 ? (endAcceleration[segment] - acceleration)
+					/ duration
+					: 0.0;
+			if (segment == 3)
+			{
+				// Coasting starts at exactly peak velocity (even if it was
+				// reached instantly)
+				velocity = peakVelocity;
+			}
+			segmentStartTime[segment] = time;
+			segmentStartDistance[segment] = distance;
+			segmentStartVelocity[segment] = velocity;
+			segmentStartAcceleration[segment] = acceleration;
+			segmentJerk[segment] = jerk;
+			time += duration;
+			distance += calcDistance(velocity, acceleration, jerk, duration);
+			velocity += calcVelocityChange(acceleration, jerk, duration);
+		}
+		segmentStartTime[NUM_SEGMENTS] = time;
+		segmentStartDistance[NUM_SEGMENTS] = totalDistance;
+	}
+
+	/**
+	 * @param acceleration
+	 * @return Time to ramp acceleration from 0 to the given value
+	 */
+	private double calcJerkTime(double acceleration)
+	{
+		return maxJerk == Double.POSITIVE_INFINITY ? 0.0 : acceleration
+				/ maxJerk;
+	}
+
+	/**
+	 * @param velocity
+	 * @return Does accelerating to the given velocity reach maximum
+	 *         acceleration?
+	 */
+	private boolean reachesMaxAcceleration(double velocity)
+	{
+		if (maxAcceleration == Double.POSITIVE_INFINITY)
+		{
+			return maxJerk == Double.POSITIVE_INFINITY;
+		}
+		return maxJerk == Double.POSITIVE_INFINITY
+				|| velocity * maxJerk >= maxAcceleration * maxAcceleration;
+	}
+
+	/**
+	 * @param velocity
+	 * @return Distance traveled while accelerating from rest to the given
+	 *         velocity (or decelerating back)
+	 */
+	private double calcRampDistance(double velocity)
+	{
+		double rampTime;
+		if (reachesMaxAcceleration(velocity))
+		{
+			rampTime = calcJerkTime(maxAcceleration)
+					+ (maxAcceleration == Double.POSITIVE_INFINITY ? 0.0
+							: velocity / maxAcceleration);
+		}
+		else
+		{
+			rampTime = 2.0 * Math.sqrt(velocity / maxJerk);
+		}
+		// Acceleration is symmetric, so average velocity is half the final
+		// velocity
+		return velocity * rampTime / 2.0;
+	}
+
+	private static double calcDistance(double velocity, double acceleration,
+			double jerk, double time)
+	{
+		return time * (velocity + time * (acceleration / 2.0 + time * jerk / 6.0));
+	}
+
+	private static double calcVelocityChange(double acceleration, double jerk,
+			double time)
+	{
+		return time * (acceleration + time * jerk / 2.0);
+	}
+
+	/**
+	 * @param time
+	 * @return The segment containing the given time, which must be within
+	 *         the move
+	 */
+	private int findSegment(double time)
+	{
+		int segment = 0;
+		while (segment < NUM_SEGMENTS - 1
+				&& time > segmentStartTime[segment + 1])
+		{
+			segment++;
+		}
+		return segment;
+	}
+
+	/**
+	 * Returns the current simulated position of the motor at the specified
+	 * time. It is assumed to be at startPosition at elapsedTime = 0 and
+	 * remains at endPosition once the move is finished.
+	 *
+	 * @param time
+	 *            The time to calculate the simulated position of the motor for
+	 *            (starts at startPosition at time 0).
+	 * @return The simulated position of the motor at the specified time.
+	 */
+	public double getPositionAtTime(double time)
+	{
+		if (time <= 0.0)
+		{
+			return startPosition;
+		}
+		else if (time >= segmentStartTime[NUM_SEGMENTS])
+		{
+			return endPosition;
+		}
+		int segment = findSegment(time);
+		double elapsed = time - segmentStartTime[segment];
+		return startPosition
+				+ direction
+				* (segmentStartDistance[segment] + calcDistance(
+						segmentStartVelocity[segment],
+						segmentStartAcceleration[segment],
+						segmentJerk[segment], elapsed));
+	}
+
+	/**
+	 * Returns the simulated velocity of the motor at the specified time,
+	 * signed by the direction of the move.
+	 *
+	 * @param time
+	 * @return The simulated velocity of the motor at the specified time.
+	 */
+	public double getVelocityAtTime(double time)
+	{
+		if (time <= 0.0 || time >= segmentStartTime[NUM_SEGMENTS])
+		{
+			return 0;
+		}
+		int segment = findSegment(time);
+		double elapsed = time - segmentStartTime[segment];
+		return direction
+				* (segmentStartVelocity[segment] + calcVelocityChange(
+						segmentStartAcceleration[segment],
+						segmentJerk[segment], elapsed));
+	}
+
+	/**
+	 * Returns the simulated acceleration of the motor at the specified time,
+	 * signed by the direction of the move.
+	 *
+	 * @param time
+	 * @return The simulated acceleration of the motor at the specified time.
+	 */
+	public double getAccelerationAtTime(double time)
+	{
+		if (time <= 0.0 || time >= segmentStartTime[NUM_SEGMENTS])
+		{
+			return 0;
+		}
+		int segment = findSegment(time);
+		double elapsed = time - segmentStartTime[segment];
+		return direction
+				* (segmentStartAcceleration[segment] + segmentJerk[segment]
+						* elapsed);
+	}
+
+	/**
+	 * The inverse of getPositionAtTime(): returns the time at which the motor
+	 * passes the given position. Positions before the start return 0 and
+	 * positions past the end return the total time.
+	 *
+	 * Position is a cubic in time within a segment, which is solved with
+	 * Newton's method, bracketed by the segment's ends so that it always
+	 * converges.
+	 *
+	 * @param position
+	 *            The position to find the time for
+	 * @return The time at which the motor reaches position
+	 */
+	public double getTimeAtPosition(double position)
+	{
+		double distance = (position - startPosition) * direction;
+		if (distance <= 0.0 || totalDistance == 0.0)
+		{
+			return 0;
+		}
+		else if (distance >= totalDistance)
+		{
+			return getTotalTime();
+		}
+		int segment = 0;
+		while (segment < NUM_SEGMENTS - 1
+				&& distance > segmentStartDistance[segment + 1])
+		{
+			segment++;
+		}
+		double remaining = distance - segmentStartDistance[segment];
+		double velocity = segmentStartVelocity[segment];
+		double acceleration = segmentStartAcceleration[segment];
+		double jerk = segmentJerk[segment];
+		double low = 0;
+		double high = segmentDuration[segment];
+		double elapsed = high / 2.0;
+		for (int iteration = 0; iteration < 64 && high > low; iteration++)
+		{
+			double error = calcDistance(velocity, acceleration, jerk, elapsed)
+					- remaining;
+			if (error > 0)
+			{
+				high = elapsed;
+			}
+			else if (error < 0)
+			{
+				low = elapsed;
+			}
+			else
+			{
+				break;
+			}
+			double slope = velocity
+					+ calcVelocityChange(acceleration, jerk, elapsed);
+			double next = slope > 0 ? elapsed - error / slope : low;
+			if (!(next > low && next < high))
+			{
+				// Newton step left the bracket, so bisect instead
+				next = (low + high) / 2.0;
+			}
+			if (next == elapsed)
+			{
+				break;
+			}
+			elapsed = next;
+		}
+		return segmentStartTime[segment] + elapsed;
+	}
+
+	/**
+	 * Checks if the motor will be finished moving by the specified elapsed
+	 * time
+	 */
+	public boolean isFinished(double elapsedTime)
+	{
+		return elapsedTime >= segmentStartTime[NUM_SEGMENTS];
+	}
+
+	public double getStartPosition()
+	{
+		return startPosition;
+	}
+
+	public double getEndPosition()
+	{
+		return endPosition;
+	}
+
+	public double getMaxVelocity()
+	{
+		return maxVelocity;
+	}
+
+	public double getMaxAcceleration()
+	{
+		return maxAcceleration;
+	}
+
+	public double getMaxJerk()
+	{
+		return maxJerk;
+	}
+
+	/**
+	 * @return The velocity reached while coasting, which is less than the
+	 *         maximum velocity for short moves
+	 */
+	public double getPeakVelocity()
+	{
+		return peakVelocity;
+	}
+
+	/**
+	 * @return The acceleration reached, which is less than the maximum
+	 *         acceleration for short moves
+	 */
+	public double getPeakAcceleration()
+	{
+		return peakAcceleration;
+	}
+
+	public double getTotalDistance()
+	{
+		return totalDistance;
+	}
+
+	public double getTotalTime()
+	{
+		return segmentStartTime[NUM_SEGMENTS];
+	}
+
+	public double getDirection()
+	{
+		return direction;
+	}
+
+	public double getSegmentDuration(int segment)
+	{
+		return segmentDuration[segment];
+	}
+
+	public double getSegmentStartTime(int segment)
+	{
+		return segmentStartTime[segment];
+	}
+
+	/**
+	 * @param segment
+	 * @return Unsigned velocity at the start of the segment
+	 */
+	public double getSegmentStartVelocity(int segment)
+	{
+		return segmentStartVelocity[segment];
+	}
+
+	/**
+	 * @param segment
+	 * @return Unsigned acceleration at the start of the segment
+	 */
+	public double getSegmentStartAcceleration(int segment)
+	{
+		return segmentStartAcceleration[segment];
+	}
+
+	/**
+	 * @param segment
+	 * @return Unsigned jerk throughout the segment
+	 */
+	public double getSegmentJerk(int segment)
+	{
+		return segmentJerk[segment];
+	}
+}
@@ -0,0 +1,159 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * Common bookkeeping for broad phases which work on bounding boxes.  Each entity is assigned a proxy index.  Static entities occupy proxies [0,numStaticProxies) and dynamic
+ * entities follow in the order they appear in the dynamic array.  Bounds are stored in flat arrays, indexed by proxy, to keep the inner loops free of pointer chasing.
+ */
+public abstract class BaseBroadPhase implements BroadPhase
+{
+    //Used to retrieve bounds from entities
+    private final BoundingBox boundingBox = new BoundingBox();
+
+    //Entity for each proxy
+    protected PhysicalEntity[] proxies = new PhysicalEntity[0];
+
+    //Bounds of each proxy
+    protected double[] minX = new double[0];
+    protected double[] minY = new double[0];
+    protected double[] minZ = new double[0];
+    protected double[] maxX = new double[0];
+    protected double[] maxY = new double[0];
+    protected double[] maxZ = new double[0];
+
+    protected int numProxies;
+    protected int numStaticProxies;
+
+    /**
+     * Loads the given entities into proxies and updates all bounds.
+     *
+     * @return true if the set of entities, or their order, changed since the last call.
+     */
+    protected final boolean loadProxies(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        int newNumProxies = numStaticEntities + numDynamicEntities;
+        boolean changed = newNumProxies != numProxies || numStaticEntities != numStaticProxies;
+        if (newNumProxies > proxies.length)
+        {
+            allocate(Math.max(newNumProxies, proxies.length * 2));
+        }
+        for (int i = 0; i < numStaticEntities; i++)
+        {
+            changed |= setProxy(i, staticEntities[i]);
+        }
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            changed |= setProxy(numStaticEntities + i, dynamicEntities[i]);
+        }
+        numProxies = newNumProxies;
+        numStaticProxies = numStaticEntities;
+        return changed;
+    }
+
+    @Override
+    public void reset()
+    {
+        for (int i = 0; i < numProxies; i++)
+        {
+            proxies[i] = null;
+        }
+        numProxies = 0;
+        numStaticProxies = 0;
+    }
+
+    private boolean setProxy(int proxy, PhysicalEntity entity)
+    {
+        if (proxies[proxy] == entity && entity.isSleeping())
+        {
+            //Sleeping entities don't move, so their bounds are unchanged
+            return false;
+        }
+        entity.calcBoundingBox(boundingBox);
+        minX[proxy] = boundingBox.minX;
+        minY[proxy] = boundingBox.minY;
+        minZ[proxy] = boundingBox.minZ;
+        maxX[proxy] = boundingBox.maxX;
+        maxY[proxy] = boundingBox.maxY;
+        maxZ[proxy] = boundingBox.maxZ;
+        if (proxies[proxy] != entity)
+        {
+            proxies[proxy] = entity;
+            return true;
+        }
+        return false;
+    }
+
+    protected void allocate(int capacity)
+    {
+        proxies = copyOf(proxies, capacity);
+        minX = copyOf(minX, capacity);
+        minY = copyOf(minY, capacity);
+        minZ = copyOf(minZ, capacity);
+        maxX = copyOf(maxX, capacity);
+        maxY = copyOf(maxY, capacity);
+        maxZ = copyOf(maxZ, capacity);
+    }
+
+    protected final boolean isStatic(int proxy)
+    {
+        return proxy < numStaticProxies;
+    }
+
+    /**
+     * Is the proxy a dynamic entity which is not sleeping?
+     */
+    protected final boolean isAwake(int proxy)
+    {
+        return proxy >= numStaticProxies && !proxies[proxy].isSleeping();
+    }
+
+    protected final boolean overlapping(int proxy1, int proxy2)
+    {
+        return minX[proxy1] <= maxX[proxy2] && maxX[proxy1] >= minX[proxy2]
+                && minY[proxy1] <= maxY[proxy2] && maxY[proxy1] >= minY[proxy2]
+                && minZ[proxy1] <= maxZ[proxy2] && maxZ[proxy1] >= minZ[proxy2];
+    }
+
+    /**
+     * Adds a pair to the list, ordered according to the BroadPhase contract (lower proxy index first puts statics first and preserves dynamic array order).  Pairs in which
+     * neither entity can move are dropped.
+     */
+    protected final void addPair(int proxy1, int proxy2, CollisionPairList pairs)
+    {
+        if (!isAwake(proxy1) && !isAwake(proxy2))
+        {
+            return;
+        }
+        if (proxy1 < proxy2)
+        {
+            pairs.add(proxies[proxy1], proxies[proxy2]);
+        }
+        else
+        {
+            pairs.add(proxies[proxy2], proxies[proxy1]);
+        }
+    }
+
+    protected static int[] copyOf(int[] array, int capacity)
+    {
+        int[] newArray = new int[capacity];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+        return newArray;
+    }
+
+    protected static double[] copyOf(double[] array, int capacity)
+    {
+        double[] newArray = new double[capacity];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+        return newArray;
+    }
+
+    protected static PhysicalEntity[] copyOf(PhysicalEntity[] array, int capacity)
+    {
+        PhysicalEntity[] newArray = new PhysicalEntity[capacity];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+        return newArray;
+    }
+}
@@ -0,0 +1,324 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * A bounding volume hierarchy (binary tree of bounding boxes) over items identified by index, each with its own bounds.  What an item is belongs to the owner:
+ * StaticBoundingVolumeHierarchy stores collision primitives and SpatialIndex stores whole entities.
+ * <p/>
+ * The tree is built top down, splitting at the median item along the widest axis.  After item bounds change, refit() recomputes all node bounds bottom up, without
+ * changing the tree's structure.
+ * <p/>
+ * Nodes are stored in flat arrays and each child always has a larger index than its parent.  Arrays are package visible, so owners can traverse the tree in their
+ * queries without going through method calls.
+ */
+class BoundingVolumeTree
+{
+    static final int LEAF = -1;
+
+    private final int maxLeafItems;
+
+    //Bounds of each item
+    double[] itemMinX = new double[0];
+    double[] itemMinY = new double[0];
+    double[] itemMinZ = new double[0];
+    double[] itemMaxX = new double[0];
+    double[] itemMaxY = new double[0];
+    double[] itemMaxZ = new double[0];
+
+    //Items, ordered so that each leaf covers a contiguous range
+    int[] order = new int[0];
+
+    double[] nodeMinX = new double[0];
+    double[] nodeMinY = new double[0];
+    double[] nodeMinZ = new double[0];
+    double[] nodeMaxX = new double[0];
+    double[] nodeMaxY = new double[0];
+    double[] nodeMaxZ = new double[0];
+    //Children of each node, or LEAF
+    int[] nodeLeft = new int[0];
+    int[] nodeRight = new int[0];
+    //Range, in order, covered by a leaf
+    int[] nodeStart = new int[0];
+    int[] nodeCount = new int[0];
+    int numNodes;
+
+    /**
+     * @param maxLeafItems nodes with this many items or fewer are not split
+     */
+    BoundingVolumeTree(int maxLeafItems)
+    {
+        this.maxLeafItems = maxLeafItems;
+    }
+
+    /**
+     * Makes room for the given number of items.  Existing bounds and nodes are discarded if the arrays grow.
+     */
+    void allocate(int capacity)
+    {
+        if (order.length >= capacity)
+        {
+            return;
+        }
+        itemMinX = new double[capacity];
+        itemMinY = new double[capacity];
+        itemMinZ = new double[capacity];
+        itemMaxX = new double[capacity];
+        itemMaxY = new double[capacity];
+        itemMaxZ = new double[capacity];
+        order = new int[capacity];
+
+        //A binary tree with at most 1 item per leaf has fewer than 2 * capacity nodes
+        int nodeCapacity = capacity * 2;
+        nodeMinX = new double[nodeCapacity];
+        nodeMinY = new double[nodeCapacity];
+        nodeMinZ = new double[nodeCapacity];
+        nodeMaxX = new double[nodeCapacity];
+        nodeMaxY = new double[nodeCapacity];
+        nodeMaxZ = new double[nodeCapacity];
+        nodeLeft = new int[nodeCapacity];
+        nodeRight = new int[nodeCapacity];
+        nodeStart = new int[nodeCapacity];
+        nodeCount = new int[nodeCapacity];
+        numNodes = 0;
+    }
+
+    void setItemBounds(int item, BoundingBox box)
+    {
+        itemMinX[item] = box.minX;
+        itemMinY[item] = box.minY;
+        itemMinZ[item] = box.minZ;
+        itemMaxX[item] = box.maxX;
+        itemMaxY[item] = box.maxY;
+        itemMaxZ[item] = box.maxZ;
+    }
+
+    /**
+     * Copies an item's bounds into the given box.
+     *
+     * @return box
+     */
+    BoundingBox getItemBounds(int item, BoundingBox box)
+    {
+        box.minX = itemMinX[item];
+        box.minY = itemMinY[item];
+        box.minZ = itemMinZ[item];
+        box.maxX = itemMaxX[item];
+        box.maxY = itemMaxY[item];
+        box.maxZ = itemMaxZ[item];
+        return box;
+    }
+
+    void clear()
+    {
+        numNodes = 0;
+    }
+
+    /**
+     * Builds the tree from scratch over items 0 to numItems - 1, whose bounds must already be set.
+     */
+    void build(int numItems)
+    {
+        for (int i = 0; i < numItems; i++)
+        {
+            order[i] = i;
+        }
+        numNodes = 0;
+        if (numItems > 0)
+        {
+            buildNode(0, numItems);
+        }
+    }
+
+    /**
+     * Recomputes node bounds from the current item bounds.
+     */
+    void refit()
+    {
+        //Children always have higher indices than parents
+        for (int node = numNodes - 1; node >= 0; node--)
+        {
+            if (nodeLeft[node] == LEAF)
+            {
+                calcLeafBounds(node);
+            }
+            else
+            {
+                int left = nodeLeft[node];
+                int right = nodeRight[node];
+                nodeMinX[node] = Math.min(nodeMinX[left], nodeMinX[right]);
+                nodeMinY[node] = Math.min(nodeMinY[left], nodeMinY[right]);
+                nodeMinZ[node] = Math.min(nodeMinZ[left], nodeMinZ[right]);
+                nodeMaxX[node] = Math.max(nodeMaxX[left], nodeMaxX[right]);
+                nodeMaxY[node] = Math.max(nodeMaxY[left], nodeMaxY[right]);
+                nodeMaxZ[node] = Math.max(nodeMaxZ[left], nodeMaxZ[right]);
+            }
+        }
+    }
+
+    boolean nodeOverlaps(int node, BoundingBox box)
+    {
+        return nodeMinX[node] <= box.maxX && nodeMaxX[node] >= box.minX
+                && nodeMinY[node] <= box.maxY && nodeMaxY[node] >= box.minY
+                && nodeMinZ[node] <= box.maxZ && nodeMaxZ[node] >= box.minZ;
+    }
+
+    boolean itemOverlaps(int item, BoundingBox box)
+    {
+        return itemMinX[item] <= box.maxX && itemMaxX[item] >= box.minX
+                && itemMinY[item] <= box.maxY && itemMaxY[item] >= box.minY
+                && itemMinZ[item] <= box.maxZ && itemMaxZ[item] >= box.minZ;
+    }
+
+    double calcNodeRayDistance(int node, double originX, double originY, double originZ, double inverseDirectionX, double inverseDirectionY,
+                               double inverseDirectionZ)
+    {
+        return BoundingBox.calcRayDistance(nodeMinX[node], nodeMinY[node], nodeMinZ[node], nodeMaxX[node], nodeMaxY[node], nodeMaxZ[node], originX, originY, originZ,
+                inverseDirectionX, inverseDirectionY, inverseDirectionZ);
+    }
+
+    double calcNodeDistanceSquared(int node, double x, double y, double z)
+    {
+        return BoundingBox.calcDistanceSquared(nodeMinX[node], nodeMinY[node], nodeMinZ[node], nodeMaxX[node], nodeMaxY[node], nodeMaxZ[node], x, y, z);
+    }
+
+    double calcItemDistanceSquared(int item, double x, double y, double z)
+    {
+        return BoundingBox.calcDistanceSquared(itemMinX[item], itemMinY[item], itemMinZ[item], itemMaxX[item], itemMaxY[item], itemMaxZ[item], x, y, z);
+    }
+
+    private int buildNode(int start, int end)
+    {
+        int node = numNodes++;
+        nodeStart[node] = start;
+        nodeCount[node] = end - start;
+        calcLeafBounds(node);
+        if (end - start <= maxLeafItems)
+        {
+            nodeLeft[node] = LEAF;
+            nodeRight[node] = LEAF;
+            return node;
+        }
+
+        //Split along the axis where item centers are most spread out
+        double minCenterX = Double.POSITIVE_INFINITY, minCenterY = Double.POSITIVE_INFINITY, minCenterZ = Double.POSITIVE_INFINITY;
+        double maxCenterX = Double.NEGATIVE_INFINITY, maxCenterY = Double.NEGATIVE_INFINITY, maxCenterZ = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i++)
+        {
+            int item = order[i];
+            double x = center(item, 0);
+            double y = center(item, 1);
+            double z = center(item, 2);
+            minCenterX = Math.min(minCenterX, x);
+            maxCenterX = Math.max(maxCenterX, x);
+            minCenterY = Math.min(minCenterY, y);
+            maxCenterY = Math.max(maxCenterY, y);
+            minCenterZ = Math.min(minCenterZ, z);
+            maxCenterZ = Math.max(maxCenterZ, z);
+        }
+        double extentX = maxCenterX - minCenterX;
+        double extentY = maxCenterY - minCenterY;
+        double extentZ = maxCenterZ - minCenterZ;
+        int axis;
+        if (extentX >= extentY && extentX >= extentZ)
+        {
+            axis = 0;
+        }
+        else if (extentY >= extentZ)
+        {
+            axis = 1;
+        }
+        else
+        {
+            axis = 2;
+        }
+
+        int middle = (start + end) >>> 1;
+        selectMedian(start, end - 1, middle, axis);
+        int left = buildNode(start, middle);
+        int right = buildNode(middle, end);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+    }
+
+    /**
+     * Quick select: partially orders order[left..right] so that order[k] holds the item which would be there if fully sorted by center along the axis.
+     */
+    private void selectMedian(int left, int right, int k, int axis)
+    {
+        while (right > left)
+        {
+            double pivot = center(order[(left + right) >>> 1], axis);
+            int i = left;
+            int j = right;
+            while (i <= j)
+            {
+                while (center(order[i], axis) < pivot)
+                {
+                    i++;
+                }
+                while (center(order[j], axis) > pivot)
+                {
+                    j--;
+                }
+                if (i <= j)
+                {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+            {
+                right = j;
+            }
+            else if (k >= i)
+            {
+                left = i;
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private double center(int item, int axis)
+    {
+        switch (axis)
+        {
+            case 0:
+                return (itemMinX[item] + itemMaxX[item]) * 0.5;
+            case 1:
+                return (itemMinY[item] + itemMaxY[item]) * 0.5;
+            default:
+                return (itemMinZ[item] + itemMaxZ[item]) * 0.5;
+        }
+    }
+
+    private void calcLeafBounds(int node)
+    {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        int end = nodeStart[node] + nodeCount[node];
+        for (int i = nodeStart[node]; i < end; i++)
+        {
+            int item = order[i];
+            minX = Math.min(minX, itemMinX[item]);
+            minY = Math.min(minY, itemMinY[item]);
+            minZ = Math.min(minZ, itemMinZ[item]);
+            maxX = Math.max(maxX, itemMaxX[item]);
+            maxY = Math.max(maxY, itemMaxY[item]);
+            maxZ = Math.max(maxZ, itemMaxZ[item]);
+        }
+        nodeMinX[node] = minX;
+        nodeMinY[node] = minY;
+        nodeMinZ[node] = minZ;
+        nodeMaxX[node] = maxX;
+        nodeMaxY[node] = maxY;
+        nodeMaxZ[node] = maxZ;
+    }
+}
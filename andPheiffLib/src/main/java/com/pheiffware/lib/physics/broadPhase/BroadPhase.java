@@ -0,0 +1,31 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * Quickly culls pairs of physical entities which cannot possibly be colliding.  The PhysicsSystem consults its BroadPhase every time step and only passes the surviving
+ * candidate pairs to the (expensive) narrow phase, PhysicalEntity.resolveCollision().
+ * <p/>
+ * Implementations may keep state between calls to exploit frame coherence.  They must never report a static/static pair and must never report the same pair twice in one call.
+ * Pairs in which neither entity is awake (static/sleeping or sleeping/sleeping) should not be reported, as they cannot interact.
+ */
+public interface BroadPhase
+{
+    /**
+     * Appends every candidate colliding pair to the given list.  Static entities are always reported as entity1 when paired with a dynamic entity.  For dynamic/dynamic pairs,
+     * the entity appearing first in dynamicEntities is entity1.
+     *
+     * @param staticEntities     entities with infinite mass
+     * @param numStaticEntities  number of valid entries in staticEntities
+     * @param dynamicEntities    entities with finite mass
+     * @param numDynamicEntities number of valid entries in dynamicEntities
+     * @param pairs              receives the candidate pairs
+     */
+    void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs);
+
+    /**
+     * Discards all state kept between calls, so the next call behaves exactly as it would for a newly created broad phase.  Called when entities have been moved arbitrarily,
+     * such as when a checkpoint is restored.
+     */
+    void reset();
+}
@@ -0,0 +1,45 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * Reports every static/dynamic and dynamic/dynamic pair, in the same order the PhysicsSystem has always processed them.  This is O(n^2), but is a reasonable choice for
+ * scenes with only a handful of entities.
+ */
+public class BruteForceBroadPhase implements BroadPhase
+{
+    @Override
+    public void reset()
+    {
+    }
+
+    @Override
+    public void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs)
+    {
+        for (int i = 0; i < numStaticEntities; i++)
+        {
+            PhysicalEntity staticEntity = staticEntities[i];
+            for (int j = 0; j < numDynamicEntities; j++)
+            {
+                PhysicalEntity dynamicEntity = dynamicEntities[j];
+                if (!dynamicEntity.isSleeping())
+                {
+                    pairs.add(staticEntity, dynamicEntity);
+                }
+            }
+        }
+
+        for (int i = 0; i < numDynamicEntities - 1; i++)
+        {
+            PhysicalEntity entity1 = dynamicEntities[i];
+            for (int j = i + 1; j < numDynamicEntities; j++)
+            {
+                PhysicalEntity entity2 = dynamicEntities[j];
+                if (!entity1.isSleeping() || !entity2.isSleeping())
+                {
+                    pairs.add(entity1, entity2);
+                }
+            }
+        }
+    }
+}
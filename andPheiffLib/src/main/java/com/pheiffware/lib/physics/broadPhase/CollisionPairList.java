@@ -0,0 +1,101 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * A reusable list of candidate collision pairs produced by a BroadPhase.  Storage grows as needed, but is never released, so steady state use does not allocate.
+ * <p/>
+ * For each pair, entity1 is the entity whose resolveCollision() should be called with entity2.  By convention a static entity is always entity1 when paired with a dynamic
+ * entity.
+ * <p/>
+ * A pair may optionally name a single collision primitive of entity1 (for example, one edge of a polygon), in which case only that primitive needs to be checked by the
+ * narrow phase.  Otherwise the primitive is WHOLE_ENTITY.
+ */
+public class CollisionPairList
+{
+    //Primitive value indicating the pair applies to all of entity1
+    public static final int WHOLE_ENTITY = -1;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private PhysicalEntity[] entities1;
+    private PhysicalEntity[] entities2;
+    private int[] primitives1;
+    private int size;
+
+    public CollisionPairList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CollisionPairList(int initialCapacity)
+    {
+        entities1 = new PhysicalEntity[initialCapacity];
+        entities2 = new PhysicalEntity[initialCapacity];
+        primitives1 = new int[initialCapacity];
+        size = 0;
+    }
+
+    public final void clear()
+    {
+        size = 0;
+    }
+
+    public final void add(PhysicalEntity entity1, PhysicalEntity entity2)
+    {
+        add(entity1, WHOLE_ENTITY, entity2);
+    }
+
+    /**
+     * Adds a pair between a single collision primitive of entity1 and entity2.
+     *
+     * @param entity1
+     * @param primitive1 index of the primitive of entity1 or WHOLE_ENTITY
+     * @param entity2
+     */
+    public final void add(PhysicalEntity entity1, int primitive1, PhysicalEntity entity2)
+    {
+        if (size == entities1.length)
+        {
+            grow();
+        }
+        entities1[size] = entity1;
+        primitives1[size] = primitive1;
+        entities2[size] = entity2;
+        size++;
+    }
+
+    private void grow()
+    {
+        int newCapacity = Math.max(DEFAULT_CAPACITY, entities1.length * 2);
+        PhysicalEntity[] newEntities1 = new PhysicalEntity[newCapacity];
+        PhysicalEntity[] newEntities2 = new PhysicalEntity[newCapacity];
+        System.arraycopy(entities1, 0, newEntities1, 0, size);
+        System.arraycopy(entities2, 0, newEntities2, 0, size);
+        int[] newPrimitives1 = new int[newCapacity];
+        System.arraycopy(primitives1, 0, newPrimitives1, 0, size);
+        entities1 = newEntities1;
+        entities2 = newEntities2;
+        primitives1 = newPrimitives1;
+    }
+
+    public final int size()
+    {
+        return size;
+    }
+
+    public final PhysicalEntity getEntity1(int index)
+    {
+        return entities1[index];
+    }
+
+    public final int getPrimitive1(int index)
+    {
+        return primitives1[index];
+    }
+
+    public final PhysicalEntity getEntity2(int index)
+    {
+        return entities2[index];
+    }
+}
@@ -0,0 +1,441 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * A bounding volume hierarchy over whole physical entities, static and dynamic, answering ray casts, overlap tests and nearest entity searches.  Unlike
+ * StaticBoundingVolumeHierarchy, whose leaves are collision primitives, each leaf holds entities, which are tested exactly with PhysicalEntity.calcRayDistance() and
+ * calcDistance().
+ * <p/>
+ * The tree is a BoundingVolumeTree, the same structure StaticBoundingVolumeHierarchy builds over primitives.  While the same entities are present (in the same order),
+ * update() only re-measures them and refits node bounds bottom up.  As bodies move, refitted nodes overlap more and more, so the tree is rebuilt every MAX_REFITS
+ * updates anyway.
+ * <p/>
+ * Queries don't allocate.  Not thread safe.
+ */
+public class SpatialIndex
+{
+    private static final int MAX_LEAF_ENTITIES = 2;
+    private static final int MAX_REFITS = 16;
+
+    //Used to retrieve bounds from entities and to pass them back to entity tests
+    private final BoundingBox boundingBox = new BoundingBox();
+
+    //Entities the tree was built from: static entities followed by dynamic ones
+    private PhysicalEntity[] entities = new PhysicalEntity[0];
+    private int numEntities;
+    private int numStaticEntities;
+
+    //Items are entities, indexed as above
+    private final BoundingVolumeTree tree = new BoundingVolumeTree(MAX_LEAF_ENTITIES);
+
+    //Number of times the tree has been refit since it was built
+    private int numRefits;
+
+    //Traversal stack, along with the distance to each node when it was pushed.  Median splits keep depth at O(log n), so this is far larger than ever needed.
+    private final int[] stack = new int[128];
+    private final double[] stackDistance = new double[128];
+
+    /**
+     * Empties the tree, so it will be rebuilt.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < numEntities; i++)
+        {
+            entities[i] = null;
+        }
+        numEntities = 0;
+        numStaticEntities = 0;
+        tree.clear();
+    }
+
+    /**
+     * Brings the tree up to date with the entities' current positions.  Refits if the entities are the same as last time, otherwise rebuilds.
+     *
+     * @param staticEntities     entities with infinite mass
+     * @param numStaticEntities  number of valid entries in staticEntities
+     * @param dynamicEntities    entities with finite mass
+     * @param numDynamicEntities number of valid entries in dynamicEntities
+     */
+    public void update(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        if (numRefits < MAX_REFITS && isBuiltFrom(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities))
+        {
+            refit();
+            numRefits++;
+        }
+        else
+        {
+            build(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities);
+            numRefits = 0;
+        }
+    }
+
+    private boolean isBuiltFrom(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        if (numStaticEntities != this.numStaticEntities || numStaticEntities + numDynamicEntities != numEntities)
+        {
+            return false;
+        }
+        for (int i = 0; i < numStaticEntities; i++)
+        {
+            if (staticEntities[i] != entities[i])
+            {
+                return false;
+            }
+        }
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            if (dynamicEntities[i] != entities[numStaticEntities + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void build(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        int totalEntities = numStaticEntities + numDynamicEntities;
+        allocate(totalEntities);
+        for (int i = totalEntities; i < numEntities; i++)
+        {
+            entities[i] = null;
+        }
+        System.arraycopy(staticEntities, 0, entities, 0, numStaticEntities);
+        System.arraycopy(dynamicEntities, 0, entities, numStaticEntities, numDynamicEntities);
+        this.numStaticEntities = numStaticEntities;
+        numEntities = totalEntities;
+        for (int i = 0; i < numEntities; i++)
+        {
+            measureEntity(i);
+        }
+        tree.build(numEntities);
+    }
+
+    private void refit()
+    {
+        for (int i = 0; i < numEntities; i++)
+        {
+            measureEntity(i);
+        }
+        tree.refit();
+    }
+
+    /**
+     * Finds the first entity hit by a ray.  Nodes are visited nearest first and skipped once a closer hit has been found.
+     *
+     * @param directionX  unit direction of the ray
+     * @param maxDistance hits farther along the ray are ignored
+     * @param hit         receives the entity and its distance along the ray, if any
+     * @return true if an entity was hit
+     */
+    public boolean raycast(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double maxDistance,
+                           SpatialQueryResults hit)
+    {
+        PhysicalEntity closest = null;
+        double closestDistance = maxDistance;
+        if (tree.numNodes > 0)
+        {
+            double inverseDirectionX = 1.0 / directionX;
+            double inverseDirectionY = 1.0 / directionY;
+            double inverseDirectionZ = 1.0 / directionZ;
+            int stackSize = push(0, 0, tree.calcNodeRayDistance(0, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ), closestDistance);
+            while (stackSize > 0)
+            {
+                stackSize--;
+                //A closer hit may have been found since the node was pushed
+                if (stackDistance[stackSize] > closestDistance)
+                {
+                    continue;
+                }
+                int node = stack[stackSize];
+                if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+                {
+                    int end = tree.nodeStart[node] + tree.nodeCount[node];
+                    for (int i = tree.nodeStart[node]; i < end; i++)
+                    {
+                        int entity = tree.order[i];
+                        double distance = entities[entity].calcRayDistance(originX, originY, originZ, directionX, directionY, directionZ, loadBounds(entity));
+                        if (distance <= closestDistance)
+                        {
+                            closest = entities[entity];
+                            closestDistance = distance;
+                        }
+                    }
+                }
+                else
+                {
+                    int left = tree.nodeLeft[node];
+                    int right = tree.nodeRight[node];
+                    double leftDistance = tree.calcNodeRayDistance(left, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ);
+                    double rightDistance = tree.calcNodeRayDistance(right, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ);
+                    stackSize = pushNearestLast(stackSize, left, leftDistance, right, rightDistance, closestDistance);
+                }
+            }
+        }
+        if (closest == null)
+        {
+            return false;
+        }
+        hit.add(closest, closestDistance);
+        return true;
+    }
+
+    /**
+     * Finds every entity hit by a ray, ordered by distance along it.
+     *
+     * @param directionX  unit direction of the ray
+     * @param maxDistance hits farther along the ray are ignored
+     * @param hits        receives each entity and its distance along the ray
+     */
+    public void raycastAll(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double maxDistance,
+                           SpatialQueryResults hits)
+    {
+        if (tree.numNodes == 0)
+        {
+            return;
+        }
+        double inverseDirectionX = 1.0 / directionX;
+        double inverseDirectionY = 1.0 / directionY;
+        double inverseDirectionZ = 1.0 / directionZ;
+        int stackSize = push(0, 0, tree.calcNodeRayDistance(0, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ), maxDistance);
+        while (stackSize > 0)
+        {
+            int node = stack[--stackSize];
+            if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+            {
+                int end = tree.nodeStart[node] + tree.nodeCount[node];
+                for (int i = tree.nodeStart[node]; i < end; i++)
+                {
+                    int entity = tree.order[i];
+                    double distance = entities[entity].calcRayDistance(originX, originY, originZ, directionX, directionY, directionZ, loadBounds(entity));
+                    if (distance <= maxDistance)
+                    {
+                        hits.add(entities[entity], distance);
+                    }
+                }
+            }
+            else
+            {
+                int left = tree.nodeLeft[node];
+                int right = tree.nodeRight[node];
+                stackSize = push(stackSize, left, tree.calcNodeRayDistance(left, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ),
+                        maxDistance);
+                stackSize = push(stackSize, right, tree.calcNodeRayDistance(right, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ),
+                        maxDistance);
+            }
+        }
+        hits.sortByDistance();
+    }
+
+    /**
+     * Finds every entity within a sphere, in no particular order.
+     *
+     * @param results receives each entity and the distance from the center to it (0 if the center is inside)
+     */
+    public void overlapSphere(double centerX, double centerY, double centerZ, double radius, SpatialQueryResults results)
+    {
+        if (tree.numNodes == 0)
+        {
+            return;
+        }
+        double radiusSquared = radius * radius;
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0)
+        {
+            int node = stack[--stackSize];
+            if (tree.calcNodeDistanceSquared(node, centerX, centerY, centerZ) > radiusSquared)
+            {
+                continue;
+            }
+            if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+            {
+                int end = tree.nodeStart[node] + tree.nodeCount[node];
+                for (int i = tree.nodeStart[node]; i < end; i++)
+                {
+                    int entity = tree.order[i];
+                    if (tree.calcItemDistanceSquared(entity, centerX, centerY, centerZ) > radiusSquared)
+                    {
+                        continue;
+                    }
+                    double distance = entities[entity].calcDistance(centerX, centerY, centerZ, loadBounds(entity));
+                    if (distance <= radius)
+                    {
+                        results.add(entities[entity], distance);
+                    }
+                }
+            }
+            else
+            {
+                stack[stackSize++] = tree.nodeRight[node];
+                stack[stackSize++] = tree.nodeLeft[node];
+            }
+        }
+    }
+
+    /**
+     * Finds every entity whose bounding box overlaps the given box, in no particular order.  Reported distances are 0.
+     */
+    public void overlapBox(BoundingBox box, SpatialQueryResults results)
+    {
+        if (tree.numNodes == 0)
+        {
+            return;
+        }
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0)
+        {
+            int node = stack[--stackSize];
+            if (!tree.nodeOverlaps(node, box))
+            {
+                continue;
+            }
+            if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+            {
+                int end = tree.nodeStart[node] + tree.nodeCount[node];
+                for (int i = tree.nodeStart[node]; i < end; i++)
+                {
+                    int entity = tree.order[i];
+                    if (tree.itemOverlaps(entity, box))
+                    {
+                        results.add(entities[entity], 0);
+                    }
+                }
+            }
+            else
+            {
+                stack[stackSize++] = tree.nodeRight[node];
+                stack[stackSize++] = tree.nodeLeft[node];
+            }
+        }
+    }
+
+    /**
+     * Finds the entities nearest a point, ordered by distance.  Nodes are visited nearest first and skipped once k entities closer than them have been found.
+     *
+     * @param k           maximum number of entities to find (> 0)
+     * @param maxDistance entities farther away are ignored
+     * @param results     receives each entity and the distance to it (0 if the point is inside)
+     */
+    public void findNearest(double x, double y, double z, int k, double maxDistance, SpatialQueryResults results)
+    {
+        if (tree.numNodes == 0)
+        {
+            return;
+        }
+        double limit = maxDistance;
+        int stackSize = push(0, 0, Math.sqrt(tree.calcNodeDistanceSquared(0, x, y, z)), limit);
+        while (stackSize > 0)
+        {
+            stackSize--;
+            if (stackDistance[stackSize] > limit)
+            {
+                continue;
+            }
+            int node = stack[stackSize];
+            if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+            {
+                int end = tree.nodeStart[node] + tree.nodeCount[node];
+                for (int i = tree.nodeStart[node]; i < end; i++)
+                {
+                    int entity = tree.order[i];
+                    double distance = entities[entity].calcDistance(x, y, z, loadBounds(entity));
+                    if (distance <= limit)
+                    {
+                        results.insertSorted(entities[entity], distance, k);
+                        if (results.size() == k)
+                        {
+                            limit = Math.min(limit, results.getDistance(k - 1));
+                        }
+                    }
+                }
+            }
+            else
+            {
+                int left = tree.nodeLeft[node];
+                int right = tree.nodeRight[node];
+                double leftDistance = Math.sqrt(tree.calcNodeDistanceSquared(left, x, y, z));
+                double rightDistance = Math.sqrt(tree.calcNodeDistanceSquared(right, x, y, z));
+                stackSize = pushNearestLast(stackSize, left, leftDistance, right, rightDistance, limit);
+            }
+        }
+    }
+
+    public int getNumEntities()
+    {
+        return numEntities;
+    }
+
+    public int getNumNodes()
+    {
+        return tree.numNodes;
+    }
+
+    /**
+     * Pushes a node, with its distance, unless the distance is beyond the limit (or NaN, for a missed ray).
+     *
+     * @return new stack size
+     */
+    private int push(int stackSize, int node, double distance, double limit)
+    {
+        if (distance <= limit)
+        {
+            stack[stackSize] = node;
+            stackDistance[stackSize] = distance;
+            stackSize++;
+        }
+        return stackSize;
+    }
+
+    /**
+     * Pushes both children, so that the nearer one is popped first.
+     *
+     * @return new stack size
+     */
+    private int pushNearestLast(int stackSize, int left, double leftDistance, int right, double rightDistance, double limit)
+    {
+        if (rightDistance < leftDistance)
+        {
+            stackSize = push(stackSize, left, leftDistance, limit);
+            return push(stackSize, right, rightDistance, limit);
+        }
+        else
+        {
+            stackSize = push(stackSize, right, rightDistance, limit);
+            return push(stackSize, left, leftDistance, limit);
+        }
+    }
+
+    /**
+     * Copies an entity's recorded bounds into the shared bounding box, for passing to its exact tests.
+     */
+    private BoundingBox loadBounds(int entity)
+    {
+        return tree.getItemBounds(entity, boundingBox);
+    }
+
+    private void measureEntity(int entity)
+    {
+        entities[entity].calcBoundingBox(boundingBox);
+        tree.setItemBounds(entity, boundingBox);
+    }
+
+    private void allocate(int capacity)
+    {
+        if (entities.length >= capacity)
+        {
+            return;
+        }
+        //Leave room to grow, so adding a few entities doesn't reallocate every rebuild
+        capacity = Math.max(capacity, entities.length * 2);
+        PhysicalEntity[] newEntities = new PhysicalEntity[capacity];
+        System.arraycopy(entities, 0, newEntities, 0, numEntities);
+        entities = newEntities;
+        tree.allocate(capacity);
+    }
+}
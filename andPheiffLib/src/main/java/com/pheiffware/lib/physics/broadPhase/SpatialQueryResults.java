@@ -0,0 +1,124 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * A reusable list of entities found by a spatial query, each with a distance from the query (along the ray, or from the point).  Storage grows as needed, but is never
+ * released, so steady state use does not allocate.
+ */
+public class SpatialQueryResults
+{
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private PhysicalEntity[] entities;
+    private double[] distances;
+    private int size;
+
+    public SpatialQueryResults()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SpatialQueryResults(int initialCapacity)
+    {
+        entities = new PhysicalEntity[initialCapacity];
+        distances = new double[initialCapacity];
+        size = 0;
+    }
+
+    public final void clear()
+    {
+        size = 0;
+    }
+
+    public final void add(PhysicalEntity entity, double distance)
+    {
+        if (size == entities.length)
+        {
+            grow();
+        }
+        entities[size] = entity;
+        distances[size] = distance;
+        size++;
+    }
+
+    /**
+     * Inserts a result, keeping results ordered by distance and dropping the farthest if there would be more than maxSize.
+     *
+     * @param entity
+     * @param distance
+     * @param maxSize  maximum number of results to keep (> 0)
+     */
+    public final void insertSorted(PhysicalEntity entity, double distance, int maxSize)
+    {
+        if (size == maxSize)
+        {
+            if (distance >= distances[size - 1])
+            {
+                return;
+            }
+            size--;
+        }
+        if (size == entities.length)
+        {
+            grow();
+        }
+        int index = size;
+        while (index > 0 && distances[index - 1] > distance)
+        {
+            entities[index] = entities[index - 1];
+            distances[index] = distances[index - 1];
+            index--;
+        }
+        entities[index] = entity;
+        distances[index] = distance;
+        size++;
+    }
+
+    /**
+     * Orders results by increasing distance.  Insertion sort: query results are usually few.
+     */
+    public final void sortByDistance()
+    {
+        for (int i = 1; i < size; i++)
+        {
+            PhysicalEntity entity = entities[i];
+            double distance = distances[i];
+            int index = i;
+            while (index > 0 && distances[index - 1] > distance)
+            {
+                entities[index] = entities[index - 1];
+                distances[index] = distances[index - 1];
+                index--;
+            }
+            entities[index] = entity;
+            distances[index] = distance;
+        }
+    }
+
+    private void grow()
+    {
+        int newCapacity = Math.max(DEFAULT_CAPACITY, entities.length * 2);
+        PhysicalEntity[] newEntities = new PhysicalEntity[newCapacity];
+        System.arraycopy(entities, 0, newEntities, 0, size);
+        double[] newDistances = new double[newCapacity];
+        System.arraycopy(distances, 0, newDistances, 0, size);
+        entities = newEntities;
+        distances = newDistances;
+    }
+
+    public final int size()
+    {
+        return size;
+    }
+
+    public final PhysicalEntity getEntity(int index)
+    {
+        return entities[index];
+    }
+
+    public final double getDistance(int index)
+    {
+        return distances[index];
+    }
+}
@@ -0,0 +1,200 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * A bounding volume hierarchy (binary tree of bounding boxes) over the collision primitives of static entities.  Leaves hold individual primitives, such as the edges of a
+ * polygon, so a query descends all the way to the line segments actually near the queried bounds.
+ * <p/>
+ * The tree itself is a BoundingVolumeTree, built once.  Static entities which are not immovable (kinematic) have their primitives re-measured every time refit() is
+ * called and all node bounds are then recomputed bottom up, without changing the tree's structure.
+ */
+public class StaticBoundingVolumeHierarchy
+{
+    private static final int MAX_LEAF_PRIMITIVES = 2;
+
+    //Used to retrieve bounds from entities
+    private final BoundingBox boundingBox = new BoundingBox();
+
+    //Entities the tree was built from
+    private PhysicalEntity[] entities = new PhysicalEntity[0];
+    private int numEntities;
+
+    //Each primitive is a (entity, primitive index) pair.  Its bounds are items in the tree.
+    private PhysicalEntity[] primitiveEntities = new PhysicalEntity[0];
+    private int[] primitiveIndices = new int[0];
+    private int numPrimitives;
+
+    //Primitives which must be re-measured on refit
+    private int[] kinematicPrimitives = new int[0];
+    private int numKinematicPrimitives;
+
+    private final BoundingVolumeTree tree = new BoundingVolumeTree(MAX_LEAF_PRIMITIVES);
+
+    //Traversal stack. Median splits keep depth at O(log n), so this is far larger than ever needed.
+    private final int[] stack = new int[128];
+
+    /**
+     * Empties the tree, so it will be rebuilt.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < numEntities; i++)
+        {
+            entities[i] = null;
+        }
+        numEntities = 0;
+        numPrimitives = 0;
+        numKinematicPrimitives = 0;
+        tree.clear();
+    }
+
+    /**
+     * Does this tree still describe the given entities (in the same order)?
+     */
+    public boolean isBuiltFrom(PhysicalEntity[] entities, int numEntities)
+    {
+        if (numEntities != this.numEntities)
+        {
+            return false;
+        }
+        for (int i = 0; i < numEntities; i++)
+        {
+            if (entities[i] != this.entities[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the tree from scratch.
+     *
+     * @param entities    static entities
+     * @param numEntities number of valid entries in entities
+     */
+    public void build(PhysicalEntity[] entities, int numEntities)
+    {
+        if (this.entities.length < numEntities)
+        {
+            this.entities = new PhysicalEntity[numEntities];
+        }
+        System.arraycopy(entities, 0, this.entities, 0, numEntities);
+        this.numEntities = numEntities;
+
+        int totalPrimitives = 0;
+        for (int i = 0; i < numEntities; i++)
+        {
+            totalPrimitives += entities[i].getNumCollisionPrimitives();
+        }
+        allocatePrimitives(totalPrimitives);
+
+        numPrimitives = 0;
+        numKinematicPrimitives = 0;
+        for (int i = 0; i < numEntities; i++)
+        {
+            PhysicalEntity entity = entities[i];
+            int numEntityPrimitives = entity.getNumCollisionPrimitives();
+            for (int primitiveIndex = 0; primitiveIndex < numEntityPrimitives; primitiveIndex++)
+            {
+                primitiveEntities[numPrimitives] = entity;
+                primitiveIndices[numPrimitives] = primitiveIndex;
+                measurePrimitive(numPrimitives);
+                if (!entity.isImmovable())
+                {
+                    kinematicPrimitives[numKinematicPrimitives++] = numPrimitives;
+                }
+                numPrimitives++;
+            }
+        }
+        tree.build(numPrimitives);
+    }
+
+    /**
+     * Re-measures primitives of kinematic entities and updates node bounds to match.  Does nothing if all static entities are immovable.
+     */
+    public void refit()
+    {
+        if (numKinematicPrimitives == 0)
+        {
+            return;
+        }
+        for (int i = 0; i < numKinematicPrimitives; i++)
+        {
+            measurePrimitive(kinematicPrimitives[i]);
+        }
+        tree.refit();
+    }
+
+    /**
+     * Finds all primitives whose bounds overlap the given box and adds a (static entity, primitive, dynamicEntity) pair for each.
+     *
+     * @param box           bounds of dynamicEntity
+     * @param dynamicEntity the entity being queried for
+     * @param pairs         receives the results
+     */
+    public void query(BoundingBox box, PhysicalEntity dynamicEntity, CollisionPairList pairs)
+    {
+        if (tree.numNodes == 0)
+        {
+            return;
+        }
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0)
+        {
+            int node = stack[--stackSize];
+            if (!tree.nodeOverlaps(node, box))
+            {
+                continue;
+            }
+            if (tree.nodeLeft[node] == BoundingVolumeTree.LEAF)
+            {
+                int end = tree.nodeStart[node] + tree.nodeCount[node];
+                for (int i = tree.nodeStart[node]; i < end; i++)
+                {
+                    int primitive = tree.order[i];
+                    if (tree.itemOverlaps(primitive, box))
+                    {
+                        pairs.add(primitiveEntities[primitive], primitiveIndices[primitive], dynamicEntity);
+                    }
+                }
+            }
+            else
+            {
+                stack[stackSize++] = tree.nodeRight[node];
+                stack[stackSize++] = tree.nodeLeft[node];
+            }
+        }
+    }
+
+    public int getNumPrimitives()
+    {
+        return numPrimitives;
+    }
+
+    public int getNumNodes()
+    {
+        return tree.numNodes;
+    }
+
+    private void measurePrimitive(int primitive)
+    {
+        primitiveEntities[primitive].calcPrimitiveBoundingBox(primitiveIndices[primitive], boundingBox);
+        tree.setItemBounds(primitive, boundingBox);
+    }
+
+    private void allocatePrimitives(int capacity)
+    {
+        if (primitiveEntities.length >= capacity)
+        {
+            return;
+        }
+        primitiveEntities = new PhysicalEntity[capacity];
+        primitiveIndices = new int[capacity];
+        kinematicPrimitives = new int[capacity];
+        tree.allocate(capacity);
+    }
+}
@@ -0,0 +1,73 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * Finds static/dynamic pairs by querying each dynamic entity's bounds against a StaticBoundingVolumeHierarchy, down to the individual line segments of static geometry.
+ * Dynamic/dynamic pairs are delegated to another broad phase.
+ * <p/>
+ * The hierarchy is rebuilt only when the set of static entities changes and is otherwise just refit for kinematic static entities.  This is intended for levels with large
+ * amounts of static wall geometry.
+ */
+public class StaticHierarchyBroadPhase implements BroadPhase
+{
+    //Used to retrieve bounds from dynamic entities
+    private final BoundingBox boundingBox = new BoundingBox();
+
+    private final StaticBoundingVolumeHierarchy staticHierarchy = new StaticBoundingVolumeHierarchy();
+
+    //Handles dynamic/dynamic pairs
+    private final BroadPhase dynamicBroadPhase;
+
+    public StaticHierarchyBroadPhase()
+    {
+        this(new SweepAndPruneBroadPhase());
+    }
+
+    /**
+     * @param dynamicBroadPhase used to find dynamic/dynamic pairs
+     */
+    public StaticHierarchyBroadPhase(BroadPhase dynamicBroadPhase)
+    {
+        this.dynamicBroadPhase = dynamicBroadPhase;
+    }
+
+    @Override
+    public void reset()
+    {
+        staticHierarchy.clear();
+        dynamicBroadPhase.reset();
+    }
+
+    @Override
+    public void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs)
+    {
+        if (staticHierarchy.isBuiltFrom(staticEntities, numStaticEntities))
+        {
+            staticHierarchy.refit();
+        }
+        else
+        {
+            staticHierarchy.build(staticEntities, numStaticEntities);
+        }
+
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            PhysicalEntity dynamicEntity = dynamicEntities[i];
+            if (dynamicEntity.isSleeping())
+            {
+                continue;
+            }
+            dynamicEntity.calcBoundingBox(boundingBox);
+            staticHierarchy.query(boundingBox, dynamicEntity, pairs);
+        }
+
+        dynamicBroadPhase.findPairs(staticEntities, 0, dynamicEntities, numDynamicEntities, pairs);
+    }
+
+    public StaticBoundingVolumeHierarchy getStaticHierarchy()
+    {
+        return staticHierarchy;
+    }
+}
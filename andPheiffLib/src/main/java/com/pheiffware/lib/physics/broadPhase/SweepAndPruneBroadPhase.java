@@ -0,0 +1,118 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * Incremental sweep and prune along the x-axis.  Proxies are kept in a persistent order sorted by their minimum x bound.  Since entities move only a little each time step,
+ * the order from the last step is nearly sorted and an insertion sort restores it in close to linear time.  A single sweep over the sorted order then finds all pairs whose x
+ * intervals overlap and the remaining axes are checked directly.
+ * <p/>
+ * Adding or removing entities updates the order incrementally: proxies beyond the new count are dropped, new proxies are appended, and the insertion sort moves each to its
+ * place.  Changing the number of static entities shifts every dynamic proxy index by the same amount, so existing dynamic proxies are renumbered where they stand.
+ */
+public class SweepAndPruneBroadPhase extends BaseBroadPhase
+{
+    //Proxy indices sorted by minX
+    private int[] order = new int[0];
+
+    @Override
+    public void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs)
+    {
+        int oldNumProxies = numProxies;
+        int oldNumStaticProxies = numStaticProxies;
+        loadProxies(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities);
+        if (numProxies != oldNumProxies || numStaticProxies != oldNumStaticProxies)
+        {
+            updateOrder(oldNumProxies, oldNumStaticProxies);
+        }
+        sortOrder();
+        sweep(pairs);
+    }
+
+    @Override
+    protected void allocate(int capacity)
+    {
+        super.allocate(capacity);
+        order = copyOf(order, capacity);
+    }
+
+    /**
+     * Renumbers dynamic proxies by the change in the number of static proxies, drops proxies which no longer exist from the order and appends new ones.  Proxies whose entity
+     * was replaced (by swap-remove) keep their place until the sort.
+     */
+    private void updateOrder(int oldNumProxies, int oldNumStaticProxies)
+    {
+        int staticShift = numStaticProxies - oldNumStaticProxies;
+        int size = 0;
+        for (int i = 0; i < oldNumProxies; i++)
+        {
+            int proxy = order[i];
+            if (proxy >= oldNumStaticProxies)
+            {
+                proxy += staticShift;
+                if (proxy < numProxies)
+                {
+                    order[size++] = proxy;
+                }
+            }
+            else if (proxy < numStaticProxies)
+            {
+                order[size++] = proxy;
+            }
+        }
+        for (int proxy = oldNumStaticProxies; proxy < numStaticProxies; proxy++)
+        {
+            order[size++] = proxy;
+        }
+        for (int proxy = oldNumProxies + staticShift; proxy < numProxies; proxy++)
+        {
+            order[size++] = proxy;
+        }
+    }
+
+    /**
+     * Insertion sort of order by minX.  Fast when the order is already nearly sorted (frame coherence).
+     */
+    private void sortOrder()
+    {
+        for (int i = 1; i < numProxies; i++)
+        {
+            int proxy = order[i];
+            double key = minX[proxy];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > key)
+            {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = proxy;
+        }
+    }
+
+    private void sweep(CollisionPairList pairs)
+    {
+        for (int i = 0; i < numProxies; i++)
+        {
+            int proxy1 = order[i];
+            double proxy1MaxX = maxX[proxy1];
+            boolean proxy1Static = isStatic(proxy1);
+            for (int j = i + 1; j < numProxies; j++)
+            {
+                int proxy2 = order[j];
+                if (minX[proxy2] > proxy1MaxX)
+                {
+                    break;
+                }
+                if (proxy1Static && isStatic(proxy2))
+                {
+                    continue;
+                }
+                if (minY[proxy1] <= maxY[proxy2] && maxY[proxy1] >= minY[proxy2]
+                        && minZ[proxy1] <= maxZ[proxy2] && maxZ[proxy1] >= minZ[proxy2])
+                {
+                    addPair(proxy1, proxy2, pairs);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.pheiffware.lib.physics.broadPhase;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+import java.util.Arrays;
+
+/**
+ * Spatial hash over a uniform grid of cubic cells.  Each step, every proxy is inserted into the cells its bounding box overlaps, after first checking for overlaps against
+ * proxies already in those cells.  Cells are stored in a hash table of linked lists held in primitive arrays, so the grid is unbounded and steady state use does not allocate.
+ * <p/>
+ * A pair sharing multiple cells is only reported from the cell containing the minimum corner of the intersection of their bounds, so no pair is reported twice.
+ * <p/>
+ * Proxies spanning more than maxCellsPerProxy cells (typically long walls) are not inserted and are instead checked against every other proxy.  Cell size should be on the order
+ * of the size of a typical dynamic entity.
+ */
+public class UniformGridBroadPhase extends BaseBroadPhase
+{
+    private static final int DEFAULT_MAX_CELLS_PER_PROXY = 64;
+    private static final int EMPTY = -1;
+
+    private final double inverseCellSize;
+    private final int maxCellsPerProxy;
+
+    //Head node of each hash bucket
+    private int[] bucketHeads = new int[0];
+    private int bucketMask;
+
+    //Linked list nodes.  Each node records a proxy in a specific cell.
+    private int[] nodeProxy = new int[0];
+    private int[] nodeNext = new int[0];
+    private int[] nodeCellX = new int[0];
+    private int[] nodeCellY = new int[0];
+    private int[] nodeCellZ = new int[0];
+    private int numNodes;
+
+    //Proxies too large to insert into the grid
+    private int[] oversizedProxies = new int[0];
+    private int numOversizedProxies;
+
+    public UniformGridBroadPhase(double cellSize)
+    {
+        this(cellSize, DEFAULT_MAX_CELLS_PER_PROXY);
+    }
+
+    /**
+     * @param cellSize         width of a cell along each axis
+     * @param maxCellsPerProxy any proxy overlapping more cells than this is checked by brute force instead
+     */
+    public UniformGridBroadPhase(double cellSize, int maxCellsPerProxy)
+    {
+        this.inverseCellSize = 1.0 / cellSize;
+        this.maxCellsPerProxy = maxCellsPerProxy;
+    }
+
+    @Override
+    public void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs)
+    {
+        loadProxies(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities);
+        clearGrid();
+        for (int proxy = 0; proxy < numProxies; proxy++)
+        {
+            insertProxy(proxy, pairs);
+        }
+        checkOversizedProxies(pairs);
+    }
+
+    @Override
+    protected void allocate(int capacity)
+    {
+        super.allocate(capacity);
+        oversizedProxies = copyOf(oversizedProxies, capacity);
+    }
+
+    private void clearGrid()
+    {
+        int numBuckets = 64;
+        while (numBuckets < numProxies * 4)
+        {
+            numBuckets <<= 1;
+        }
+        if (numBuckets > bucketHeads.length)
+        {
+            bucketHeads = new int[numBuckets];
+        }
+        bucketMask = bucketHeads.length - 1;
+        Arrays.fill(bucketHeads, EMPTY);
+        numNodes = 0;
+        numOversizedProxies = 0;
+    }
+
+    private void insertProxy(int proxy, CollisionPairList pairs)
+    {
+        int startX = cell(minX[proxy]);
+        int startY = cell(minY[proxy]);
+        int startZ = cell(minZ[proxy]);
+        int endX = cell(maxX[proxy]);
+        int endY = cell(maxY[proxy]);
+        int endZ = cell(maxZ[proxy]);
+        long numCells = ((long) endX - startX + 1) * ((long) endY - startY + 1) * ((long) endZ - startZ + 1);
+        //Saturated cell indices can't be iterated over (or counted) reliably
+        if (numCells > maxCellsPerProxy || isSaturated(startX) || isSaturated(startY) || isSaturated(startZ) || isSaturated(endX) || isSaturated(endY)
+                || isSaturated(endZ))
+        {
+            oversizedProxies[numOversizedProxies++] = proxy;
+            return;
+        }
+        boolean proxyStatic = isStatic(proxy);
+        for (int cellX = startX; cellX <= endX; cellX++)
+        {
+            for (int cellY = startY; cellY <= endY; cellY++)
+            {
+                for (int cellZ = startZ; cellZ <= endZ; cellZ++)
+                {
+                    int bucket = hash(cellX, cellY, cellZ);
+                    for (int node = bucketHeads[bucket]; node != EMPTY; node = nodeNext[node])
+                    {
+                        if (nodeCellX[node] != cellX || nodeCellY[node] != cellY || nodeCellZ[node] != cellZ)
+                        {
+                            continue;
+                        }
+                        int otherProxy = nodeProxy[node];
+                        if (proxyStatic && isStatic(otherProxy))
+                        {
+                            continue;
+                        }
+                        if (overlapping(proxy, otherProxy) && isReferenceCell(proxy, otherProxy, cellX, cellY, cellZ))
+                        {
+                            addPair(proxy, otherProxy, pairs);
+                        }
+                    }
+                    addNode(proxy, bucket, cellX, cellY, cellZ);
+                }
+            }
+        }
+    }
+
+    /**
+     * Is the given cell the one containing the minimum corner of the intersection of the 2 proxies' bounds?
+     */
+    private boolean isReferenceCell(int proxy1, int proxy2, int cellX, int cellY, int cellZ)
+    {
+        return cell(Math.max(minX[proxy1], minX[proxy2])) == cellX
+                && cell(Math.max(minY[proxy1], minY[proxy2])) == cellY
+                && cell(Math.max(minZ[proxy1], minZ[proxy2])) == cellZ;
+    }
+
+    private void checkOversizedProxies(CollisionPairList pairs)
+    {
+        for (int i = 0; i < numOversizedProxies; i++)
+        {
+            int proxy = oversizedProxies[i];
+            boolean proxyStatic = isStatic(proxy);
+            for (int otherProxy = 0; otherProxy < numProxies; otherProxy++)
+            {
+                if (otherProxy == proxy || (proxyStatic && isStatic(otherProxy)))
+                {
+                    continue;
+                }
+                //Pairs of oversized proxies would be seen twice, only take it from the lower proxy
+                if (otherProxy < proxy && isOversized(otherProxy))
+                {
+                    continue;
+                }
+                if (overlapping(proxy, otherProxy))
+                {
+                    addPair(proxy, otherProxy, pairs);
+                }
+            }
+        }
+    }
+
+    private boolean isOversized(int proxy)
+    {
+        //Oversized proxies are recorded in increasing order, so this is a binary search
+        return Arrays.binarySearch(oversizedProxies, 0, numOversizedProxies, proxy) >= 0;
+    }
+
+    private void addNode(int proxy, int bucket, int cellX, int cellY, int cellZ)
+    {
+        if (numNodes == nodeProxy.length)
+        {
+            int capacity = Math.max(256, nodeProxy.length * 2);
+            nodeProxy = copyOf(nodeProxy, capacity);
+            nodeNext = copyOf(nodeNext, capacity);
+            nodeCellX = copyOf(nodeCellX, capacity);
+            nodeCellY = copyOf(nodeCellY, capacity);
+            nodeCellZ = copyOf(nodeCellZ, capacity);
+        }
+        nodeProxy[numNodes] = proxy;
+        nodeCellX[numNodes] = cellX;
+        nodeCellY[numNodes] = cellY;
+        nodeCellZ[numNodes] = cellZ;
+        nodeNext[numNodes] = bucketHeads[bucket];
+        bucketHeads[bucket] = numNodes;
+        numNodes++;
+    }
+
+    private int cell(double coordinate)
+    {
+        return (int) Math.floor(coordinate * inverseCellSize);
+    }
+
+    /**
+     * Was the cell index clamped to the range of an int by cell()?
+     */
+    private static boolean isSaturated(int cell)
+    {
+        return cell == Integer.MIN_VALUE || cell == Integer.MAX_VALUE;
+    }
+
+    private int hash(int cellX, int cellY, int cellZ)
+    {
+        return ((cellX * 73856093) ^ (cellY * 19349663) ^ (cellZ * 83492791)) & bucketMask;
+    }
+}
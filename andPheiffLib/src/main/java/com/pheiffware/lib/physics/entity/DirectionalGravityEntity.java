@@ -6,7 +6,6 @@ package com.pheiffware.lib.physics.entity;
 
 import com.pheiffware.lib.geometry.Vec3D;
 import com.pheiffware.lib.physics.PhysicsSystem;
-import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
 
 /**
  * An entity which applies gravity to other physical entities to produce a
@@ -24,15 +23,6 @@ public class DirectionalGravityEntity extends Entity
 	@Override
 	public void ai(double elapsedTime, PhysicsSystem physicsSystem)
 	{
-		PhysicalEntity[] physicalEntities = physicsSystem.getPhysicalEntities();
-		int numPhysicalEntities = physicsSystem.getNumPhysicalEntities();
-		for (int i = 0; i < numPhysicalEntities; i++)
-		{
-			PhysicalEntity physicalEntity = physicalEntities[i];
-			if (!physicalEntity.ignoresGravity())
-			{
-				physicalEntity.addForce(acceleration, physicalEntity.mass);
-			}
-		}
+		physicsSystem.applyGravity(acceleration);
 	}
 }
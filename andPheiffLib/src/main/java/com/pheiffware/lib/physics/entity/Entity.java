@@ -2,11 +2,16 @@ package com.pheiffware.lib.physics.entity;
 
 import com.pheiffware.lib.physics.PhysicsSystem;
 
+import java.nio.ByteBuffer;
+
 public abstract class Entity implements Cloneable
 {
 	// Used for debugging
 	public String name = "";
 
+	// Slot in the PhysicsSystem's handle table, or -1 if not in a system
+	private int handleSlot = -1;
+
 	public Entity()
 	{
 
@@ -23,6 +28,28 @@ public abstract class Entity implements Cloneable
 
 	}
 
+	/**
+	 * Writes the state which changes as the simulation runs, for a
+	 * PhysicsSystem checkpoint. Entities with such state must override this
+	 * and readState(), calling the super implementations first.
+	 * 
+	 * @param buffer
+	 */
+	public void writeState(ByteBuffer buffer)
+	{
+
+	}
+
+	/**
+	 * Restores state written by writeState().
+	 * 
+	 * @param buffer
+	 */
+	public void readState(ByteBuffer buffer)
+	{
+
+	}
+
 	public Entity copyForRender()
 	{
 		try
@@ -45,6 +72,16 @@ public abstract class Entity implements Cloneable
 		return name;
 	}
 
+	public final int getHandleSlot()
+	{
+		return handleSlot;
+	}
+
+	public final void setHandleSlot(int handleSlot)
+	{
+		this.handleSlot = handleSlot;
+	}
+
 	@Override
 	public String toString()
 	{
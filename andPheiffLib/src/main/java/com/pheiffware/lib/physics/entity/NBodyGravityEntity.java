@@ -0,0 +1,495 @@
+package com.pheiffware.lib.physics.entity;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.PhysicsSystem;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+/**
+ * An entity which makes every dynamic physical entity attract every other, in
+ * O(n log n) time, using the Barnes-Hut approximation.
+ *
+ * Each step, the masses are inserted into an octree (a quadtree in 2D mode).
+ * Every node records its total mass and center of mass. A distant node, whose
+ * width divided by its distance is less than the opening angle, is treated as
+ * a single mass. An opening angle of 0 gives the exact direct sum.
+ *
+ * Nodes and bodies are held in primitive arrays which are reused every step,
+ * so steps do not allocate once the arrays are large enough.
+ *
+ * Entities with infinite mass are ignored. Sleeping entities, and entities
+ * which ignore gravity, attract others but are not accelerated themselves.
+ */
+public class NBodyGravityEntity extends Entity
+{
+	// Deeper nodes are not split. Bodies which land in the same one (e.g.
+	// coincident bodies) share it.
+	private static final int MAX_DEPTH = 32;
+
+	// A leaf is split when it would hold more bodies than this. Bodies within
+	// a leaf are summed directly, which is cheaper than more nodes.
+	private static final int LEAF_CAPACITY = 8;
+
+	// Marks no child node or no body
+	private static final int NONE = -1;
+
+	private final double gravitationalConstant;
+	private final double openingAngleSquared;
+
+	// Added (squared) to every distance, which limits the acceleration of
+	// bodies which pass very close to each other
+	private final double softeningSquared;
+
+	private final boolean twoDimensional;
+	private final int numChildren;
+
+	// Bodies, in the order gathered from the system
+	private int numBodies;
+	private PhysicalEntity[] bodyEntities = new PhysicalEntity[0];
+	private double[] bodyX = new double[0];
+	private double[] bodyY = new double[0];
+	private double[] bodyZ = new double[0];
+	private double[] bodyMass = new double[0];
+	private double[] accelerationX = new double[0];
+	private double[] accelerationY = new double[0];
+	private double[] accelerationZ = new double[0];
+
+	// Next body in the same leaf node
+	private int[] bodyNext = new int[0];
+
+	// Tree nodes. Children of a node are allocated consecutively, after their
+	// parent.
+	private int numNodes;
+	private double[] nodeCenterX = new double[64];
+	private double[] nodeCenterY = new double[64];
+	private double[] nodeCenterZ = new double[64];
+	private double[] nodeHalfSize = new double[64];
+	private double[] nodeMass = new double[64];
+
+	// Mass weighted sum of positions while building, then center of mass
+	private double[] nodeMassCenterX = new double[64];
+	private double[] nodeMassCenterY = new double[64];
+	private double[] nodeMassCenterZ = new double[64];
+	private int[] nodeFirstChild = new int[64];
+	private int[] nodeFirstBody = new int[64];
+	private int[] nodeNumBodies = new int[64];
+
+	// Nodes still to visit while summing the forces on one body
+	private final int[] stack = new int[MAX_DEPTH * 8 + 8];
+
+	private final BoundingBox boundingBox = new BoundingBox();
+	private final Vec3D force = new Vec3D(0, 0, 0);
+
+	/**
+	 * @param gravitationalConstant
+	 *            scales every attraction
+	 * @param openingAngle
+	 *            nodes whose width divided by their distance is less than this
+	 *            are treated as a single mass. 0.5 is typical. 0 gives the
+	 *            exact direct sum.
+	 * @param softeningLength
+	 *            added to distances (in quadrature), to limit accelerations
+	 *            between very close bodies
+	 * @param twoDimensional
+	 *            if true, z is ignored and a quadtree is used
+	 */
+	public NBodyGravityEntity(double gravitationalConstant, double openingAngle, double softeningLength, boolean twoDimensional)
+	{
+		this.gravitationalConstant = gravitationalConstant;
+		this.openingAngleSquared = openingAngle * openingAngle;
+		this.softeningSquared = softeningLength * softeningLength;
+		this.twoDimensional = twoDimensional;
+		numChildren = twoDimensional ? 4 : 8;
+	}
+
+	@Override
+	public void ai(double elapsedTime, PhysicsSystem physicsSystem)
+	{
+		PhysicalEntity[] physicalEntities = physicsSystem.getPhysicalEntities();
+		int numPhysicalEntities = physicsSystem.getNumPhysicalEntities();
+		ensureBodyCapacity(numPhysicalEntities);
+		numBodies = 0;
+		for (int i = 0; i < numPhysicalEntities; i++)
+		{
+			PhysicalEntity physicalEntity = physicalEntities[i];
+			if (physicalEntity.inverseMass == 0)
+			{
+				continue;
+			}
+			if (physicalEntity instanceof SphereEntity)
+			{
+				Vec3D center = ((SphereEntity) physicalEntity).getCenter();
+				bodyX[numBodies] = center.x;
+				bodyY[numBodies] = center.y;
+				bodyZ[numBodies] = center.z;
+			}
+			else
+			{
+				physicalEntity.calcBoundingBox(boundingBox);
+				bodyX[numBodies] = (boundingBox.minX + boundingBox.maxX) * 0.5;
+				bodyY[numBodies] = (boundingBox.minY + boundingBox.maxY) * 0.5;
+				bodyZ[numBodies] = (boundingBox.minZ + boundingBox.maxZ) * 0.5;
+			}
+			bodyMass[numBodies] = physicalEntity.mass;
+			bodyEntities[numBodies] = physicalEntity;
+			numBodies++;
+		}
+		buildTree();
+		for (int i = 0; i < numBodies; i++)
+		{
+			PhysicalEntity physicalEntity = bodyEntities[i];
+			bodyEntities[i] = null;
+			if (physicalEntity.ignoresGravity() || physicalEntity.isSleeping())
+			{
+				continue;
+			}
+			calcAcceleration(i);
+			force.x = accelerationX[i];
+			force.y = accelerationY[i];
+			force.z = accelerationZ[i];
+			physicalEntity.addForce(force, physicalEntity.mass);
+		}
+	}
+
+	/**
+	 * Calculates the gravitational acceleration of each of a set of point
+	 * masses, due to all the others.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 *            ignored in 2D mode
+	 * @param mass
+	 * @param numMasses
+	 * @param accelerationX
+	 *            receives the acceleration of each mass
+	 * @param accelerationY
+	 * @param accelerationZ
+	 */
+	public void calcAccelerations(double[] x, double[] y, double[] z, double[] mass, int numMasses, double[] accelerationX, double[] accelerationY,
+			double[] accelerationZ)
+	{
+		ensureBodyCapacity(numMasses);
+		numBodies = numMasses;
+		System.arraycopy(x, 0, bodyX, 0, numMasses);
+		System.arraycopy(y, 0, bodyY, 0, numMasses);
+		System.arraycopy(z, 0, bodyZ, 0, numMasses);
+		System.arraycopy(mass, 0, bodyMass, 0, numMasses);
+		buildTree();
+		for (int i = 0; i < numMasses; i++)
+		{
+			calcAcceleration(i);
+		}
+		System.arraycopy(this.accelerationX, 0, accelerationX, 0, numMasses);
+		System.arraycopy(this.accelerationY, 0, accelerationY, 0, numMasses);
+		System.arraycopy(this.accelerationZ, 0, accelerationZ, 0, numMasses);
+	}
+
+	/**
+	 * @return number of tree nodes used in the last step
+	 */
+	public int getNumNodes()
+	{
+		return numNodes;
+	}
+
+	private void buildTree()
+	{
+		numNodes = 0;
+		if (numBodies == 0)
+		{
+			return;
+		}
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numBodies; i++)
+		{
+			minX = Math.min(minX, bodyX[i]);
+			minY = Math.min(minY, bodyY[i]);
+			maxX = Math.max(maxX, bodyX[i]);
+			maxY = Math.max(maxY, bodyY[i]);
+			if (!twoDimensional)
+			{
+				minZ = Math.min(minZ, bodyZ[i]);
+				maxZ = Math.max(maxZ, bodyZ[i]);
+			}
+		}
+		if (twoDimensional)
+		{
+			minZ = 0;
+			maxZ = 0;
+		}
+		double halfSize = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5;
+		// Slightly larger, so bodies on the maximum edges are inside
+		halfSize = halfSize * 1.0001 + Double.MIN_NORMAL;
+		allocateNode((minX + maxX) * 0.5, (minY + maxY) * 0.5, (minZ + maxZ) * 0.5, halfSize);
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			insertBody(i);
+		}
+		for (int node = 0; node < numNodes; node++)
+		{
+			double mass = nodeMass[node];
+			if (mass > 0)
+			{
+				nodeMassCenterX[node] /= mass;
+				nodeMassCenterY[node] /= mass;
+				nodeMassCenterZ[node] /= mass;
+			}
+		}
+	}
+
+	private void insertBody(int body)
+	{
+		double x = bodyX[body];
+		double y = bodyY[body];
+		double z = twoDimensional ? 0 : bodyZ[body];
+		double mass = bodyMass[body];
+		int node = 0;
+		int depth = 0;
+		while (true)
+		{
+			nodeMass[node] += mass;
+			nodeMassCenterX[node] += x * mass;
+			nodeMassCenterY[node] += y * mass;
+			nodeMassCenterZ[node] += z * mass;
+			if (nodeFirstChild[node] != NONE)
+			{
+				node = nodeFirstChild[node] + calcChildIndex(node, x, y, z);
+				depth++;
+			}
+			else if (nodeNumBodies[node] < LEAF_CAPACITY || depth >= MAX_DEPTH)
+			{
+				bodyNext[body] = nodeFirstBody[node];
+				nodeFirstBody[node] = body;
+				nodeNumBodies[node]++;
+				return;
+			}
+			else
+			{
+				// Full leaf: split it and move its bodies down a level, then
+				// continue down with the new body
+				int firstChild = subdivide(node);
+				int existing = nodeFirstBody[node];
+				nodeFirstBody[node] = NONE;
+				nodeNumBodies[node] = 0;
+				while (existing != NONE)
+				{
+					int next = bodyNext[existing];
+					double existingX = bodyX[existing];
+					double existingY = bodyY[existing];
+					double existingZ = twoDimensional ? 0 : bodyZ[existing];
+					double existingMass = bodyMass[existing];
+					int child = firstChild + calcChildIndex(node, existingX, existingY, existingZ);
+					nodeMass[child] += existingMass;
+					nodeMassCenterX[child] += existingX * existingMass;
+					nodeMassCenterY[child] += existingY * existingMass;
+					nodeMassCenterZ[child] += existingZ * existingMass;
+					bodyNext[existing] = nodeFirstBody[child];
+					nodeFirstBody[child] = existing;
+					nodeNumBodies[child]++;
+					existing = next;
+				}
+				node = firstChild + calcChildIndex(node, x, y, z);
+				depth++;
+			}
+		}
+	}
+
+	private int calcChildIndex(int node, double x, double y, double z)
+	{
+		int index = 0;
+		if (x >= nodeCenterX[node])
+		{
+			index |= 1;
+		}
+		if (y >= nodeCenterY[node])
+		{
+			index |= 2;
+		}
+		if (!twoDimensional && z >= nodeCenterZ[node])
+		{
+			index |= 4;
+		}
+		return index;
+	}
+
+	/**
+	 * Allocates a node's children, which are laid out in child index order.
+	 *
+	 * @return index of the first child
+	 */
+	private int subdivide(int node)
+	{
+		double halfSize = nodeHalfSize[node] * 0.5;
+		double centerX = nodeCenterX[node];
+		double centerY = nodeCenterY[node];
+		double centerZ = nodeCenterZ[node];
+		int firstChild = numNodes;
+		for (int index = 0; index < numChildren; index++)
+		{
+			allocateNode(centerX + ((index & 1) == 0 ? -halfSize : halfSize), centerY + ((index & 2) == 0 ? -halfSize : halfSize),
+					twoDimensional ? 0 : centerZ + ((index & 4) == 0 ? -halfSize : halfSize), halfSize);
+		}
+		nodeFirstChild[node] = firstChild;
+		return firstChild;
+	}
+
+	private void allocateNode(double centerX, double centerY, double centerZ, double halfSize)
+	{
+		if (numNodes == nodeMass.length)
+		{
+			growNodes();
+		}
+		nodeCenterX[numNodes] = centerX;
+		nodeCenterY[numNodes] = centerY;
+		nodeCenterZ[numNodes] = centerZ;
+		nodeHalfSize[numNodes] = halfSize;
+		nodeMass[numNodes] = 0;
+		nodeMassCenterX[numNodes] = 0;
+		nodeMassCenterY[numNodes] = 0;
+		nodeMassCenterZ[numNodes] = 0;
+		nodeFirstChild[numNodes] = NONE;
+		nodeFirstBody[numNodes] = NONE;
+		nodeNumBodies[numNodes] = 0;
+		numNodes++;
+	}
+
+	/**
+	 * Sums the acceleration of one body due to all others, walking the tree
+	 * and opening nodes which are too close to treat as a single mass.
+	 */
+	private void calcAcceleration(int body)
+	{
+		double x = bodyX[body];
+		double y = bodyY[body];
+		double z = twoDimensional ? 0 : bodyZ[body];
+		double ax = 0, ay = 0, az = 0;
+		int stackSize = 0;
+		if (numNodes > 0)
+		{
+			stack[stackSize++] = 0;
+		}
+		while (stackSize > 0)
+		{
+			int node = stack[--stackSize];
+			int firstChild = nodeFirstChild[node];
+			if (firstChild == NONE)
+			{
+				for (int other = nodeFirstBody[node]; other != NONE; other = bodyNext[other])
+				{
+					if (other == body)
+					{
+						continue;
+					}
+					double dx = bodyX[other] - x;
+					double dy = bodyY[other] - y;
+					double dz = twoDimensional ? 0 : bodyZ[other] - z;
+					double scale = calcAccelerationScale(dx * dx + dy * dy + dz * dz, bodyMass[other]);
+					ax += dx * scale;
+					ay += dy * scale;
+					az += dz * scale;
+				}
+				continue;
+			}
+			double dx = nodeMassCenterX[node] - x;
+			double dy = nodeMassCenterY[node] - y;
+			double dz = nodeMassCenterZ[node] - z;
+			double distanceSquared = dx * dx + dy * dy + dz * dz;
+			double halfSize = nodeHalfSize[node];
+			double size = halfSize * 2;
+			// Nodes containing the body are always opened, so its own mass
+			// is never included
+			if (size * size < openingAngleSquared * distanceSquared && !isInside(node, halfSize, x, y, z))
+			{
+				double scale = calcAccelerationScale(distanceSquared, nodeMass[node]);
+				ax += dx * scale;
+				ay += dy * scale;
+				az += dz * scale;
+			}
+			else
+			{
+				for (int child = firstChild; child < firstChild + numChildren; child++)
+				{
+					if (nodeMass[child] > 0)
+					{
+						stack[stackSize++] = child;
+					}
+				}
+			}
+		}
+		accelerationX[body] = ax * gravitationalConstant;
+		accelerationY[body] = ay * gravitationalConstant;
+		accelerationZ[body] = az * gravitationalConstant;
+	}
+
+	private boolean isInside(int node, double halfSize, double x, double y, double z)
+	{
+		return Math.abs(x - nodeCenterX[node]) <= halfSize && Math.abs(y - nodeCenterY[node]) <= halfSize && Math.abs(z - nodeCenterZ[node]) <= halfSize;
+	}
+
+	/**
+	 * @return mass / r^3, with softening, or 0 for coincident unsoftened
+	 *         masses
+	 */
+	private double calcAccelerationScale(double distanceSquared, double mass)
+	{
+		double softenedSquared = distanceSquared + softeningSquared;
+		if (softenedSquared == 0)
+		{
+			return 0;
+		}
+		double inverseDistance = 1.0 / Math.sqrt(softenedSquared);
+		return mass * inverseDistance * inverseDistance * inverseDistance;
+	}
+
+	private void ensureBodyCapacity(int capacity)
+	{
+		if (bodyMass.length >= capacity)
+		{
+			return;
+		}
+		capacity = Math.max(capacity, bodyMass.length * 2);
+		bodyEntities = new PhysicalEntity[capacity];
+		bodyX = new double[capacity];
+		bodyY = new double[capacity];
+		bodyZ = new double[capacity];
+		bodyMass = new double[capacity];
+		accelerationX = new double[capacity];
+		accelerationY = new double[capacity];
+		accelerationZ = new double[capacity];
+		bodyNext = new int[capacity];
+	}
+
+	private void growNodes()
+	{
+		int capacity = nodeMass.length * 2;
+		nodeCenterX = copyOf(nodeCenterX, capacity);
+		nodeCenterY = copyOf(nodeCenterY, capacity);
+		nodeCenterZ = copyOf(nodeCenterZ, capacity);
+		nodeHalfSize = copyOf(nodeHalfSize, capacity);
+		nodeMass = copyOf(nodeMass, capacity);
+		nodeMassCenterX = copyOf(nodeMassCenterX, capacity);
+		nodeMassCenterY = copyOf(nodeMassCenterY, capacity);
+		nodeMassCenterZ = copyOf(nodeMassCenterZ, capacity);
+		nodeFirstChild = copyOf(nodeFirstChild, capacity);
+		nodeFirstBody = copyOf(nodeFirstBody, capacity);
+		nodeNumBodies = copyOf(nodeNumBodies, capacity);
+	}
+
+	private double[] copyOf(double[] array, int capacity)
+	{
+		double[] newArray = new double[capacity];
+		System.arraycopy(array, 0, newArray, 0, numNodes);
+		return newArray;
+	}
+
+	private int[] copyOf(int[] array, int capacity)
+	{
+		int[] newArray = new int[capacity];
+		System.arraycopy(array, 0, newArray, 0, numNodes);
+		return newArray;
+	}
+}
@@ -0,0 +1,262 @@
+package com.pheiffware.lib.physics.entity.physicalEntity;
+
+import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.HeightfieldEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.LineSegmentEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+/**
+ * Dispatches collision resolution through a matrix of CollisionHandlers, indexed by the shape types of the 2 entities.  This replaces chains of instanceof checks with a single
+ * array lookup, and makes handling independent of which entity of a pair comes first: registering a handler for (A, B) also registers a swapped version for (B, A).
+ * <p/>
+ * Each shape type is a small integer stored on the PhysicalEntity.  New shape types can be allocated with newShapeType().  Pairs of shape types with no registered handler do
+ * not interact.
+ * <p/>
+ * Broad phases which cull static geometry a primitive at a time report (entity, primitive, entity) pairs, which go through resolvePrimitive().  These use a
+ * PrimitiveCollisionHandler if one is registered for the shape types, otherwise the whole entity handler, called once per pair of entities.
+ */
+public class CollisionDispatcher
+{
+    //Entities which never collide
+    public static final int SHAPE_NONE = 0;
+    public static final int SHAPE_SPHERE = 1;
+    public static final int SHAPE_LINE_SEGMENT = 2;
+    public static final int SHAPE_POLYGON = 3;
+    public static final int SHAPE_HEIGHTFIELD = 4;
+
+    //Next shape type to be handed out by newShapeType()
+    private static int nextShapeType = SHAPE_HEIGHTFIELD + 1;
+
+    private static final CollisionDispatcher defaultDispatcher = new CollisionDispatcher();
+
+    /**
+     * Allocates a new shape type, for a user defined entity type.
+     *
+     * @return the new shape type
+     */
+    public static synchronized int newShapeType()
+    {
+        return nextShapeType++;
+    }
+
+    /**
+     * The dispatcher used by PhysicalEntity.resolveCollision().  Only holds the built in handlers.
+     *
+     * @return
+     */
+    public static CollisionDispatcher getDefault()
+    {
+        return defaultDispatcher;
+    }
+
+    //Handler for each pair of shape types, at [shapeType1 * numShapeTypes + shapeType2]
+    private CollisionHandler[] handlers;
+    //Handler for a primitive of the first shape type against the second, indexed the same way
+    private PrimitiveCollisionHandler[] primitiveHandlers;
+    private int numShapeTypes;
+
+    /**
+     * Creates a dispatcher with handlers for all built in shape pairs.
+     */
+    public CollisionDispatcher()
+    {
+        numShapeTypes = SHAPE_HEIGHTFIELD + 1;
+        handlers = new CollisionHandler[numShapeTypes * numShapeTypes];
+        primitiveHandlers = new PrimitiveCollisionHandler[numShapeTypes * numShapeTypes];
+        register(SHAPE_SPHERE, SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                SphereEntity.resolveSphereSphereCollision((SphereEntity) entity1, (SphereEntity) entity2, collision);
+            }
+        });
+        register(SHAPE_LINE_SEGMENT, SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                LineSegmentEntity.resolveLineSphereCollision((LineSegmentEntity) entity1, (SphereEntity) entity2, elapsedTime, collision);
+            }
+        });
+        register(SHAPE_POLYGON, SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                PolygonEntity.resolvePolygonSphereCollision((PolygonEntity) entity1, (SphereEntity) entity2, elapsedTime, collision);
+            }
+        });
+        registerPrimitive(SHAPE_POLYGON, SHAPE_SPHERE, new PrimitiveCollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, int primitive1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                PolygonEntity.resolveEdgeSphereCollision((PolygonEntity) entity1, primitive1, (SphereEntity) entity2, collision);
+            }
+        });
+        register(SHAPE_POLYGON, SHAPE_POLYGON, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                PolygonEntity.resolvePolygonPolygonCollision((PolygonEntity) entity1, (PolygonEntity) entity2, elapsedTime, collision);
+            }
+        });
+        register(SHAPE_HEIGHTFIELD, SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                HeightfieldEntity.resolveHeightfieldSphereCollision((HeightfieldEntity) entity1, (SphereEntity) entity2, collision);
+            }
+        });
+    }
+
+    /**
+     * Registers a handler for a pair of shape types, replacing any existing one.  The handler is also registered, with its arguments swapped, for (shapeType2, shapeType1).
+     * Registering a handler while a time step is in progress is not supported.
+     *
+     * @param shapeType1 shape type of the handler's first argument
+     * @param shapeType2 shape type of the handler's second argument
+     * @param handler    handler or null to stop these shape types interacting
+     */
+    public void register(int shapeType1, int shapeType2, final CollisionHandler handler)
+    {
+        int requiredShapeTypes = Math.max(shapeType1, shapeType2) + 1;
+        if (requiredShapeTypes > numShapeTypes)
+        {
+            resize(requiredShapeTypes);
+        }
+        handlers[shapeType1 * numShapeTypes + shapeType2] = handler;
+        if (shapeType1 != shapeType2)
+        {
+            handlers[shapeType2 * numShapeTypes + shapeType1] = handler == null ? null : new SwappedCollisionHandler(handler);
+        }
+    }
+
+    /**
+     * Registers a handler for a single primitive of shapeType1 against a whole entity of shapeType2, replacing any existing one.  Unlike register(), this only applies in the
+     * given order, as broad phases always report the entity split into primitives first.
+     *
+     * @param shapeType1 shape type of the entity whose primitive is passed to the handler
+     * @param shapeType2 shape type of the handler's second argument
+     * @param handler    handler or null to fall back to the whole entity handler
+     */
+    public void registerPrimitive(int shapeType1, int shapeType2, PrimitiveCollisionHandler handler)
+    {
+        int requiredShapeTypes = Math.max(shapeType1, shapeType2) + 1;
+        if (requiredShapeTypes > numShapeTypes)
+        {
+            resize(requiredShapeTypes);
+        }
+        primitiveHandlers[shapeType1 * numShapeTypes + shapeType2] = handler;
+    }
+
+    /**
+     * Resolves any collision between 2 entities, with whichever handler is registered for their shape types.
+     *
+     * @param entity1
+     * @param entity2
+     * @param elapsedTime
+     * @param collision   reusable record which receives the collision
+     * @throws InteractionException
+     */
+    public final void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision) throws InteractionException
+    {
+        int shapeType1 = entity1.getShapeType();
+        int shapeType2 = entity2.getShapeType();
+        if (shapeType1 < numShapeTypes && shapeType2 < numShapeTypes)
+        {
+            CollisionHandler handler = handlers[shapeType1 * numShapeTypes + shapeType2];
+            if (handler != null)
+            {
+                handler.resolve(entity1, entity2, elapsedTime, collision);
+            }
+        }
+    }
+
+    /**
+     * Resolves any collision between one collision primitive of an entity and another entity.  Without a PrimitiveCollisionHandler for their shape types, the whole entity
+     * handler is used, but only for the first primitive whose bounds overlap entity2, as the broad phase reports a pair for each of them.
+     *
+     * @param entity1
+     * @param primitive1  index in [0,entity1.getNumCollisionPrimitives())
+     * @param entity2
+     * @param elapsedTime
+     * @param collision   reusable record which receives the collision
+     * @throws InteractionException
+     */
+    public final void resolvePrimitive(PhysicalEntity entity1, int primitive1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            throws InteractionException
+    {
+        int shapeType1 = entity1.getShapeType();
+        int shapeType2 = entity2.getShapeType();
+        if (shapeType1 < numShapeTypes && shapeType2 < numShapeTypes)
+        {
+            int index = shapeType1 * numShapeTypes + shapeType2;
+            PrimitiveCollisionHandler primitiveHandler = primitiveHandlers[index];
+            if (primitiveHandler != null)
+            {
+                primitiveHandler.resolve(entity1, primitive1, entity2, elapsedTime, collision);
+            }
+            else
+            {
+                CollisionHandler handler = handlers[index];
+                if (handler != null && (entity1.getNumCollisionPrimitives() == 1 || primitive1 == entity1.findFirstOverlappingPrimitive(entity2)))
+                {
+                    handler.resolve(entity1, entity2, elapsedTime, collision);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the handler for the pair of shape types, or null if they don't interact
+     */
+    public CollisionHandler getHandler(int shapeType1, int shapeType2)
+    {
+        if (shapeType1 < numShapeTypes && shapeType2 < numShapeTypes)
+        {
+            return handlers[shapeType1 * numShapeTypes + shapeType2];
+        }
+        return null;
+    }
+
+    private void resize(int newNumShapeTypes)
+    {
+        CollisionHandler[] newHandlers = new CollisionHandler[newNumShapeTypes * newNumShapeTypes];
+        for (int i = 0; i < numShapeTypes; i++)
+        {
+            System.arraycopy(handlers, i * numShapeTypes, newHandlers, i * newNumShapeTypes, numShapeTypes);
+        }
+        PrimitiveCollisionHandler[] newPrimitiveHandlers = new PrimitiveCollisionHandler[newNumShapeTypes * newNumShapeTypes];
+        for (int i = 0; i < numShapeTypes; i++)
+        {
+            System.arraycopy(primitiveHandlers, i * numShapeTypes, newPrimitiveHandlers, i * newNumShapeTypes, numShapeTypes);
+        }
+        handlers = newHandlers;
+        primitiveHandlers = newPrimitiveHandlers;
+        numShapeTypes = newNumShapeTypes;
+    }
+
+    /**
+     * Adapts a handler for (A, B) to handle (B, A).
+     */
+    private static class SwappedCollisionHandler implements CollisionHandler
+    {
+        private final CollisionHandler handler;
+
+        SwappedCollisionHandler(CollisionHandler handler)
+        {
+            this.handler = handler;
+        }
+
+        @Override
+        public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision) throws InteractionException
+        {
+            handler.resolve(entity2, entity1, elapsedTime, collision);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.pheiffware.lib.physics.entity.physicalEntity;
+
+import com.pheiffware.lib.physics.InteractionException;
+
+/**
+ * Resolves collisions between entities of one pair of shape types.  Registered with a CollisionDispatcher.
+ */
+public interface CollisionHandler
+{
+    /**
+     * @param entity1     entity with the first shape type this handler was registered for
+     * @param entity2     entity with the second shape type this handler was registered for
+     * @param elapsedTime length of the time step
+     * @param collision   reusable record which receives the collision
+     * @throws InteractionException
+     */
+    void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision) throws InteractionException;
+}
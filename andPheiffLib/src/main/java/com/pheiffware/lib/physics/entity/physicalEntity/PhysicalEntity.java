@@ -7,6 +7,9 @@ package com.pheiffware.lib.physics.entity.physicalEntity;
 import com.pheiffware.lib.geometry.Vec3D;
 import com.pheiffware.lib.physics.InteractionException;
 import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+import java.nio.ByteBuffer;
 
 /**
  * An entity with the concept of mass, force, acceleration, etc.
@@ -39,9 +42,54 @@ public abstract class PhysicalEntity extends Entity
 	// (duh)
 	private boolean ignoresGravity = false;
 
+	// Selects collision handlers in a CollisionDispatcher
+	private final int shapeType;
+
+	// Index assigned by the PhysicsSystem for per-step bookkeeping, such as
+	// building contact islands. Only meaningful during a time step.
+	private int systemIndex = -1;
+
+	// Sleeping entities are skipped by integration and collision resolution
+	// until woken
+	private boolean sleeping = false;
+
+	// Number of consecutive steps this entity has been moving slower than the
+	// sleep velocity
+	private int stepsAtRest = 0;
+
+	// The last 2 entities this entity had significant contacts with, and when.
+	// Used by ContactEventStream to debounce contact events per pair.
+	private PhysicalEntity contactEventPartner1;
+	private PhysicalEntity contactEventPartner2;
+	private double contactEventTime1;
+	private double contactEventTime2;
+
+	// Acceleration of the last velocity Verlet step, if there has been one
+	// since the entity was added or last woken
+	private double previousAccelerationX;
+	private double previousAccelerationY;
+	private double previousAccelerationZ;
+	private boolean hasPreviousAcceleration = false;
+
 	public PhysicalEntity(Vec3D velocity, double mass,
 			double coefficientOfRestitution)
 	{
+		this(velocity, mass, coefficientOfRestitution,
+				CollisionDispatcher.SHAPE_NONE);
+	}
+
+	/**
+	 * @param velocity
+	 * @param mass
+	 * @param coefficientOfRestitution
+	 * @param shapeType
+	 *            shape type used to look up collision handlers (see
+	 *            CollisionDispatcher)
+	 */
+	public PhysicalEntity(Vec3D velocity, double mass,
+			double coefficientOfRestitution, int shapeType)
+	{
+		this.shapeType = shapeType;
 		this.velocity = new Vec3D(velocity);
 		this.coefficientOfRestitution = coefficientOfRestitution;
 		this.mass = mass;
@@ -72,8 +120,87 @@ public abstract class PhysicalEntity extends Entity
 		accumulatedForce.toZero();
 	}
 
-	public abstract void resolveCollision(PhysicalEntity physicalEntity,
-			double elapsedTime) throws InteractionException;
+	/**
+	 * Advances the entity using semi-implicit Euler integration (see
+	 * Integrator.SEMI_IMPLICIT_EULER).
+	 * 
+	 * @param elapsedTime
+	 */
+	public final void integrateSemiImplicitEuler(double elapsedTime)
+	{
+		double factor = inverseMass * elapsedTime;
+		velocity.addTo(accumulatedForce.x * factor, accumulatedForce.y
+				* factor, accumulatedForce.z * factor);
+		move(velocity.x * elapsedTime, velocity.y * elapsedTime, velocity.z
+				* elapsedTime);
+		accumulatedForce.toZero();
+	}
+
+	/**
+	 * Advances the entity using velocity Verlet integration (see
+	 * Integrator.VELOCITY_VERLET).
+	 * 
+	 * @param elapsedTime
+	 */
+	public final void integrateVelocityVerlet(double elapsedTime)
+	{
+		double ax = accumulatedForce.x * inverseMass;
+		double ay = accumulatedForce.y * inverseMass;
+		double az = accumulatedForce.z * inverseMass;
+		if (hasPreviousAcceleration)
+		{
+			// The last step predicted velocity assuming acceleration stayed
+			// the same
+			double halfTime = 0.5 * elapsedTime;
+			velocity.addTo((ax - previousAccelerationX) * halfTime,
+					(ay - previousAccelerationY) * halfTime,
+					(az - previousAccelerationZ) * halfTime);
+		}
+		previousAccelerationX = ax;
+		previousAccelerationY = ay;
+		previousAccelerationZ = az;
+		hasPreviousAcceleration = true;
+		double atFactor = 0.5 * elapsedTime * elapsedTime;
+		move(ax * atFactor + velocity.x * elapsedTime, ay * atFactor
+				+ velocity.y * elapsedTime, az * atFactor + velocity.z
+				* elapsedTime);
+		velocity.addTo(ax * elapsedTime, ay * elapsedTime, az * elapsedTime);
+		accumulatedForce.toZero();
+	}
+
+	/**
+	 * Resolves any collision between this entity and another, using the
+	 * default CollisionDispatcher.
+	 * 
+	 * @param physicalEntity
+	 * @param elapsedTime
+	 * @param collision
+	 *            reusable record which receives the collision (avoids
+	 *            allocation)
+	 * @throws InteractionException
+	 */
+	public void resolveCollision(PhysicalEntity physicalEntity,
+			double elapsedTime, PhysicalEntityCollision collision)
+			throws InteractionException
+	{
+		CollisionDispatcher.getDefault().resolve(this, physicalEntity,
+				elapsedTime, collision);
+	}
+
+	/**
+	 * Convenience method for resolveCollision (should not be used where
+	 * efficiency matters)
+	 * 
+	 * @param physicalEntity
+	 * @param elapsedTime
+	 * @throws InteractionException
+	 */
+	public void resolveCollision(PhysicalEntity physicalEntity,
+			double elapsedTime) throws InteractionException
+	{
+		resolveCollision(physicalEntity, elapsedTime,
+				new PhysicalEntityCollision());
+	}
 
 	/**
 	 * Move the entity's center and update all other related information such as
@@ -92,6 +219,168 @@ public abstract class PhysicalEntity extends Entity
 		move(translation.x, translation.y, translation.z);
 	}
 
+	/**
+	 * Calculates an axis aligned box, which completely contains the entity, in
+	 * its current position. Used by the broad phase to cull pairs which cannot
+	 * be colliding.
+	 * 
+	 * The default is an infinite box, which is always correct but never culls
+	 * anything. Subclasses should override this with a tight box.
+	 * 
+	 * @param boundingBox
+	 *            receives the result
+	 */
+	public void calcBoundingBox(BoundingBox boundingBox)
+	{
+		boundingBox.set(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Entities made of several independent collision primitives (such as the
+	 * edges of a polygon) can expose them individually, so that large static
+	 * geometry can be culled a primitive at a time.
+	 * 
+	 * @return the number of collision primitives
+	 */
+	public int getNumCollisionPrimitives()
+	{
+		return 1;
+	}
+
+	/**
+	 * Calculates a box bounding a single collision primitive.
+	 * 
+	 * @param primitive
+	 *            index in [0,getNumCollisionPrimitives())
+	 * @param boundingBox
+	 *            receives the result
+	 */
+	public void calcPrimitiveBoundingBox(int primitive, BoundingBox boundingBox)
+	{
+		calcBoundingBox(boundingBox);
+	}
+
+	/**
+	 * Finds the first collision primitive whose bounding box overlaps another
+	 * entity's. The broad phase reports a pair for every such primitive, so this
+	 * picks the one which resolves a collision of the whole entities. Allocates,
+	 * as static entities may be tested from several threads at once. Shapes
+	 * override this where it matters.
+	 * 
+	 * @param physicalEntity
+	 * @return primitive index or -1 if none overlap
+	 */
+	public int findFirstOverlappingPrimitive(PhysicalEntity physicalEntity)
+	{
+		BoundingBox otherBox = new BoundingBox();
+		BoundingBox primitiveBox = new BoundingBox();
+		physicalEntity.calcBoundingBox(otherBox);
+		int numPrimitives = getNumCollisionPrimitives();
+		for (int primitive = 0; primitive < numPrimitives; primitive++)
+		{
+			calcPrimitiveBoundingBox(primitive, primitiveBox);
+			if (primitiveBox.overlapping(otherBox))
+			{
+				return primitive;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Calculates the distance along a ray to where it first hits the entity,
+	 * for spatial queries. The default hits the entity's bounding box. Shapes
+	 * override this to be exact.
+	 * 
+	 * @param originX
+	 * @param originY
+	 * @param originZ
+	 * @param directionX
+	 *            unit direction of the ray
+	 * @param directionY
+	 * @param directionZ
+	 * @param bounds
+	 *            the entity's current bounding box
+	 * @return distance along the ray, 0 if the origin is inside the entity or
+	 *         Double.NaN if the ray misses
+	 */
+	public double calcRayDistance(double originX, double originY,
+			double originZ, double directionX, double directionY,
+			double directionZ, BoundingBox bounds)
+	{
+		return bounds.calcRayDistance(originX, originY, originZ,
+				1.0 / directionX, 1.0 / directionY, 1.0 / directionZ);
+	}
+
+	/**
+	 * Calculates the distance from a point to the entity, for spatial queries.
+	 * The default measures to the entity's bounding box. Shapes override this
+	 * to be exact.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param bounds
+	 *            the entity's current bounding box
+	 * @return distance, or 0 if the point is inside the entity
+	 */
+	public double calcDistance(double x, double y, double z, BoundingBox bounds)
+	{
+		return Math.sqrt(bounds.calcDistanceSquared(x, y, z));
+	}
+
+	/**
+	 * Writes this entity's placement for rendering, in RenderSnapshot's
+	 * layout: position (x, y, z), radius and orientation quaternion (x, y, z,
+	 * w). The default places the center of the entity's bounding box, with the
+	 * radius of the sphere enclosing it and no rotation.
+	 * 
+	 * @param data
+	 * @param offset
+	 *            where to write in data
+	 * @param boundingBox
+	 *            scratch space
+	 */
+	public void writeRenderInstance(float[] data, int offset,
+			BoundingBox boundingBox)
+	{
+		calcBoundingBox(boundingBox);
+		double halfX = (boundingBox.maxX - boundingBox.minX) * 0.5;
+		double halfY = (boundingBox.maxY - boundingBox.minY) * 0.5;
+		double halfZ = (boundingBox.maxZ - boundingBox.minZ) * 0.5;
+		writeRenderInstance(data, offset, boundingBox.minX + halfX,
+				boundingBox.minY + halfY, boundingBox.minZ + halfZ,
+				Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ), 0, 0,
+				0, 1);
+	}
+
+	protected static void writeRenderInstance(float[] data, int offset,
+			double x, double y, double z, double radius, double orientationX,
+			double orientationY, double orientationZ, double orientationW)
+	{
+		data[offset] = (float) x;
+		data[offset + 1] = (float) y;
+		data[offset + 2] = (float) z;
+		data[offset + 3] = (float) radius;
+		data[offset + 4] = (float) orientationX;
+		data[offset + 5] = (float) orientationY;
+		data[offset + 6] = (float) orientationZ;
+		data[offset + 7] = (float) orientationW;
+	}
+
+	/**
+	 * Can this entity ever change position? Immovable entities let static
+	 * acceleration structures skip per-step updates.
+	 * 
+	 * @return
+	 */
+	public boolean isImmovable()
+	{
+		return false;
+	}
+
 	public final boolean hasMotionStopped()
 	{
 		return velocity.magnitudeSquared() < STOPPED_VELOCITY_SQUARED;
@@ -104,6 +393,7 @@ public abstract class PhysicalEntity extends Entity
 
 	public void addForce(final Vec3D direction, final double magnitude)
 	{
+		wake();
 		accumulatedForce.x += direction.x * magnitude;
 		accumulatedForce.y += direction.y * magnitude;
 		accumulatedForce.z += direction.z * magnitude;
@@ -119,13 +409,204 @@ public abstract class PhysicalEntity extends Entity
 		this.ignoresGravity = ignoreGravity;
 	}
 
+	@Override
+	public void writeState(ByteBuffer buffer)
+	{
+		buffer.putDouble(velocity.x);
+		buffer.putDouble(velocity.y);
+		buffer.putDouble(velocity.z);
+		buffer.put(sleeping ? (byte) 1 : (byte) 0);
+		buffer.putInt(stepsAtRest);
+		buffer.put(hasPreviousAcceleration ? (byte) 1 : (byte) 0);
+		buffer.putDouble(previousAccelerationX);
+		buffer.putDouble(previousAccelerationY);
+		buffer.putDouble(previousAccelerationZ);
+	}
+
+	@Override
+	public void readState(ByteBuffer buffer)
+	{
+		double vx = buffer.getDouble();
+		double vy = buffer.getDouble();
+		double vz = buffer.getDouble();
+		boolean sleeping = buffer.get() != 0;
+		int stepsAtRest = buffer.getInt();
+		if (sleeping != this.sleeping)
+		{
+			setSleeping(sleeping);
+		}
+		velocity.x = vx;
+		velocity.y = vy;
+		velocity.z = vz;
+		this.stepsAtRest = stepsAtRest;
+		hasPreviousAcceleration = buffer.get() != 0;
+		previousAccelerationX = buffer.getDouble();
+		previousAccelerationY = buffer.getDouble();
+		previousAccelerationZ = buffer.getDouble();
+	}
+
+	public final boolean isSleeping()
+	{
+		return sleeping;
+	}
+
+	/**
+	 * Puts the entity to sleep. Its velocity is zeroed, so that it is exactly
+	 * at rest while asleep.
+	 */
+	public final void sleep()
+	{
+		if (!sleeping)
+		{
+			setSleeping(true);
+		}
+	}
+
+	/**
+	 * Wakes the entity if it is sleeping. Called automatically when an impulse
+	 * or force is applied.
+	 */
+	public final void wake()
+	{
+		if (sleeping)
+		{
+			setSleeping(false);
+		}
+	}
+
+	protected void setSleeping(boolean sleeping)
+	{
+		this.sleeping = sleeping;
+		stepsAtRest = 0;
+		if (sleeping)
+		{
+			velocity.toZero();
+			accumulatedForce.toZero();
+			hasPreviousAcceleration = false;
+		}
+	}
+
+	/**
+	 * @return true if getPreviousAccelerationX/Y/Z() hold the acceleration of
+	 *         a velocity Verlet step
+	 */
+	public final boolean hasPreviousAcceleration()
+	{
+		return hasPreviousAcceleration;
+	}
+
+	public final double getPreviousAccelerationX()
+	{
+		return previousAccelerationX;
+	}
+
+	public final double getPreviousAccelerationY()
+	{
+		return previousAccelerationY;
+	}
+
+	public final double getPreviousAccelerationZ()
+	{
+		return previousAccelerationZ;
+	}
+
+	/**
+	 * Sets the acceleration the next velocity Verlet step corrects from. Used
+	 * by storage which integrates entities itself.
+	 * 
+	 * @param hasPreviousAcceleration
+	 *            false if there was no previous step (other values are
+	 *            ignored)
+	 * @param ax
+	 * @param ay
+	 * @param az
+	 */
+	public final void setPreviousAcceleration(boolean hasPreviousAcceleration,
+			double ax, double ay, double az)
+	{
+		this.hasPreviousAcceleration = hasPreviousAcceleration;
+		previousAccelerationX = ax;
+		previousAccelerationY = ay;
+		previousAccelerationZ = az;
+	}
+
+	public final int getStepsAtRest()
+	{
+		return stepsAtRest;
+	}
+
+	public final void setStepsAtRest(int stepsAtRest)
+	{
+		this.stepsAtRest = stepsAtRest;
+	}
+
+	/**
+	 * Records a significant contact with another entity and decides whether it
+	 * should be reported. A contact is not reported if this entity had a
+	 * significant contact with the same partner less than interval ago, so a
+	 * continuous contact is only reported when it begins. Only the 2 most
+	 * recent partners are remembered.
+	 * 
+	 * @param partner
+	 * @param time
+	 *            simulation time of the contact
+	 * @param interval
+	 * @return true if the contact should be reported
+	 */
+	public final boolean debounceContactEvent(PhysicalEntity partner,
+			double time, double interval)
+	{
+		if (partner == contactEventPartner1)
+		{
+			boolean report = time - contactEventTime1 >= interval;
+			contactEventTime1 = time;
+			return report;
+		}
+		if (partner == contactEventPartner2)
+		{
+			boolean report = time - contactEventTime2 >= interval;
+			contactEventTime2 = time;
+			return report;
+		}
+		// Replace the partner with the oldest contact
+		if (contactEventPartner1 == null
+				|| contactEventTime1 <= contactEventTime2)
+		{
+			contactEventPartner1 = partner;
+			contactEventTime1 = time;
+		}
+		else
+		{
+			contactEventPartner2 = partner;
+			contactEventTime2 = time;
+		}
+		return true;
+	}
+
+	public final int getShapeType()
+	{
+		return shapeType;
+	}
+
+	public final int getSystemIndex()
+	{
+		return systemIndex;
+	}
+
+	public final void setSystemIndex(int systemIndex)
+	{
+		this.systemIndex = systemIndex;
+	}
+
 	public void applyImpulse(final Vec3D impulse)
 	{
+		wake();
 		velocity.addTo(impulse);
 	}
 
 	public void applyImpulse(final Vec3D impulseNormal, final double magnitude)
 	{
+		wake();
 		velocity.addToScaledVector(impulseNormal, magnitude);
 	}
 }
@@ -1,17 +1,23 @@
 package com.pheiffware.lib.physics.entity.physicalEntity;
 
 import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.geometry.intersect.ContactManifold;
 import com.pheiffware.lib.geometry.intersect.IntersectionInfo;
+import com.pheiffware.lib.physics.ContactEventStream;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
 
 
 /**
  * Describes information about a rigid body collision and provides calculation
- * utilities to get the results.
+ * utilities to get the results. Instances are reusable: the narrow phase
+ * writes each new collision into a caller-supplied record with set(), so
+ * resolving collisions does not allocate.
  */
 public class PhysicalEntityCollision
 {
 	//If velocity relative to surface is smaller than this, then it is completely ignored and set to 0.  This allows ramps to work without oddities.
-	private static final double MAX_RELATIVE_STATIC_VELOCITIES = 5f;
+	public static final double MAX_RELATIVE_STATIC_VELOCITIES = 5f;
 
 	/**
 	 * Calculates the impulse along a line of action (instantaneous change in
@@ -36,42 +42,108 @@ public class PhysicalEntityCollision
 	}
 
 	// The 1st entity involved in the collision
-	protected final PhysicalEntity entity1;
+	protected PhysicalEntity entity1;
 
 	// The 2nd entity involved in the collision
-	protected final PhysicalEntity entity2;
+	protected PhysicalEntity entity2;
 
 	// Collision normal in direction from entity1 to entity2
-	private final Vec3D collisionNormal;
+	private final Vec3D collisionNormal = new Vec3D(0, 0, 0);
 
 	// How deep is the overlap along the line of the collisionNormal
-	private final double penetration;
+	private double penetration;
 
 	// Amount of velocity1 along the normal of the collision
-	private final double velocity1NormalComponent;
+	private double velocity1NormalComponent;
 
 	// Amount of velocity2 along the normal of the collision (generally
 	// negative)
-	private final double velocity2NormalComponent;
+	private double velocity2NormalComponent;
 
-	private final double relativeNormalVelocity;
+	private double relativeNormalVelocity;
 
 	private double combinedCoefficientOfRestitution;
 
+	// Scratch space for narrow phase intersection tests which feed this
+	// collision
+	private final IntersectionInfo intersectionInfo = new IntersectionInfo();
+	private final ContactManifold contactManifold = new ContactManifold();
+
+	// Number of collisions set into this record since resetStatistics() and
+	// their total and maximum penetration
+	private int numCollisions;
+	private double totalPenetration;
+	private double maxPenetration;
+
+	// Point of contact, if the narrow phase supplied one with
+	// setContactPoint()
+	private final Vec3D contactPoint = new Vec3D(0, 0, 0);
+	private boolean hasContactPoint;
+
+	// Significant collisions are published here (null if disabled)
+	private ContactEventStream contactEvents;
+
+	// Scratch space for working out contact points and normal impulse
+	private final Vec3D scratchPoint = new Vec3D(0, 0, 0);
+	private BoundingBox scratchBox1;
+	private BoundingBox scratchBox2;
+
+	/**
+	 * Creates an empty, reusable collision record. Call set() before
+	 * resolving.
+	 */
+	public PhysicalEntityCollision()
+	{
+	}
+
 	public PhysicalEntityCollision(PhysicalEntity entity1,
 			PhysicalEntity entity2, IntersectionInfo pointOfImpact)
 	{
-		this(entity1, entity2, pointOfImpact.intersectionNormal,
-				pointOfImpact.penetration);
+		set(entity1, entity2, pointOfImpact);
 	}
 
 	public PhysicalEntityCollision(PhysicalEntity entity1,
 			PhysicalEntity entity2, Vec3D collisionNormal, double penetration)
+	{
+		set(entity1, entity2, collisionNormal.x, collisionNormal.y,
+				collisionNormal.z, penetration);
+	}
+
+	public final void set(PhysicalEntity entity1, PhysicalEntity entity2,
+			IntersectionInfo pointOfImpact)
+	{
+		Vec3D normal = pointOfImpact.intersectionNormal;
+		set(entity1, entity2, normal.x, normal.y, normal.z,
+				pointOfImpact.penetration);
+	}
+
+	/**
+	 * Reinitializes this record to describe a new collision.
+	 * 
+	 * @param entity1
+	 * @param entity2
+	 * @param normalX
+	 *            unit collision normal, in direction from entity1 to entity2
+	 * @param normalY
+	 * @param normalZ
+	 * @param penetration
+	 */
+	public final void set(PhysicalEntity entity1, PhysicalEntity entity2,
+			double normalX, double normalY, double normalZ, double penetration)
 	{
 		this.entity1 = entity1;
 		this.entity2 = entity2;
-		this.collisionNormal = collisionNormal;
+		collisionNormal.x = normalX;
+		collisionNormal.y = normalY;
+		collisionNormal.z = normalZ;
 		this.penetration = penetration;
+		hasContactPoint = false;
+		numCollisions++;
+		totalPenetration += penetration;
+		if (penetration > maxPenetration)
+		{
+			maxPenetration = penetration;
+		}
 		velocity1NormalComponent = Vec3D.dot(entity1.velocity, collisionNormal);
 		velocity2NormalComponent = Vec3D.dot(entity2.velocity, collisionNormal);
 		relativeNormalVelocity = velocity1NormalComponent
@@ -85,15 +157,217 @@ public class PhysicalEntityCollision
 		}
 	}
 
-	public final void resolve()
+	/**
+	 * Scratch space which narrow phase code can pass to IntersectCalc, before
+	 * calling set() with the result.
+	 * 
+	 * @return
+	 */
+	public final IntersectionInfo getIntersectionInfo()
+	{
+		return intersectionInfo;
+	}
+
+	/**
+	 * Scratch space for narrow phase tests which generate several contact
+	 * points, such as polygon against polygon.
+	 * 
+	 * @return
+	 */
+	public final ContactManifold getContactManifold()
+	{
+		return contactManifold;
+	}
+
+	/**
+	 * Resolves the collision immediately. Subclasses may override this to
+	 * record the collision instead, for example to hand it to an iterative
+	 * solver.
+	 */
+	public void resolve()
 	{
 		if (areApproaching())
 		{
-			addCollisionImpulses();
+			double normalImpulse = addCollisionImpulses();
+			if (contactEvents != null
+					&& contactEvents.isSignificant(normalImpulse,
+							relativeNormalVelocity))
+			{
+				calcContactPoint(scratchPoint);
+				contactEvents.publish(entity1, entity2, normalImpulse,
+						relativeNormalVelocity, scratchPoint, collisionNormal);
+			}
 		}
 		unEmbed();
 	}
 
+	/**
+	 * Supplies the point of contact for the collision last passed to set().
+	 * Narrow phase code which knows the point should call this after set().
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public final void setContactPoint(double x, double y, double z)
+	{
+		contactPoint.x = x;
+		contactPoint.y = y;
+		contactPoint.z = z;
+		hasContactPoint = true;
+	}
+
+	/**
+	 * Works out the approximate point of contact: the point given to
+	 * setContactPoint(), else the middle of a sphere's overlap with the other
+	 * entity, along the normal, else the middle of the overlap of the
+	 * entities' bounding boxes.
+	 * 
+	 * @param result
+	 */
+	public final void calcContactPoint(Vec3D result)
+	{
+		if (hasContactPoint)
+		{
+			result.set(contactPoint);
+		}
+		else if (entity2.getShapeType() == CollisionDispatcher.SHAPE_SPHERE)
+		{
+			SphereEntity sphere = (SphereEntity) entity2;
+			result.set(sphere.getCenter());
+			result.addToScaledVector(collisionNormal, penetration / 2
+					- sphere.getRadius());
+		}
+		else if (entity1.getShapeType() == CollisionDispatcher.SHAPE_SPHERE)
+		{
+			SphereEntity sphere = (SphereEntity) entity1;
+			result.set(sphere.getCenter());
+			result.addToScaledVector(collisionNormal, sphere.getRadius()
+					- penetration / 2);
+		}
+		else
+		{
+			if (scratchBox1 == null)
+			{
+				scratchBox1 = new BoundingBox();
+				scratchBox2 = new BoundingBox();
+			}
+			entity1.calcBoundingBox(scratchBox1);
+			entity2.calcBoundingBox(scratchBox2);
+			result.x = (Math.max(scratchBox1.minX, scratchBox2.minX) + Math
+					.min(scratchBox1.maxX, scratchBox2.maxX)) / 2;
+			result.y = (Math.max(scratchBox1.minY, scratchBox2.minY) + Math
+					.min(scratchBox1.maxY, scratchBox2.maxY)) / 2;
+			result.z = (Math.max(scratchBox1.minZ, scratchBox2.minZ) + Math
+					.min(scratchBox1.maxZ, scratchBox2.maxZ)) / 2;
+		}
+	}
+
+	/**
+	 * Publishes significant collisions to the given stream when they are
+	 * resolved.
+	 * 
+	 * @param contactEvents
+	 *            stream or null to stop publishing
+	 */
+	public final void setContactEvents(ContactEventStream contactEvents)
+	{
+		this.contactEvents = contactEvents;
+	}
+
+	public final ContactEventStream getContactEvents()
+	{
+		return contactEvents;
+	}
+
+	/**
+	 * Zeroes the count of collisions set into this record and their
+	 * penetration.
+	 */
+	public final void resetStatistics()
+	{
+		numCollisions = 0;
+		totalPenetration = 0;
+		maxPenetration = 0;
+	}
+
+	/**
+	 * Adds another record's statistics to this one's. Records used by parallel
+	 * tasks may be merged into a shared record.
+	 * 
+	 * @param collision
+	 */
+	public final synchronized void addStatistics(PhysicalEntityCollision collision)
+	{
+		numCollisions += collision.numCollisions;
+		totalPenetration += collision.totalPenetration;
+		maxPenetration = Math.max(maxPenetration, collision.maxPenetration);
+	}
+
+	/**
+	 * @return number of collisions set into this record since
+	 *         resetStatistics()
+	 */
+	public final int getNumCollisions()
+	{
+		return numCollisions;
+	}
+
+	/**
+	 * @return total penetration of the collisions set into this record since
+	 *         resetStatistics()
+	 */
+	public final double getTotalPenetration()
+	{
+		return totalPenetration;
+	}
+
+	public final double getMaxPenetration()
+	{
+		return maxPenetration;
+	}
+
+	public final PhysicalEntity getEntity1()
+	{
+		return entity1;
+	}
+
+	public final PhysicalEntity getEntity2()
+	{
+		return entity2;
+	}
+
+	/**
+	 * @return unit normal in direction from entity1 to entity2
+	 */
+	public final Vec3D getCollisionNormal()
+	{
+		return collisionNormal;
+	}
+
+	public final double getPenetration()
+	{
+		return penetration;
+	}
+
+	/**
+	 * @return velocity of entity1 towards entity2, along the normal, when the
+	 *         collision was set (positive when approaching)
+	 */
+	public final double getRelativeNormalVelocity()
+	{
+		return relativeNormalVelocity;
+	}
+
+	/**
+	 * @return product of both coefficients of restitution, or 0 if the
+	 *         relative velocity is too small to bounce
+	 */
+	public final double getCombinedCoefficientOfRestitution()
+	{
+		return combinedCoefficientOfRestitution;
+	}
+
 	private final boolean areApproaching()
 	{
 		return relativeNormalVelocity >= 0;
@@ -129,7 +403,10 @@ public class PhysicalEntityCollision
 	// (speed2 - speed1) * (combinedCoefficientOfRestitution + 1) /
 	// (inverseMass1 + inverseMass2);
 
-	private void addCollisionImpulses()
+	/**
+	 * @return magnitude of the impulse applied to each entity
+	 */
+	private double addCollisionImpulses()
 	{
 		// Calculate change in velocities along collision normal
 		double impulse = calcCollisionImpulse(entity1.inverseMass,
@@ -143,6 +420,7 @@ public class PhysicalEntityCollision
 
 		// For tangential aspect of collision
 
+		return -impulse;
 	}
 
 	/**
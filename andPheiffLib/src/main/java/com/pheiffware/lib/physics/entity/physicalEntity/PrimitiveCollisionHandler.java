@@ -0,0 +1,20 @@
+package com.pheiffware.lib.physics.entity.physicalEntity;
+
+import com.pheiffware.lib.physics.InteractionException;
+
+/**
+ * Resolves collisions between a single collision primitive of one entity (such as an edge of a polygon) and another whole entity.  Registered with a CollisionDispatcher
+ * for one pair of shape types.
+ */
+public interface PrimitiveCollisionHandler
+{
+    /**
+     * @param entity1     entity with the first shape type this handler was registered for
+     * @param primitive1  index, in [0,entity1.getNumCollisionPrimitives()), of the primitive of entity1
+     * @param entity2     entity with the second shape type this handler was registered for
+     * @param elapsedTime length of the time step
+     * @param collision   reusable record which receives the collision
+     * @throws InteractionException
+     */
+    void resolve(PhysicalEntity entity1, int primitive1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision) throws InteractionException;
+}
@@ -0,0 +1,171 @@
+/*
+ * Created by Stephen Pheiffer.
+ * Do not edit, distribute, modify or use without his permission.
+ */
+package com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume;
+
+import com.pheiffware.lib.geometry.Vec3D;
+
+/**
+ * An axis aligned bounding box around an object.  For efficiency, this class is mutable and its bounds are public.
+ */
+public class BoundingBox
+{
+    public double minX, minY, minZ;
+    public double maxX, maxY, maxZ;
+
+    public BoundingBox()
+    {
+    }
+
+    public BoundingBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ)
+    {
+        set(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    public final void set(double minX, double minY, double minZ, double maxX, double maxY, double maxZ)
+    {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * Sets the bounds to exactly contain the given point.
+     *
+     * @param point
+     */
+    public final void setToPoint(Vec3D point)
+    {
+        set(point.x, point.y, point.z, point.x, point.y, point.z);
+    }
+
+    /**
+     * Grows the bounds, as necessary, to contain the given point.
+     *
+     * @param point
+     */
+    public final void include(Vec3D point)
+    {
+        if (point.x < minX)
+        {
+            minX = point.x;
+        }
+        if (point.x > maxX)
+        {
+            maxX = point.x;
+        }
+        if (point.y < minY)
+        {
+            minY = point.y;
+        }
+        if (point.y > maxY)
+        {
+            maxY = point.y;
+        }
+        if (point.z < minZ)
+        {
+            minZ = point.z;
+        }
+        if (point.z > maxZ)
+        {
+            maxZ = point.z;
+        }
+    }
+
+    public final boolean overlapping(BoundingBox otherBox)
+    {
+        return minX <= otherBox.maxX && maxX >= otherBox.minX
+                && minY <= otherBox.maxY && maxY >= otherBox.minY
+                && minZ <= otherBox.maxZ && maxZ >= otherBox.minZ;
+    }
+
+    /**
+     * Calculates the squared distance from a point to the box.
+     *
+     * @return 0 if the point is inside
+     */
+    public final double calcDistanceSquared(double x, double y, double z)
+    {
+        return calcDistanceSquared(minX, minY, minZ, maxX, maxY, maxZ, x, y, z);
+    }
+
+    /**
+     * Calculates the distance along a ray to where it enters the box.
+     *
+     * @param inverseDirectionX 1 / the ray direction's x component (infinite if it is 0)
+     * @return distance along the ray, in multiples of the direction's length, 0 if the origin is inside or Double.NaN if the ray misses
+     */
+    public final double calcRayDistance(double originX, double originY, double originZ, double inverseDirectionX, double inverseDirectionY, double inverseDirectionZ)
+    {
+        return calcRayDistance(minX, minY, minZ, maxX, maxY, maxZ, originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ);
+    }
+
+    /**
+     * Calculates the squared distance from a point to the given bounds.
+     */
+    public static double calcDistanceSquared(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double x, double y, double z)
+    {
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dy = Math.max(0, Math.max(minY - y, y - maxY));
+        double dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Calculates the distance along a ray to where it enters the given bounds (slab test).  Axes the ray doesn't move along (infinite inverse direction) are handled
+     * separately, as they would otherwise produce 0 * infinity.
+     */
+    public static double calcRayDistance(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double originX, double originY, double originZ,
+                                         double inverseDirectionX, double inverseDirectionY, double inverseDirectionZ)
+    {
+        double near = 0;
+        double far = Double.POSITIVE_INFINITY;
+        if (Double.isInfinite(inverseDirectionX))
+        {
+            if (originX < minX || originX > maxX)
+            {
+                return Double.NaN;
+            }
+        }
+        else
+        {
+            double t1 = (minX - originX) * inverseDirectionX;
+            double t2 = (maxX - originX) * inverseDirectionX;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        if (Double.isInfinite(inverseDirectionY))
+        {
+            if (originY < minY || originY > maxY)
+            {
+                return Double.NaN;
+            }
+        }
+        else
+        {
+            double t1 = (minY - originY) * inverseDirectionY;
+            double t2 = (maxY - originY) * inverseDirectionY;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        if (Double.isInfinite(inverseDirectionZ))
+        {
+            if (originZ < minZ || originZ > maxZ)
+            {
+                return Double.NaN;
+            }
+        }
+        else
+        {
+            double t1 = (minZ - originZ) * inverseDirectionZ;
+            double t2 = (maxZ - originZ) * inverseDirectionZ;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return near <= far ? near : Double.NaN;
+    }
+}
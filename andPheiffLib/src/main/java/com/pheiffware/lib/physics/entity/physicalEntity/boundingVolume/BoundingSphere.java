@@ -6,11 +6,123 @@ package com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume;
 
 import com.pheiffware.lib.geometry.Vec3D;
 
+import java.util.Random;
+
 /**
  * A bounding sphere around an object.
  */
 public class BoundingSphere
 {
+    //Relative tolerance for a point to count as inside, so rounding doesn't cause needless recalculation
+    private static final double CONTAINMENT_TOLERANCE = 1e-12;
+
+    /**
+     * Calculates the smallest circle containing all points, using Welzl's algorithm in its iterative form, in expected linear time.  Assumes all points have the same z.
+     *
+     * @param points at least 1 point
+     * @return new bounding sphere
+     */
+    public static BoundingSphere calcMinimal2D(Vec3D[] points)
+    {
+        //Expected linear time relies on a random order.  A fixed seed keeps results repeatable.
+        Vec3D[] shuffled = points.clone();
+        Random random = new Random(shuffled.length);
+        for (int i = shuffled.length - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            Vec3D swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+
+        //Circle as {centerX, centerY, radiusSquared}
+        double[] circle = {shuffled[0].x, shuffled[0].y, 0};
+        for (int i = 1; i < shuffled.length; i++)
+        {
+            Vec3D pi = shuffled[i];
+            if (contains(circle, pi))
+            {
+                continue;
+            }
+            //pi must be on the boundary of the circle enclosing points 0..i
+            setCircle(circle, pi.x, pi.y, 0);
+            for (int j = 0; j < i; j++)
+            {
+                Vec3D pj = shuffled[j];
+                if (contains(circle, pj))
+                {
+                    continue;
+                }
+                //pi and pj must both be on the boundary
+                setDiameter(circle, pi, pj);
+                for (int k = 0; k < j; k++)
+                {
+                    Vec3D pk = shuffled[k];
+                    if (!contains(circle, pk))
+                    {
+                        setCircumcircle(circle, pi, pj, pk);
+                    }
+                }
+            }
+        }
+        return new BoundingSphere(new Vec3D(circle[0], circle[1], points[0].z), Math.sqrt(circle[2]));
+    }
+
+    private static boolean contains(double[] circle, Vec3D point)
+    {
+        double dx = point.x - circle[0];
+        double dy = point.y - circle[1];
+        return dx * dx + dy * dy <= circle[2] * (1 + CONTAINMENT_TOLERANCE) + CONTAINMENT_TOLERANCE;
+    }
+
+    private static void setCircle(double[] circle, double centerX, double centerY, double radiusSquared)
+    {
+        circle[0] = centerX;
+        circle[1] = centerY;
+        circle[2] = radiusSquared;
+    }
+
+    private static void setDiameter(double[] circle, Vec3D p1, Vec3D p2)
+    {
+        double dx = p2.x - p1.x;
+        double dy = p2.y - p1.y;
+        setCircle(circle, (p1.x + p2.x) * 0.5, (p1.y + p2.y) * 0.5, (dx * dx + dy * dy) * 0.25);
+    }
+
+    private static void setCircumcircle(double[] circle, Vec3D p1, Vec3D p2, Vec3D p3)
+    {
+        double bx = p2.x - p1.x;
+        double by = p2.y - p1.y;
+        double cx = p3.x - p1.x;
+        double cy = p3.y - p1.y;
+        double d = 2 * (bx * cy - by * cx);
+        if (d == 0)
+        {
+            //Collinear: the farthest pair is a diameter
+            double d12 = bx * bx + by * by;
+            double d13 = cx * cx + cy * cy;
+            double d23 = (p3.x - p2.x) * (p3.x - p2.x) + (p3.y - p2.y) * (p3.y - p2.y);
+            if (d12 >= d13 && d12 >= d23)
+            {
+                setDiameter(circle, p1, p2);
+            }
+            else if (d13 >= d23)
+            {
+                setDiameter(circle, p1, p3);
+            }
+            else
+            {
+                setDiameter(circle, p2, p3);
+            }
+            return;
+        }
+        double b2 = bx * bx + by * by;
+        double c2 = cx * cx + cy * cy;
+        double ux = (cy * b2 - by * c2) / d;
+        double uy = (bx * c2 - cx * b2) / d;
+        setCircle(circle, p1.x + ux, p1.y + uy, ux * ux + uy * uy);
+    }
+
     public boolean overlapping(BoundingSphere otherSphere)
     {
         double distanceSquared = Vec3D.distanceSquared(center,
@@ -0,0 +1,372 @@
+package com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities;
+
+import com.pheiffware.lib.geometry.Geocalc;
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+/**
+ * Static terrain in the x-y plane: surface heights sampled at evenly spaced x
+ * positions, joined by straight segments (cells). Everything below the surface
+ * (greater y) is solid, so spheres which sink into it are pushed back out.
+ *
+ * A sphere is tested only against the cells under it, found directly from its
+ * x position, so cost doesn't depend on the size of the terrain. Each cell is
+ * tested against the spheres whose centers are over it, and each vertex only
+ * against spheres beyond both of its cells, so a sphere rolling over the join
+ * between two cells touches one or the other, never both, and is not snagged
+ * by a normal pointing along the surface. Only peaks (convex vertices) are
+ * ever touched.
+ */
+public class HeightfieldEntity extends PhysicalEntity
+{
+	public static final void resolveHeightfieldSphereCollision(
+			final HeightfieldEntity heightfield, final SphereEntity sphere,
+			final PhysicalEntityCollision collision)
+	{
+		Vec3D center = sphere.getCenter();
+		// A center which has sunk below the surface, as it can at the bottom
+		// of a pit where neither face reaches it, is first pushed back out
+		// through the cell it is over
+		if (center.y > heightfield.getSurfaceY(center.x))
+		{
+			heightfield.resolveCellSphereCollision((int) Math.min(
+					heightfield.calcCell(center.x), heightfield.numCells - 1),
+					sphere, collision, true);
+		}
+		double radius = sphere.getRadius();
+		double firstCell = heightfield.calcCell(center.x - radius);
+		double lastCell = heightfield.calcCell(center.x + radius);
+		if (lastCell < 0 || firstCell >= heightfield.numCells)
+		{
+			return;
+		}
+		int first = (int) Math.max(0, firstCell);
+		int last = (int) Math.min(heightfield.numCells - 1, lastCell);
+		for (int cell = first; cell <= last; cell++)
+		{
+			heightfield.resolveVertexSphereCollision(cell, sphere, collision);
+			heightfield.resolveCellSphereCollision(cell, sphere, collision,
+					false);
+		}
+		heightfield.resolveVertexSphereCollision(last + 1, sphere, collision);
+	}
+
+	// x of the first sample
+	private double originX;
+
+	// Added to every height
+	private double originY;
+
+	// Distance, along x, between samples
+	private final double spacing;
+	private final double inverseSpacing;
+
+	// Surface height (y) at each sample, relative to originY
+	private final double[] heights;
+
+	// Number of segments between samples
+	private final int numCells;
+
+	private final double minHeight;
+	private final double maxHeight;
+
+	/**
+	 * @param originX
+	 *            x of the first sample
+	 * @param originY
+	 *            added to every height
+	 * @param spacing
+	 *            distance, along x, between samples (> 0)
+	 * @param heights
+	 *            surface height (y) at each sample, at least 2. Not copied and
+	 *            must not be changed afterwards.
+	 * @param coefficientOfRestitution
+	 */
+	public HeightfieldEntity(double originX, double originY, double spacing,
+			double[] heights, double coefficientOfRestitution)
+	{
+		super(new Vec3D(0, 0, 0), Double.POSITIVE_INFINITY,
+				coefficientOfRestitution, CollisionDispatcher.SHAPE_HEIGHTFIELD);
+		if (heights.length < 2 || !(spacing > 0))
+		{
+			throw new IllegalArgumentException(
+					"A heightfield needs at least 2 samples and positive spacing");
+		}
+		this.originX = originX;
+		this.originY = originY;
+		this.spacing = spacing;
+		inverseSpacing = 1.0 / spacing;
+		this.heights = heights;
+		numCells = heights.length - 1;
+		double min = heights[0];
+		double max = heights[0];
+		for (int i = 1; i < heights.length; i++)
+		{
+			min = Math.min(min, heights[i]);
+			max = Math.max(max, heights[i]);
+		}
+		minHeight = min;
+		maxHeight = max;
+	}
+
+	/**
+	 * Resolves contact between a sphere and the face of a cell. Unless sunk,
+	 * only spheres whose centers are over the cell are considered. Cells are
+	 * half open, so a center exactly over a vertex is over just the later
+	 * cell.
+	 *
+	 * @param sunk
+	 *            the sphere's center is below the cell, so is pushed out
+	 *            along its normal wherever it is along the cell
+	 */
+	private void resolveCellSphereCollision(int cell, SphereEntity sphere,
+			PhysicalEntityCollision collision, boolean sunk)
+	{
+		Vec3D center = sphere.getCenter();
+		double x1 = originX + cell * spacing;
+		double y1 = originY + heights[cell];
+		double rise = heights[cell + 1] - heights[cell];
+		double length = Math.sqrt(spacing * spacing + rise * rise);
+		double directionX = spacing / length;
+		double directionY = rise / length;
+		double relativeX = center.x - x1;
+		double relativeY = center.y - y1;
+		double along = relativeX * directionX + relativeY * directionY;
+		if (!sunk
+				&& (along < 0 || along > length || along == length
+						&& cell < numCells - 1))
+		{
+			return;
+		}
+		// Points up (negative y), out of the ground
+		double normalX = directionY;
+		double normalY = -directionX;
+		double distance = relativeX * normalX + relativeY * normalY;
+		double penetration = sphere.getRadius() - distance;
+		if (penetration <= 0)
+		{
+			return;
+		}
+		collision.set(this, sphere, normalX, normalY, 0, penetration);
+		collision.setContactPoint(center.x - normalX * distance, center.y
+				- normalY * distance, center.z);
+		collision.resolve();
+	}
+
+	/**
+	 * Resolves contact between a sphere and a sample point. Only spheres
+	 * beyond the end of the cell before it and before the start of the cell
+	 * after it are considered, which happens only above peaks and off the ends
+	 * of the terrain. Anywhere else, a cell's face is at least as close.
+	 */
+	private void resolveVertexSphereCollision(int vertex, SphereEntity sphere,
+			PhysicalEntityCollision collision)
+	{
+		Vec3D center = sphere.getCenter();
+		double vertexX = originX + vertex * spacing;
+		double vertexY = originY + heights[vertex];
+		double relativeX = center.x - vertexX;
+		double relativeY = center.y - vertexY;
+		if (vertex > 0)
+		{
+			double riseBefore = heights[vertex] - heights[vertex - 1];
+			double alongBefore = relativeX * spacing + relativeY * riseBefore;
+			if (alongBefore < 0 || alongBefore == 0 && vertex == numCells)
+			{
+				return;
+			}
+			if (vertex < numCells
+					&& heights[vertex + 1] - heights[vertex] <= riseBefore)
+			{
+				// A flat join or a valley
+				return;
+			}
+		}
+		if (vertex < numCells)
+		{
+			double riseAfter = heights[vertex + 1] - heights[vertex];
+			if (relativeX * spacing + relativeY * riseAfter >= 0)
+			{
+				return;
+			}
+		}
+		double radius = sphere.getRadius();
+		double distanceSquared = relativeX * relativeX + relativeY * relativeY;
+		if (distanceSquared >= radius * radius || distanceSquared == 0)
+		{
+			return;
+		}
+		double distance = Math.sqrt(distanceSquared);
+		collision.set(this, sphere, relativeX / distance, relativeY / distance,
+				0, radius - distance);
+		collision.setContactPoint(vertexX, vertexY, center.z);
+		collision.resolve();
+	}
+
+	/**
+	 * @return the (unclamped) index of the cell containing x
+	 */
+	private double calcCell(double x)
+	{
+		return Math.floor((x - originX) * inverseSpacing);
+	}
+
+	/**
+	 * @param x
+	 * @return y of the surface at x, or Double.NaN if x is off the terrain
+	 */
+	public final double getSurfaceY(double x)
+	{
+		double cell = calcCell(x);
+		if (cell < 0 || cell > numCells || cell == numCells
+				&& x > originX + numCells * spacing)
+		{
+			return Double.NaN;
+		}
+		int index = (int) Math.min(cell, numCells - 1);
+		double fraction = (x - originX) * inverseSpacing - index;
+		return originY + heights[index] + (heights[index + 1] - heights[index])
+				* fraction;
+	}
+
+	/**
+	 * Rays are traced in the x-y plane, through the cells they cross in
+	 * order. Rays starting underground hit at 0.
+	 */
+	@Override
+	public double calcRayDistance(double originX, double originY,
+			double originZ, double directionX, double directionY,
+			double directionZ, BoundingBox bounds)
+	{
+		if (originY >= getSurfaceY(originX))
+		{
+			return 0;
+		}
+		double cell = calcCell(originX);
+		int step;
+		if (directionX > 0)
+		{
+			step = 1;
+			cell = Math.max(cell, 0);
+		}
+		else if (directionX < 0)
+		{
+			step = -1;
+			cell = Math.min(cell, numCells - 1);
+		}
+		else
+		{
+			// Straight up or down, through the cell containing the origin
+			step = 0;
+			cell = Math.min(cell, numCells - 1);
+		}
+		if (cell < 0 || cell >= numCells)
+		{
+			return Double.NaN;
+		}
+		for (int index = (int) cell; index >= 0 && index < numCells; index += step)
+		{
+			double x1 = this.originX + index * spacing;
+			double distance = Geocalc.calcRaySegmentDistance2D(x1, this.originY
+					+ heights[index], x1 + spacing, this.originY
+					+ heights[index + 1], originX, originY, directionX,
+					directionY);
+			if (!Double.isNaN(distance) || step == 0)
+			{
+				return distance;
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Measured in the x-y plane. Points underground are at 0.
+	 */
+	@Override
+	public double calcDistance(double x, double y, double z, BoundingBox bounds)
+	{
+		if (y >= getSurfaceY(x))
+		{
+			return 0;
+		}
+		// The nearest cell, along x, bounds the distance, which in turn bounds
+		// which cells need checking
+		int nearestCell = (int) Math.max(0, Math.min(numCells - 1, calcCell(x)));
+		double distanceSquared = calcCellDistanceSquared(nearestCell, x, y);
+		double reach = Math.sqrt(distanceSquared);
+		int first = (int) Math.max(0, calcCell(x - reach));
+		int last = (int) Math.min(numCells - 1, calcCell(x + reach));
+		for (int cell = first; cell <= last; cell++)
+		{
+			distanceSquared = Math.min(distanceSquared,
+					calcCellDistanceSquared(cell, x, y));
+		}
+		return Math.sqrt(distanceSquared);
+	}
+
+	private double calcCellDistanceSquared(int cell, double x, double y)
+	{
+		double x1 = originX + cell * spacing;
+		return Geocalc.calcPointSegmentDistanceSquared(x1, originY
+				+ heights[cell], 0, x1 + spacing, originY + heights[cell + 1],
+				0, x, y, 0);
+	}
+
+	@Override
+	public void move(double tx, double ty, double tz)
+	{
+		originX += tx;
+		originY += ty;
+	}
+
+	@Override
+	public void updateMotion(double elapsedTime)
+	{
+		// Never moves
+	}
+
+	@Override
+	public boolean isImmovable()
+	{
+		return true;
+	}
+
+	@Override
+	public void calcBoundingBox(BoundingBox boundingBox)
+	{
+		boundingBox.set(originX, originY + minHeight, 0, originX + numCells
+				* spacing, originY + maxHeight, 0);
+	}
+
+	public final double getOriginX()
+	{
+		return originX;
+	}
+
+	public final double getOriginY()
+	{
+		return originY;
+	}
+
+	public final double getSpacing()
+	{
+		return spacing;
+	}
+
+	public final int getNumSamples()
+	{
+		return heights.length;
+	}
+
+	/**
+	 * @param sample
+	 * @return surface height at the sample, relative to getOriginY()
+	 */
+	public final double getHeight(int sample)
+	{
+		return heights[sample];
+	}
+}
@@ -4,14 +4,17 @@
  */
 package com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities;
 
+import com.pheiffware.lib.geometry.Geocalc;
 import com.pheiffware.lib.geometry.Vec3D;
 import com.pheiffware.lib.geometry.intersect.IntersectCalc;
 import com.pheiffware.lib.geometry.intersect.IntersectionInfo;
-import com.pheiffware.lib.geometry.shapes.Sphere;
 import com.pheiffware.lib.geometry.shapes.LineSegment;
-import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+import java.nio.ByteBuffer;
 
 /** 
  *  
@@ -20,15 +23,14 @@ public abstract class LineSegmentEntity extends PhysicalEntity
 {
 	public static final void resolveLineSphereCollision(
 			final LineSegmentEntity lineSegmentEntity,
-			final SphereEntity sphere, final double elapsedTime)
+			final SphereEntity sphere, final double elapsedTime,
+			final PhysicalEntityCollision collision)
 	{
-		IntersectionInfo intersectionInfo = IntersectCalc.calcIntersect2D(
-				lineSegmentEntity.lineSegment, new Sphere(sphere.getCenter(),
-						sphere.getRadius()));
-		if (intersectionInfo != null)
+		IntersectionInfo intersectionInfo = collision.getIntersectionInfo();
+		if (IntersectCalc.calcIntersect2D(lineSegmentEntity.lineSegment,
+				sphere.getCenter(), sphere.getRadius(), intersectionInfo))
 		{
-			PhysicalEntityCollision collision = new PhysicalEntityCollision(
-					lineSegmentEntity, sphere, intersectionInfo);
+			collision.set(lineSegmentEntity, sphere, intersectionInfo);
 			collision.resolve();
 		}
 	}
@@ -38,7 +40,8 @@ public abstract class LineSegmentEntity extends PhysicalEntity
 	public LineSegmentEntity(Vec3D p1, Vec3D p2, int normalSide,
 			Vec3D velocity, double mass, double coefficientOfRestitution)
 	{
-		super(velocity, mass, coefficientOfRestitution);
+		super(velocity, mass, coefficientOfRestitution,
+				CollisionDispatcher.SHAPE_LINE_SEGMENT);
 		lineSegment = new LineSegment(p1, p2, normalSide);
 	}
 
@@ -54,19 +57,100 @@ public abstract class LineSegmentEntity extends PhysicalEntity
 		lineSegment.p2.addTo(x, y, z);
 	}
 
-	public final LineSegment getLineSegment()
+	@Override
+	public void writeState(ByteBuffer buffer)
 	{
-		return lineSegment;
+		super.writeState(buffer);
+		buffer.putDouble(lineSegment.p1.x);
+		buffer.putDouble(lineSegment.p1.y);
+		buffer.putDouble(lineSegment.p1.z);
+	}
+
+	@Override
+	public void readState(ByteBuffer buffer)
+	{
+		super.readState(buffer);
+		Vec3D p1 = lineSegment.p1;
+		move(buffer.getDouble() - p1.x, buffer.getDouble() - p1.y,
+				buffer.getDouble() - p1.z);
 	}
 
 	@Override
-	public void resolveCollision(PhysicalEntity physicalEntity,
-			double elapsedTime) throws InteractionException
+	public void calcBoundingBox(BoundingBox boundingBox)
 	{
-		if (physicalEntity instanceof SphereEntity)
+		boundingBox.setToPoint(lineSegment.p1);
+		boundingBox.include(lineSegment.p2);
+	}
+
+	/**
+	 * Line segments are hit in the x-y plane.
+	 */
+	@Override
+	public double calcRayDistance(double originX, double originY,
+			double originZ, double directionX, double directionY,
+			double directionZ, BoundingBox bounds)
+	{
+		Vec3D p1 = lineSegment.p1;
+		Vec3D p2 = lineSegment.p2;
+		return Geocalc.calcRaySegmentDistance2D(p1.x, p1.y, p2.x, p2.y,
+				originX, originY, directionX, directionY);
+	}
+
+	@Override
+	public double calcDistance(double x, double y, double z, BoundingBox bounds)
+	{
+		Vec3D p1 = lineSegment.p1;
+		Vec3D p2 = lineSegment.p2;
+		return Math.sqrt(Geocalc.calcPointSegmentDistanceSquared(p1.x, p1.y,
+				p1.z, p2.x, p2.y, p2.z, x, y, z));
+	}
+
+	/**
+	 * Placed at the segment's midpoint, with its half length as radius and
+	 * rotated so the x-axis runs from p1 to p2.
+	 */
+	@Override
+	public void writeRenderInstance(float[] data, int offset,
+			BoundingBox boundingBox)
+	{
+		Vec3D p1 = lineSegment.p1;
+		Vec3D p2 = lineSegment.p2;
+		double dx = p2.x - p1.x;
+		double dy = p2.y - p1.y;
+		double dz = p2.z - p1.z;
+		double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		// Rotation from the x-axis to the unit direction d is the half way
+		// quaternion: (x cross d, 1 + x dot d), normalized
+		double qy = 0;
+		double qz = 0;
+		double qw = 1;
+		if (length > 0)
 		{
-			LineSegmentEntity.resolveLineSphereCollision(this,
-					(SphereEntity) physicalEntity, elapsedTime);
+			qy = -dz / length;
+			qz = dy / length;
+			qw = 1 + dx / length;
+			double norm = Math.sqrt(qy * qy + qz * qz + qw * qw);
+			if (norm < 1e-9)
+			{
+				// Pointing down the negative x-axis: half turn about z
+				qy = 0;
+				qz = 1;
+				qw = 0;
+			}
+			else
+			{
+				qy /= norm;
+				qz /= norm;
+				qw /= norm;
+			}
 		}
+		writeRenderInstance(data, offset, (p1.x + p2.x) * 0.5,
+				(p1.y + p2.y) * 0.5, (p1.z + p2.z) * 0.5, length * 0.5, 0, qy,
+				qz, qw);
+	}
+
+	public final LineSegment getLineSegment()
+	{
+		return lineSegment;
 	}
 }
@@ -0,0 +1,485 @@
+package com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.Integrator;
+
+/**
+ * Structure of arrays storage for dynamic sphere bodies.  Position, velocity, accumulated force, inverse mass and radius are held in parallel primitive arrays so that
+ * integration is a single tight loop over contiguous memory rather than a virtual call and several pointer dereferences per body.
+ * <p/>
+ * Attached SphereEntity objects remain usable as views.  Their mutators (move, applyImpulse, addForce) write through to the store, and integrate() writes the resulting
+ * positions and velocities back to each entity's Vec3D fields, so narrow phase code can continue to read them directly.  Code must not assign to an attached entity's center or
+ * velocity fields directly, as those changes would be overwritten by the next integration.
+ */
+public class PackedSphereStore
+{
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int size;
+
+    private double[] positionX;
+    private double[] positionY;
+    private double[] positionZ;
+    private double[] velocityX;
+    private double[] velocityY;
+    private double[] velocityZ;
+    private double[] forceX;
+    private double[] forceY;
+    private double[] forceZ;
+    private double[] inverseMass;
+    private double[] radius;
+    //1 if affected by gravity, 0 otherwise.  Used as a multiplier to avoid a branch.
+    private double[] gravityFactor;
+    //Sleeping bodies are skipped by integration
+    private boolean[] sleeping;
+    //Acceleration of each body's last velocity Verlet step, if it has had one since it was added or woken
+    private double[] previousAccelerationX;
+    private double[] previousAccelerationY;
+    private double[] previousAccelerationZ;
+    private boolean[] hasPreviousAcceleration;
+    private SphereEntity[] entities;
+
+    //Acceleration applied to every body which doesn't ignore gravity during the next integration
+    private double gravityX, gravityY, gravityZ;
+
+    public PackedSphereStore()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackedSphereStore(int initialCapacity)
+    {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    /**
+     * Adds a sphere entity to the store and attaches it as a view.  The entity's current state is copied in.
+     *
+     * @param sphereEntity must not already be attached to a store
+     * @return index of the body in the store
+     */
+    public int add(SphereEntity sphereEntity)
+    {
+        if (sphereEntity.isPacked())
+        {
+            throw new IllegalStateException("Sphere entity is already stored in a packed store");
+        }
+        if (size == entities.length)
+        {
+            allocate(entities.length * 2);
+        }
+        int index = size++;
+        Vec3D center = sphereEntity.getCenter();
+        positionX[index] = center.x;
+        positionY[index] = center.y;
+        positionZ[index] = center.z;
+        velocityX[index] = sphereEntity.velocity.x;
+        velocityY[index] = sphereEntity.velocity.y;
+        velocityZ[index] = sphereEntity.velocity.z;
+        forceX[index] = 0;
+        forceY[index] = 0;
+        forceZ[index] = 0;
+        inverseMass[index] = sphereEntity.inverseMass;
+        radius[index] = sphereEntity.getRadius();
+        gravityFactor[index] = sphereEntity.ignoresGravity() ? 0 : 1;
+        sleeping[index] = sphereEntity.isSleeping();
+        previousAccelerationX[index] = sphereEntity.getPreviousAccelerationX();
+        previousAccelerationY[index] = sphereEntity.getPreviousAccelerationY();
+        previousAccelerationZ[index] = sphereEntity.getPreviousAccelerationZ();
+        hasPreviousAcceleration[index] = sphereEntity.hasPreviousAcceleration();
+        entities[index] = sphereEntity;
+        sphereEntity.attach(this, index);
+        return index;
+    }
+
+    /**
+     * Removes a sphere entity from the store and detaches it, keeping its current state.  The last body in the store is moved into its place.
+     *
+     * @param sphereEntity must be attached to this store
+     */
+    public void remove(SphereEntity sphereEntity)
+    {
+        int index = sphereEntity.getPackedIndex();
+        if (!sphereEntity.isPacked() || entities[index] != sphereEntity)
+        {
+            throw new IllegalStateException("Sphere entity is not stored in this packed store");
+        }
+        copyPreviousAcceleration(index);
+        sphereEntity.attach(null, -1);
+        int last = --size;
+        if (index != last)
+        {
+            positionX[index] = positionX[last];
+            positionY[index] = positionY[last];
+            positionZ[index] = positionZ[last];
+            velocityX[index] = velocityX[last];
+            velocityY[index] = velocityY[last];
+            velocityZ[index] = velocityZ[last];
+            forceX[index] = forceX[last];
+            forceY[index] = forceY[last];
+            forceZ[index] = forceZ[last];
+            inverseMass[index] = inverseMass[last];
+            radius[index] = radius[last];
+            gravityFactor[index] = gravityFactor[last];
+            sleeping[index] = sleeping[last];
+            previousAccelerationX[index] = previousAccelerationX[last];
+            previousAccelerationY[index] = previousAccelerationY[last];
+            previousAccelerationZ[index] = previousAccelerationZ[last];
+            hasPreviousAcceleration[index] = hasPreviousAcceleration[last];
+            entities[index] = entities[last];
+            entities[index].attach(this, index);
+        }
+        entities[last] = null;
+    }
+
+    /**
+     * Detaches all entities and empties the store.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            copyPreviousAcceleration(i);
+            entities[i].attach(null, -1);
+            entities[i] = null;
+        }
+        size = 0;
+        gravityX = gravityY = gravityZ = 0;
+    }
+
+    /**
+     * Adds an acceleration to every body which does not ignore gravity, for the next integration only.
+     *
+     * @param acceleration
+     */
+    public void addGravity(Vec3D acceleration)
+    {
+        gravityX += acceleration.x;
+        gravityY += acceleration.y;
+        gravityZ += acceleration.z;
+    }
+
+    /**
+     * Advances all awake bodies by one time step, assuming constant acceleration over the step (the same scheme as PhysicalEntity.updateMotion).  Accumulated forces and gravity are
+     * then cleared and new positions and velocities are written back to the attached entities.
+     *
+     * @param elapsedTime
+     */
+    public void integrate(double elapsedTime)
+    {
+        integrate(elapsedTime, Integrator.CONSTANT_ACCELERATION);
+    }
+
+    /**
+     * Advances all awake bodies by one time step with the given integrator, then clears accumulated forces and gravity and writes new positions and velocities back to the
+     * attached entities.  Each integrator has its own loop.
+     *
+     * @param elapsedTime
+     * @param integrator
+     */
+    public void integrate(double elapsedTime, Integrator integrator)
+    {
+        switch (integrator)
+        {
+            case SEMI_IMPLICIT_EULER:
+                integrateSemiImplicitEuler(elapsedTime);
+                break;
+            case VELOCITY_VERLET:
+                integrateVelocityVerlet(elapsedTime);
+                break;
+            default:
+                integrateConstantAcceleration(elapsedTime);
+                break;
+        }
+        gravityX = gravityY = gravityZ = 0;
+        writeBack();
+    }
+
+    private void integrateConstantAcceleration(double elapsedTime)
+    {
+        final double atFactor = 0.5 * elapsedTime * elapsedTime;
+        final double gx = gravityX;
+        final double gy = gravityY;
+        final double gz = gravityZ;
+        final int size = this.size;
+        final boolean[] sleeping = this.sleeping;
+        for (int i = 0; i < size; i++)
+        {
+            if (sleeping[i])
+            {
+                continue;
+            }
+            double im = inverseMass[i];
+            double g = gravityFactor[i];
+            double ax = forceX[i] * im + gx * g;
+            double ay = forceY[i] * im + gy * g;
+            double az = forceZ[i] * im + gz * g;
+            positionX[i] += ax * atFactor + velocityX[i] * elapsedTime;
+            positionY[i] += ay * atFactor + velocityY[i] * elapsedTime;
+            positionZ[i] += az * atFactor + velocityZ[i] * elapsedTime;
+            velocityX[i] += ax * elapsedTime;
+            velocityY[i] += ay * elapsedTime;
+            velocityZ[i] += az * elapsedTime;
+            forceX[i] = 0;
+            forceY[i] = 0;
+            forceZ[i] = 0;
+        }
+    }
+
+    private void integrateSemiImplicitEuler(double elapsedTime)
+    {
+        final double gx = gravityX * elapsedTime;
+        final double gy = gravityY * elapsedTime;
+        final double gz = gravityZ * elapsedTime;
+        final int size = this.size;
+        final boolean[] sleeping = this.sleeping;
+        for (int i = 0; i < size; i++)
+        {
+            if (sleeping[i])
+            {
+                continue;
+            }
+            double factor = inverseMass[i] * elapsedTime;
+            double g = gravityFactor[i];
+            double vx = velocityX[i] + forceX[i] * factor + gx * g;
+            double vy = velocityY[i] + forceY[i] * factor + gy * g;
+            double vz = velocityZ[i] + forceZ[i] * factor + gz * g;
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            velocityZ[i] = vz;
+            positionX[i] += vx * elapsedTime;
+            positionY[i] += vy * elapsedTime;
+            positionZ[i] += vz * elapsedTime;
+            forceX[i] = 0;
+            forceY[i] = 0;
+            forceZ[i] = 0;
+        }
+    }
+
+    private void integrateVelocityVerlet(double elapsedTime)
+    {
+        final double atFactor = 0.5 * elapsedTime * elapsedTime;
+        final double halfTime = 0.5 * elapsedTime;
+        final double gx = gravityX;
+        final double gy = gravityY;
+        final double gz = gravityZ;
+        final int size = this.size;
+        final boolean[] sleeping = this.sleeping;
+        final boolean[] hasPreviousAcceleration = this.hasPreviousAcceleration;
+        for (int i = 0; i < size; i++)
+        {
+            if (sleeping[i])
+            {
+                continue;
+            }
+            double im = inverseMass[i];
+            double g = gravityFactor[i];
+            double ax = forceX[i] * im + gx * g;
+            double ay = forceY[i] * im + gy * g;
+            double az = forceZ[i] * im + gz * g;
+            double vx = velocityX[i];
+            double vy = velocityY[i];
+            double vz = velocityZ[i];
+            //Correct the velocity the last step predicted, assuming acceleration stayed the same
+            if (hasPreviousAcceleration[i])
+            {
+                vx += (ax - previousAccelerationX[i]) * halfTime;
+                vy += (ay - previousAccelerationY[i]) * halfTime;
+                vz += (az - previousAccelerationZ[i]) * halfTime;
+            }
+            hasPreviousAcceleration[i] = true;
+            previousAccelerationX[i] = ax;
+            previousAccelerationY[i] = ay;
+            previousAccelerationZ[i] = az;
+            positionX[i] += ax * atFactor + vx * elapsedTime;
+            positionY[i] += ay * atFactor + vy * elapsedTime;
+            positionZ[i] += az * atFactor + vz * elapsedTime;
+            velocityX[i] = vx + ax * elapsedTime;
+            velocityY[i] = vy + ay * elapsedTime;
+            velocityZ[i] = vz + az * elapsedTime;
+            forceX[i] = 0;
+            forceY[i] = 0;
+            forceZ[i] = 0;
+        }
+    }
+
+    /**
+     * Copies packed position and velocity back to the attached entities' fields.
+     */
+    private void writeBack()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if (sleeping[i])
+            {
+                continue;
+            }
+            SphereEntity entity = entities[i];
+            Vec3D center = entity.sphere.center;
+            center.x = positionX[i];
+            center.y = positionY[i];
+            center.z = positionZ[i];
+            Vec3D velocity = entity.velocity;
+            velocity.x = velocityX[i];
+            velocity.y = velocityY[i];
+            velocity.z = velocityZ[i];
+        }
+    }
+
+    final void move(int index, double tx, double ty, double tz)
+    {
+        positionX[index] += tx;
+        positionY[index] += ty;
+        positionZ[index] += tz;
+    }
+
+    final void setVelocity(int index, double vx, double vy, double vz)
+    {
+        velocityX[index] = vx;
+        velocityY[index] = vy;
+        velocityZ[index] = vz;
+    }
+
+    final void setPreviousAcceleration(int index, boolean hasPreviousAcceleration, double ax, double ay, double az)
+    {
+        this.hasPreviousAcceleration[index] = hasPreviousAcceleration;
+        previousAccelerationX[index] = ax;
+        previousAccelerationY[index] = ay;
+        previousAccelerationZ[index] = az;
+    }
+
+    /**
+     * Copies a body's velocity Verlet state to its entity, which is only kept up to date when needed.
+     */
+    final void copyPreviousAcceleration(int index)
+    {
+        entities[index].setPreviousAcceleration(hasPreviousAcceleration[index], previousAccelerationX[index], previousAccelerationY[index], previousAccelerationZ[index]);
+    }
+
+    final void addVelocity(int index, double vx, double vy, double vz)
+    {
+        velocityX[index] += vx;
+        velocityY[index] += vy;
+        velocityZ[index] += vz;
+    }
+
+    final void addForce(int index, double fx, double fy, double fz)
+    {
+        forceX[index] += fx;
+        forceY[index] += fy;
+        forceZ[index] += fz;
+    }
+
+    final void setIgnoresGravity(int index, boolean ignoresGravity)
+    {
+        gravityFactor[index] = ignoresGravity ? 0 : 1;
+    }
+
+    final void setSleeping(int index, boolean sleeping)
+    {
+        this.sleeping[index] = sleeping;
+        if (sleeping)
+        {
+            velocityX[index] = velocityY[index] = velocityZ[index] = 0;
+            forceX[index] = forceY[index] = forceZ[index] = 0;
+            hasPreviousAcceleration[index] = false;
+        }
+    }
+
+    public boolean isSleeping(int index)
+    {
+        return sleeping[index];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public SphereEntity getEntity(int index)
+    {
+        return entities[index];
+    }
+
+    public double getPositionX(int index)
+    {
+        return positionX[index];
+    }
+
+    public double getPositionY(int index)
+    {
+        return positionY[index];
+    }
+
+    public double getPositionZ(int index)
+    {
+        return positionZ[index];
+    }
+
+    public double getVelocityX(int index)
+    {
+        return velocityX[index];
+    }
+
+    public double getVelocityY(int index)
+    {
+        return velocityY[index];
+    }
+
+    public double getVelocityZ(int index)
+    {
+        return velocityZ[index];
+    }
+
+    public double getRadius(int index)
+    {
+        return radius[index];
+    }
+
+    private void allocate(int capacity)
+    {
+        positionX = copyOf(positionX, capacity);
+        positionY = copyOf(positionY, capacity);
+        positionZ = copyOf(positionZ, capacity);
+        velocityX = copyOf(velocityX, capacity);
+        velocityY = copyOf(velocityY, capacity);
+        velocityZ = copyOf(velocityZ, capacity);
+        forceX = copyOf(forceX, capacity);
+        forceY = copyOf(forceY, capacity);
+        forceZ = copyOf(forceZ, capacity);
+        inverseMass = copyOf(inverseMass, capacity);
+        radius = copyOf(radius, capacity);
+        gravityFactor = copyOf(gravityFactor, capacity);
+        previousAccelerationX = copyOf(previousAccelerationX, capacity);
+        previousAccelerationY = copyOf(previousAccelerationY, capacity);
+        previousAccelerationZ = copyOf(previousAccelerationZ, capacity);
+        sleeping = copyOf(sleeping, capacity);
+        hasPreviousAcceleration = copyOf(hasPreviousAcceleration, capacity);
+        SphereEntity[] newEntities = new SphereEntity[capacity];
+        if (entities != null)
+        {
+            System.arraycopy(entities, 0, newEntities, 0, size);
+        }
+        entities = newEntities;
+    }
+
+    private boolean[] copyOf(boolean[] array, int capacity)
+    {
+        boolean[] newArray = new boolean[capacity];
+        if (array != null)
+        {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+
+    private double[] copyOf(double[] array, int capacity)
+    {
+        double[] newArray = new double[capacity];
+        if (array != null)
+        {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+}
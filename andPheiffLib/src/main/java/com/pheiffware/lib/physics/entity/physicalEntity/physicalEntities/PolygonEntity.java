@@ -4,36 +4,106 @@
  */
 package com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities;
 
+import com.pheiffware.lib.geometry.Geocalc;
 import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.geometry.intersect.ContactManifold;
 import com.pheiffware.lib.geometry.intersect.IntersectCalc;
 import com.pheiffware.lib.geometry.intersect.IntersectionInfo;
 import com.pheiffware.lib.geometry.shapes.LineSegment;
-import com.pheiffware.lib.geometry.shapes.Sphere;
-import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
 import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingSphere;
 
+import java.nio.ByteBuffer;
+
 /**
- * A polygon entity which can interact with circles.
+ * A convex polygon entity which can interact with circles and other polygons.
  */
 public class PolygonEntity extends PhysicalEntity
 {
     public static void resolvePolygonSphereCollision(
             PolygonEntity polygonEntity, SphereEntity sphereEntity,
-            double elapsedTime)
+            double elapsedTime, PhysicalEntityCollision collision)
     {
+        BoundingSphere boundingSphere = polygonEntity.boundingSphere;
+        double reach = boundingSphere.getRadius() + sphereEntity.getRadius();
+        if (Vec3D.distanceSquared(boundingSphere.getCenter(), sphereEntity.getCenter()) > reach * reach)
+        {
+            return;
+        }
         for (LineSegment lineSegment : polygonEntity.lineSegments)
         {
-            IntersectionInfo pointOfImpact = IntersectCalc.calcIntersect2D(
-                    lineSegment, new Sphere(sphereEntity.getCenter(),
-                            sphereEntity.getRadius()));
-            if (pointOfImpact != null)
+            resolveSegmentSphereCollision(polygonEntity, lineSegment, sphereEntity, collision);
+        }
+    }
+
+    /**
+     * Resolves a collision between a single edge of a polygon and a sphere.
+     *
+     * @param polygonEntity
+     * @param lineSegment   one of polygonEntity's line segments
+     * @param sphereEntity
+     * @param collision     reusable record which receives the collision
+     */
+    public static void resolveSegmentSphereCollision(
+            PolygonEntity polygonEntity, LineSegment lineSegment,
+            SphereEntity sphereEntity, PhysicalEntityCollision collision)
+    {
+        IntersectionInfo pointOfImpact = collision.getIntersectionInfo();
+        if (IntersectCalc.calcIntersect2D(lineSegment, sphereEntity.getCenter(),
+                sphereEntity.getRadius(), pointOfImpact))
+        {
+            collision.set(polygonEntity, sphereEntity, pointOfImpact);
+            collision.resolve();
+        }
+    }
+
+    /**
+     * Resolves a collision between one edge of a polygon, by index, and a sphere.  Used when the broad phase reports edges individually.
+     *
+     * @param polygonEntity
+     * @param edge          index in [0,polygonEntity.getNumCollisionPrimitives())
+     * @param sphereEntity
+     * @param collision     reusable record which receives the collision
+     */
+    public static void resolveEdgeSphereCollision(
+            PolygonEntity polygonEntity, int edge,
+            SphereEntity sphereEntity, PhysicalEntityCollision collision)
+    {
+        resolveSegmentSphereCollision(polygonEntity, polygonEntity.lineSegments[edge], sphereEntity, collision);
+    }
+
+    /**
+     * Resolves a collision between 2 convex polygons, using the separating axis theorem.  Polygons whose bounding spheres don't overlap are rejected before any per
+     * edge work.  The contact manifold is left in collision.getContactManifold().  As polygons don't rotate, the collision is resolved once, at the deepest contact point.
+     *
+     * @param polygonEntity1
+     * @param polygonEntity2
+     * @param elapsedTime
+     * @param collision      reusable record which receives the collision
+     */
+    public static void resolvePolygonPolygonCollision(
+            PolygonEntity polygonEntity1, PolygonEntity polygonEntity2,
+            double elapsedTime, PhysicalEntityCollision collision)
+    {
+        if (!polygonEntity1.boundingSphere.overlapping(polygonEntity2.boundingSphere))
+        {
+            return;
+        }
+        ContactManifold manifold = collision.getContactManifold();
+        if (IntersectCalc.calcPolygonIntersect2D(polygonEntity1.points, polygonEntity2.points, manifold))
+        {
+            Vec3D normal = manifold.normal;
+            collision.set(polygonEntity1, polygonEntity2, normal.x, normal.y, normal.z, manifold.getMaxPenetration());
+            Vec3D deepestPoint = manifold.points[0];
+            if (manifold.numPoints > 1 && manifold.penetrations[1] > manifold.penetrations[0])
             {
-                PhysicalEntityCollision collision = new PhysicalEntityCollision(
-                        polygonEntity, sphereEntity, pointOfImpact);
-                collision.resolve();
+                deepestPoint = manifold.points[1];
             }
+            collision.setContactPoint(deepestPoint.x, deepestPoint.y, deepestPoint.z);
+            collision.resolve();
         }
     }
 
@@ -48,7 +118,7 @@ public class PolygonEntity extends PhysicalEntity
     public PolygonEntity(Vec3D velocity, double mass,
                          double coefficientOfRestitution, Vec3D[] points)
     {
-        super(velocity, mass, coefficientOfRestitution);
+        super(velocity, mass, coefficientOfRestitution, CollisionDispatcher.SHAPE_POLYGON);
         this.points = copyPoints(points);
         lineSegments = new LineSegment[points.length];
         for (int i = 0; i < points.length - 1; i++)
@@ -76,64 +146,170 @@ public class PolygonEntity extends PhysicalEntity
     }
 
     /**
-     * Calculates the optimal spherical bounding volume (slowly)
+     * Calculates the minimal spherical bounding volume
      */
     private void calcBoundingVolume()
     {
-        Vec3D p1 = null;
-        Vec3D p2 = null;
-        double longestDistanceSquared = 0.0f;
+        boundingSphere = BoundingSphere.calcMinimal2D(points);
+    }
 
-        for (int i = 0; i < points.length - 1; i++)
+    /*
+     * (non-Javadoc)
+     *
+     * @see physics.entity.Entity#move(vec3f.Vec3F)
+     */
+    @Override
+    public void move(final double tx, final double ty, final double tz)
+    {
+        for (Vec3D point : points)
+        {
+            point.addTo(tx, ty, tz);
+        }
+        boundingSphere.move(tx, ty, tz);
+    }
+
+    @Override
+    public void writeState(ByteBuffer buffer)
+    {
+        super.writeState(buffer);
+        buffer.putDouble(points[0].x);
+        buffer.putDouble(points[0].y);
+        buffer.putDouble(points[0].z);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer)
+    {
+        super.readState(buffer);
+        Vec3D point = points[0];
+        move(buffer.getDouble() - point.x, buffer.getDouble() - point.y, buffer.getDouble() - point.z);
+    }
+
+    @Override
+    public void calcBoundingBox(BoundingBox boundingBox)
+    {
+        boundingBox.setToPoint(points[0]);
+        for (int i = 1; i < points.length; i++)
         {
-            for (int j = i; j < points.length; j++)
+            boundingBox.include(points[i]);
+        }
+    }
+
+    /**
+     * Each edge is a separate collision primitive.
+     */
+    @Override
+    public int getNumCollisionPrimitives()
+    {
+        return lineSegments.length;
+    }
+
+    @Override
+    public void calcPrimitiveBoundingBox(int primitive, BoundingBox boundingBox)
+    {
+        LineSegment lineSegment = lineSegments[primitive];
+        boundingBox.setToPoint(lineSegment.p1);
+        boundingBox.include(lineSegment.p2);
+    }
+
+    /**
+     * Against another polygon, works from its points directly rather than allocating bounding boxes.
+     */
+    @Override
+    public int findFirstOverlappingPrimitive(PhysicalEntity physicalEntity)
+    {
+        if (physicalEntity.getShapeType() != CollisionDispatcher.SHAPE_POLYGON)
+        {
+            return super.findFirstOverlappingPrimitive(physicalEntity);
+        }
+        Vec3D[] otherPoints = ((PolygonEntity) physicalEntity).points;
+        double minX = otherPoints[0].x, minY = otherPoints[0].y, maxX = minX, maxY = minY;
+        for (int i = 1; i < otherPoints.length; i++)
+        {
+            minX = Math.min(minX, otherPoints[i].x);
+            minY = Math.min(minY, otherPoints[i].y);
+            maxX = Math.max(maxX, otherPoints[i].x);
+            maxY = Math.max(maxY, otherPoints[i].y);
+        }
+        for (int edge = 0; edge < lineSegments.length; edge++)
+        {
+            LineSegment lineSegment = lineSegments[edge];
+            if (Math.min(lineSegment.p1.x, lineSegment.p2.x) <= maxX && Math.max(lineSegment.p1.x, lineSegment.p2.x) >= minX
+                    && Math.min(lineSegment.p1.y, lineSegment.p2.y) <= maxY && Math.max(lineSegment.p1.y, lineSegment.p2.y) >= minY)
             {
-                double distanceSquared = Vec3D.distanceSquared(points[i],
-                        points[j]);
-                if (distanceSquared > longestDistanceSquared)
-                {
-                    longestDistanceSquared = distanceSquared;
-                    p1 = points[i];
-                    p2 = points[j];
-                }
+                return edge;
             }
         }
-        boundingSphere = new BoundingSphere(
-                Vec3D.scale(Vec3D.add(p1, p2), 0.5f),
-                Math.sqrt(longestDistanceSquared) / 2);
+        return -1;
     }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see
-     * physics.entity.rigidBody.RigidBodyEntity#calcCollision(physics.entity
-     * .rigidBody.RigidBodyEntity)
+    /**
+     * Polygons are hit in the x-y plane.
      */
     @Override
-    public void resolveCollision(PhysicalEntity physicalEntity,
-                                 double elapsedTime) throws InteractionException
+    public double calcRayDistance(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, BoundingBox bounds)
     {
-        if (physicalEntity instanceof SphereEntity)
+        if (containsPoint2D(originX, originY))
+        {
+            return 0;
+        }
+        double distance = Double.NaN;
+        for (LineSegment lineSegment : lineSegments)
         {
-            resolvePolygonSphereCollision(this, (SphereEntity) physicalEntity,
-                    elapsedTime);
+            double edgeDistance = Geocalc.calcRaySegmentDistance2D(lineSegment.p1.x, lineSegment.p1.y, lineSegment.p2.x, lineSegment.p2.y, originX, originY, directionX,
+                    directionY);
+            //A missed edge gives NaN, which compares false, so it never replaces a hit
+            if (Double.isNaN(distance) || edgeDistance < distance)
+            {
+                distance = edgeDistance;
+            }
         }
+        return distance;
     }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see physics.entity.Entity#move(vec3f.Vec3F)
+    /**
+     * Measured in the x-y plane.
      */
     @Override
-    public void move(final double tx, final double ty, final double tz)
+    public double calcDistance(double x, double y, double z, BoundingBox bounds)
     {
-        for (Vec3D point : points)
+        if (containsPoint2D(x, y))
         {
-            point.addTo(tx, ty, tz);
+            return 0;
         }
-        boundingSphere.move(tx, ty, tz);
+        double distanceSquared = Double.POSITIVE_INFINITY;
+        for (LineSegment lineSegment : lineSegments)
+        {
+            distanceSquared = Math.min(distanceSquared, Geocalc.calcPointSegmentDistanceSquared(lineSegment.p1.x, lineSegment.p1.y, 0, lineSegment.p2.x,
+                    lineSegment.p2.y, 0, x, y, 0));
+        }
+        return Math.sqrt(distanceSquared);
+    }
+
+    /**
+     * Is the point inside the polygon (in the x-y plane)?  Either winding is accepted: the point is inside if it is on the same side of every edge.
+     */
+    private boolean containsPoint2D(double x, double y)
+    {
+        boolean anyPositive = false;
+        boolean anyNegative = false;
+        for (LineSegment lineSegment : lineSegments)
+        {
+            double cross = (lineSegment.p2.x - lineSegment.p1.x) * (y - lineSegment.p1.y) - (lineSegment.p2.y - lineSegment.p1.y) * (x - lineSegment.p1.x);
+            anyPositive |= cross > 0;
+            anyNegative |= cross < 0;
+        }
+        return !(anyPositive && anyNegative);
+    }
+
+    /**
+     * Placed at the center of the polygon's bounding sphere, with its radius.  Polygons don't rotate.
+     */
+    @Override
+    public void writeRenderInstance(float[] data, int offset, BoundingBox boundingBox)
+    {
+        Vec3D center = boundingSphere.getCenter();
+        writeRenderInstance(data, offset, center.x, center.y, center.z, boundingSphere.getRadius(), 0, 0, 0, 1);
     }
 
     public final LineSegment[] getLineSegments()
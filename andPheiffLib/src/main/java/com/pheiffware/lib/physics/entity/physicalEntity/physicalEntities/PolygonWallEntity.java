@@ -23,4 +23,10 @@ public class PolygonWallEntity extends PolygonEntity
 	{
 		// Never moves
 	}
+
+	@Override
+	public boolean isImmovable()
+	{
+		return true;
+	}
 }
@@ -1,28 +1,43 @@
 package com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities;
 
+import com.pheiffware.lib.geometry.Geocalc;
 import com.pheiffware.lib.geometry.Vec3D;
 import com.pheiffware.lib.geometry.shapes.Sphere;
-import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
 import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+import java.nio.ByteBuffer;
 
 /**
  * Represents a spherical entity.
  */
 public class SphereEntity extends PhysicalEntity
 {
-	public final Sphere sphere;
+	// Not final, so render copies can be given their own sphere
+	public Sphere sphere;
+
+	// If this entity's state is held in a packed store, this is it (otherwise
+	// null)
+	private PackedSphereStore packedStore;
+
+	// Index of this entity in packedStore
+	private int packedIndex = -1;
 
 	public SphereEntity(final Vec3D center, final Vec3D velocity,
 			final double mass, final double coefficientOfRestitution,
 			final double radius)
 	{
-		super(velocity, mass, coefficientOfRestitution);
+		super(velocity, mass, coefficientOfRestitution,
+				CollisionDispatcher.SHAPE_SPHERE);
 		sphere = new Sphere(center, radius);
 	}
 
 	public final static void resolveSphereSphereCollision(
-			final SphereEntity sphere1, final SphereEntity sphere2)
+			final SphereEntity sphere1, final SphereEntity sphere2,
+			final PhysicalEntityCollision collision)
 	{
 		double xdiff = sphere2.sphere.center.x - sphere1.sphere.center.x;
 		double ydiff = sphere2.sphere.center.y - sphere1.sphere.center.y;
@@ -35,9 +50,8 @@ public class SphereEntity extends PhysicalEntity
 		if (penetration > 0)
 		{
 			double invDistance = 1.0f / distance;
-			PhysicalEntityCollision collision = new PhysicalEntityCollision(
-					sphere1, sphere2, new Vec3D(xdiff * invDistance, ydiff
-							* invDistance, zdiff * invDistance), penetration);
+			collision.set(sphere1, sphere2, xdiff * invDistance, ydiff
+					* invDistance, zdiff * invDistance, penetration);
 			collision.resolve();
 		}
 	}
@@ -45,33 +59,191 @@ public class SphereEntity extends PhysicalEntity
 	public void move(final double tx, final double ty, final double tz)
 	{
 		sphere.center.addTo(tx, ty, tz);
+		if (packedStore != null)
+		{
+			packedStore.move(packedIndex, tx, ty, tz);
+		}
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see com.pheiffware.sphereadventure.engine.physics.entity.physicalEntity.
-	 * PhysicalEntity
-	 * #resolveCollision(com.pheiffware.sphereadventure.engine.physics
-	 * .entity.physicalEntity.PhysicalEntity, double)
+	@Override
+	public double calcRayDistance(double originX, double originY,
+			double originZ, double directionX, double directionY,
+			double directionZ, BoundingBox bounds)
+	{
+		Vec3D center = sphere.center;
+		return Geocalc.calcRaySphereDistance(center.x, center.y, center.z,
+				sphere.radius, originX, originY, originZ, directionX,
+				directionY, directionZ);
+	}
+
+	@Override
+	public double calcDistance(double x, double y, double z, BoundingBox bounds)
+	{
+		Vec3D center = sphere.center;
+		double dx = x - center.x;
+		double dy = y - center.y;
+		double dz = z - center.z;
+		return Math.max(0, Math.sqrt(dx * dx + dy * dy + dz * dz)
+				- sphere.radius);
+	}
+
+	@Override
+	public void writeRenderInstance(float[] data, int offset,
+			BoundingBox boundingBox)
+	{
+		Vec3D center = sphere.center;
+		writeRenderInstance(data, offset, center.x, center.y, center.z,
+				sphere.radius, 0, 0, 0, 1);
+	}
+
+	@Override
+	public void writeState(ByteBuffer buffer)
+	{
+		if (packedStore != null)
+		{
+			packedStore.copyPreviousAcceleration(packedIndex);
+		}
+		super.writeState(buffer);
+		Vec3D center = sphere.center;
+		buffer.putDouble(center.x);
+		buffer.putDouble(center.y);
+		buffer.putDouble(center.z);
+	}
+
+	@Override
+	public void readState(ByteBuffer buffer)
+	{
+		super.readState(buffer);
+		Vec3D center = sphere.center;
+		move(buffer.getDouble() - center.x, buffer.getDouble() - center.y,
+				buffer.getDouble() - center.z);
+		if (packedStore != null)
+		{
+			packedStore.setVelocity(packedIndex, velocity.x, velocity.y,
+					velocity.z);
+			packedStore.setPreviousAcceleration(packedIndex,
+					hasPreviousAcceleration(), getPreviousAccelerationX(),
+					getPreviousAccelerationY(), getPreviousAccelerationZ());
+		}
+	}
+
+	/**
+	 * Render copies get their own sphere, so they can be moved (for
+	 * interpolation) and don't change as the simulation continues.
+	 */
+	@Override
+	public Entity copyForRender()
+	{
+		SphereEntity copy = (SphereEntity) super.copyForRender();
+		copy.sphere = new Sphere(new Vec3D(sphere.center), sphere.radius);
+		copy.packedStore = null;
+		copy.packedIndex = -1;
+		return copy;
+	}
+
+	/**
+	 * Packed spheres are integrated by their PackedSphereStore.
 	 */
 	@Override
-	public void resolveCollision(PhysicalEntity physicalEntity,
-			double elapsedTime) throws InteractionException
+	public void updateMotion(double elapsedTime)
+	{
+		if (packedStore == null)
+		{
+			super.updateMotion(elapsedTime);
+		}
+	}
+
+	@Override
+	public void addForce(final Vec3D direction, final double magnitude)
 	{
-		// physicalEntity.resolveCollision(this, elapsedTime);
-		if (physicalEntity instanceof SphereEntity)
+		if (packedStore == null)
 		{
-			SphereEntity.resolveSphereSphereCollision(this,
-					(SphereEntity) physicalEntity);
+			super.addForce(direction, magnitude);
 		}
-		else if (physicalEntity instanceof LineSegmentElevatorEntity)
+		else
 		{
-			LineSegmentEntity.resolveLineSphereCollision(
-					(LineSegmentEntity) physicalEntity, this, elapsedTime);
+			wake();
+			packedStore.addForce(packedIndex, direction.x * magnitude,
+					direction.y * magnitude, direction.z * magnitude);
 		}
 	}
 
+	@Override
+	public void applyImpulse(final Vec3D impulse)
+	{
+		super.applyImpulse(impulse);
+		if (packedStore != null)
+		{
+			packedStore.addVelocity(packedIndex, impulse.x, impulse.y,
+					impulse.z);
+		}
+	}
+
+	@Override
+	public void applyImpulse(final Vec3D impulseNormal, final double magnitude)
+	{
+		super.applyImpulse(impulseNormal, magnitude);
+		if (packedStore != null)
+		{
+			packedStore.addVelocity(packedIndex, impulseNormal.x * magnitude,
+					impulseNormal.y * magnitude, impulseNormal.z * magnitude);
+		}
+	}
+
+	@Override
+	public void setIgnoresGravity(boolean ignoreGravity)
+	{
+		super.setIgnoresGravity(ignoreGravity);
+		if (packedStore != null)
+		{
+			packedStore.setIgnoresGravity(packedIndex, ignoreGravity);
+		}
+	}
+
+	@Override
+	protected void setSleeping(boolean sleeping)
+	{
+		super.setSleeping(sleeping);
+		if (packedStore != null)
+		{
+			packedStore.setSleeping(packedIndex, sleeping);
+		}
+	}
+
+	/**
+	 * Called by PackedSphereStore when this entity is attached to, or detached
+	 * from, a store.
+	 */
+	final void attach(PackedSphereStore packedStore, int packedIndex)
+	{
+		this.packedStore = packedStore;
+		this.packedIndex = packedIndex;
+	}
+
+	final int getPackedIndex()
+	{
+		return packedIndex;
+	}
+
+	/**
+	 * Is this entity a view over data in a PackedSphereStore?
+	 * 
+	 * @return
+	 */
+	public final boolean isPacked()
+	{
+		return packedStore != null;
+	}
+
+	@Override
+	public void calcBoundingBox(BoundingBox boundingBox)
+	{
+		Vec3D center = sphere.center;
+		double radius = sphere.radius;
+		boundingBox.set(center.x - radius, center.y - radius, center.z - radius,
+				center.x + radius, center.y + radius, center.z + radius);
+	}
+
 	public final double getRadius()
 	{
 		return sphere.radius;
@@ -23,4 +23,10 @@ public class WallEntity extends LineSegmentEntity
 	{
 		// Never moves
 	}
+
+	@Override
+	public boolean isImmovable()
+	{
+		return true;
+	}
 }
@@ -0,0 +1,235 @@
+package com.pheiffware.lib.physics.solver;
+
+import com.pheiffware.lib.physics.ContactEventStream;
+import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resolves candidate collision pairs in parallel, one contact island at a time.  Islands share no mutable state, so they can be resolved concurrently on a ForkJoinPool.
+ * <p/>
+ * Within an island, pairs are resolved sequentially in the order the broad phase reported them.  Since no two islands interact, the result is bit-identical to resolving the
+ * whole list sequentially, regardless of the number of threads or how islands are scheduled.
+ * <p/>
+ * Note: ForkJoinPool requires Android API 21+.
+ */
+public class ContactIslandSolver
+{
+    //Islands are grouped into tasks of at least this many pairs to amortize scheduling
+    private static final int MIN_PAIRS_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+
+    //Collision record used when islands are resolved on the calling thread.  Its statistics also cover parallel tasks.
+    private final PhysicalEntityCollision collision = new PhysicalEntityCollision();
+
+    //Records for parallel tasks, each used by one task at a time and kept for later steps.  Only as many are created as tasks ever run at once.
+    private PhysicalEntityCollision[] taskCollisions = new PhysicalEntityCollision[0];
+    private int numTaskCollisions;
+    //Stack of records not in use by a task
+    private PhysicalEntityCollision[] freeTaskCollisions = new PhysicalEntityCollision[0];
+    private int numFreeTaskCollisions;
+
+    private CollisionPairList pairs;
+    private ContactIslands islands;
+    private CollisionDispatcher collisionDispatcher;
+    private double elapsedTime;
+
+    /**
+     * @param pool pool on which islands are resolved
+     */
+    public ContactIslandSolver(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Resolves all candidate pairs.  Pairs whose dynamic entity is sleeping are skipped.
+     *
+     * @param pairs               candidate pairs from the broad phase
+     * @param islands             islands already built from pairs
+     * @param collisionDispatcher resolves pairs of whole entities and of primitives
+     * @param elapsedTime         length of the time step
+     * @throws InteractionException
+     */
+    public void solve(CollisionPairList pairs, ContactIslands islands, CollisionDispatcher collisionDispatcher, double elapsedTime) throws InteractionException
+    {
+        int numPairs = pairs.size();
+        if (numPairs == 0)
+        {
+            collision.resetStatistics();
+            return;
+        }
+        this.pairs = pairs;
+        this.islands = islands;
+        this.collisionDispatcher = collisionDispatcher;
+        this.elapsedTime = elapsedTime;
+        collision.resetStatistics();
+        int numIslands = islands.getNumIslands();
+        try
+        {
+            if (numIslands == 1 || numPairs < MIN_PAIRS_PER_TASK * 2 || pool.getParallelism() == 1)
+            {
+                resolveIslands(0, numIslands, collision);
+            }
+            else
+            {
+                for (int i = 0; i < numTaskCollisions; i++)
+                {
+                    taskCollisions[i].resetStatistics();
+                }
+                pool.invoke(new IslandTask(0, numIslands));
+                for (int i = 0; i < numTaskCollisions; i++)
+                {
+                    collision.addStatistics(taskCollisions[i]);
+                }
+            }
+        }
+        catch (IslandException e)
+        {
+            throw (InteractionException) e.getCause();
+        }
+        finally
+        {
+            this.pairs = null;
+            this.islands = null;
+            this.collisionDispatcher = null;
+        }
+    }
+
+    /**
+     * @return record whose statistics cover every collision resolved during the last solve
+     */
+    public PhysicalEntityCollision getCollisionStatistics()
+    {
+        return collision;
+    }
+
+    /**
+     * @param contactEvents stream to publish significant collisions to, or null to stop publishing
+     */
+    public synchronized void setContactEvents(ContactEventStream contactEvents)
+    {
+        collision.setContactEvents(contactEvents);
+        for (int i = 0; i < numTaskCollisions; i++)
+        {
+            taskCollisions[i].setContactEvents(contactEvents);
+        }
+    }
+
+    public ForkJoinPool getPool()
+    {
+        return pool;
+    }
+
+    private void resolveIslands(int fromIsland, int toIsland, PhysicalEntityCollision collision) throws InteractionException
+    {
+        int end = islands.getIslandPairStart(toIsland);
+        for (int i = islands.getIslandPairStart(fromIsland); i < end; i++)
+        {
+            int pair = islands.getSortedPair(i);
+            PhysicalEntity entity2 = pairs.getEntity2(pair);
+            if (entity2.isSleeping())
+            {
+                continue;
+            }
+            PhysicalEntity entity1 = pairs.getEntity1(pair);
+            int primitive1 = pairs.getPrimitive1(pair);
+            if (primitive1 == CollisionPairList.WHOLE_ENTITY)
+            {
+                collisionDispatcher.resolve(entity1, entity2, elapsedTime, collision);
+            }
+            else
+            {
+                collisionDispatcher.resolvePrimitive(entity1, primitive1, entity2, elapsedTime, collision);
+            }
+        }
+    }
+
+    /**
+     * @return a record, not in use by any other task, with no statistics since the start of the solve
+     */
+    private synchronized PhysicalEntityCollision acquireTaskCollision()
+    {
+        if (numFreeTaskCollisions > 0)
+        {
+            return freeTaskCollisions[--numFreeTaskCollisions];
+        }
+        if (numTaskCollisions == taskCollisions.length)
+        {
+            int capacity = Math.max(4, taskCollisions.length * 2);
+            taskCollisions = Arrays.copyOf(taskCollisions, capacity);
+            freeTaskCollisions = new PhysicalEntityCollision[capacity];
+        }
+        PhysicalEntityCollision taskCollision = new PhysicalEntityCollision();
+        taskCollision.setContactEvents(collision.getContactEvents());
+        taskCollisions[numTaskCollisions++] = taskCollision;
+        return taskCollision;
+    }
+
+    private synchronized void releaseTaskCollision(PhysicalEntityCollision taskCollision)
+    {
+        freeTaskCollisions[numFreeTaskCollisions++] = taskCollision;
+    }
+
+    /**
+     * Resolves a range of islands, splitting it in half while it contains enough pairs to be worth sharing.
+     */
+    @SuppressWarnings("serial")
+    private class IslandTask extends RecursiveAction
+    {
+        private final int fromIsland;
+        private final int toIsland;
+
+        IslandTask(int fromIsland, int toIsland)
+        {
+            this.fromIsland = fromIsland;
+            this.toIsland = toIsland;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int numTaskPairs = islands.getIslandPairStart(toIsland) - islands.getIslandPairStart(fromIsland);
+            if (toIsland - fromIsland > 1 && numTaskPairs >= MIN_PAIRS_PER_TASK * 2)
+            {
+                int middle = (fromIsland + toIsland) >>> 1;
+                invokeAll(new IslandTask(fromIsland, middle), new IslandTask(middle, toIsland));
+            }
+            else
+            {
+                PhysicalEntityCollision taskCollision = acquireTaskCollision();
+                try
+                {
+                    resolveIslands(fromIsland, toIsland, taskCollision);
+                }
+                catch (InteractionException e)
+                {
+                    throw new IslandException(e);
+                }
+                finally
+                {
+                    releaseTaskCollision(taskCollision);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries an InteractionException out of a fork join task.
+     */
+    @SuppressWarnings("serial")
+    private static class IslandException extends RuntimeException
+    {
+        IslandException(InteractionException cause)
+        {
+            super(cause);
+        }
+    }
+}
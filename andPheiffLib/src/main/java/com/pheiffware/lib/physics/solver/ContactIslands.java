@@ -0,0 +1,240 @@
+package com.pheiffware.lib.physics.solver;
+
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * Groups dynamic entities into contact islands.  An island is a group of dynamic entities connected (directly or indirectly) by candidate collision pairs.  Static entities do
+ * not connect islands, since the narrow phase never modifies them.
+ * <p/>
+ * After build(), pairs and member entities are available sorted by island.  Islands are numbered in order of first appearance in the pair list, and pairs within an island
+ * keep their relative order, so the grouping is deterministic.  Dynamic entities which appear in no pair belong to no island.
+ */
+public class ContactIslands
+{
+    //Island of an entity which appears in no pair
+    public static final int NO_ISLAND = -1;
+
+    //Union-find parent of each dynamic entity
+    private int[] parent = new int[0];
+
+    //Island of each dynamic entity (indexed by system index), or NO_ISLAND
+    private int[] entityIsland = new int[0];
+
+    //Island of each pair
+    private int[] pairIsland = new int[0];
+
+    //Pair indices sorted by island
+    private int[] sortedPairs = new int[0];
+
+    //Start of each island in sortedPairs (numIslands + 1 entries)
+    private int[] islandPairStart = new int[1];
+
+    //Dynamic entity indices sorted by island
+    private int[] sortedMembers = new int[0];
+
+    //Start of each island in sortedMembers (numIslands + 1 entries)
+    private int[] islandMemberStart = new int[1];
+
+    private int numIslands;
+
+    /**
+     * Builds islands from the given candidate pairs.  Assigns each dynamic entity its index in dynamicEntities as its system index.
+     *
+     * @param pairs              candidate pairs from the broad phase
+     * @param dynamicEntities    all dynamic entities
+     * @param numDynamicEntities number of valid entries in dynamicEntities
+     */
+    public void build(CollisionPairList pairs, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        int numPairs = pairs.size();
+        if (parent.length < numDynamicEntities)
+        {
+            int capacity = Math.max(numDynamicEntities, parent.length * 2);
+            parent = new int[capacity];
+            entityIsland = new int[capacity];
+            sortedMembers = new int[capacity];
+        }
+        if (pairIsland.length < numPairs)
+        {
+            int capacity = Math.max(numPairs, pairIsland.length * 2);
+            pairIsland = new int[capacity];
+            sortedPairs = new int[capacity];
+        }
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            dynamicEntities[i].setSystemIndex(i);
+            parent[i] = i;
+            entityIsland[i] = NO_ISLAND;
+        }
+
+        for (int i = 0; i < numPairs; i++)
+        {
+            PhysicalEntity entity1 = pairs.getEntity1(i);
+            if (!isStatic(entity1))
+            {
+                union(entity1.getSystemIndex(), pairs.getEntity2(i).getSystemIndex());
+            }
+        }
+
+        //Number islands in order of first appearance, recording each root's island in entityIsland, and count pairs in each
+        numIslands = 0;
+        for (int i = 0; i < numPairs; i++)
+        {
+            int root = find(pairs.getEntity2(i).getSystemIndex());
+            int island = entityIsland[root];
+            if (island == NO_ISLAND)
+            {
+                island = numIslands++;
+                entityIsland[root] = island;
+                ensureIslandCapacity();
+                islandPairStart[island + 1] = 0;
+                islandMemberStart[island + 1] = 0;
+            }
+            pairIsland[i] = island;
+            islandPairStart[island + 1]++;
+        }
+
+        //Every entity in a pair shares its root's island
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            int island = entityIsland[find(i)];
+            entityIsland[i] = island;
+            if (island != NO_ISLAND)
+            {
+                islandMemberStart[island + 1]++;
+            }
+        }
+
+        //Stable counting sorts by island
+        toStartOffsets(islandPairStart);
+        for (int i = 0; i < numPairs; i++)
+        {
+            sortedPairs[islandPairStart[pairIsland[i]]++] = i;
+        }
+        fromEndOffsets(islandPairStart);
+
+        toStartOffsets(islandMemberStart);
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            int island = entityIsland[i];
+            if (island != NO_ISLAND)
+            {
+                sortedMembers[islandMemberStart[island]++] = i;
+            }
+        }
+        fromEndOffsets(islandMemberStart);
+    }
+
+    public int getNumIslands()
+    {
+        return numIslands;
+    }
+
+    /**
+     * @param dynamicEntityIndex index in the dynamic entities given to build()
+     * @return the entity's island or NO_ISLAND
+     */
+    public int getEntityIsland(int dynamicEntityIndex)
+    {
+        return entityIsland[dynamicEntityIndex];
+    }
+
+    /**
+     * Pairs of island i are getSortedPair(getIslandPairStart(i)) ... getSortedPair(getIslandPairStart(i + 1) - 1).
+     */
+    public int getIslandPairStart(int island)
+    {
+        return islandPairStart[island];
+    }
+
+    public int getSortedPair(int index)
+    {
+        return sortedPairs[index];
+    }
+
+    /**
+     * Members of island i are getSortedMember(getIslandMemberStart(i)) ... getSortedMember(getIslandMemberStart(i + 1) - 1), as indices into the dynamic entity array.
+     */
+    public int getIslandMemberStart(int island)
+    {
+        return islandMemberStart[island];
+    }
+
+    public int getSortedMember(int index)
+    {
+        return sortedMembers[index];
+    }
+
+    private void ensureIslandCapacity()
+    {
+        if (islandPairStart.length < numIslands + 1)
+        {
+            int capacity = Math.max(16, islandPairStart.length * 2);
+            int[] newPairStart = new int[capacity];
+            System.arraycopy(islandPairStart, 0, newPairStart, 0, islandPairStart.length);
+            islandPairStart = newPairStart;
+            int[] newMemberStart = new int[capacity];
+            System.arraycopy(islandMemberStart, 0, newMemberStart, 0, islandMemberStart.length);
+            islandMemberStart = newMemberStart;
+        }
+    }
+
+    /**
+     * Converts per island counts, stored at [island + 1], into start offsets.
+     */
+    private void toStartOffsets(int[] starts)
+    {
+        starts[0] = 0;
+        for (int island = 0; island < numIslands; island++)
+        {
+            starts[island + 1] += starts[island];
+        }
+    }
+
+    /**
+     * Filling a counting sort advances each start to the next island's start.  Shifts them back.
+     */
+    private void fromEndOffsets(int[] starts)
+    {
+        for (int island = numIslands; island > 0; island--)
+        {
+            starts[island] = starts[island - 1];
+        }
+        starts[0] = 0;
+    }
+
+    private int find(int index)
+    {
+        while (parent[index] != index)
+        {
+            //Path halving
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    private void union(int index1, int index2)
+    {
+        int root1 = find(index1);
+        int root2 = find(index2);
+        if (root1 != root2)
+        {
+            //Attach to the lower index to keep results independent of pair order
+            if (root1 < root2)
+            {
+                parent[root2] = root1;
+            }
+            else
+            {
+                parent[root1] = root2;
+            }
+        }
+    }
+
+    private static boolean isStatic(PhysicalEntity entity)
+    {
+        return entity.mass == Float.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,305 @@
+package com.pheiffware.lib.physics.solver;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.geometry.intersect.IntersectCalc;
+import com.pheiffware.lib.physics.broadPhase.SpatialIndex;
+import com.pheiffware.lib.physics.broadPhase.SpatialQueryResults;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.LineSegmentEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+/**
+ * Stops fast spheres from tunnelling through thin geometry.
+ * <p/>
+ * Start positions are recorded before integration.  After integration, any sphere which moved further than a fraction of its radius is swept from its start to its end
+ * position against line segments and other spheres.  If it hit something, it is moved back to the earliest time of impact, left very slightly penetrating, so the discrete
+ * narrow phase resolves the collision as usual.  The rest of that sphere's motion for the step is dropped.  A dynamic sphere which is hit is moved back to the same time.
+ * <p/>
+ * All impacts are found before anything is moved.  Each sphere is then moved back once, to the earliest impact it took part in, measured from its start position, so a
+ * sphere hit by several others ends where the first of them was placed against it.
+ * <p/>
+ * Candidates for each swept sphere are found by querying a SpatialIndex with its swept bounds, so the cost grows with the number of fast spheres and what they pass near,
+ * rather than with the size of the world.  The index is refit once in any step with a sphere to sweep.  Swept spheres are tested against each other directly, since the index
+ * only knows where they ended up.
+ */
+public class ContinuousCollisionDetector
+{
+    //Fraction of its radius a swept sphere is left penetrating the entity it hit
+    private static final double CONTACT_PENETRATION_FRACTION = 0.01;
+
+    //Spheres moving further than this fraction of their radius in a step are swept
+    private final double displacementFraction;
+
+    //Center of each dynamic entity (indexed by system index) at the start of the step
+    private double[] startX = new double[0];
+    private double[] startY = new double[0];
+    private double[] startZ = new double[0];
+
+    //Dynamic entities (by system index) being swept this step and a list of them
+    private boolean[] swept = new boolean[0];
+    private int[] sweptIndices = new int[0];
+
+    //Time, as a fraction of the step, each dynamic entity (by system index) is moved back to and a list of those moved back
+    private double[] rewindTime = new double[0];
+    private int[] rewoundIndices = new int[0];
+    private int numRewound;
+
+    private final BoundingBox sweptBoundingBox = new BoundingBox();
+    private final BoundingBox queryBoundingBox = new BoundingBox();
+    private final BoundingBox otherBoundingBox = new BoundingBox();
+    private final SpatialQueryResults candidates = new SpatialQueryResults();
+
+    //Number of spheres swept during the last step
+    private int numSweptEntities;
+
+    //Number of swept spheres moved back to an impact during the last step
+    private int numImpacts;
+
+    /**
+     * @param displacementFraction spheres moving further than this fraction of their radius in a step are swept
+     */
+    public ContinuousCollisionDetector(double displacementFraction)
+    {
+        this.displacementFraction = displacementFraction;
+    }
+
+    /**
+     * Called before integration.
+     */
+    public void recordStartPositions(PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        if (startX.length < numDynamicEntities)
+        {
+            int capacity = Math.max(numDynamicEntities, startX.length * 2);
+            startX = new double[capacity];
+            startY = new double[capacity];
+            startZ = new double[capacity];
+            swept = new boolean[capacity];
+            sweptIndices = new int[capacity];
+            rewindTime = new double[capacity];
+            rewoundIndices = new int[capacity];
+        }
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            PhysicalEntity physicalEntity = dynamicEntities[i];
+            if (physicalEntity.getShapeType() == CollisionDispatcher.SHAPE_SPHERE)
+            {
+                Vec3D center = ((SphereEntity) physicalEntity).getCenter();
+                startX[i] = center.x;
+                startY[i] = center.y;
+                startZ[i] = center.z;
+            }
+        }
+    }
+
+    /**
+     * Called after integration, before the broad phase.  Moves fast spheres back to their first impact.
+     *
+     * @param spatialIndex index updated with the entities' current positions, if any sphere needs sweeping, and queried for candidates
+     */
+    public void detect(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, SpatialIndex spatialIndex)
+    {
+        numSweptEntities = 0;
+        numImpacts = 0;
+        numRewound = 0;
+        //Find the spheres to sweep, and how far any other sphere moved, which is how far it may be from its bounds in the index
+        double maxUnsweptDisplacementSquared = 0;
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            swept[i] = false;
+            rewindTime[i] = 1;
+            PhysicalEntity physicalEntity = dynamicEntities[i];
+            if (physicalEntity.getShapeType() != CollisionDispatcher.SHAPE_SPHERE)
+            {
+                continue;
+            }
+            SphereEntity sphereEntity = (SphereEntity) physicalEntity;
+            double displacementSquared = calcDisplacementSquared(i, sphereEntity.getCenter());
+            double threshold = displacementFraction * sphereEntity.getRadius();
+            if (displacementSquared > threshold * threshold && !physicalEntity.isSleeping())
+            {
+                swept[i] = true;
+                sweptIndices[numSweptEntities++] = i;
+            }
+            else
+            {
+                maxUnsweptDisplacementSquared = Math.max(maxUnsweptDisplacementSquared, displacementSquared);
+            }
+        }
+        if (numSweptEntities == 0)
+        {
+            return;
+        }
+        spatialIndex.update(staticEntities, numStaticEntities, dynamicEntities, numDynamicEntities);
+        double margin = Math.sqrt(maxUnsweptDisplacementSquared);
+        for (int k = 0; k < numSweptEntities; k++)
+        {
+            int i = sweptIndices[k];
+            SphereEntity sphereEntity = (SphereEntity) dynamicEntities[i];
+            Vec3D center = sphereEntity.getCenter();
+            double radius = sphereEntity.getRadius();
+            double dx = center.x - startX[i];
+            double dy = center.y - startY[i];
+            double dz = center.z - startZ[i];
+            calcSweptBoundingBox(i, center, radius, sweptBoundingBox);
+            queryBoundingBox.set(sweptBoundingBox.minX - margin, sweptBoundingBox.minY - margin, sweptBoundingBox.minZ - margin, sweptBoundingBox.maxX + margin,
+                    sweptBoundingBox.maxY + margin, sweptBoundingBox.maxZ + margin);
+            candidates.clear();
+            spatialIndex.overlapBox(queryBoundingBox, candidates);
+            //Start position, used by the time of impact calculations
+            center.subFrom(dx, dy, dz);
+
+            double impactTime = 2;
+            int impactDynamicIndex = -1;
+            for (int c = 0; c < candidates.size(); c++)
+            {
+                PhysicalEntity otherEntity = candidates.getEntity(c);
+                int j = otherEntity.getSystemIndex();
+                double time;
+                if (j == -1)
+                {
+                    time = calcStaticImpactTime(otherEntity, center, dx, dy, dz, radius);
+                }
+                else if (j == i || swept[j] || otherEntity.getShapeType() != CollisionDispatcher.SHAPE_SPHERE)
+                {
+                    continue;
+                }
+                else
+                {
+                    time = calcSphereImpactTime(j, (SphereEntity) otherEntity, center, dx, dy, dz, radius);
+                }
+                if (time != -1 && time < impactTime)
+                {
+                    impactTime = time;
+                    impactDynamicIndex = j;
+                }
+            }
+            for (int otherK = 0; otherK < numSweptEntities; otherK++)
+            {
+                int j = sweptIndices[otherK];
+                if (j == i)
+                {
+                    continue;
+                }
+                double time = calcSphereImpactTime(j, (SphereEntity) dynamicEntities[j], center, dx, dy, dz, radius);
+                if (time != -1 && time < impactTime)
+                {
+                    impactTime = time;
+                    impactDynamicIndex = j;
+                }
+            }
+            center.addTo(dx, dy, dz);
+            if (impactTime <= 1)
+            {
+                numImpacts++;
+                double time = Math.min(1, impactTime + CONTACT_PENETRATION_FRACTION * radius / Math.sqrt(dx * dx + dy * dy + dz * dz));
+                recordRewind(i, time);
+                if (impactDynamicIndex != -1)
+                {
+                    recordRewind(impactDynamicIndex, time);
+                }
+            }
+        }
+
+        for (int k = 0; k < numRewound; k++)
+        {
+            int i = rewoundIndices[k];
+            //Moved through the entity's own move(), which keeps packed storage in sync
+            SphereEntity sphereEntity = (SphereEntity) dynamicEntities[i];
+            Vec3D center = sphereEntity.getCenter();
+            double rewind = rewindTime[i] - 1;
+            sphereEntity.move((center.x - startX[i]) * rewind, (center.y - startY[i]) * rewind, (center.z - startZ[i]) * rewind);
+        }
+    }
+
+    /**
+     * Notes that a dynamic sphere must be moved back to at least the given time.
+     */
+    private void recordRewind(int index, double time)
+    {
+        if (rewindTime[index] == 1)
+        {
+            rewoundIndices[numRewound++] = index;
+        }
+        rewindTime[index] = Math.min(rewindTime[index], time);
+    }
+
+    /**
+     * @return time, as a fraction of the step, at which a sphere moving from center by (dx, dy, dz) hits a static entity, or -1 if it doesn't
+     */
+    private double calcStaticImpactTime(PhysicalEntity staticEntity, Vec3D center, double dx, double dy, double dz, double radius)
+    {
+        staticEntity.calcBoundingBox(otherBoundingBox);
+        if (!otherBoundingBox.overlapping(sweptBoundingBox))
+        {
+            return -1;
+        }
+        if (staticEntity.getShapeType() == CollisionDispatcher.SHAPE_LINE_SEGMENT)
+        {
+            return IntersectCalc.calcTimeOfImpact2D(((LineSegmentEntity) staticEntity).getLineSegment(), center, dx, dy, radius);
+        }
+        else if (staticEntity.getShapeType() == CollisionDispatcher.SHAPE_SPHERE)
+        {
+            SphereEntity staticSphere = (SphereEntity) staticEntity;
+            return IntersectCalc.calcTimeOfImpact3D(center, dx, dy, dz, radius, staticSphere.getCenter(), 0, 0, 0, staticSphere.getRadius());
+        }
+        return -1;
+    }
+
+    /**
+     * @return time, as a fraction of the step, at which a sphere moving from center by (dx, dy, dz) hits another dynamic sphere, moving from its own start position, or -1 if
+     * it doesn't
+     */
+    private double calcSphereImpactTime(int otherIndex, SphereEntity otherSphere, Vec3D center, double dx, double dy, double dz, double radius)
+    {
+        Vec3D otherCenter = otherSphere.getCenter();
+        double otherRadius = otherSphere.getRadius();
+        calcSweptBoundingBox(otherIndex, otherCenter, otherRadius, otherBoundingBox);
+        if (!otherBoundingBox.overlapping(sweptBoundingBox))
+        {
+            return -1;
+        }
+        double otherDx = otherCenter.x - startX[otherIndex];
+        double otherDy = otherCenter.y - startY[otherIndex];
+        double otherDz = otherCenter.z - startZ[otherIndex];
+        otherCenter.subFrom(otherDx, otherDy, otherDz);
+        double time = IntersectCalc.calcTimeOfImpact3D(center, dx, dy, dz, radius, otherCenter, otherDx, otherDy, otherDz, otherRadius);
+        otherCenter.addTo(otherDx, otherDy, otherDz);
+        return time;
+    }
+
+    private double calcDisplacementSquared(int index, Vec3D center)
+    {
+        double dx = center.x - startX[index];
+        double dy = center.y - startY[index];
+        double dz = center.z - startZ[index];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Bounds of a sphere over its whole motion from its recorded start position to its current position.
+     */
+    private void calcSweptBoundingBox(int index, Vec3D center, double radius, BoundingBox boundingBox)
+    {
+        boundingBox.set(Math.min(center.x, startX[index]) - radius, Math.min(center.y, startY[index]) - radius, Math.min(center.z, startZ[index]) - radius,
+                Math.max(center.x, startX[index]) + radius, Math.max(center.y, startY[index]) + radius, Math.max(center.z, startZ[index]) + radius);
+    }
+
+    /**
+     * @return number of spheres which moved far enough to be swept during the last step
+     */
+    public int getNumSweptEntities()
+    {
+        return numSweptEntities;
+    }
+
+    /**
+     * @return number of swept spheres which were moved back to an impact during the last step
+     */
+    public int getNumImpacts()
+    {
+        return numImpacts;
+    }
+}
@@ -0,0 +1,480 @@
+package com.pheiffware.lib.physics.solver;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.ContactEventStream;
+import com.pheiffware.lib.physics.InteractionException;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+
+import java.util.Arrays;
+
+/**
+ * Resolves all contacts of a time step together, rather than one pair at a time.  Contacts are first gathered from the narrow phase, then:
+ * <ol>
+ * <li>Warm start: each contact's accumulated impulse from the last step (matched by a persistent contact id) is re-applied.</li>
+ * <li>Velocity iterations: impulses are iterated over all contacts, clamping each contact's accumulated impulse to be non-negative, so contacts can only push.</li>
+ * <li>Position iterations: remaining penetration is corrected by moving entities directly, without changing velocity.</li>
+ * </ol>
+ * Iterating lets impulses propagate through stacks within a single step, which keeps stacks stable at much larger time steps than resolving each pair once.
+ * <p/>
+ * A contact's id is its pair of entities, the collision primitive and the contact's ordinal among those produced for the pair in this step.
+ */
+public class SequentialImpulseSolver
+{
+    //Penetration allowed to remain, which avoids contacts flickering in and out of existence
+    private static final double PENETRATION_SLOP = 0.01;
+
+    //Fraction of remaining penetration corrected by each position iteration
+    private static final double POSITION_CORRECTION_FACTOR = 0.4;
+
+    private final int velocityIterations;
+    private final int positionIterations;
+
+    //Passed to applyImpulse() (which writes through to packed storage)
+    private final Vec3D scratchNormal = new Vec3D(0, 0, 0);
+    private final Vec3D scratchPoint = new Vec3D(0, 0, 0);
+
+    //Significant contacts are published here, with their accumulated impulse, after the velocity iterations (null if disabled)
+    private ContactEventStream contactEvents;
+
+    //Records contacts instead of resolving them
+    private final ContactGatherer gatherer = new ContactGatherer();
+
+    private int numContacts;
+    private PhysicalEntity[] contactEntity1 = new PhysicalEntity[0];
+    private PhysicalEntity[] contactEntity2 = new PhysicalEntity[0];
+    private double[] normalX = new double[0];
+    private double[] normalY = new double[0];
+    private double[] normalZ = new double[0];
+    private double[] penetration = new double[0];
+    //Separating velocity the contact aims for (bounce)
+    private double[] targetVelocity = new double[0];
+    //1 / (inverseMass1 + inverseMass2)
+    private double[] effectiveMass = new double[0];
+    private double[] accumulatedImpulse = new double[0];
+    //Approach velocity along the normal when gathered and point of contact (only recorded when publishing contact events)
+    private double[] approachVelocity = new double[0];
+    private double[] pointX = new double[0];
+    private double[] pointY = new double[0];
+    private double[] pointZ = new double[0];
+    private long[] contactKeyA = new long[0];
+    private int[] contactKeyB = new int[0];
+
+    //Accumulated impulses of the last step and this step, keyed by contact id
+    private ImpulseCache previousImpulses = new ImpulseCache();
+    private ImpulseCache currentImpulses = new ImpulseCache();
+
+    //Position correction applied to each dynamic entity this step (indexed by system index)
+    private double[] correctionX = new double[0];
+    private double[] correctionY = new double[0];
+    private double[] correctionZ = new double[0];
+
+    /**
+     * @param velocityIterations number of impulse iterations per step
+     * @param positionIterations number of penetration correction iterations per step
+     */
+    public SequentialImpulseSolver(int velocityIterations, int positionIterations)
+    {
+        this.velocityIterations = velocityIterations;
+        this.positionIterations = positionIterations;
+    }
+
+    /**
+     * Gathers and resolves all contacts between candidate pairs.  Pairs whose dynamic entity is sleeping are skipped.
+     *
+     * @param pairs               candidate pairs from the broad phase
+     * @param collisionDispatcher narrow phase for pairs of whole entities and of primitives
+     * @param dynamicEntities     all dynamic entities, with system indices matching their position
+     * @param numDynamicEntities  number of valid entries in dynamicEntities
+     * @param elapsedTime         length of the time step
+     * @throws InteractionException
+     */
+    public void solve(CollisionPairList pairs, CollisionDispatcher collisionDispatcher, PhysicalEntity[] dynamicEntities, int numDynamicEntities, double elapsedTime)
+            throws InteractionException
+    {
+        gatherContacts(pairs, collisionDispatcher, elapsedTime);
+        warmStart();
+        for (int iteration = 0; iteration < velocityIterations; iteration++)
+        {
+            solveVelocities();
+        }
+        if (contactEvents != null)
+        {
+            publishContactEvents(contactEvents);
+        }
+        storeImpulses();
+        correctPositions(dynamicEntities, numDynamicEntities);
+    }
+
+    /**
+     * Forgets impulses from previous steps, so the next step is not warm started.
+     */
+    public void reset()
+    {
+        previousImpulses.clear(0);
+        currentImpulses.clear(0);
+    }
+
+    /**
+     * @param contactEvents stream to publish significant contacts to, or null to stop publishing
+     */
+    public void setContactEvents(ContactEventStream contactEvents)
+    {
+        this.contactEvents = contactEvents;
+    }
+
+    /**
+     * @return the number of contacts found during the last step
+     */
+    public int getNumContacts()
+    {
+        return numContacts;
+    }
+
+    /**
+     * @return record whose statistics cover every contact gathered during the last step.  Penetration is as found, before position correction.
+     */
+    public PhysicalEntityCollision getCollisionStatistics()
+    {
+        return gatherer;
+    }
+
+    private void gatherContacts(CollisionPairList pairs, CollisionDispatcher collisionDispatcher, double elapsedTime) throws InteractionException
+    {
+        numContacts = 0;
+        gatherer.resetStatistics();
+        int numPairs = pairs.size();
+        for (int i = 0; i < numPairs; i++)
+        {
+            PhysicalEntity entity2 = pairs.getEntity2(i);
+            if (entity2.isSleeping())
+            {
+                continue;
+            }
+            PhysicalEntity entity1 = pairs.getEntity1(i);
+            int primitive1 = pairs.getPrimitive1(i);
+            gatherer.beginPair(primitive1);
+            if (primitive1 == CollisionPairList.WHOLE_ENTITY)
+            {
+                collisionDispatcher.resolve(entity1, entity2, elapsedTime, gatherer);
+            }
+            else
+            {
+                collisionDispatcher.resolvePrimitive(entity1, primitive1, entity2, elapsedTime, gatherer);
+            }
+        }
+    }
+
+    /**
+     * Called by the gatherer for each contact found by the narrow phase.
+     */
+    private void addContact(PhysicalEntityCollision collision, int primitive, int ordinal)
+    {
+        if (numContacts == contactEntity1.length)
+        {
+            allocate(Math.max(64, numContacts * 2));
+        }
+        int contact = numContacts++;
+        PhysicalEntity entity1 = collision.getEntity1();
+        PhysicalEntity entity2 = collision.getEntity2();
+        Vec3D normal = collision.getCollisionNormal();
+        contactEntity1[contact] = entity1;
+        contactEntity2[contact] = entity2;
+        normalX[contact] = normal.x;
+        normalY[contact] = normal.y;
+        normalZ[contact] = normal.z;
+        penetration[contact] = collision.getPenetration();
+        double relativeVelocity = collision.getRelativeNormalVelocity();
+        targetVelocity[contact] = relativeVelocity > 0 ? relativeVelocity * collision.getCombinedCoefficientOfRestitution() : 0;
+        effectiveMass[contact] = 1.0 / (entity1.inverseMass + entity2.inverseMass);
+        accumulatedImpulse[contact] = 0;
+        contactKeyA[contact] = ((long) entity1.getHandleSlot() << 32) | (entity2.getHandleSlot() & 0xFFFFFFFFL);
+        contactKeyB[contact] = (primitive << 8) ^ ordinal;
+        if (contactEvents != null)
+        {
+            approachVelocity[contact] = relativeVelocity;
+            collision.calcContactPoint(scratchPoint);
+            pointX[contact] = scratchPoint.x;
+            pointY[contact] = scratchPoint.y;
+            pointZ[contact] = scratchPoint.z;
+        }
+    }
+
+    private void warmStart()
+    {
+        for (int contact = 0; contact < numContacts; contact++)
+        {
+            double impulse = previousImpulses.get(contactKeyA[contact], contactKeyB[contact]);
+            if (impulse > 0)
+            {
+                accumulatedImpulse[contact] = impulse;
+                applyImpulse(contact, impulse);
+            }
+        }
+    }
+
+    private void solveVelocities()
+    {
+        for (int contact = 0; contact < numContacts; contact++)
+        {
+            PhysicalEntity entity1 = contactEntity1[contact];
+            PhysicalEntity entity2 = contactEntity2[contact];
+            Vec3D velocity1 = entity1.velocity;
+            Vec3D velocity2 = entity2.velocity;
+            //Separating velocity along the normal
+            double separatingVelocity = (velocity2.x - velocity1.x) * normalX[contact]
+                    + (velocity2.y - velocity1.y) * normalY[contact]
+                    + (velocity2.z - velocity1.z) * normalZ[contact];
+            double impulse = effectiveMass[contact] * (targetVelocity[contact] - separatingVelocity);
+            double oldAccumulatedImpulse = accumulatedImpulse[contact];
+            double newAccumulatedImpulse = Math.max(oldAccumulatedImpulse + impulse, 0);
+            accumulatedImpulse[contact] = newAccumulatedImpulse;
+            impulse = newAccumulatedImpulse - oldAccumulatedImpulse;
+            if (impulse != 0)
+            {
+                applyImpulse(contact, impulse);
+            }
+        }
+    }
+
+    private void publishContactEvents(ContactEventStream contactEvents)
+    {
+        for (int contact = 0; contact < numContacts; contact++)
+        {
+            if (contactEvents.isSignificant(accumulatedImpulse[contact], approachVelocity[contact]))
+            {
+                scratchPoint.x = pointX[contact];
+                scratchPoint.y = pointY[contact];
+                scratchPoint.z = pointZ[contact];
+                scratchNormal.x = normalX[contact];
+                scratchNormal.y = normalY[contact];
+                scratchNormal.z = normalZ[contact];
+                contactEvents.publish(contactEntity1[contact], contactEntity2[contact], accumulatedImpulse[contact], approachVelocity[contact], scratchPoint,
+                        scratchNormal);
+            }
+        }
+    }
+
+    /**
+     * Applies an impulse which pushes the contact's entities apart.
+     */
+    private void applyImpulse(int contact, double impulse)
+    {
+        PhysicalEntity entity1 = contactEntity1[contact];
+        PhysicalEntity entity2 = contactEntity2[contact];
+        Vec3D normal = scratchNormal;
+        normal.x = normalX[contact];
+        normal.y = normalY[contact];
+        normal.z = normalZ[contact];
+        if (entity1.inverseMass > 0)
+        {
+            entity1.applyImpulse(normal, -impulse * entity1.inverseMass);
+        }
+        entity2.applyImpulse(normal, impulse * entity2.inverseMass);
+    }
+
+    private void storeImpulses()
+    {
+        ImpulseCache swap = previousImpulses;
+        previousImpulses = currentImpulses;
+        currentImpulses = swap;
+        previousImpulses.clear(numContacts);
+        for (int contact = 0; contact < numContacts; contact++)
+        {
+            previousImpulses.put(contactKeyA[contact], contactKeyB[contact], accumulatedImpulse[contact]);
+        }
+    }
+
+    /**
+     * Moves entities to correct penetration, tracking how far each dynamic entity has been moved so that penetration can be re-estimated between iterations.
+     */
+    private void correctPositions(PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        if (correctionX.length < numDynamicEntities)
+        {
+            int capacity = Math.max(numDynamicEntities, correctionX.length * 2);
+            correctionX = new double[capacity];
+            correctionY = new double[capacity];
+            correctionZ = new double[capacity];
+        }
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            correctionX[i] = correctionY[i] = correctionZ[i] = 0;
+        }
+        for (int iteration = 0; iteration < positionIterations; iteration++)
+        {
+            for (int contact = 0; contact < numContacts; contact++)
+            {
+                PhysicalEntity entity1 = contactEntity1[contact];
+                PhysicalEntity entity2 = contactEntity2[contact];
+                int index1 = entity1.inverseMass > 0 ? entity1.getSystemIndex() : -1;
+                int index2 = entity2.getSystemIndex();
+                double nx = normalX[contact];
+                double ny = normalY[contact];
+                double nz = normalZ[contact];
+                //Penetration remaining after corrections so far
+                double separation = correctionX[index2] * nx + correctionY[index2] * ny + correctionZ[index2] * nz;
+                if (index1 != -1)
+                {
+                    separation -= correctionX[index1] * nx + correctionY[index1] * ny + correctionZ[index1] * nz;
+                }
+                double remaining = penetration[contact] - separation - PENETRATION_SLOP;
+                if (remaining <= 0)
+                {
+                    continue;
+                }
+                double correction = remaining * POSITION_CORRECTION_FACTOR * effectiveMass[contact];
+                if (index1 != -1)
+                {
+                    double distance1 = -correction * entity1.inverseMass;
+                    entity1.move(nx * distance1, ny * distance1, nz * distance1);
+                    correctionX[index1] += nx * distance1;
+                    correctionY[index1] += ny * distance1;
+                    correctionZ[index1] += nz * distance1;
+                }
+                double distance2 = correction * entity2.inverseMass;
+                entity2.move(nx * distance2, ny * distance2, nz * distance2);
+                correctionX[index2] += nx * distance2;
+                correctionY[index2] += ny * distance2;
+                correctionZ[index2] += nz * distance2;
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        contactEntity1 = copyOf(contactEntity1, capacity);
+        contactEntity2 = copyOf(contactEntity2, capacity);
+        normalX = copyOf(normalX, capacity);
+        normalY = copyOf(normalY, capacity);
+        normalZ = copyOf(normalZ, capacity);
+        penetration = copyOf(penetration, capacity);
+        targetVelocity = copyOf(targetVelocity, capacity);
+        effectiveMass = copyOf(effectiveMass, capacity);
+        accumulatedImpulse = copyOf(accumulatedImpulse, capacity);
+        approachVelocity = copyOf(approachVelocity, capacity);
+        pointX = copyOf(pointX, capacity);
+        pointY = copyOf(pointY, capacity);
+        pointZ = copyOf(pointZ, capacity);
+        long[] newKeyA = new long[capacity];
+        System.arraycopy(contactKeyA, 0, newKeyA, 0, numContacts);
+        contactKeyA = newKeyA;
+        int[] newKeyB = new int[capacity];
+        System.arraycopy(contactKeyB, 0, newKeyB, 0, numContacts);
+        contactKeyB = newKeyB;
+    }
+
+    private double[] copyOf(double[] array, int capacity)
+    {
+        double[] newArray = new double[capacity];
+        System.arraycopy(array, 0, newArray, 0, numContacts);
+        return newArray;
+    }
+
+    private PhysicalEntity[] copyOf(PhysicalEntity[] array, int capacity)
+    {
+        PhysicalEntity[] newArray = new PhysicalEntity[capacity];
+        System.arraycopy(array, 0, newArray, 0, numContacts);
+        return newArray;
+    }
+
+    /**
+     * A collision record which adds itself to the solver's contact list when "resolved".
+     */
+    private class ContactGatherer extends PhysicalEntityCollision
+    {
+        private int primitive;
+        private int ordinal;
+
+        void beginPair(int primitive)
+        {
+            this.primitive = primitive;
+            ordinal = 0;
+        }
+
+        @Override
+        public void resolve()
+        {
+            addContact(this, primitive, ordinal++);
+        }
+    }
+
+    /**
+     * Open addressing hash table from contact id to accumulated impulse, held in primitive arrays.
+     */
+    private static class ImpulseCache
+    {
+        private long[] keysA = new long[16];
+        private int[] keysB = new int[16];
+        private double[] impulses = new double[16];
+        private boolean[] used = new boolean[16];
+        private int mask = 15;
+
+        /**
+         * Empties the table and makes sure it can comfortably hold the given number of entries.
+         */
+        void clear(int numEntries)
+        {
+            int capacity = keysA.length;
+            while (capacity < numEntries * 2)
+            {
+                capacity <<= 1;
+            }
+            if (capacity != keysA.length)
+            {
+                keysA = new long[capacity];
+                keysB = new int[capacity];
+                impulses = new double[capacity];
+                used = new boolean[capacity];
+                mask = capacity - 1;
+            }
+            else
+            {
+                Arrays.fill(used, false);
+            }
+        }
+
+        void put(long keyA, int keyB, double impulse)
+        {
+            int index = hash(keyA, keyB) & mask;
+            while (used[index])
+            {
+                if (keysA[index] == keyA && keysB[index] == keyB)
+                {
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            used[index] = true;
+            keysA[index] = keyA;
+            keysB[index] = keyB;
+            impulses[index] = impulse;
+        }
+
+        /**
+         * @return the stored impulse or 0 if there is none
+         */
+        double get(long keyA, int keyB)
+        {
+            int index = hash(keyA, keyB) & mask;
+            while (used[index])
+            {
+                if (keysA[index] == keyA && keysB[index] == keyB)
+                {
+                    return impulses[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return 0;
+        }
+
+        private static int hash(long keyA, int keyB)
+        {
+            long h = keyA * 0x9E3779B97F4A7C15L + keyB;
+            h ^= h >>> 29;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
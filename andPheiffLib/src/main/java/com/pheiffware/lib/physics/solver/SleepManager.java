@@ -0,0 +1,140 @@
+package com.pheiffware.lib.physics.solver;
+
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+
+/**
+ * Puts resting dynamic entities to sleep, so they are no longer integrated or collision tested, and wakes them again when needed.
+ * <p/>
+ * Sleep is decided per contact island: an island falls asleep only once every member has stayed below the sleep velocity for the required number of consecutive steps.  An
+ * entity touching nothing is treated as an island of its own.  A sleeping island is woken when any of its members is found in a candidate pair with an awake entity.
+ * Entities are also woken directly when an impulse or non-gravitational force is applied to them.
+ */
+public class SleepManager
+{
+    //Entities moving slower than this are considered at rest
+    private final double sleepVelocitySquared;
+
+    //Number of consecutive steps an island must be at rest before sleeping
+    private final int stepsToSleep;
+
+    //Number of sleeping entities at the end of the last update
+    private int numSleepingEntities;
+
+    /**
+     * @param sleepVelocity speed below which an entity is considered to be at rest
+     * @param stepsToSleep  number of consecutive steps an island must be at rest before it sleeps
+     */
+    public SleepManager(double sleepVelocity, int stepsToSleep)
+    {
+        this.sleepVelocitySquared = sleepVelocity * sleepVelocity;
+        this.stepsToSleep = stepsToSleep;
+    }
+
+    /**
+     * Called after the broad phase, before the narrow phase.  Wakes every sleeping island containing an awake entity (meaning an awake entity may be touching it).
+     */
+    public void wakeIslands(ContactIslands islands, PhysicalEntity[] dynamicEntities)
+    {
+        int numIslands = islands.getNumIslands();
+        for (int island = 0; island < numIslands; island++)
+        {
+            int start = islands.getIslandMemberStart(island);
+            int end = islands.getIslandMemberStart(island + 1);
+            boolean anyAwake = false;
+            boolean anySleeping = false;
+            for (int i = start; i < end; i++)
+            {
+                if (dynamicEntities[islands.getSortedMember(i)].isSleeping())
+                {
+                    anySleeping = true;
+                }
+                else
+                {
+                    anyAwake = true;
+                }
+            }
+            if (anyAwake && anySleeping)
+            {
+                for (int i = start; i < end; i++)
+                {
+                    dynamicEntities[islands.getSortedMember(i)].wake();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after the narrow phase.  Updates how long each awake entity has been at rest and puts islands to sleep which have been at rest long enough.
+     */
+    public void updateSleep(ContactIslands islands, PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            PhysicalEntity entity = dynamicEntities[i];
+            if (!entity.isSleeping())
+            {
+                if (entity.velocity.magnitudeSquared() < sleepVelocitySquared)
+                {
+                    entity.setStepsAtRest(entity.getStepsAtRest() + 1);
+                    if (islands.getEntityIsland(i) == ContactIslands.NO_ISLAND && entity.getStepsAtRest() >= stepsToSleep)
+                    {
+                        entity.sleep();
+                    }
+                }
+                else
+                {
+                    entity.setStepsAtRest(0);
+                }
+            }
+        }
+
+        int numIslands = islands.getNumIslands();
+        for (int island = 0; island < numIslands; island++)
+        {
+            int start = islands.getIslandMemberStart(island);
+            int end = islands.getIslandMemberStart(island + 1);
+            boolean canSleep = true;
+            for (int i = start; i < end && canSleep; i++)
+            {
+                PhysicalEntity entity = dynamicEntities[islands.getSortedMember(i)];
+                canSleep = entity.isSleeping() || entity.getStepsAtRest() >= stepsToSleep;
+            }
+            if (canSleep)
+            {
+                for (int i = start; i < end; i++)
+                {
+                    dynamicEntities[islands.getSortedMember(i)].sleep();
+                }
+            }
+        }
+        countSleepingEntities(dynamicEntities, numDynamicEntities);
+    }
+
+    /**
+     * Recounts sleeping entities, for when sleep states have been changed outside of updateSleep(), such as by restoring a checkpoint.
+     */
+    public void countSleepingEntities(PhysicalEntity[] dynamicEntities, int numDynamicEntities)
+    {
+        numSleepingEntities = 0;
+        for (int i = 0; i < numDynamicEntities; i++)
+        {
+            if (dynamicEntities[i].isSleeping())
+            {
+                numSleepingEntities++;
+            }
+        }
+    }
+
+    /**
+     * Called when a sleeping entity is removed from the system, so the count stays correct until the next update.
+     */
+    public void sleepingEntityRemoved()
+    {
+        numSleepingEntities--;
+    }
+
+    public int getNumSleepingEntities()
+    {
+        return numSleepingEntities;
+    }
+}
@@ -0,0 +1,24 @@
+package com.pheiffware.lib.simulation;
+
+/**
+ * A simulation which can write snapshots into preallocated state buffers.  This allows a SimulationRunner to publish a snapshot after every step, which readers take without
+ * locking or waiting for the simulation thread.
+ *
+ * @param <SimState>
+ */
+public interface BufferedSimulation<SimState> extends Simulation<SimState>
+{
+    /**
+     * Allocates an empty state buffer.  Called a few times, when publishing is enabled.
+     *
+     * @return
+     */
+    SimState createStateBuffer();
+
+    /**
+     * Writes a snapshot of the simulation into the given buffer, overwriting its previous contents.  Called in the simulation thread, after each time step.
+     *
+     * @param stateBuffer a buffer previously returned by createStateBuffer()
+     */
+    void copyStateInto(SimState stateBuffer);
+}
@@ -0,0 +1,154 @@
+package com.pheiffware.lib.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock free, multiple producer, single consumer queue of external inputs and commands for a simulation.  Any thread may enqueue without blocking.  The simulation thread drains
+ * the queue, applying inputs to the simulation and running commands.
+ * <p/>
+ * Ordering: inputs and commands enqueued by one thread are applied in the order they were enqueued.  Entries from different threads are applied in the order their enqueue
+ * calls took effect.  An entry whose enqueue is still in progress when a drain starts (along with anything after it) is left for the next drain.
+ * <p/>
+ * Coalescing: for keys marked as coalesced, only the last value enqueued for that key before a drain is applied, at the position of that last value.  This suits inputs, such
+ * as touch positions, where only the latest value matters.
+ */
+public class InputQueue
+{
+    private static class Node
+    {
+        String key;
+        Object value;
+        Runnable command;
+        volatile Node next;
+    }
+
+    //Most recently enqueued node
+    private final AtomicReference<Node> tail;
+
+    //Node before the next to be drained (only accessed by the consumer)
+    private Node head;
+
+    //Keys whose repeated values are coalesced (replaced wholesale, so it can be read without locking)
+    private volatile Set<String> coalescedKeys = new HashSet<String>();
+
+    //Entries taken by the current drain and, for coalesced keys, the position of their last value (only accessed by the consumer)
+    private final ArrayList<Node> drained = new ArrayList<Node>();
+    private final HashMap<String, Integer> lastCoalescedPosition = new HashMap<String, Integer>();
+
+    public InputQueue()
+    {
+        head = new Node();
+        tail = new AtomicReference<Node>(head);
+    }
+
+    /**
+     * Enqueues an input to pass to Simulation.applyExternalInput().  Does not block.
+     *
+     * @param key
+     * @param value
+     */
+    public void enqueueInput(String key, Object value)
+    {
+        Node node = new Node();
+        node.key = key;
+        node.value = value;
+        enqueue(node);
+    }
+
+    /**
+     * Enqueues a command to run in the simulation thread.  Does not block.
+     *
+     * @param command
+     */
+    public void enqueueCommand(Runnable command)
+    {
+        Node node = new Node();
+        node.command = command;
+        enqueue(node);
+    }
+
+    private void enqueue(Node node)
+    {
+        Node previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Marks a key as coalesced.  Safe to call from any thread, but it is cheapest to mark keys before the simulation starts.
+     *
+     * @param key
+     */
+    public synchronized void coalesce(String key)
+    {
+        Set<String> newCoalescedKeys = new HashSet<String>(coalescedKeys);
+        newCoalescedKeys.add(key);
+        coalescedKeys = newCoalescedKeys;
+    }
+
+    /**
+     * Consumer only: applies every complete entry in the queue to the simulation, in order.  If applying an input or running a command throws, the exception propagates.
+     * The failed entry and those before it are consumed, and are never applied again.  Entries after it are left for the next drain.
+     *
+     * @param simulation
+     * @return number of entries taken from the queue (including coalesced entries which were skipped)
+     */
+    public int drain(Simulation<?> simulation)
+    {
+        Set<String> coalescedKeys = this.coalescedKeys;
+        Node next = head.next;
+        if (next == null)
+        {
+            return 0;
+        }
+        while (next != null)
+        {
+            if (next.command == null && coalescedKeys.contains(next.key))
+            {
+                lastCoalescedPosition.put(next.key, drained.size());
+            }
+            drained.add(next);
+            head = next;
+            next = next.next;
+        }
+        int numDrained = drained.size();
+        int numApplied = 0;
+        try
+        {
+            for (; numApplied < numDrained; numApplied++)
+            {
+                Node node = drained.get(numApplied);
+                if (node.command != null)
+                {
+                    node.command.run();
+                }
+                else
+                {
+                    Integer lastPosition = lastCoalescedPosition.get(node.key);
+                    if (lastPosition == null || lastPosition == numApplied)
+                    {
+                        simulation.applyExternalInput(node.key, node.value);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if (numApplied < numDrained)
+            {
+                //The failed entry becomes head, so it is consumed while everything after it stays queued
+                head = drained.get(numApplied);
+            }
+            //Don't hold on to values or commands after they are applied (head is still referenced by the queue)
+            head.key = null;
+            head.value = null;
+            head.command = null;
+            drained.clear();
+            lastCoalescedPosition.clear();
+        }
+        return numDrained;
+    }
+}
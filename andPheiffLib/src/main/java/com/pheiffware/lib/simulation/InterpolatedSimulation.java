@@ -0,0 +1,18 @@
+package com.pheiffware.lib.simulation;
+
+/**
+ * A simulation which can produce a snapshot part way between the state before its last time step and its current state.  Used when the simulation runs on a fixed time step
+ * slower than the display rate, so rendering can still move smoothly.
+ *
+ * @param <SimState>
+ */
+public interface InterpolatedSimulation<SimState> extends Simulation<SimState>
+{
+    /**
+     * Same as copyState(), except the snapshot is blended between the state before the last time step (alpha = 0) and the current state (alpha = 1).
+     *
+     * @param alpha fraction of the last time step, in [0,1]
+     * @return
+     */
+    SimState copyInterpolatedState(double alpha);
+}
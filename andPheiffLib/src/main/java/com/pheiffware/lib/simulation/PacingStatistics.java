@@ -0,0 +1,157 @@
+package com.pheiffware.lib.simulation;
+
+/**
+ * Statistics on how a SimulationRunner paces its simulation thread against real time, and how long its steps take.
+ * <p/>
+ * Slack is how long before its deadline the simulation was ready to continue (time spent waiting).  Oversleep is how late the thread actually resumed after the deadline.  Duty
+ * cycle is the fraction of wall clock time the simulation thread was not parked.
+ */
+public class PacingStatistics
+{
+    //Number of waits which started before their deadline
+    private long numWaits;
+
+    //Number of times the simulation was already at or past its deadline
+    private long numLate;
+
+    private long totalSlackNanos;
+    private long maxSlackNanos;
+    private long totalOversleepNanos;
+    private long maxOversleepNanos;
+
+    //Total time the simulation thread spent parked
+    private long parkedNanos;
+
+    //Number of steps performed and the time spent in them (excluding publishing state)
+    private long numSteps;
+    private long totalStepNanos;
+    private long maxStepNanos;
+
+    //When statistics were last reset
+    private long startNanoTime = System.nanoTime();
+
+    synchronized void reset()
+    {
+        numWaits = 0;
+        numLate = 0;
+        totalSlackNanos = 0;
+        maxSlackNanos = 0;
+        totalOversleepNanos = 0;
+        maxOversleepNanos = 0;
+        parkedNanos = 0;
+        numSteps = 0;
+        totalStepNanos = 0;
+        maxStepNanos = 0;
+        startNanoTime = System.nanoTime();
+    }
+
+    synchronized void recordWait(long slackNanos, long oversleepNanos, long parkedNanos)
+    {
+        numWaits++;
+        totalSlackNanos += slackNanos;
+        maxSlackNanos = Math.max(maxSlackNanos, slackNanos);
+        totalOversleepNanos += oversleepNanos;
+        maxOversleepNanos = Math.max(maxOversleepNanos, oversleepNanos);
+        this.parkedNanos += parkedNanos;
+    }
+
+    synchronized void recordStep(long stepNanos)
+    {
+        numSteps++;
+        totalStepNanos += stepNanos;
+        maxStepNanos = Math.max(maxStepNanos, stepNanos);
+    }
+
+    synchronized void recordLate()
+    {
+        numLate++;
+    }
+
+    public synchronized long getNumWaits()
+    {
+        return numWaits;
+    }
+
+    public synchronized long getNumLate()
+    {
+        return numLate;
+    }
+
+    /**
+     * @return mean slack in seconds, over waits which started before their deadline
+     */
+    public synchronized double getMeanSlack()
+    {
+        return numWaits == 0 ? 0 : totalSlackNanos / (numWaits * 1000000000.0);
+    }
+
+    public synchronized double getMaxSlack()
+    {
+        return maxSlackNanos / 1000000000.0;
+    }
+
+    /**
+     * @return mean oversleep in seconds
+     */
+    public synchronized double getMeanOversleep()
+    {
+        return numWaits == 0 ? 0 : totalOversleepNanos / (numWaits * 1000000000.0);
+    }
+
+    public synchronized double getMaxOversleep()
+    {
+        return maxOversleepNanos / 1000000000.0;
+    }
+
+    /**
+     * @return total time in seconds spent waiting between steps, from the start of each wait until the thread resumed
+     */
+    public synchronized double getTotalWaitTime()
+    {
+        return (totalSlackNanos + totalOversleepNanos) / 1000000000.0;
+    }
+
+    public synchronized long getNumSteps()
+    {
+        return numSteps;
+    }
+
+    /**
+     * @return mean steps per second of wall clock time since the last reset
+     */
+    public synchronized double getStepsPerSecond()
+    {
+        long elapsedNanos = System.nanoTime() - startNanoTime;
+        return elapsedNanos <= 0 ? 0 : numSteps * 1000000000.0 / elapsedNanos;
+    }
+
+    /**
+     * @return mean time in seconds taken by the simulation to perform a step
+     */
+    public synchronized double getMeanStepTime()
+    {
+        return numSteps == 0 ? 0 : totalStepNanos / (numSteps * 1000000000.0);
+    }
+
+    public synchronized double getMaxStepTime()
+    {
+        return maxStepNanos / 1000000000.0;
+    }
+
+    /**
+     * @return fraction, in [0,1], of wall clock time since the last reset the simulation thread was not parked
+     */
+    public synchronized double getDutyCycle()
+    {
+        long elapsedNanos = System.nanoTime() - startNanoTime;
+        return elapsedNanos <= 0 ? 0 : 1.0 - parkedNanos / (double) elapsedNanos;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "steps: " + numSteps + ", steps/s: " + getStepsPerSecond() + ", mean step: " + getMeanStepTime() * 1000000 + "us, max step: " + getMaxStepTime() * 1000000
+                + "us, waits: " + numWaits + ", late: " + numLate + ", mean slack: " + getMeanSlack() * 1000 + "ms, max slack: " + getMaxSlack() * 1000 + "ms, mean oversleep: "
+                + getMeanOversleep() * 1000000 + "us, max oversleep: " + getMaxOversleep() * 1000000 + "us, total wait: " + getTotalWaitTime() + "s, duty cycle: " + getDutyCycle();
+    }
+}
@@ -5,6 +5,10 @@ import com.pheiffware.lib.utils.Utils;
 
 /**
  * Runs the simulation in real time at the given rate.  A minimum and maximum sim time step can also be specified.
+ * <p/>
+ * Alternatively, setFixedTimeStep() switches to a fixed step mode: elapsed real time is accumulated and as many exact steps as are due are run, up to a cap per update.  Each
+ * step is then the same size, regardless of load, so results are repeatable.  The fraction of a step left in the accumulator is exposed as the interpolation alpha, which
+ * getState() passes to an InterpolatedSimulation, so rendering can be smooth at a higher rate than the simulation.
  *
  * @param <SimState>
  */
@@ -14,6 +18,15 @@ public class RealTimeSimulationRunner<SimState> extends SimulationRunner<SimStat
     private final double minSimTimeStep;
     private final double simTimePerSecond;
 
+    //Size of every step in fixed step mode (0 when the step size varies with real time)
+    private double fixedTimeStep;
+
+    //Maximum number of fixed steps run to catch up before further backlog is dropped
+    private int maxStepsPerUpdate;
+
+    //Total sim time dropped because the simulation could not keep up in fixed step mode
+    private volatile double droppedSimTime;
+
     /**
      * @param simulation
      * @param maxSimTimePerSecond if the simulation is running faster than this, then wait as necessary.
@@ -28,7 +41,72 @@ public class RealTimeSimulationRunner<SimState> extends SimulationRunner<SimStat
         this.simTimePerSecond = maxSimTimePerSecond;
     }
 
+    /**
+     * Switches to fixed step mode.  Must be called before start().
+     *
+     * @param fixedTimeStep     size of every time step
+     * @param maxStepsPerUpdate maximum steps to run in one go to catch up with real time.  If more are due (the simulation can't keep up), the backlog is dropped, slowing the
+     *                          simulation rather than making each update take longer and longer.
+     */
+    public void setFixedTimeStep(double fixedTimeStep, int maxStepsPerUpdate)
+    {
+        this.fixedTimeStep = fixedTimeStep;
+        this.maxStepsPerUpdate = maxStepsPerUpdate;
+    }
+
+    /**
+     * @return total sim time dropped because fixed step mode could not keep up with real time
+     */
+    public double getDroppedSimTime()
+    {
+        return droppedSimTime;
+    }
+
     protected void runSimulation() throws SimStoppedException
+    {
+        if (fixedTimeStep > 0)
+        {
+            runFixedTimeStep();
+        }
+        else
+        {
+            runVariableTimeStep();
+        }
+    }
+
+    private void runFixedTimeStep() throws SimStoppedException
+    {
+        long lastTimeStamp = System.nanoTime();
+        double accumulator = 0;
+
+        while (true)
+        {
+            long nextTimeStamp = System.nanoTime();
+            accumulator += simTimePerSecond * Utils.getTimeElapsed(lastTimeStamp, nextTimeStamp);
+            lastTimeStamp = nextTimeStamp;
+
+            int numSteps = 0;
+            while (accumulator >= fixedTimeStep && numSteps < maxStepsPerUpdate)
+            {
+                performTimeStep(fixedTimeStep);
+                accumulator -= fixedTimeStep;
+                numSteps++;
+            }
+            if (accumulator >= fixedTimeStep)
+            {
+                //Spiral of death: drop whole steps which can't be caught up, keeping the fraction for interpolation
+                double dropped = Math.floor(accumulator / fixedTimeStep) * fixedTimeStep;
+                accumulator -= dropped;
+                droppedSimTime += dropped;
+            }
+            setInterpolationAlpha(accumulator / fixedTimeStep, simTimePerSecond / fixedTimeStep);
+
+            //Wait until the next step is due
+            waitAndHandleSignals(lastTimeStamp + (long) ((fixedTimeStep - accumulator) / simTimePerSecond * 1000000000.0));
+        }
+    }
+
+    private void runVariableTimeStep() throws SimStoppedException
     {
         long lastTimeStamp = System.nanoTime();
 
@@ -0,0 +1,212 @@
+package com.pheiffware.lib.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many simulations on a shared pool of worker threads, rather than a thread per simulation as SimulationRunner does.
+ * <p/>
+ * Each step of each simulation is a separate task.  When a step finishes, the simulation's next step is submitted as a new task, so a simulation never runs on two workers at
+ * once, but consecutive steps may run on different workers.  The pool is a work stealing ForkJoinPool in FIFO mode, so simulations take turns stepping and idle workers steal
+ * waiting steps.  Like DeterministicSimulationRunner, each simulation runs an exact number of fixed size steps, so results do not depend on scheduling.  A simulation with a rate
+ * limit has its next step submitted only once it is due, from a single scheduling thread.
+ */
+public class SimulationExecutor
+{
+    private final ForkJoinPool pool;
+
+    //Submits the steps of rate limited simulations when they are due
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    //Every task submitted, in order
+    private final List<SimulationTask<?>> tasks = new ArrayList<SimulationTask<?>>();
+
+    /**
+     * Creates an executor with a worker per available processor.
+     */
+    public SimulationExecutor()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numThreads number of worker threads
+     */
+    public SimulationExecutor(int numThreads)
+    {
+        pool = new ForkJoinPool(numThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "SimulationExecutor scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts running a simulation for an exact number of steps, as fast as the pool allows.
+     *
+     * @param simulation
+     * @param timeStep   size of each step
+     * @param numSteps   number of steps to run
+     * @return the task, which tracks progress and gives safe access to the simulation
+     */
+    public <SimState> SimulationTask<SimState> submit(Simulation<SimState> simulation, double timeStep, int numSteps)
+    {
+        return submit(simulation, timeStep, numSteps, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Starts running a simulation for an exact number of steps.
+     *
+     * @param simulation
+     * @param timeStep            size of each step
+     * @param numSteps            number of steps to run
+     * @param maxSimTimePerSecond if the simulation is running faster than this, its steps are delayed
+     * @return the task, which tracks progress and gives safe access to the simulation
+     */
+    public <SimState> SimulationTask<SimState> submit(Simulation<SimState> simulation, double timeStep, int numSteps, double maxSimTimePerSecond)
+    {
+        SimulationTask<SimState> task = new SimulationTask<SimState>(simulation, timeStep, numSteps, maxSimTimePerSecond);
+        synchronized (tasks)
+        {
+            tasks.add(task);
+        }
+        pool.execute((ForkJoinTask<?>) new StepAction(task));
+        return task;
+    }
+
+    /**
+     * Blocks until every simulation submitted so far has finished.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitAll() throws InterruptedException
+    {
+        for (SimulationTask<?> task : getTasks())
+        {
+            task.awaitCompletion();
+        }
+    }
+
+    /**
+     * @return every task submitted, in order
+     */
+    public List<SimulationTask<?>> getTasks()
+    {
+        synchronized (tasks)
+        {
+            return new ArrayList<SimulationTask<?>>(tasks);
+        }
+    }
+
+    /**
+     * @return total steps per second across all simulations, from the earliest first step to the latest step
+     */
+    public double getTotalStepsPerSecond()
+    {
+        long startNanoTime = Long.MAX_VALUE;
+        long endNanoTime = Long.MIN_VALUE;
+        long totalSteps = 0;
+        for (SimulationTask<?> task : getTasks())
+        {
+            if (task.getStepsCompleted() > 0)
+            {
+                startNanoTime = Math.min(startNanoTime, task.getStartNanoTime());
+                endNanoTime = Math.max(endNanoTime, task.getEndNanoTime());
+                totalSteps += task.getStepsCompleted();
+            }
+        }
+        return endNanoTime <= startNanoTime ? 0 : totalSteps * 1000000000.0 / (endNanoTime - startNanoTime);
+    }
+
+    public int getNumThreads()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Cancels all simulations and stops the worker threads.
+     */
+    public void shutdown()
+    {
+        scheduler.shutdownNow();
+        pool.shutdown();
+        for (SimulationTask<?> task : getTasks())
+        {
+            task.cancel();
+            //Steps waiting in the scheduler will never run, so don't leave anyone waiting for them
+            task.markDone();
+        }
+    }
+
+    /**
+     * Performs one step of a simulation, then submits the next.
+     */
+    @SuppressWarnings("serial")
+    private class StepAction extends ForkJoinTask<Void> implements Runnable
+    {
+        private final SimulationTask<?> task;
+
+        StepAction(SimulationTask<?> task)
+        {
+            this.task = task;
+        }
+
+        @Override
+        protected boolean exec()
+        {
+            if (task.isFinished())
+            {
+                task.markDone();
+                return true;
+            }
+            task.performStep();
+            if (task.isFinished())
+            {
+                task.markDone();
+                return true;
+            }
+            long delayNanos = task.getNextStepNanoTime() - System.nanoTime();
+            if (delayNanos > 0)
+            {
+                scheduler.schedule(new StepAction(task), delayNanos, TimeUnit.NANOSECONDS);
+            }
+            else
+            {
+                //Pushed onto this worker's queue, where other workers can steal it
+                new StepAction(task).fork();
+            }
+            return true;
+        }
+
+        /**
+         * Run by the scheduler when a rate limited step is due.
+         */
+        @Override
+        public void run()
+        {
+            pool.execute((ForkJoinTask<?>) this);
+        }
+
+        @Override
+        public Void getRawResult()
+        {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value)
+        {
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.pheiffware.lib.simulation;
 
 import com.pheiffware.lib.utils.Utils;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Manages a simulation by running it in a background thread.  This deals with the threading/synchronization issues related to this. How the simulation is actually run is done by
  * the runSimulation() method calling this class' timeStep() and handleSignals() methods as appropriate.
@@ -14,6 +16,12 @@ import com.pheiffware.lib.utils.Utils;
  */
 public abstract class SimulationRunner<SimState> implements Runnable
 {
+    //Value of the interpolation alpha when the runner does not interpolate
+    public static final double NO_INTERPOLATION = -1;
+
+    //When waiting for a deadline, park until this long before it, then spin, since parking may oversleep
+    private static final long SPIN_NANOS = 200000;
+
     //A lock object for synchronizing against the simulation thread
     private Object simThreadLock = new Object();
 
@@ -24,7 +32,7 @@ public abstract class SimulationRunner<SimState> implements Runnable
     private volatile boolean stopFlag;
 
     //The thread were simulation code is run
-    private Thread simulationThread;
+    private volatile Thread simulationThread;
 
     //When the last start() was issued
     private volatile long startTimeStamp;
@@ -35,6 +43,18 @@ public abstract class SimulationRunner<SimState> implements Runnable
     //The simulation object itself
     private final Simulation<SimState> simulation;
 
+    //Set by the simulation thread and read by any thread through getInterpolationAlpha().  Replaced as a whole, so readers never see a mix of old and new values.
+    private volatile InterpolationClock interpolationClock = InterpolationClock.NONE;
+
+    //How well waits between steps hit their deadlines
+    private final PacingStatistics pacingStatistics = new PacingStatistics();
+
+    //Inputs and commands enqueued without blocking, applied before each step
+    private final InputQueue inputQueue = new InputQueue();
+
+    //Snapshots published after every step, when publishing is enabled (otherwise null)
+    private volatile TripleBuffer<SimState> publishedStates;
+
     public SimulationRunner(Simulation<SimState> simulation)
     {
         this.simulation = simulation;
@@ -55,18 +75,28 @@ public abstract class SimulationRunner<SimState> implements Runnable
     protected abstract void runSimulation() throws SimStoppedException;
 
     /**
-     * Updates one time step of given size.
+     * Updates one time step of given size.  Queued external inputs and commands are applied first.
      *
      * @param timeStep
      */
+    @SuppressWarnings("unchecked")
     protected final void performTimeStep(double timeStep)
     {
         elapsedSimTimeSinceStart += timeStep;
+        inputQueue.drain(simulation);
+        long stepStartNanos = System.nanoTime();
         simulation.performTimeStep(timeStep);
+        pacingStatistics.recordStep(System.nanoTime() - stepStartNanos);
+        TripleBuffer<SimState> publishedStates = this.publishedStates;
+        if (publishedStates != null)
+        {
+            ((BufferedSimulation<SimState>) simulation).copyStateInto(publishedStates.getWriteBuffer());
+            publishedStates.publish();
+        }
     }
 
     /**
-     * Enforce delay if simulation is running too fast.
+     * Enforce delay if simulation is running too fast.  The simulation thread parks until the real time at which it is due to continue, remaining responsive to signals.
      *
      * @throws SimStoppedException thrown if a stop signal comes in.
      */
@@ -78,11 +108,45 @@ public abstract class SimulationRunner<SimState> implements Runnable
             handleSignals();
             return;
         }
+        waitAndHandleSignals(startTimeStamp + (long) (elapsedSimTimeSinceStart / maxSimTimePerSecond * 1000000000.0));
+    }
 
-        do
+    /**
+     * Waits until the given System.nanoTime(), handling signals throughout.  Parks for most of the wait and spins for the last moment.  Requests from other threads unpark the
+     * simulation thread, so they are handled immediately.
+     *
+     * @param deadlineNanoTime
+     * @throws SimStoppedException thrown if a stop signal comes in.
+     */
+    protected final void waitAndHandleSignals(long deadlineNanoTime) throws SimStoppedException
+    {
+        handleSignals();
+        long now = System.nanoTime();
+        long slackNanos = deadlineNanoTime - now;
+        if (slackNanos <= 0)
         {
+            pacingStatistics.recordLate();
+            return;
+        }
+        long parkedNanos = 0;
+        long remainingNanos = slackNanos;
+        while (remainingNanos > 0)
+        {
+            if (remainingNanos > SPIN_NANOS)
+            {
+                LockSupport.parkNanos(this, remainingNanos - SPIN_NANOS);
+                long parkEnd = System.nanoTime();
+                parkedNanos += parkEnd - now;
+                now = parkEnd;
+            }
+            else
+            {
+                now = System.nanoTime();
+            }
             handleSignals();
-        } while (elapsedSimTimeSinceStart / getElapsedRealTimeSinceStart() > maxSimTimePerSecond);
+            remainingNanos = deadlineNanoTime - now;
+        }
+        pacingStatistics.recordWait(slackNanos, System.nanoTime() - deadlineNanoTime, parkedNanos);
     }
 
     /**
@@ -118,6 +182,7 @@ public abstract class SimulationRunner<SimState> implements Runnable
     {
         startTimeStamp = System.nanoTime();
         elapsedSimTimeSinceStart = 0.0;
+        pacingStatistics.reset();
         try
         {
             synchronized (simThreadLock)
@@ -132,23 +197,72 @@ public abstract class SimulationRunner<SimState> implements Runnable
     }
 
     /**
-     * Gets a snapshot of the simulation.
+     * Gets a snapshot of the simulation.  If the runner has set an interpolation alpha and the simulation is an InterpolatedSimulation, the snapshot is interpolated.
+     * <p/>
+     * When publishing is enabled, this instead returns the latest published snapshot, without locking or stalling the simulation thread.  The returned buffer is reused, so it
+     * is only valid until the next call to getState().
      *
      * @return
      */
+    @SuppressWarnings("unchecked")
     public final SimState getState()
     {
+        TripleBuffer<SimState> publishedStates = this.publishedStates;
+        if (publishedStates != null)
+        {
+            return publishedStates.consume();
+        }
         SimState state;
-        signalFlag = true;
+        requestSignal();
         synchronized (simThreadLock)
         {
             signalFlag = false;
-            state = simulation.copyState();
+            if (interpolationClock.alpha != NO_INTERPOLATION && simulation instanceof InterpolatedSimulation)
+            {
+                state = ((InterpolatedSimulation<SimState>) simulation).copyInterpolatedState(getInterpolationAlpha());
+            }
+            else
+            {
+                state = simulation.copyState();
+            }
             simThreadLock.notify();
         }
         return state;
     }
 
+    /**
+     * Switches getState() to publish/consume mode.  After every time step, the simulation writes a snapshot into one of three preallocated buffers and getState() takes the
+     * latest complete one, so neither the simulation thread nor the reader waits for the other.  Interpolation is not applied in this mode.  Must be called before start() and
+     * only from the thread which will call getState().
+     *
+     * @throws IllegalArgumentException if the simulation is not a BufferedSimulation
+     */
+    @SuppressWarnings("unchecked")
+    public final void enableStatePublishing()
+    {
+        if (!(simulation instanceof BufferedSimulation))
+        {
+            throw new IllegalArgumentException("State publishing requires a BufferedSimulation");
+        }
+        BufferedSimulation<SimState> bufferedSimulation = (BufferedSimulation<SimState>) simulation;
+        TripleBuffer<SimState> tripleBuffer = new TripleBuffer<SimState>(bufferedSimulation.createStateBuffer(), bufferedSimulation.createStateBuffer(),
+                bufferedSimulation.createStateBuffer());
+
+        //Publish the initial state, so there is always something to read
+        bufferedSimulation.copyStateInto(tripleBuffer.getWriteBuffer());
+        tripleBuffer.publish();
+        publishedStates = tripleBuffer;
+    }
+
+    /**
+     * @return number of snapshots published since publishing was enabled, or 0 if it isn't
+     */
+    public final long getNumPublishedStates()
+    {
+        TripleBuffer<SimState> publishedStates = this.publishedStates;
+        return publishedStates == null ? 0 : publishedStates.getNumPublished();
+    }
+
     /**
      * Applies external input to the simulation.
      *
@@ -157,7 +271,7 @@ public abstract class SimulationRunner<SimState> implements Runnable
      */
     public void applyExternalInput(String key, Object value)
     {
-        signalFlag = true;
+        requestSignal();
         synchronized (simThreadLock)
         {
             signalFlag = false;
@@ -166,6 +280,39 @@ public abstract class SimulationRunner<SimState> implements Runnable
         }
     }
 
+    /**
+     * Queues external input to be applied to the simulation, in the simulation thread, just before the next time step.  Unlike applyExternalInput(), this never blocks or makes
+     * the simulation thread wait.  Any thread may call this.
+     *
+     * @param key
+     * @param value
+     */
+    public final void enqueueExternalInput(String key, Object value)
+    {
+        inputQueue.enqueueInput(key, value);
+    }
+
+    /**
+     * Queues code to run, in the simulation thread, just before the next time step.  Unlike runCriticalSection(), this never blocks or makes the simulation thread wait.  Any
+     * thread may call this.  Commands and inputs are applied in the order they were enqueued.
+     *
+     * @param runnable
+     */
+    public final void enqueueCriticalSection(Runnable runnable)
+    {
+        inputQueue.enqueueCommand(runnable);
+    }
+
+    /**
+     * When several values for the given key are queued before a step, only apply the last one.
+     *
+     * @param key
+     */
+    public final void coalesceExternalInput(String key)
+    {
+        inputQueue.coalesce(key);
+    }
+
     /**
      * Causes the simulation to stop in an orderly manner.
      */
@@ -201,7 +348,7 @@ public abstract class SimulationRunner<SimState> implements Runnable
      */
     public final void stop()
     {
-        signalFlag = true;
+        requestSignal();
         synchronized (simThreadLock)
         {
             signalFlag = false;
@@ -237,7 +384,7 @@ public abstract class SimulationRunner<SimState> implements Runnable
      */
     public final void runCriticalSection(Runnable runnable)
     {
-        signalFlag = true;
+        requestSignal();
         synchronized (simThreadLock)
         {
             signalFlag = false;
@@ -246,9 +393,76 @@ public abstract class SimulationRunner<SimState> implements Runnable
         }
     }
 
+    /**
+     * Called from runSimulation() by runners which run a fixed time step, to say how far real time has progressed towards the next step.  The alpha continues to advance at the
+     * given rate, up to 1, while the simulation thread waits for the next step.
+     *
+     * @param interpolationAlpha fraction of a time step in [0,1], or NO_INTERPOLATION
+     * @param alphaPerSecond     rate alpha advances in real time (1 / real duration of a step)
+     */
+    protected final void setInterpolationAlpha(double interpolationAlpha, double alphaPerSecond)
+    {
+        interpolationClock = new InterpolationClock(interpolationAlpha, alphaPerSecond / 1000000000.0, System.nanoTime());
+    }
+
+    /**
+     * @return fraction of a time step which real time has progressed past the last step, or NO_INTERPOLATION
+     */
+    public final double getInterpolationAlpha()
+    {
+        InterpolationClock interpolationClock = this.interpolationClock;
+        if (interpolationClock.alpha == NO_INTERPOLATION)
+        {
+            return NO_INTERPOLATION;
+        }
+        return Math.min(1, interpolationClock.alpha + (System.nanoTime() - interpolationClock.nanoTime) * interpolationClock.alphaPerNano);
+    }
+
+    /**
+     * @return statistics on steps and the waits between them since the simulation was last started
+     */
+    public final PacingStatistics getPacingStatistics()
+    {
+        return pacingStatistics;
+    }
+
+    /**
+     * Makes the simulation thread give an opening at its next call to handleSignals() and wakes it if it is parked waiting for a deadline.
+     */
+    private void requestSignal()
+    {
+        signalFlag = true;
+        Thread simulationThread = this.simulationThread;
+        if (simulationThread != null)
+        {
+            LockSupport.unpark(simulationThread);
+        }
+    }
+
     protected double getElapsedRealTimeSinceStart()
     {
         return Utils.getTimeElapsed(startTimeStamp);
     }
 
+    /**
+     * Interpolation alpha at a moment in time and how fast it advances from there.
+     */
+    private static final class InterpolationClock
+    {
+        static final InterpolationClock NONE = new InterpolationClock(NO_INTERPOLATION, 0, 0);
+
+        //Fraction of a time step which real time had progressed past the last step when set, or NO_INTERPOLATION.  Passed to InterpolatedSimulations by getState().
+        final double alpha;
+        //How fast the alpha advances while the simulation thread waits
+        final double alphaPerNano;
+        //When the alpha was set
+        final long nanoTime;
+
+        InterpolationClock(double alpha, double alphaPerNano, long nanoTime)
+        {
+            this.alpha = alpha;
+            this.alphaPerNano = alphaPerNano;
+            this.nanoTime = nanoTime;
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.pheiffware.lib.simulation;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A simulation being run by a SimulationExecutor.  Tracks progress and throughput and gives other threads safe access to the simulation between steps.
+ *
+ * @param <SimState>
+ */
+public class SimulationTask<SimState>
+{
+    private final Simulation<SimState> simulation;
+
+    //The size of each time step
+    private final double timeStep;
+
+    //The number of time steps to carry out
+    private final int numSteps;
+
+    //The maximum amount of time which is allowed to pass in the simulation per second in real time (infinite for no limit)
+    private final double maxSimTimePerSecond;
+
+    //Inputs and commands enqueued without blocking, applied before each step
+    private final InputQueue inputQueue = new InputQueue();
+
+    private final CountDownLatch completionLatch = new CountDownLatch(1);
+
+    private volatile int stepsCompleted;
+
+    //Total time spent performing steps
+    private volatile long busyNanos;
+
+    //When the first step started and when the last step ended
+    private volatile long startNanoTime;
+    private volatile long endNanoTime;
+
+    private volatile boolean cancelled;
+
+    //The exception which ended the simulation, if any
+    private volatile Throwable failure;
+
+    SimulationTask(Simulation<SimState> simulation, double timeStep, int numSteps, double maxSimTimePerSecond)
+    {
+        this.simulation = simulation;
+        this.timeStep = timeStep;
+        this.numSteps = numSteps;
+        this.maxSimTimePerSecond = maxSimTimePerSecond;
+    }
+
+    /**
+     * Performs one step.  Synchronized against getState() and other accessors, so they never see the simulation mid step.  A step which throws is recorded as the failure and
+     * not counted, in either progress or throughput.
+     */
+    final synchronized void performStep()
+    {
+        long stepStart = System.nanoTime();
+        if (stepsCompleted == 0)
+        {
+            startNanoTime = stepStart;
+        }
+        try
+        {
+            inputQueue.drain(simulation);
+            simulation.performTimeStep(timeStep);
+        }
+        catch (Throwable throwable)
+        {
+            failure = throwable;
+            return;
+        }
+        long stepEnd = System.nanoTime();
+        busyNanos += stepEnd - stepStart;
+        endNanoTime = stepEnd;
+        stepsCompleted++;
+    }
+
+    /**
+     * @return true if the simulation has taken all its steps, been cancelled or failed
+     */
+    final boolean isFinished()
+    {
+        return stepsCompleted >= numSteps || cancelled || failure != null;
+    }
+
+    /**
+     * @return real time, after the start, at which the next step is due according to the rate limit
+     */
+    final long getNextStepNanoTime()
+    {
+        if (maxSimTimePerSecond == Double.POSITIVE_INFINITY || stepsCompleted == 0)
+        {
+            return 0;
+        }
+        return startNanoTime + (long) (stepsCompleted * timeStep / maxSimTimePerSecond * 1000000000.0);
+    }
+
+    final void markDone()
+    {
+        completionLatch.countDown();
+    }
+
+    /**
+     * Gets a snapshot of the simulation, between steps.
+     *
+     * @return
+     */
+    public synchronized SimState getState()
+    {
+        return simulation.copyState();
+    }
+
+    /**
+     * Queues external input to be applied, in the worker running the simulation, just before its next step.  Never blocks.
+     *
+     * @param key
+     * @param value
+     */
+    public void enqueueExternalInput(String key, Object value)
+    {
+        inputQueue.enqueueInput(key, value);
+    }
+
+    /**
+     * Stops the simulation before its next step.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Blocks until the simulation has finished.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException
+    {
+        completionLatch.await();
+    }
+
+    public boolean isDone()
+    {
+        return completionLatch.getCount() == 0;
+    }
+
+    public Simulation<SimState> getSimulation()
+    {
+        return simulation;
+    }
+
+    public int getStepsCompleted()
+    {
+        return stepsCompleted;
+    }
+
+    public int getNumSteps()
+    {
+        return numSteps;
+    }
+
+    /**
+     * @return the exception thrown by the simulation, or null if it hasn't failed
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * @return steps per second of wall clock time between the start of the first step and the end of the latest step
+     */
+    public double getStepsPerSecond()
+    {
+        long elapsedNanos = endNanoTime - startNanoTime;
+        return elapsedNanos <= 0 ? 0 : stepsCompleted * 1000000000.0 / elapsedNanos;
+    }
+
+    final long getStartNanoTime()
+    {
+        return startNanoTime;
+    }
+
+    final long getEndNanoTime()
+    {
+        return endNanoTime;
+    }
+
+    /**
+     * @return total seconds spent performing steps
+     */
+    public double getBusyTime()
+    {
+        return busyNanos / 1000000000.0;
+    }
+}
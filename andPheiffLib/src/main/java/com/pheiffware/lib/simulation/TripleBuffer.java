@@ -0,0 +1,83 @@
+package com.pheiffware.lib.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes the latest value from one writer thread to one reader thread, without locking either side.
+ * <p/>
+ * There are three buffers: the writer owns one, the reader owns one and the third is the latest complete value (or the reader's last one).  The writer fills its buffer and
+ * publishes it by swapping it with the middle one.  The reader swaps its buffer with the middle one only when a newer value has been published.  Neither side ever waits, the
+ * writer never touches a buffer the reader holds and a buffer is never handed to the reader part way through being written.
+ *
+ * @param <T>
+ */
+public class TripleBuffer<T>
+{
+    //Set in middle when it holds a value which the reader has not taken yet
+    private static final int FRESH = 4;
+
+    //Mask for the buffer index held in middle
+    private static final int INDEX_MASK = 3;
+
+    private final T[] buffers;
+
+    //Index of the middle buffer, or'ed with FRESH if it has been published since the reader last took it
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    //Index of the buffer owned by the writer (only accessed by the writer)
+    private int writeIndex = 0;
+
+    //Index of the buffer owned by the reader (only accessed by the reader)
+    private int readIndex = 2;
+
+    //Number of values published
+    private volatile long numPublished;
+
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(T buffer0, T buffer1, T buffer2)
+    {
+        buffers = (T[]) new Object[]{buffer0, buffer1, buffer2};
+    }
+
+    /**
+     * Writer: the buffer to fill before calling publish().
+     *
+     * @return
+     */
+    public T getWriteBuffer()
+    {
+        return buffers[writeIndex];
+    }
+
+    /**
+     * Writer: makes the write buffer the latest value and takes a new write buffer.
+     */
+    public void publish()
+    {
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+        numPublished++;
+    }
+
+    /**
+     * Reader: takes the latest published value, or returns the same value as last time if nothing new has been published.  The returned buffer remains unchanged until the next
+     * call to consume().
+     *
+     * @return
+     */
+    public T consume()
+    {
+        if ((middle.get() & FRESH) != 0)
+        {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return buffers[readIndex];
+    }
+
+    /**
+     * @return number of values published so far
+     */
+    public long getNumPublished()
+    {
+        return numPublished;
+    }
+}
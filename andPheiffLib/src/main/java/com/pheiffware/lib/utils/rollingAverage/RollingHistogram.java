@@ -0,0 +1,128 @@
+package com.pheiffware.lib.utils.rollingAverage;
+
+/**
+ * Maintains a histogram of the most recent values added, bucketed by powers of 2.  Bucket 0 holds values < 1, bucket i holds values in [2^(i-1), 2^i).
+ * <p/>
+ * Values are held in a fixed size ring, so adding a value never allocates.  Not thread safe.
+ */
+public class RollingHistogram
+{
+    //Enough buckets for any non-negative long
+    public static final int NUM_BUCKETS = 64;
+
+    //The most recent values, oldest overwritten first
+    private final long[] values;
+
+    private final int[] counts = new int[NUM_BUCKETS];
+
+    //Next position in values to write
+    private int next;
+
+    //Number of valid entries in values
+    private int size;
+
+    /**
+     * @param windowSize number of most recent values the histogram covers
+     */
+    public RollingHistogram(int windowSize)
+    {
+        values = new long[windowSize];
+    }
+
+    /**
+     * Creates a copy of another histogram.
+     */
+    public RollingHistogram(RollingHistogram histogram)
+    {
+        values = histogram.values.clone();
+        System.arraycopy(histogram.counts, 0, counts, 0, NUM_BUCKETS);
+        next = histogram.next;
+        size = histogram.size;
+    }
+
+    /**
+     * @param value negative values are counted in bucket 0
+     */
+    public void addValue(long value)
+    {
+        if (size == values.length)
+        {
+            counts[getBucket(values[next])]--;
+        }
+        else
+        {
+            size++;
+        }
+        values[next] = value;
+        counts[getBucket(value)]++;
+        next++;
+        if (next == values.length)
+        {
+            next = 0;
+        }
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            counts[i] = 0;
+        }
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * @return number of values, within the window, in the given bucket
+     */
+    public int getCount(int bucket)
+    {
+        return counts[bucket];
+    }
+
+    /**
+     * @return number of values the histogram currently covers
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the smallest value which falls in the given bucket
+     */
+    public static long getBucketLowerBound(int bucket)
+    {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket containing it, so the estimate is at most 2x too high.
+     *
+     * @param fraction in [0,1], for example 0.99
+     * @return estimated value or 0 if the histogram is empty
+     */
+    public long getPercentile(double fraction)
+    {
+        if (size == 0)
+        {
+            return 0;
+        }
+        int target = (int) Math.ceil(fraction * size);
+        int total = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS - 1; bucket++)
+        {
+            total += counts[bucket];
+            if (total >= target)
+            {
+                return getBucketLowerBound(bucket + 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int getBucket(long value)
+    {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+}
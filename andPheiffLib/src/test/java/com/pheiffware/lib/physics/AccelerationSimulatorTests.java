@@ -95,4 +95,60 @@ public class AccelerationSimulatorTests {
         assertTrue("Wrong position", moveSim.getPositionAtTime(2) == 15.0);
         assertTrue("Wrong position", moveSim.getPositionAtTime(3) == 15.0);
     }
+
+    @Test
+    public void velocity() {
+        AccelerationSimulator moveSim = new AccelerationSimulator(3, 53, 10, 5, 2);
+        assertEquals(0, moveSim.getVelocityAtTime(0), 0);
+        assertEquals(5, moveSim.getVelocityAtTime(1), 1e-12);
+        assertEquals(10, moveSim.getVelocityAtTime(3), 1e-12);
+        assertEquals(6, moveSim.getVelocityAtTime(5.5), 1e-12);
+        assertEquals(0, moveSim.getVelocityAtTime(10), 0);
+
+        AccelerationSimulator negativeSim = new AccelerationSimulator(53, 3, 10, 5, 2);
+        assertEquals(-6, negativeSim.getVelocityAtTime(5.5), 1e-12);
+    }
+
+    /**
+     * Deceleration must start from the velocity reached, including when it was reached instantly.
+     */
+    @Test
+    public void noAccFiniteDecMove() {
+        AccelerationSimulator moveSim = new AccelerationSimulator(0, 20, 10, Double.POSITIVE_INFINITY, 5);
+        assertEquals(10, moveSim.getDecelerationDistance(), 1e-12);
+        assertEquals(2, moveSim.getTotalTime() - moveSim.getMaxVelocityTime(), 1e-12);
+        assertEquals(10, moveSim.getPositionAtTime(1), 1e-12);
+        //1 second into deceleration: 10 + 10 * 1 - 5 / 2
+        assertEquals(17.5, moveSim.getPositionAtTime(2), 1e-12);
+        assertEquals(5, moveSim.getVelocityAtTime(2), 1e-12);
+    }
+
+    /**
+     * Too short to reach maximum velocity with infinite acceleration: jumps to the velocity from which it can decelerate over the whole move.
+     */
+    @Test
+    public void noAccSpikeMove() {
+        AccelerationSimulator moveSim = new AccelerationSimulator(0, 10, 100, Double.POSITIVE_INFINITY, 5);
+        assertEquals(2, moveSim.getTotalTime(), 1e-12);
+        assertEquals(10, moveSim.getPeakVelocity(), 1e-12);
+        assertEquals(7.5, moveSim.getPositionAtTime(1), 1e-12);
+        assertEquals(5, moveSim.getVelocityAtTime(1), 1e-12);
+    }
+
+    @Test
+    public void timeAtPosition() {
+        AccelerationSimulator[] moveSims = {new AccelerationSimulator(3, 53, 10, 5, 2), new AccelerationSimulator(53, 3, 10, 5, 2),
+                new AccelerationSimulator(2, 37, 20, 5, 2), new AccelerationSimulator(5, 15, 5, Double.POSITIVE_INFINITY),
+                new AccelerationSimulator(0, 20, 10, Double.POSITIVE_INFINITY, 5), new AccelerationSimulator(0, 10, 100, Double.POSITIVE_INFINITY, 5)};
+        for (AccelerationSimulator moveSim : moveSims) {
+            double totalTime = moveSim.getTotalTime();
+            for (int i = 0; i <= 100; i++) {
+                double time = totalTime * i / 100;
+                double position = moveSim.getPositionAtTime(time);
+                assertEquals(time, moveSim.getTimeAtPosition(position), 1e-9 * totalTime);
+            }
+            assertEquals(0, moveSim.getTimeAtPosition(moveSim.getStartPosition() - moveSim.getDirection()), 0);
+            assertEquals(totalTime, moveSim.getTimeAtPosition(moveSim.getEndPosition() + moveSim.getDirection()), 0);
+        }
+    }
 }
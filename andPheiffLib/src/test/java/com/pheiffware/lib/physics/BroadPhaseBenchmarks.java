@@ -0,0 +1,92 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.BruteForceBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.UniformGridBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Prints pair tests and time per step of each broad phase, as the number of spheres and of static wall segments grows.
+ */
+@Ignore("Benchmark, run manually")
+public class BroadPhaseBenchmarks
+{
+    @Test
+    public void benchmarkStaticGeometry()
+    {
+        int numDynamic = 100;
+        int[] wallCounts = {250, 500, 1000};
+        for (int numWalls : wallCounts)
+        {
+            BroadPhase[] broadPhases = {new BruteForceBroadPhase(), new SweepAndPruneBroadPhase(), new StaticHierarchyBroadPhase()};
+            String[] names = {"brute force", "sweep and prune", "static hierarchy"};
+            for (int i = 0; i < broadPhases.length; i++)
+            {
+                Random random = new Random(numWalls);
+                PhysicsSystem physicsSystem = new PhysicsSystem(broadPhases[i]);
+                for (PhysicalEntity wall : BroadPhaseTests.createWallSegments(random, numWalls))
+                {
+                    physicsSystem.addEntity(wall);
+                }
+                for (int j = 0; j < numDynamic; j++)
+                {
+                    physicsSystem.addEntity(BroadPhaseTests.randomSphere(random));
+                }
+                int numSteps = 50;
+                long totalPairs = 0;
+                long start = System.nanoTime();
+                for (int step = 0; step < numSteps; step++)
+                {
+                    physicsSystem.performTimeStep(0.01);
+                    totalPairs += physicsSystem.getNumCollisionPairsTested();
+                }
+                double millisPerStep = (System.nanoTime() - start) / 1000000.0 / numSteps;
+                System.out.println(names[i] + ", " + numWalls + " walls: " + totalPairs / numSteps + " pair tests/step, " + millisPerStep + " ms/step");
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkPairsPerStep()
+    {
+        int[] entityCounts = {100, 200, 400, 800};
+        String[] names = {"brute force", "sweep and prune", "uniform grid"};
+        for (int numEntities : entityCounts)
+        {
+            BroadPhase[] broadPhases = {new BruteForceBroadPhase(), new SweepAndPruneBroadPhase(), new UniformGridBroadPhase(BroadPhaseTests.RADIUS * 2)};
+            for (int i = 0; i < broadPhases.length; i++)
+            {
+                PhysicsSystem physicsSystem = new PhysicsSystem(broadPhases[i]);
+                addScene(physicsSystem, numEntities, new Random(numEntities));
+                int numSteps = 50;
+                long totalPairs = 0;
+                long start = System.nanoTime();
+                for (int step = 0; step < numSteps; step++)
+                {
+                    physicsSystem.performTimeStep(0.01);
+                    totalPairs += physicsSystem.getNumCollisionPairsTested();
+                }
+                double millisPerStep = (System.nanoTime() - start) / 1000000.0 / numSteps;
+                System.out.println(names[i] + ", " + numEntities + " entities: " + totalPairs / numSteps + " pair tests/step, " + millisPerStep + " ms/step");
+            }
+        }
+    }
+
+    private static void addScene(PhysicsSystem physicsSystem, int numEntities, Random random)
+    {
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BroadPhaseTests.AREA_SIZE, 0), new Vec3D(BroadPhaseTests.AREA_SIZE, BroadPhaseTests.AREA_SIZE, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        for (int i = 0; i < numEntities; i++)
+        {
+            physicsSystem.addEntity(BroadPhaseTests.randomSphere(random));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.BruteForceBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.UniformGridBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the culling broad phases find exactly the pairs with overlapping bounds.
+ */
+public class BroadPhaseTests
+{
+    static final double AREA_SIZE = 1000;
+    static final double RADIUS = 5;
+
+    @Test
+    public void sweepAndPruneFindsOverlappingPairs()
+    {
+        checkFindsOverlappingPairs(new SweepAndPruneBroadPhase());
+    }
+
+    @Test
+    public void uniformGridFindsOverlappingPairs()
+    {
+        checkFindsOverlappingPairs(new UniformGridBroadPhase(RADIUS * 2));
+    }
+
+    @Test
+    public void uniformGridHandlesHugeProxies()
+    {
+        //Cell indices of this wall saturate at the range of an int, so it must be checked by brute force
+        PhysicalEntity[] staticEntities = new PhysicalEntity[]{new WallEntity(new Vec3D(-3e9, 10, 0), new Vec3D(3e9, 10, 0), -1, new Vec3D(0, 0, 0), 0.5)};
+        PhysicalEntity[] dynamicEntities = new PhysicalEntity[]{new SphereEntity(new Vec3D(0, 8, 0), new Vec3D(0, 0, 0), 1, 0.5, RADIUS),
+                new SphereEntity(new Vec3D(0, 100, 0), new Vec3D(0, 0, 0), 1, 0.5, RADIUS)};
+        CollisionPairList pairs = new CollisionPairList();
+        new UniformGridBroadPhase(1).findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, pairs);
+        assertEquals(1, pairs.size());
+        assertEquals(pairKey(staticEntities[0], dynamicEntities[0]), pairKey(pairs.getEntity1(0), pairs.getEntity2(0)));
+    }
+
+    @Test
+    public void unboundedEntitiesArePairedWithEverything()
+    {
+        //Entities which don't override calcBoundingBox have infinite bounds, so no broad phase may cull them
+        PhysicalEntity[] staticEntities = new PhysicalEntity[]{new UnboundedEntity(Double.POSITIVE_INFINITY)};
+        PhysicalEntity[] dynamicEntities = new PhysicalEntity[]{new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 1, 0.5, RADIUS),
+                new SphereEntity(new Vec3D(500, 500, 0), new Vec3D(0, 0, 0), 1, 0.5, RADIUS), new UnboundedEntity(1)};
+        Set<String> expected = findExpectedPairs(staticEntities, dynamicEntities);
+        assertEquals(5, expected.size());
+        BroadPhase[] broadPhases = new BroadPhase[]{new SweepAndPruneBroadPhase(), new UniformGridBroadPhase(RADIUS * 2), new StaticHierarchyBroadPhase()};
+        for (BroadPhase broadPhase : broadPhases)
+        {
+            CollisionPairList pairs = new CollisionPairList();
+            broadPhase.findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, pairs);
+            Set<String> actual = new HashSet<>();
+            for (int i = 0; i < pairs.size(); i++)
+            {
+                actual.add(pairKey(pairs.getEntity1(i), pairs.getEntity2(i)));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void staticHierarchyFindsOverlappingSegments()
+    {
+        Random random = new Random(2);
+        PhysicalEntity[] staticEntities = createWallSegments(random, 300);
+        PhysicalEntity[] dynamicEntities = new PhysicalEntity[200];
+        for (int i = 0; i < dynamicEntities.length; i++)
+        {
+            dynamicEntities[i] = randomSphere(random);
+        }
+
+        CollisionPairList pairs = new CollisionPairList();
+        new StaticHierarchyBroadPhase().findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, pairs);
+        Set<String> actual = new HashSet<>();
+        for (int i = 0; i < pairs.size(); i++)
+        {
+            if (pairs.getPrimitive1(i) != CollisionPairList.WHOLE_ENTITY)
+            {
+                assertTrue("Duplicate pair", actual.add(pairKey(pairs.getEntity1(i), pairs.getEntity2(i)) + ":" + pairs.getPrimitive1(i)));
+            }
+        }
+
+        Set<String> expected = new HashSet<>();
+        BoundingBox primitiveBox = new BoundingBox();
+        BoundingBox dynamicBox = new BoundingBox();
+        for (PhysicalEntity staticEntity : staticEntities)
+        {
+            for (int primitive = 0; primitive < staticEntity.getNumCollisionPrimitives(); primitive++)
+            {
+                staticEntity.calcPrimitiveBoundingBox(primitive, primitiveBox);
+                for (PhysicalEntity dynamicEntity : dynamicEntities)
+                {
+                    dynamicEntity.calcBoundingBox(dynamicBox);
+                    if (primitiveBox.overlapping(dynamicBox))
+                    {
+                        expected.add(pairKey(staticEntity, dynamicEntity) + ":" + primitive);
+                    }
+                }
+            }
+        }
+        assertEquals("Wrong static pairs found", expected, actual);
+    }
+
+    /**
+     * Creates short wall segments and small triangular polygon walls scattered through the area.
+     */
+    static PhysicalEntity[] createWallSegments(Random random, int numWalls)
+    {
+        PhysicalEntity[] walls = new PhysicalEntity[numWalls];
+        for (int i = 0; i < numWalls; i++)
+        {
+            double x = random.nextDouble() * AREA_SIZE;
+            double y = random.nextDouble() * AREA_SIZE;
+            if (i % 4 == 0)
+            {
+                Vec3D[] points = {new Vec3D(x, y, 0), new Vec3D(x + 10, y, 0), new Vec3D(x + 5, y + 8, 0)};
+                walls[i] = new PolygonWallEntity(new Vec3D(0, 0, 0), 0.5, points);
+            }
+            else
+            {
+                walls[i] = new WallEntity(new Vec3D(x, y, 0), new Vec3D(x + random.nextDouble() * 20 - 10, y + random.nextDouble() * 20 - 10, 0), 1,
+                        new Vec3D(0, 0, 0), 0.5);
+            }
+        }
+        return walls;
+    }
+
+    private void checkFindsOverlappingPairs(BroadPhase broadPhase)
+    {
+        Random random = new Random(1);
+        PhysicalEntity[] staticEntities = {
+                new WallEntity(new Vec3D(0, AREA_SIZE, 0), new Vec3D(AREA_SIZE, AREA_SIZE, 0), -1, new Vec3D(0, 0, 0), 0.5),
+                new WallEntity(new Vec3D(0, 0, 0), new Vec3D(0, AREA_SIZE, 0), 1, new Vec3D(0, 0, 0), 0.5)};
+        PhysicalEntity[] dynamicEntities = new PhysicalEntity[500];
+        for (int i = 0; i < dynamicEntities.length; i++)
+        {
+            dynamicEntities[i] = randomSphere(random);
+        }
+
+        //Run several times, moving entities in between, to exercise frame coherence
+        for (int step = 0; step < 5; step++)
+        {
+            Set<String> expected = findExpectedPairs(staticEntities, dynamicEntities);
+            CollisionPairList pairs = new CollisionPairList();
+            broadPhase.findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, pairs);
+            Set<String> actual = new HashSet<>();
+            for (int i = 0; i < pairs.size(); i++)
+            {
+                assertTrue("Duplicate pair", actual.add(pairKey(pairs.getEntity1(i), pairs.getEntity2(i))));
+            }
+            assertEquals("Wrong pairs found", expected, actual);
+
+            for (PhysicalEntity entity : dynamicEntities)
+            {
+                entity.move(random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2, 0);
+            }
+        }
+    }
+
+    private Set<String> findExpectedPairs(PhysicalEntity[] staticEntities, PhysicalEntity[] dynamicEntities)
+    {
+        CollisionPairList allPairs = new CollisionPairList();
+        new BruteForceBroadPhase().findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, allPairs);
+        BoundingBox box1 = new BoundingBox();
+        BoundingBox box2 = new BoundingBox();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < allPairs.size(); i++)
+        {
+            allPairs.getEntity1(i).calcBoundingBox(box1);
+            allPairs.getEntity2(i).calcBoundingBox(box2);
+            if (box1.overlapping(box2))
+            {
+                expected.add(pairKey(allPairs.getEntity1(i), allPairs.getEntity2(i)));
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Only implements the methods which were abstract before bounding boxes were added.
+     */
+    private static class UnboundedEntity extends PhysicalEntity
+    {
+        UnboundedEntity(double mass)
+        {
+            super(new Vec3D(0, 0, 0), mass, 0.5);
+        }
+
+        @Override
+        public void move(double tx, double ty, double tz)
+        {
+        }
+    }
+
+    private String pairKey(PhysicalEntity entity1, PhysicalEntity entity2)
+    {
+        return System.identityHashCode(entity1) + ":" + System.identityHashCode(entity2);
+    }
+
+    static SphereEntity randomSphere(Random random)
+    {
+        Vec3D center = new Vec3D(random.nextDouble() * AREA_SIZE, random.nextDouble() * AREA_SIZE, 0);
+        Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+        return new SphereEntity(center, velocity, 1, 0.9, RADIUS);
+    }
+}
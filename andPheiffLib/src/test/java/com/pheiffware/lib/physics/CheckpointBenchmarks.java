@@ -0,0 +1,67 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Prints the size, save time and restore time of checkpoints, compared with java serialization of the same state.
+ */
+@Ignore("Benchmark, run manually")
+public class CheckpointBenchmarks
+{
+    @Test
+    public void benchmark() throws IOException
+    {
+        int numSpheres = 2000;
+        PhysicsSystem physicsSystem = CheckpointTests.createSystem(numSpheres, false);
+        SphereEntity[] spheres = CheckpointTests.getSpheres(physicsSystem);
+        CheckpointTests.runSteps(physicsSystem, 20);
+        int iterations = 200;
+
+        ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            checkpoint = physicsSystem.saveCheckpoint(checkpoint);
+        }
+        double saveMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            checkpoint.rewind();
+            physicsSystem.restoreCheckpoint(checkpoint);
+        }
+        double restoreMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+        int serializedBytes = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            Vec3D[] centers = new Vec3D[spheres.length];
+            Vec3D[] velocities = new Vec3D[spheres.length];
+            for (int j = 0; j < spheres.length; j++)
+            {
+                centers[j] = spheres[j].getCenter();
+                velocities[j] = spheres[j].velocity;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(centers);
+            out.writeObject(velocities);
+            out.close();
+            serializedBytes = bytes.size();
+        }
+        double serializeMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+        System.out.println(numSpheres + " spheres: checkpoint " + checkpoint.limit() / numSpheres + " bytes/entity, save " + saveMicros + "us, restore " + restoreMicros
+                + "us. Java serialization " + serializedBytes / numSpheres + " bytes/entity, " + serializeMicros + "us");
+    }
+}
@@ -0,0 +1,206 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.physics.solver.SequentialImpulseSolver;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that checkpoints restore entity state exactly and that replaying from a checkpoint is deterministic.
+ */
+public class CheckpointTests
+{
+    private static final double BOTTOM = 500;
+    private static final double WIDTH = 400;
+    private static final double RADIUS = 4;
+
+    @Test
+    public void restoreReproducesState()
+    {
+        for (int packed = 0; packed < 2; packed++)
+        {
+            PhysicsSystem physicsSystem = createSystem(200, packed == 1);
+            SphereEntity[] spheres = getSpheres(physicsSystem);
+            runSteps(physicsSystem, 100);
+            ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+            double[] saved = capture(spheres);
+            double savedRunTime = physicsSystem.getTotalRunTime();
+
+            runSteps(physicsSystem, 100);
+            assertFalse(saved[0] == capture(spheres)[0] && saved[1] == capture(spheres)[1]);
+
+            physicsSystem.restoreCheckpoint(checkpoint);
+            double[] restored = capture(spheres);
+            for (int i = 0; i < saved.length; i++)
+            {
+                assertEquals(saved[i], restored[i], 0);
+            }
+            assertEquals(savedRunTime, physicsSystem.getTotalRunTime(), 0);
+        }
+    }
+
+    @Test
+    public void replayIsDeterministic()
+    {
+        for (int packed = 0; packed < 2; packed++)
+        {
+            PhysicsSystem physicsSystem = createSystem(200, packed == 1);
+            physicsSystem.setContactSolver(new SequentialImpulseSolver(10, 4));
+            SphereEntity[] spheres = getSpheres(physicsSystem);
+            runSteps(physicsSystem, 150);
+            ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+
+            runSteps(physicsSystem, 200);
+            double[] firstReplay;
+            physicsSystem.restoreCheckpoint(checkpoint);
+            runSteps(physicsSystem, 200);
+            firstReplay = capture(spheres);
+
+            checkpoint.rewind();
+            physicsSystem.restoreCheckpoint(checkpoint);
+            runSteps(physicsSystem, 200);
+            double[] secondReplay = capture(spheres);
+            for (int i = 0; i < firstReplay.length; i++)
+            {
+                assertEquals(firstReplay[i], secondReplay[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void restoresSleepState()
+    {
+        PhysicsSystem physicsSystem = createSystem(50, false);
+        physicsSystem.enableSleeping(5, 20);
+        runSteps(physicsSystem, 2000);
+        int numSleeping = physicsSystem.getNumSleepingEntities();
+        assertTrue(numSleeping > 0);
+        ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+
+        SphereEntity[] spheres = getSpheres(physicsSystem);
+        boolean[] sleeping = new boolean[spheres.length];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            sleeping[i] = spheres[i].isSleeping();
+            spheres[i].wake();
+        }
+        runSteps(physicsSystem, 1);
+        physicsSystem.restoreCheckpoint(checkpoint);
+        for (int i = 0; i < spheres.length; i++)
+        {
+            assertEquals(sleeping[i], spheres[i].isSleeping());
+        }
+        assertEquals(numSleeping, physicsSystem.getNumSleepingEntities());
+    }
+
+    @Test
+    public void rejectsMismatchedCheckpoints()
+    {
+        PhysicsSystem physicsSystem = createSystem(20, false);
+        ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+
+        checkpoint.putInt(4, 99);
+        try
+        {
+            physicsSystem.restoreCheckpoint(checkpoint);
+            fail("Expected checkpoint to be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            //Expected
+        }
+
+        checkpoint = physicsSystem.saveCheckpoint(checkpoint);
+        physicsSystem.removeEntity(getSpheres(physicsSystem)[0]);
+        physicsSystem.addEntity(new SphereEntity(new Vec3D(10, 10, 0), new Vec3D(0, 0, 0), 1, 1, RADIUS));
+        try
+        {
+            physicsSystem.restoreCheckpoint(checkpoint);
+            fail("Expected checkpoint to be rejected");
+        }
+        catch (IllegalStateException e)
+        {
+            //Expected
+        }
+    }
+
+    static PhysicsSystem createSystem(int numSpheres, boolean packed)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (packed)
+        {
+            physicsSystem.usePackedSphereStorage();
+        }
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(WIDTH, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(0, 0, 0), 1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(WIDTH, BOTTOM, 0), new Vec3D(WIDTH, 0, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        Random random = new Random(7);
+        int perRow = (int) (WIDTH / (RADIUS * 3));
+        for (int i = 0; i < numSpheres; i++)
+        {
+            Vec3D center = new Vec3D(RADIUS * 2 + (i % perRow) * RADIUS * 3, BOTTOM - RADIUS * 2 - (i / perRow) * RADIUS * 3, 0);
+            Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+            physicsSystem.addEntity(new SphereEntity(center, velocity, 1, 0.5, RADIUS));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return physicsSystem;
+    }
+
+    static SphereEntity[] getSpheres(PhysicsSystem physicsSystem)
+    {
+        int numSpheres = 0;
+        for (int i = 0; i < physicsSystem.getNumPhysicalEntities(); i++)
+        {
+            if (physicsSystem.getPhysicalEntities()[i] instanceof SphereEntity)
+            {
+                numSpheres++;
+            }
+        }
+        SphereEntity[] spheres = new SphereEntity[numSpheres];
+        numSpheres = 0;
+        for (int i = 0; i < physicsSystem.getNumPhysicalEntities(); i++)
+        {
+            if (physicsSystem.getPhysicalEntities()[i] instanceof SphereEntity)
+            {
+                spheres[numSpheres++] = (SphereEntity) physicsSystem.getPhysicalEntities()[i];
+            }
+        }
+        return spheres;
+    }
+
+    static void runSteps(PhysicsSystem physicsSystem, int numSteps)
+    {
+        for (int i = 0; i < numSteps; i++)
+        {
+            physicsSystem.performTimeStep(0.005);
+        }
+    }
+
+    /**
+     * @return center and velocity of every sphere, packed into one array
+     */
+    private static double[] capture(SphereEntity[] spheres)
+    {
+        double[] state = new double[spheres.length * 4];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            state[i * 4] = spheres[i].getCenter().x;
+            state[i * 4 + 1] = spheres[i].getCenter().y;
+            state[i * 4 + 2] = spheres[i].velocity.x;
+            state[i * 4 + 3] = spheres[i].velocity.y;
+        }
+        return state;
+    }
+}
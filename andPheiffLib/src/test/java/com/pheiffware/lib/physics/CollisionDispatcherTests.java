@@ -0,0 +1,191 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionHandler;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.PrimitiveCollisionHandler;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.LineSegmentEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks collision dispatch by shape type, in both argument orders.
+ */
+public class CollisionDispatcherTests
+{
+    @Test
+    public void sphereLineSegmentResolvedInEitherOrder() throws InteractionException
+    {
+        CollisionDispatcher dispatcher = new CollisionDispatcher();
+        PhysicalEntityCollision collision = new PhysicalEntityCollision();
+
+        SphereEntity sphere = new SphereEntity(new Vec3D(0, -4, 0), new Vec3D(0, 100, 0), 1, 0.5, 5);
+        LineSegmentEntity lineSegment = createLineSegment();
+        dispatcher.resolve(lineSegment, sphere, 0.01, collision);
+        assertTrue(sphere.velocity.y < 0);
+
+        sphere = new SphereEntity(new Vec3D(0, -4, 0), new Vec3D(0, 100, 0), 1, 0.5, 5);
+        lineSegment = createLineSegment();
+        dispatcher.resolve(sphere, lineSegment, 0.01, collision);
+        assertTrue(sphere.velocity.y < 0);
+    }
+
+    @Test
+    public void customShapeTypeHandlerIsSwapped() throws InteractionException
+    {
+        final int customShapeType = CollisionDispatcher.newShapeType();
+        CollisionDispatcher dispatcher = new CollisionDispatcher();
+        final PhysicalEntity custom = new CustomEntity(customShapeType);
+        final SphereEntity sphere = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 1, 0.5, 5);
+        final int[] numCalls = new int[1];
+        dispatcher.register(customShapeType, CollisionDispatcher.SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                assertSame(custom, entity1);
+                assertSame(sphere, entity2);
+                numCalls[0]++;
+            }
+        });
+        dispatcher.resolve(custom, sphere, 0.01, null);
+        dispatcher.resolve(sphere, custom, 0.01, null);
+        assertEquals(2, numCalls[0]);
+
+        //Built in handlers survive growing the matrix
+        assertTrue(dispatcher.getHandler(CollisionDispatcher.SHAPE_SPHERE, CollisionDispatcher.SHAPE_SPHERE) != null);
+        assertNull(dispatcher.getHandler(CollisionDispatcher.SHAPE_LINE_SEGMENT, CollisionDispatcher.SHAPE_POLYGON));
+    }
+
+    @Test
+    public void systemDispatcherHandlesStaticPrimitives() throws InteractionException
+    {
+        final int customShapeType = CollisionDispatcher.newShapeType();
+        PhysicsSystem physicsSystem = new PhysicsSystem(new StaticHierarchyBroadPhase());
+        final CustomStaticEntity custom = new CustomStaticEntity(customShapeType, 3);
+        final SphereEntity sphere = new SphereEntity(new Vec3D(10, 5, 0), new Vec3D(0, 0, 0), 1, 0.5, 2);
+        physicsSystem.addEntity(custom);
+        physicsSystem.addEntity(sphere);
+        final int[] numCalls = new int[1];
+        physicsSystem.getCollisionDispatcher().register(customShapeType, CollisionDispatcher.SHAPE_SPHERE, new CollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                assertSame(custom, entity1);
+                assertSame(sphere, entity2);
+                numCalls[0]++;
+            }
+        });
+
+        //The sphere overlaps primitives 0 and 1, but the whole entity handler runs once per step
+        for (int step = 0; step < 5; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        assertEquals(5, numCalls[0]);
+
+        //A primitive handler takes over, and sees each overlapping primitive
+        final int[] primitiveCalls = new int[3];
+        physicsSystem.getCollisionDispatcher().registerPrimitive(customShapeType, CollisionDispatcher.SHAPE_SPHERE, new PrimitiveCollisionHandler()
+        {
+            @Override
+            public void resolve(PhysicalEntity entity1, int primitive1, PhysicalEntity entity2, double elapsedTime, PhysicalEntityCollision collision)
+            {
+                assertSame(custom, entity1);
+                assertSame(sphere, entity2);
+                primitiveCalls[primitive1]++;
+            }
+        });
+        for (int step = 0; step < 5; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        assertEquals(5, numCalls[0]);
+        assertEquals(5, primitiveCalls[0]);
+        assertEquals(5, primitiveCalls[1]);
+        assertEquals(0, primitiveCalls[2]);
+    }
+
+    /**
+     * A dynamic (non-elevator) horizontal line segment at the origin, facing up.
+     */
+    private static LineSegmentEntity createLineSegment()
+    {
+        return new LineSegmentEntity(new Vec3D(-50, 0, 0), new Vec3D(50, 0, 0), -1, new Vec3D(0, 0, 0), 100, 0.5)
+        {
+        };
+    }
+
+    /**
+     * A static row of square collision primitives, each 10 wide, starting at the origin.
+     */
+    private static class CustomStaticEntity extends PhysicalEntity
+    {
+        private final int numPrimitives;
+
+        CustomStaticEntity(int shapeType, int numPrimitives)
+        {
+            super(new Vec3D(0, 0, 0), Double.POSITIVE_INFINITY, 0.5, shapeType);
+            this.numPrimitives = numPrimitives;
+        }
+
+        @Override
+        public void move(double tx, double ty, double tz)
+        {
+        }
+
+        @Override
+        public void calcBoundingBox(BoundingBox boundingBox)
+        {
+            boundingBox.set(0, 0, 0, numPrimitives * 10, 10, 0);
+        }
+
+        @Override
+        public int getNumCollisionPrimitives()
+        {
+            return numPrimitives;
+        }
+
+        @Override
+        public void calcPrimitiveBoundingBox(int primitive, BoundingBox boundingBox)
+        {
+            boundingBox.set(primitive * 10, 0, 0, primitive * 10 + 10, 10, 0);
+        }
+
+        @Override
+        public boolean isImmovable()
+        {
+            return true;
+        }
+    }
+
+    private static class CustomEntity extends PhysicalEntity
+    {
+        CustomEntity(int shapeType)
+        {
+            super(new Vec3D(0, 0, 0), 1, 0.5, shapeType);
+        }
+
+        @Override
+        public void move(double tx, double ty, double tz)
+        {
+        }
+
+        @Override
+        public void calcBoundingBox(BoundingBox boundingBox)
+        {
+            boundingBox.set(0, 0, 0, 0, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Prints the time per step with and without a contact event stream attached.
+ */
+@Ignore("Benchmark, run manually")
+public class ContactEventBenchmarks
+{
+    @Test
+    public void overhead()
+    {
+        int numSteps = 400;
+        double[] withoutEvents = new double[3];
+        double[] withEvents = new double[3];
+        for (int trial = 0; trial < 3; trial++)
+        {
+            withoutEvents[trial] = timeSteps(ContactEventTests.createSystem(500), null, numSteps);
+            PhysicsSystem physicsSystem = ContactEventTests.createSystem(500);
+            withEvents[trial] = timeSteps(physicsSystem, physicsSystem.enableContactEvents(1024, 1, 10, 0.1), numSteps);
+        }
+        System.out.println("Mean step without contact events: " + ContactEventTests.min(withoutEvents) + "us, with contact events: " + ContactEventTests.min(withEvents) + "us");
+    }
+
+    private static double timeSteps(PhysicsSystem physicsSystem, ContactEventStream contactEvents, int numSteps)
+    {
+        ContactEvent event = new ContactEvent();
+        long start = System.nanoTime();
+        for (int step = 0; step < numSteps; step++)
+        {
+            physicsSystem.performTimeStep(ContactEventTests.TIME_STEP);
+            if (contactEvents != null)
+            {
+                while (contactEvents.poll(event))
+                {
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1000.0 / numSteps;
+    }
+}
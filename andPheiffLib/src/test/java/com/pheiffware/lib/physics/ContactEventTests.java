@@ -0,0 +1,245 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.physics.solver.SequentialImpulseSolver;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that contact events report impacts, filter resting contact, survive a concurrent consumer and don't allocate.
+ */
+public class ContactEventTests
+{
+    private static final double BOTTOM = 500;
+    private static final double WIDTH = 300;
+    private static final double RADIUS = 4;
+    static final double TIME_STEP = 0.005;
+
+    @Test
+    public void reportsBouncesButNotRestingContact()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        WallEntity floor = new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(WIDTH, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 0.5);
+        physicsSystem.addEntity(floor);
+        SphereEntity marble = new SphereEntity(new Vec3D(100, 300, 0), new Vec3D(0, 0, 0), 1, 0.5, RADIUS);
+        physicsSystem.addEntity(marble);
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        ContactEventStream contactEvents = physicsSystem.enableContactEvents(256, 1, 10, 0.1);
+
+        ContactEvent event = new ContactEvent();
+        int numEvents = 0;
+        double firstVelocity = 0;
+        for (int step = 0; step < 1000; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+            while (contactEvents.poll(event))
+            {
+                if (numEvents == 0)
+                {
+                    assertSame(floor, event.entity1);
+                    assertSame(marble, event.entity2);
+                    assertEquals(100, event.position.x, 1);
+                    assertEquals(BOTTOM, event.position.y, 1.5);
+                    firstVelocity = event.relativeVelocity;
+                    //Bounces with a coefficient of restitution of 0.25
+                    assertEquals(1.25 * event.relativeVelocity, event.normalImpulse, event.relativeVelocity * 0.01);
+                }
+                assertTrue(step < 500);
+                numEvents++;
+            }
+        }
+        //Fell about 196 units
+        assertEquals(Math.sqrt(2 * 500 * 196), firstVelocity, 15);
+        assertTrue(numEvents >= 1 && numEvents < 10);
+        assertEquals(0, contactEvents.getNumDropped());
+
+        //Without thresholds or debouncing, the marble reports every step it rests on the floor
+        physicsSystem.enableContactEvents(2048, 0, 0, 0);
+        for (int step = 0; step < 100; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        assertTrue(physicsSystem.getContactEvents().getSize() >= 90);
+    }
+
+    @Test
+    public void publishedByEverySolver()
+    {
+        int pairwise = countEvents(createSystem(200));
+        PhysicsSystem islandSystem = createSystem(200);
+        islandSystem.setCollisionPool(new ForkJoinPool(4));
+        int islands = countEvents(islandSystem);
+        PhysicsSystem solverSystem = createSystem(200);
+        solverSystem.setContactSolver(new SequentialImpulseSolver(10, 4));
+        int solver = countEvents(solverSystem);
+        assertEquals(pairwise, islands);
+        assertTrue(pairwise >= 200);
+        assertTrue(solver >= 200);
+    }
+
+    @Test
+    public void dropsWhenFull()
+    {
+        PhysicsSystem physicsSystem = createSystem(200);
+        ContactEventStream contactEvents = physicsSystem.enableContactEvents(16, 0, 0, 0);
+        for (int step = 0; step < 200; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        assertEquals(16, contactEvents.getSize());
+        assertTrue(contactEvents.getNumDropped() > 0);
+        ContactEvent event = new ContactEvent();
+        int numRead = 0;
+        while (contactEvents.poll(event))
+        {
+            numRead++;
+        }
+        assertEquals(16, numRead);
+        physicsSystem.performTimeStep(TIME_STEP);
+        assertTrue(contactEvents.poll(event));
+    }
+
+    @Test
+    public void concurrentConsumer() throws InterruptedException
+    {
+        int expected = countEvents(createSystem(200));
+
+        PhysicsSystem physicsSystem = createSystem(200);
+        physicsSystem.setCollisionPool(new ForkJoinPool(4));
+        final ContactEventStream contactEvents = physicsSystem.enableContactEvents(512, 1, 10, 0.1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger numRead = new AtomicInteger();
+        Thread consumer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ContactEvent event = new ContactEvent();
+                double lastTime = 0;
+                while (true)
+                {
+                    boolean wasRunning = running.get();
+                    while (contactEvents.poll(event))
+                    {
+                        if (event.time < lastTime || event.normalImpulse < 1)
+                        {
+                            return;
+                        }
+                        lastTime = event.time;
+                        numRead.incrementAndGet();
+                    }
+                    if (!wasRunning)
+                    {
+                        return;
+                    }
+                }
+            }
+        });
+        consumer.start();
+        for (int step = 0; step < 400; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+            //Don't outrun the consumer on a single core
+            while (contactEvents.getSize() > contactEvents.getCapacity() / 2 && consumer.isAlive())
+            {
+                Thread.yield();
+            }
+        }
+        running.set(false);
+        consumer.join();
+        assertEquals(0, contactEvents.getNumDropped());
+        assertEquals(expected, numRead.get());
+    }
+
+    @Test
+    public void publishingDoesNotAllocate()
+    {
+        ContactEventStream contactEvents = new ContactEventStream(1024, 0, 0, 0);
+        SphereEntity sphere1 = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 1, 1, 1);
+        SphereEntity sphere2 = new SphereEntity(new Vec3D(2, 0, 0), new Vec3D(0, 0, 0), 1, 1, 1);
+        Vec3D position = new Vec3D(1, 0, 0);
+        Vec3D normal = new Vec3D(1, 0, 0);
+        ContactEvent event = new ContactEvent();
+        //Warm up
+        publishAndPoll(contactEvents, sphere1, sphere2, position, normal, event, 100000);
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+        {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+        long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        publishAndPoll(contactEvents, sphere1, sphere2, position, normal, event, 1000000);
+        long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+        assertTrue(allocatedBytes < 10000);
+    }
+
+    private static void publishAndPoll(ContactEventStream contactEvents, SphereEntity sphere1, SphereEntity sphere2, Vec3D position, Vec3D normal, ContactEvent event,
+            int numEvents)
+    {
+        for (int i = 0; i < numEvents; i++)
+        {
+            contactEvents.publish(sphere1, sphere2, 1, 1, position, normal);
+            contactEvents.poll(event);
+        }
+    }
+
+    private static int countEvents(PhysicsSystem physicsSystem)
+    {
+        ContactEventStream contactEvents = physicsSystem.enableContactEvents(4096, 1, 10, 0.1);
+        ContactEvent event = new ContactEvent();
+        int numEvents = 0;
+        for (int step = 0; step < 400; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+            while (contactEvents.poll(event))
+            {
+                numEvents++;
+            }
+        }
+        assertEquals(0, contactEvents.getNumDropped());
+        return numEvents;
+    }
+
+    static double min(double[] values)
+    {
+        double min = Double.POSITIVE_INFINITY;
+        for (double value : values)
+        {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    static PhysicsSystem createSystem(int numSpheres)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(WIDTH, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(0, 0, 0), 1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(WIDTH, BOTTOM, 0), new Vec3D(WIDTH, 0, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        int perRow = (int) (WIDTH / (RADIUS * 3));
+        for (int i = 0; i < numSpheres; i++)
+        {
+            Vec3D center = new Vec3D(RADIUS * 2 + (i % perRow) * RADIUS * 3 + (i / perRow) % 2, BOTTOM - RADIUS * 2 - (i / perRow) * RADIUS * 3, 0);
+            physicsSystem.addEntity(new SphereEntity(center, new Vec3D(0, 0, 0), 1, 0.5, RADIUS));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return physicsSystem;
+    }
+}
@@ -0,0 +1,31 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prints the time per step of the island solver for different numbers of threads.
+ */
+@Ignore("Benchmark, run manually")
+public class ContactIslandSolverBenchmarks
+{
+    @Test
+    public void benchmarkThreadCount()
+    {
+        int[] threadCounts = {0, 1, 2, 4, 8};
+        for (int numThreads : threadCounts)
+        {
+            ForkJoinPool pool = numThreads == 0 ? null : new ForkJoinPool(numThreads);
+            long start = System.nanoTime();
+            ContactIslandSolverTests.runScene(pool);
+            double millisPerStep = (System.nanoTime() - start) / 1000000.0 / ContactIslandSolverTests.NUM_STEPS;
+            System.out.println((numThreads == 0 ? "sequential" : numThreads + " threads") + ": " + millisPerStep + " ms/step");
+            if (pool != null)
+            {
+                pool.shutdown();
+            }
+        }
+    }
+}
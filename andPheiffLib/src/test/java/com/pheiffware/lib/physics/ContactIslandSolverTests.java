@@ -0,0 +1,75 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that parallel island solving gives bit-identical results for any number of threads.
+ */
+public class ContactIslandSolverTests
+{
+    static final int NUM_STEPS = 300;
+
+    @Test
+    public void resultsIndependentOfThreadCount()
+    {
+        SphereEntity[] expected = runScene(null);
+        int[] threadCounts = {1, 2, 4, 8};
+        for (int numThreads : threadCounts)
+        {
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            SphereEntity[] actual = runScene(pool);
+            pool.shutdown();
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertTrue("Results differ with " + numThreads + " threads",
+                        expected[i].getCenter().equals(actual[i].getCenter()) && expected[i].velocity.equals(actual[i].velocity));
+            }
+        }
+    }
+
+    /**
+     * Runs many separate stacks of marbles on separate floors, so there are many independent islands.
+     */
+    static SphereEntity[] runScene(ForkJoinPool pool)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.setCollisionPool(pool);
+        int numStacks = 30;
+        int rows = 7;
+        double radius = 5;
+        SphereEntity[] spheres = new SphereEntity[numStacks * rows * (rows + 1) / 2];
+        int sphereIndex = 0;
+        for (int stack = 0; stack < numStacks; stack++)
+        {
+            double left = stack * (rows * radius * 2 + 20);
+            double right = left + rows * radius * 2;
+            double bottom = 500;
+            physicsSystem.addEntity(new WallEntity(new Vec3D(left, bottom, 0), new Vec3D(right, bottom, 0), -1, new Vec3D(0, 0, 0), 0.6));
+            for (int row = 0; row < rows; row++)
+            {
+                for (int i = 0; i < rows - row; i++)
+                {
+                    Vec3D center = new Vec3D(left + radius + row * radius + i * radius * 2, bottom - radius - row * radius * Math.sqrt(3), 0);
+                    spheres[sphereIndex] = new SphereEntity(center, new Vec3D(0, 0, 0), 5, 0.5, radius);
+                    physicsSystem.addEntity(spheres[sphereIndex++]);
+                }
+            }
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        for (int step = 0; step < NUM_STEPS; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        return spheres;
+    }
+}
@@ -0,0 +1,60 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Prints the cost of continuous collision detection in a scene of slow spheres, as the number of fast spheres grows.
+ */
+@Ignore("Benchmark, run manually")
+public class ContinuousCollisionBenchmarks
+{
+    @Test
+    public void benchmarkFastSpheres()
+    {
+        int[] fastCounts = {5, 100};
+        for (int numFast : fastCounts)
+        {
+            double withoutMillis = Double.POSITIVE_INFINITY;
+            double withMillis = Double.POSITIVE_INFINITY;
+            for (int trial = 0; trial < 3; trial++)
+            {
+                withoutMillis = Math.min(withoutMillis, runProjectileScene(numFast, false));
+                withMillis = Math.min(withMillis, runProjectileScene(numFast, true));
+            }
+            System.out.println("10000 slow spheres, " + numFast + " fast, 50 steps: " + withoutMillis + "ms without CCD, " + withMillis + "ms with");
+        }
+    }
+
+    /**
+     * A grid of slow spheres, with fast projectiles passing over it.
+     *
+     * @return time taken for 50 steps
+     */
+    private static double runProjectileScene(int numFast, boolean continuousCollisionDetection)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (continuousCollisionDetection)
+        {
+            physicsSystem.enableContinuousCollisionDetection(0.5);
+        }
+        for (int i = 0; i < 10000; i++)
+        {
+            physicsSystem.addEntity(new SphereEntity(new Vec3D((i % 100) * 20, (i / 100) * 20, 0), new Vec3D(1, 0, 0), 1, 1, 2));
+        }
+        for (int i = 0; i < numFast; i++)
+        {
+            physicsSystem.addEntity(new SphereEntity(new Vec3D(0, -50 - i * 20, 0), new Vec3D(3000, 0, 0), 1, 1, 2));
+        }
+        long start = System.nanoTime();
+        for (int step = 0; step < 50; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        return (System.nanoTime() - start) / 1000000.0;
+    }
+}
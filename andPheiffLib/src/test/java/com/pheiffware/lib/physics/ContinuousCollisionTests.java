@@ -0,0 +1,152 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.geometry.intersect.IntersectCalc;
+import com.pheiffware.lib.geometry.shapes.LineSegment;
+import com.pheiffware.lib.physics.broadPhase.SpatialIndex;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.physics.solver.ContinuousCollisionDetector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks swept sphere time of impact calculations and that continuous collision detection stops fast spheres tunnelling.
+ */
+public class ContinuousCollisionTests
+{
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void sphereTimeOfImpact()
+    {
+        //Gap of 6 between surfaces, closing at 20
+        double time = IntersectCalc.calcTimeOfImpact3D(new Vec3D(0, 0, 0), 10, 0, 0, 2, new Vec3D(10, 0, 0), -10, 0, 0, 2);
+        assertEquals(0.3, time, DELTA);
+        //Moving apart
+        assertEquals(-1, IntersectCalc.calcTimeOfImpact3D(new Vec3D(0, 0, 0), -10, 0, 0, 2, new Vec3D(10, 0, 0), 0, 0, 0, 2), DELTA);
+        //Passing by
+        assertEquals(-1, IntersectCalc.calcTimeOfImpact3D(new Vec3D(0, 0, 0), 20, 0, 0, 2, new Vec3D(10, 5, 0), 0, 0, 0, 2), DELTA);
+        //Too slow to reach
+        assertEquals(-1, IntersectCalc.calcTimeOfImpact3D(new Vec3D(0, 0, 0), 5, 0, 0, 2, new Vec3D(10, 0, 0), 0, 0, 0, 2), DELTA);
+    }
+
+    @Test
+    public void lineSegmentTimeOfImpact()
+    {
+        //Horizontal segment, facing up (-y)
+        LineSegment lineSegment = new LineSegment(new Vec3D(0, 100, 0), new Vec3D(100, 100, 0), -1);
+        //Face hit: 18 to go before touching, moving 36
+        assertEquals(0.5, IntersectCalc.calcTimeOfImpact2D(lineSegment, new Vec3D(50, 80, 0), 0, 36, 2), DELTA);
+        //From behind the segment
+        assertEquals(-1, IntersectCalc.calcTimeOfImpact2D(lineSegment, new Vec3D(50, 120, 0), 0, -36, 2), DELTA);
+        //Past the end, missing entirely
+        assertEquals(-1, IntersectCalc.calcTimeOfImpact2D(lineSegment, new Vec3D(110, 80, 0), 0, 36, 2), DELTA);
+        //Clipping the end point at (100,100)
+        double time = IntersectCalc.calcTimeOfImpact2D(lineSegment, new Vec3D(101, 80, 0), 0, 36, 2);
+        assertEquals((20 - Math.sqrt(3)) / 36, time, DELTA);
+    }
+
+    @Test
+    public void fastSphereDoesNotTunnel()
+    {
+        assertTrue(dropFastSphere(false) > 500);
+        assertTrue(dropFastSphere(true) < 500);
+    }
+
+    @Test
+    public void fastSpheresCollide()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.enableContinuousCollisionDetection(0.5);
+        SphereEntity sphere1 = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(3000, 0, 0), 1, 1, 2);
+        SphereEntity sphere2 = new SphereEntity(new Vec3D(50, 0, 0), new Vec3D(-3000, 0, 0), 1, 1, 2);
+        physicsSystem.addEntity(sphere1);
+        physicsSystem.addEntity(sphere2);
+        for (int step = 0; step < 5; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        assertTrue(sphere1.getCenter().x < sphere2.getCenter().x);
+        assertTrue(sphere1.velocity.x < 0);
+        assertTrue(sphere2.velocity.x > 0);
+    }
+
+    @Test
+    public void fastSphereHitsSlowSphere()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.enableContinuousCollisionDetection(0.5);
+        SphereEntity sphere = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(3000, 0, 0), 1, 1, 2);
+        //Barely moving, so not swept itself and only found through the spatial index
+        SphereEntity target = new SphereEntity(new Vec3D(20, 0, 0), new Vec3D(-10, 0, 0), 1, 1, 2);
+        physicsSystem.addEntity(sphere);
+        physicsSystem.addEntity(target);
+        physicsSystem.performTimeStep(0.01);
+        assertEquals(1, physicsSystem.getContinuousCollisionDetector().getNumSweptEntities());
+        assertEquals(1, physicsSystem.getContinuousCollisionDetector().getNumImpacts());
+        assertTrue(sphere.getCenter().x < target.getCenter().x);
+        assertTrue(target.velocity.x > 0);
+    }
+
+    @Test
+    public void twoFastSpheresHitOneTarget()
+    {
+        //Driven directly, so the narrow phase doesn't move anything afterwards
+        ContinuousCollisionDetector detector = new ContinuousCollisionDetector(0.5);
+        SphereEntity target = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 1, 1, 2);
+        SphereEntity far = new SphereEntity(new Vec3D(-100, 0, 0), new Vec3D(0, 0, 0), 1, 1, 2);
+        SphereEntity near = new SphereEntity(new Vec3D(50, 0, 0), new Vec3D(0, 0, 0), 1, 1, 2);
+        PhysicalEntity[] dynamicEntities = {target, far, near};
+        for (int i = 0; i < dynamicEntities.length; i++)
+        {
+            dynamicEntities[i].setSystemIndex(i);
+        }
+        detector.recordStartPositions(dynamicEntities, 3);
+
+        //As if integrated: the target drifts too slowly to be swept, while both others pass through it
+        target.move(0, 0.8, 0);
+        far.move(100, 0, 0);
+        near.move(-100, 0, 0);
+        detector.detect(new PhysicalEntity[0], 0, dynamicEntities, 3, new SpatialIndex());
+        assertEquals(2, detector.getNumImpacts());
+
+        //Each hitter stops at its own impact, the near one first
+        double farTime = (far.getCenter().x + 100) / 100;
+        double nearTime = (50 - near.getCenter().x) / 100;
+        assertTrue(nearTime < farTime);
+        assertTrue(nearTime < 0.5);
+
+        //The target is moved back once, to the earliest impact, so it is still where the near sphere was placed against it
+        assertEquals(0, target.getCenter().x, DELTA);
+        assertEquals(0.8 * nearTime, target.getCenter().y, DELTA);
+        assertTrue(Vec3D.distance(target.getCenter(), near.getCenter()) < 4);
+    }
+
+    /**
+     * Fires a small sphere down at a floor, fast enough to pass through it in a single step.
+     *
+     * @return final height of the sphere
+     */
+    private static double dropFastSphere(boolean continuousCollisionDetection)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (continuousCollisionDetection)
+        {
+            physicsSystem.enableContinuousCollisionDetection(0.5);
+        }
+        physicsSystem.addEntity(new WallEntity(new Vec3D(-100, 500, 0), new Vec3D(100, 500, 0), -1, new Vec3D(0, 0, 0), 1));
+        SphereEntity sphere = new SphereEntity(new Vec3D(0, 480, 0), new Vec3D(0, 3000, 0), 1, 1, 2);
+        physicsSystem.addEntity(sphere);
+        for (int step = 0; step < 5; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        return sphere.getCenter().y;
+    }
+}
@@ -0,0 +1,252 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.BruteForceBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks adding and removing entities by handle, including removal deferred from ai().
+ */
+public class EntityRemovalTests
+{
+    @Test
+    public void handlesSurviveSwapRemove()
+    {
+        checkHandlesSurviveSwapRemove(false);
+    }
+
+    @Test
+    public void handlesSurviveSwapRemovePacked()
+    {
+        checkHandlesSurviveSwapRemove(true);
+    }
+
+    @Test
+    public void removalFromAiIsDeferred()
+    {
+        final PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        final SphereEntity sphere = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 1, 0.5, 5);
+        final long sphereHandle = physicsSystem.addEntity(sphere);
+        final boolean[] presentDuringStep = new boolean[1];
+        physicsSystem.addEntity(new Entity()
+        {
+            @Override
+            public void ai(double elapsedTime, PhysicsSystem system)
+            {
+                if (system.getEntity(sphereHandle) != null)
+                {
+                    assertTrue(system.removeEntity(sphereHandle));
+                    //A second request in the same step is harmless
+                    assertTrue(system.removeEntity(sphereHandle));
+                    presentDuringStep[0] = system.getNumPhysicalEntities() == 1;
+                }
+            }
+        });
+        physicsSystem.performTimeStep(0.01);
+        assertTrue(presentDuringStep[0]);
+        assertEquals(0, physicsSystem.getNumPhysicalEntities());
+        assertNull(physicsSystem.getEntity(sphereHandle));
+        assertEquals(PhysicsSystem.INVALID_HANDLE, physicsSystem.getHandle(sphere));
+    }
+
+    @Test
+    public void sweepAndPruneMatchesBruteForceAfterChurn()
+    {
+        Random random = new Random(5);
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, 1000, 0), new Vec3D(1000, 1000, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        List<Long> handles = new ArrayList<>();
+        //Kept across steps, so it updates its order incrementally as entities come and go
+        SweepAndPruneBroadPhase incremental = new SweepAndPruneBroadPhase();
+        for (int step = 0; step < 200; step++)
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                handles.add(physicsSystem.addEntity(randomSphere(random)));
+            }
+            for (int i = 0; i < 15; i++)
+            {
+                physicsSystem.removeEntity(handles.remove(random.nextInt(handles.size())));
+            }
+            physicsSystem.performTimeStep(0.01);
+
+            CollisionPairList expected = new CollisionPairList();
+            new BruteForceBroadPhase().findPairs(new PhysicalEntity[0], 0, physicsSystem.getPhysicalEntities(), physicsSystem.getNumPhysicalEntities(), expected);
+            Set<String> expectedOverlapping = new HashSet<>();
+            for (int i = 0; i < expected.size(); i++)
+            {
+                SphereEntity sphere1 = (SphereEntity) expected.getEntity1(i);
+                SphereEntity sphere2 = (SphereEntity) expected.getEntity2(i);
+                if (Vec3D.distance(sphere1.getCenter(), sphere2.getCenter()) < sphere1.getRadius() + sphere2.getRadius())
+                {
+                    expectedOverlapping.add(pairKey(sphere1, sphere2));
+                }
+            }
+            CollisionPairList actual = new CollisionPairList();
+            incremental.findPairs(new PhysicalEntity[0], 0, physicsSystem.getPhysicalEntities(), physicsSystem.getNumPhysicalEntities(), actual);
+            Set<String> actualPairs = new HashSet<>();
+            for (int i = 0; i < actual.size(); i++)
+            {
+                actualPairs.add(pairKey(actual.getEntity1(i), actual.getEntity2(i)));
+            }
+            assertTrue(actualPairs.containsAll(expectedOverlapping));
+        }
+        assertEquals(200 * 5, physicsSystem.getNumPhysicalEntities());
+    }
+
+    @Test
+    public void sweepAndPruneMatchesBruteForceAfterStaticChurn()
+    {
+        Random random = new Random(7);
+        List<PhysicalEntity> statics = new ArrayList<>();
+        List<PhysicalEntity> dynamics = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            dynamics.add(randomSphere(random));
+        }
+        //Kept across steps, so dynamic proxies are renumbered as the number of statics changes
+        SweepAndPruneBroadPhase incremental = new SweepAndPruneBroadPhase();
+        for (int step = 0; step < 100; step++)
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                statics.add(new WallEntity(new Vec3D(x, y, 0), new Vec3D(x + 50, y + 20, 0), -1, new Vec3D(0, 0, 0), 0.5));
+            }
+            int numRemovals = random.nextInt(5);
+            for (int i = 0; i < numRemovals && !statics.isEmpty(); i++)
+            {
+                swapRemove(statics, random.nextInt(statics.size()));
+            }
+            dynamics.add(randomSphere(random));
+            swapRemove(dynamics, random.nextInt(dynamics.size()));
+            for (PhysicalEntity sphere : dynamics)
+            {
+                sphere.move(random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2, 0);
+            }
+
+            PhysicalEntity[] staticArray = statics.toArray(new PhysicalEntity[0]);
+            PhysicalEntity[] dynamicArray = dynamics.toArray(new PhysicalEntity[0]);
+            //Brute force reports every pair, sweep and prune exactly those whose bounds overlap
+            assertEquals(findPairKeys(new BruteForceBroadPhase(), staticArray, dynamicArray, true), findPairKeys(incremental, staticArray, dynamicArray, false));
+        }
+    }
+
+    private static void checkHandlesSurviveSwapRemove(boolean packed)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (packed)
+        {
+            physicsSystem.usePackedSphereStorage();
+        }
+        Random random = new Random(3);
+        int numSpheres = 3000;
+        SphereEntity[] spheres = new SphereEntity[numSpheres];
+        long[] handles = new long[numSpheres];
+        for (int i = 0; i < numSpheres; i++)
+        {
+            spheres[i] = randomSphere(random);
+            handles[i] = physicsSystem.addEntity(spheres[i]);
+        }
+        assertEquals(numSpheres, physicsSystem.getNumPhysicalEntities());
+
+        for (int i = 0; i < numSpheres; i += 2)
+        {
+            assertTrue(physicsSystem.removeEntity(handles[i]));
+        }
+        assertEquals(numSpheres / 2, physicsSystem.getNumPhysicalEntities());
+        for (int i = 0; i < numSpheres; i++)
+        {
+            if (i % 2 == 0)
+            {
+                assertNull(physicsSystem.getEntity(handles[i]));
+                assertFalse(physicsSystem.removeEntity(handles[i]));
+                assertFalse(spheres[i].isPacked());
+            }
+            else
+            {
+                assertSame(spheres[i], physicsSystem.getEntity(handles[i]));
+                assertEquals(packed, spheres[i].isPacked());
+            }
+        }
+
+        //Reused slots must not revive stale handles
+        SphereEntity newSphere = randomSphere(random);
+        long newHandle = physicsSystem.addEntity(newSphere);
+        assertSame(newSphere, physicsSystem.getEntity(newHandle));
+        for (int i = 0; i < numSpheres; i += 2)
+        {
+            assertNull(physicsSystem.getEntity(handles[i]));
+        }
+
+        //Survivors are still simulated
+        Vec3D before = new Vec3D(spheres[1].getCenter());
+        physicsSystem.performTimeStep(0.01);
+        assertFalse(before.equals(spheres[1].getCenter()));
+    }
+
+    /**
+     * Removes an element the way PhysicsSystem does, moving the last one into its place.
+     */
+    private static void swapRemove(List<PhysicalEntity> list, int index)
+    {
+        PhysicalEntity last = list.remove(list.size() - 1);
+        if (index < list.size())
+        {
+            list.set(index, last);
+        }
+    }
+
+    private static Set<String> findPairKeys(BroadPhase broadPhase, PhysicalEntity[] staticEntities, PhysicalEntity[] dynamicEntities, boolean onlyOverlapping)
+    {
+        CollisionPairList pairs = new CollisionPairList();
+        broadPhase.findPairs(staticEntities, staticEntities.length, dynamicEntities, dynamicEntities.length, pairs);
+        Set<String> keys = new HashSet<>();
+        BoundingBox box1 = new BoundingBox();
+        BoundingBox box2 = new BoundingBox();
+        for (int i = 0; i < pairs.size(); i++)
+        {
+            pairs.getEntity1(i).calcBoundingBox(box1);
+            pairs.getEntity2(i).calcBoundingBox(box2);
+            if (!onlyOverlapping || box1.overlapping(box2))
+            {
+                keys.add(pairKey(pairs.getEntity1(i), pairs.getEntity2(i)));
+            }
+        }
+        return keys;
+    }
+
+    private static String pairKey(PhysicalEntity entity1, PhysicalEntity entity2)
+    {
+        return System.identityHashCode(entity1) + ":" + System.identityHashCode(entity2);
+    }
+
+    private static SphereEntity randomSphere(Random random)
+    {
+        Vec3D center = new Vec3D(random.nextDouble() * 1000, random.nextDouble() * 1000, 0);
+        Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+        return new SphereEntity(center, velocity, 1, 0.9, 5);
+    }
+}
@@ -0,0 +1,163 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.simulation.RealTimeSimulationRunner;
+import com.pheiffware.lib.simulation.Simulation;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks fixed step mode of RealTimeSimulationRunner and interpolated render state.
+ */
+public class FixedTimeStepTests
+{
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void interpolatesSpheres()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        SphereEntity sphere = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(100, 0, 0), 1, 1, 5);
+        physicsSystem.addEntity(sphere);
+
+        //Starts recording previous positions
+        physicsSystem.copyInterpolatedState(0.5);
+        physicsSystem.performTimeStep(0.01);
+
+        assertEquals(0, getCenterX(physicsSystem.copyInterpolatedState(0)), DELTA);
+        assertEquals(0.5, getCenterX(physicsSystem.copyInterpolatedState(0.5)), DELTA);
+        assertEquals(1, getCenterX(physicsSystem.copyInterpolatedState(1)), DELTA);
+
+        //Render copies don't move with the simulation
+        List<Entity> state = physicsSystem.copyState();
+        physicsSystem.performTimeStep(0.01);
+        assertEquals(1, getCenterX(state), DELTA);
+        assertEquals(2, sphere.getCenter().x, DELTA);
+    }
+
+    @Test
+    public void interpolationSurvivesShuffle()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        for (int i = 0; i < 20; i++)
+        {
+            physicsSystem.addEntity(new SphereEntity(new Vec3D(i * 20, 0, 0), new Vec3D(100 * i, 0, 0), 1, 1, 5));
+        }
+        RenderSnapshot snapshot = new RenderSnapshot();
+        physicsSystem.writeInterpolatedRenderSnapshot(snapshot, 0);
+        physicsSystem.performTimeStep(0.01);
+        physicsSystem.randomizeEntityProcessingOrder_TESTING_ONLY(new Random(1));
+
+        //Each sphere is still drawn where it started the step
+        physicsSystem.writeInterpolatedRenderSnapshot(snapshot, 0);
+        assertEquals(20, snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            SphereEntity sphere = (SphereEntity) physicsSystem.getEntity(snapshot.getHandle(i));
+            double startX = sphere.getCenter().x - sphere.velocity.x * 0.01;
+            assertEquals(startX, snapshot.getInstanceData()[i * RenderSnapshot.FLOATS_PER_INSTANCE + RenderSnapshot.POSITION_OFFSET], 1e-3);
+        }
+    }
+
+    @Test
+    public void runsExactSteps() throws InterruptedException
+    {
+        StepRecorder stepRecorder = new StepRecorder(0);
+        RealTimeSimulationRunner<Integer> runner = new RealTimeSimulationRunner<Integer>(stepRecorder, 1.0, 0.1, 0.001);
+        runner.setFixedTimeStep(0.01, 5);
+        runner.start();
+        Thread.sleep(200);
+        int numSteps = runner.getState();
+        double alpha = runner.getInterpolationAlpha();
+        runner.stopAndWait();
+
+        assertTrue(numSteps > 5);
+        assertTrue(alpha >= 0 && alpha <= 1);
+        assertTrue(stepRecorder.allStepsEqual(0.01));
+        assertEquals(0, runner.getDroppedSimTime(), DELTA);
+    }
+
+    @Test
+    public void dropsBacklog() throws InterruptedException
+    {
+        //Each step takes 3x longer than the time it simulates
+        StepRecorder stepRecorder = new StepRecorder(30);
+        RealTimeSimulationRunner<Integer> runner = new RealTimeSimulationRunner<Integer>(stepRecorder, 1.0, 0.1, 0.001);
+        runner.setFixedTimeStep(0.01, 2);
+        runner.start();
+        Thread.sleep(300);
+        runner.stopAndWait();
+
+        assertTrue(runner.getDroppedSimTime() > 0);
+        assertTrue(stepRecorder.allStepsEqual(0.01));
+    }
+
+    private static double getCenterX(List<Entity> state)
+    {
+        return ((SphereEntity) state.get(0)).getCenter().x;
+    }
+
+    /**
+     * Records the size of every step and reports the number of steps as its state.
+     */
+    private static class StepRecorder implements Simulation<Integer>
+    {
+        private final long stepDelayMillis;
+        private int numSteps;
+        private boolean allStepsEqual = true;
+        private double firstStep;
+
+        StepRecorder(long stepDelayMillis)
+        {
+            this.stepDelayMillis = stepDelayMillis;
+        }
+
+        @Override
+        public void performTimeStep(double elapsedTime)
+        {
+            if (numSteps == 0)
+            {
+                firstStep = elapsedTime;
+            }
+            else if (elapsedTime != firstStep)
+            {
+                allStepsEqual = false;
+            }
+            numSteps++;
+            if (stepDelayMillis > 0)
+            {
+                try
+                {
+                    Thread.sleep(stepDelayMillis);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        }
+
+        @Override
+        public Integer copyState()
+        {
+            return numSteps;
+        }
+
+        @Override
+        public void applyExternalInput(String key, Object value)
+        {
+        }
+
+        boolean allStepsEqual(double timeStep)
+        {
+            return allStepsEqual && (numSteps == 0 || firstStep == timeStep);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.HeightfieldEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Prints the time to simulate spheres rolling on a large heightfield, compared with the same terrain built from wall segments.
+ */
+@Ignore("Benchmark, run manually")
+public class HeightfieldBenchmarks
+{
+    @Test
+    public void benchmark()
+    {
+        int numSamples = 100001;
+        double spacing = 2;
+        double[] heights = HeightfieldTests.generateTerrain(numSamples, new Random(5));
+
+        PhysicsSystem heightfieldSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        heightfieldSystem.usePackedSphereStorage();
+        heightfieldSystem.addEntity(new HeightfieldEntity(0, 300, spacing, heights, 0.5));
+        addSpheres(heightfieldSystem);
+
+        PhysicsSystem wallSystem = new PhysicsSystem(new StaticHierarchyBroadPhase());
+        wallSystem.usePackedSphereStorage();
+        for (int i = 0; i < numSamples - 1; i++)
+        {
+            wallSystem.addEntity(new WallEntity(new Vec3D(i * spacing, 300 + heights[i], 0), new Vec3D((i + 1) * spacing, 300 + heights[i + 1], 0), -1,
+                    new Vec3D(0, 0, 0), 0.5));
+        }
+        addSpheres(wallSystem);
+
+        double heightfieldMillis = Double.POSITIVE_INFINITY;
+        double wallMillis = Double.POSITIVE_INFINITY;
+        for (int trial = 0; trial < 5; trial++)
+        {
+            long start = System.nanoTime();
+            for (int step = 0; step < 200; step++)
+            {
+                heightfieldSystem.performTimeStep(0.002);
+            }
+            heightfieldMillis = Math.min(heightfieldMillis, (System.nanoTime() - start) / 1000000.0);
+            start = System.nanoTime();
+            for (int step = 0; step < 200; step++)
+            {
+                wallSystem.performTimeStep(0.002);
+            }
+            wallMillis = Math.min(wallMillis, (System.nanoTime() - start) / 1000000.0);
+        }
+        System.out.println((numSamples - 1) + " cell terrain, 2000 spheres, 200 steps: heightfield " + heightfieldMillis + "ms, walls " + wallMillis + "ms");
+    }
+
+    private static void addSpheres(PhysicsSystem physicsSystem)
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++)
+        {
+            Vec3D center = new Vec3D(50 + i * 99.0, 150 + random.nextDouble() * 50, 0);
+            physicsSystem.addEntity(new SphereEntity(center, new Vec3D(random.nextDouble() * 100 - 50, 0, 0), 1, 0.5, 4));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+    }
+}
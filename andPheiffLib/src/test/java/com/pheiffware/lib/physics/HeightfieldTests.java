@@ -0,0 +1,179 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SpatialQueryResults;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntityCollision;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.HeightfieldEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HeightfieldTests
+{
+    @Test
+    public void contactNormals()
+    {
+        //A flat run, a peak at x = 30 and a valley at x = 50 (y is down)
+        HeightfieldEntity heightfield = new HeightfieldEntity(0, 100, 10, new double[]{0, 0, 0, -10, 0, 10, 0, 0}, 1);
+
+        //Directly over the flat join at x = 10, 1 deep: pushed straight up once, not once per cell
+        SphereEntity sphere = resolve(heightfield, 10, 96, 5);
+        assertEquals(10, sphere.getCenter().x, 1e-12);
+        assertEquals(95, sphere.getCenter().y, 1e-12);
+
+        //Over the peak, between the normals of its cells: pushed away from the peak
+        sphere = resolve(heightfield, 31, 87, 5);
+        Vec3D pushed = Vec3D.sub(sphere.getCenter(), new Vec3D(30, 90, 0));
+        assertEquals(5, pushed.magnitude(), 1e-9);
+        assertEquals(pushed.x / pushed.magnitude(), 1 / Math.sqrt(10), 1e-9);
+
+        //Resting in the valley, touching both faces
+        sphere = resolve(heightfield, 50, 108, 5);
+        assertEquals(50, sphere.getCenter().x, 1e-9);
+        assertEquals(110 - 5 * Math.sqrt(2), sphere.getCenter().y, 1e-9);
+
+        //Sunk below the surface: brought back up
+        sphere = resolve(heightfield, 5, 103, 2);
+        assertEquals(98, sphere.getCenter().y, 1e-12);
+
+        //Off the end of the terrain: the end sample is a rounded cap
+        sphere = resolve(heightfield, 73, 97, 5);
+        assertEquals(5, Vec3D.distance(sphere.getCenter(), new Vec3D(70, 100, 0)), 1e-9);
+
+        //Clear of the surface
+        sphere = resolve(heightfield, 45, 96, 4);
+        assertEquals(45, sphere.getCenter().x, 0);
+        assertEquals(96, sphere.getCenter().y, 0);
+
+        assertEquals(100, heightfield.getSurfaceY(20), 1e-12);
+        assertEquals(95, heightfield.getSurfaceY(25), 1e-12);
+        assertEquals(100, heightfield.getSurfaceY(70), 1e-12);
+        assertTrue(Double.isNaN(heightfield.getSurfaceY(-1)));
+        assertTrue(Double.isNaN(heightfield.getSurfaceY(71)));
+    }
+
+    @Test
+    public void sunkInPit()
+    {
+        //A V shaped pit, bottoming out at (10, 110)
+        HeightfieldEntity heightfield = new HeightfieldEntity(0, 100, 10, new double[]{0, 10, 0}, 1);
+
+        //Sunk below the bottom, where neither face reaches: pushed up into the pit, touching both faces
+        SphereEntity sphere = resolve(heightfield, 10, 112, 3);
+        assertEquals(10, sphere.getCenter().x, 1e-9);
+        assertEquals(110 - 3 * Math.sqrt(2), sphere.getCenter().y, 1e-9);
+
+        //Sunk to one side of the bottom
+        sphere = resolve(heightfield, 9, 112, 3);
+        assertEquals(10, sphere.getCenter().x, 1e-9);
+        assertEquals(110 - 3 * Math.sqrt(2), sphere.getCenter().y, 1e-9);
+    }
+
+    @Test
+    public void rollsAcrossCellsLikeOneWall()
+    {
+        //A long flat heightfield with many cells and a single wall covering the same ground
+        double[] heights = new double[1001];
+        PhysicsSystem heightfieldSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        heightfieldSystem.addEntity(new HeightfieldEntity(0, 100, 1, heights, 0.5));
+        SphereEntity heightfieldSphere = new SphereEntity(new Vec3D(20, 95, 0), new Vec3D(200, 0, 0), 1, 0.5, 5);
+        heightfieldSystem.addEntity(heightfieldSphere);
+        heightfieldSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+
+        PhysicsSystem wallSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        wallSystem.addEntity(new WallEntity(new Vec3D(0, 100, 0), new Vec3D(1000, 100, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        SphereEntity wallSphere = new SphereEntity(new Vec3D(20, 95, 0), new Vec3D(200, 0, 0), 1, 0.5, 5);
+        wallSystem.addEntity(wallSphere);
+        wallSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+
+        for (int step = 0; step < 2000; step++)
+        {
+            heightfieldSystem.performTimeStep(0.002);
+            wallSystem.performTimeStep(0.002);
+            assertEquals(wallSphere.getCenter().x, heightfieldSphere.getCenter().x, 1e-9);
+            assertEquals(wallSphere.getCenter().y, heightfieldSphere.getCenter().y, 1e-9);
+        }
+        //Crossed hundreds of cells without being slowed
+        assertEquals(820, heightfieldSphere.getCenter().x, 1e-6);
+    }
+
+    @Test
+    public void spheresSettleOnTerrain()
+    {
+        Random random = new Random(3);
+        double[] heights = generateTerrain(2001, random);
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        HeightfieldEntity heightfield = new HeightfieldEntity(0, 300, 2, heights, 0.5);
+        physicsSystem.addEntity(heightfield);
+        SphereEntity[] spheres = new SphereEntity[200];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            spheres[i] = new SphereEntity(new Vec3D(500 + i * 15, 100 + random.nextDouble() * 50, 0), new Vec3D(random.nextDouble() * 100 - 50, 0, 0), 1, 0.5, 4);
+            physicsSystem.addEntity(spheres[i]);
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        for (int step = 0; step < 3000; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        for (SphereEntity sphere : spheres)
+        {
+            Vec3D center = sphere.getCenter();
+            //Above the ground, by at least close to its radius
+            assertTrue(center.y < heightfield.getSurfaceY(center.x) - 3.5);
+        }
+
+        //Spatial queries see the terrain
+        SpatialQueryResults results = new SpatialQueryResults();
+        double x = 1001;
+        assertTrue(physicsSystem.raycast(new Vec3D(x, 0, 0), new Vec3D(0, 1, 0), 1000, results));
+        assertTrue(results.getDistance(0) <= heightfield.getSurfaceY(x) + 1e-9);
+        physicsSystem.raycastAll(new Vec3D(x, 0, 0), new Vec3D(0, 1, 0), 1000, results);
+        assertEquals(heightfield.getSurfaceY(x), results.getDistance(results.size() - 1), 1e-9);
+        assertTrue(results.getEntity(results.size() - 1) == heightfield);
+        physicsSystem.findNearest(new Vec3D(x, heightfield.getSurfaceY(x) + 5, 0), 1, 1000, results);
+        assertTrue(results.getEntity(0) == heightfield);
+        assertEquals(0, results.getDistance(0), 0);
+    }
+
+    /**
+     * Places a sphere and resolves any collision with the heightfield directly.
+     *
+     * @return the sphere, after being pushed out
+     */
+    private static SphereEntity resolve(HeightfieldEntity heightfield, double x, double y, double radius)
+    {
+        SphereEntity sphere = new SphereEntity(new Vec3D(x, y, 0), new Vec3D(0, 0, 0), 1, 1, radius);
+        try
+        {
+            CollisionDispatcher.getDefault().resolve(heightfield, sphere, 0.01, new PhysicalEntityCollision());
+        }
+        catch (InteractionException e)
+        {
+            throw new RuntimeException(e);
+        }
+        return sphere;
+    }
+
+    /**
+     * Rolling hills with some noise.
+     */
+    static double[] generateTerrain(int numSamples, Random random)
+    {
+        double[] heights = new double[numSamples];
+        for (int i = 0; i < numSamples; i++)
+        {
+            heights[i] = 30 * Math.sin(i * 0.02) + 10 * Math.sin(i * 0.13) + random.nextDouble() * 2;
+        }
+        return heights;
+    }
+}
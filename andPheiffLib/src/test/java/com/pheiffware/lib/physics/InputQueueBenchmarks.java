@@ -0,0 +1,93 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.simulation.DeterministicSimulationRunner;
+import com.pheiffware.lib.simulation.SimulationRunner;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Prints enqueue latency under contention, for the lock free input queue and the blocking applyExternalInput().
+ */
+@Ignore("Benchmark, run manually")
+public class InputQueueBenchmarks
+{
+    @Test
+    public void benchmarkEnqueueLatency() throws InterruptedException
+    {
+        final int inputsPerProducer = 2000;
+        InputQueueTests.InputRecorder simulation = new InputQueueTests.InputRecorder();
+        final SimulationRunner<Object> runner = new DeterministicSimulationRunner<Object>(simulation, Double.POSITIVE_INFINITY, 0.01, Integer.MAX_VALUE);
+        runner.start();
+        double blockingNanos = timeProducers(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < inputsPerProducer; i++)
+                {
+                    runner.applyExternalInput("key", i);
+                }
+            }
+        });
+        double queuedNanos = timeProducers(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < inputsPerProducer; i++)
+                {
+                    runner.enqueueExternalInput("key", i);
+                }
+            }
+        });
+        runner.stopAndWait();
+        System.out.println("Mean input latency with " + InputQueueTests.NUM_PRODUCERS + " producers: applyExternalInput = " + blockingNanos / inputsPerProducer / 1000.0
+                + "us, enqueueExternalInput = " + queuedNanos / inputsPerProducer / 1000.0 + "us");
+    }
+
+    /**
+     * Runs the given code on several threads at once.
+     *
+     * @return mean nanoseconds each thread took
+     */
+    private static double timeProducers(final Runnable producer) throws InterruptedException
+    {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final long[] nanos = new long[InputQueueTests.NUM_PRODUCERS];
+        Thread[] threads = new Thread[InputQueueTests.NUM_PRODUCERS];
+        for (int p = 0; p < InputQueueTests.NUM_PRODUCERS; p++)
+        {
+            final int index = p;
+            threads[p] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        startLatch.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    producer.run();
+                    nanos[index] = System.nanoTime() - start;
+                }
+            };
+            threads[p].start();
+        }
+        startLatch.countDown();
+        long totalNanos = 0;
+        for (int p = 0; p < InputQueueTests.NUM_PRODUCERS; p++)
+        {
+            threads[p].join();
+            totalNanos += nanos[p];
+        }
+        return totalNanos / (double) InputQueueTests.NUM_PRODUCERS;
+    }
+}
@@ -0,0 +1,173 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.simulation.InputQueue;
+import com.pheiffware.lib.simulation.Simulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks ordering and coalescing of the lock free input queue.
+ */
+public class InputQueueTests
+{
+    static final int NUM_PRODUCERS = 4;
+
+    @Test
+    public void preservesPerProducerOrder() throws InterruptedException
+    {
+        final int entriesPerProducer = 100000;
+        final InputQueue inputQueue = new InputQueue();
+        final int[] nextSequence = new int[NUM_PRODUCERS];
+        final boolean[] inOrder = {true};
+        Simulation<Object> simulation = new InputRecorder()
+        {
+            @Override
+            public void applyExternalInput(String key, Object value)
+            {
+                check(Integer.parseInt(key), (Integer) value);
+            }
+
+            private void check(int producer, int sequence)
+            {
+                if (nextSequence[producer] != sequence)
+                {
+                    inOrder[0] = false;
+                }
+                nextSequence[producer] = sequence + 1;
+            }
+        };
+
+        Thread[] producers = new Thread[NUM_PRODUCERS];
+        for (int p = 0; p < NUM_PRODUCERS; p++)
+        {
+            final int producer = p;
+            producers[p] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    //Inputs and commands interleaved, sharing one sequence
+                    for (int i = 0; i < entriesPerProducer; i += 2)
+                    {
+                        inputQueue.enqueueInput(Integer.toString(producer), i);
+                        final int sequence = i + 1;
+                        inputQueue.enqueueCommand(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                if (nextSequence[producer] != sequence)
+                                {
+                                    inOrder[0] = false;
+                                }
+                                nextSequence[producer] = sequence + 1;
+                            }
+                        });
+                    }
+                }
+            };
+            producers[p].start();
+        }
+        int numDrained = 0;
+        while (numDrained < NUM_PRODUCERS * entriesPerProducer)
+        {
+            numDrained += inputQueue.drain(simulation);
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+        assertEquals(0, inputQueue.drain(simulation));
+        assertTrue(inOrder[0]);
+        for (int p = 0; p < NUM_PRODUCERS; p++)
+        {
+            assertEquals(entriesPerProducer, nextSequence[p]);
+        }
+    }
+
+    @Test
+    public void coalescesRepeatedKeys()
+    {
+        InputQueue inputQueue = new InputQueue();
+        inputQueue.coalesce("touch");
+        InputRecorder inputRecorder = new InputRecorder();
+        inputQueue.enqueueInput("touch", 1);
+        inputQueue.enqueueInput("key", "a");
+        inputQueue.enqueueInput("touch", 2);
+        inputQueue.enqueueInput("key", "b");
+        inputQueue.enqueueInput("touch", 3);
+        inputQueue.enqueueInput("key", "c");
+        assertEquals(6, inputQueue.drain(inputRecorder));
+        assertEquals(Arrays.asList("key=a", "key=b", "touch=3", "key=c"), inputRecorder.inputs);
+
+        //Coalescing only applies within one drain
+        inputQueue.enqueueInput("touch", 4);
+        inputQueue.drain(inputRecorder);
+        assertEquals("touch=4", inputRecorder.inputs.get(4));
+    }
+
+    @Test
+    public void failedDrainDoesNotReplay()
+    {
+        InputQueue inputQueue = new InputQueue();
+        inputQueue.coalesce("touch");
+        InputRecorder inputRecorder = new InputRecorder();
+        inputQueue.enqueueInput("touch", 1);
+        inputQueue.enqueueInput("key", "a");
+        inputQueue.enqueueCommand(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new IllegalStateException("command failed");
+            }
+        });
+        inputQueue.enqueueInput("key", "b");
+        inputQueue.enqueueInput("touch", 2);
+        try
+        {
+            inputQueue.drain(inputRecorder);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("command failed", e.getMessage());
+        }
+        assertEquals(Arrays.asList("key=a"), inputRecorder.inputs);
+
+        //Nothing before the failure is applied again, and nothing after it is lost
+        assertEquals(2, inputQueue.drain(inputRecorder));
+        assertEquals(Arrays.asList("key=a", "key=b", "touch=2"), inputRecorder.inputs);
+        assertEquals(0, inputQueue.drain(inputRecorder));
+    }
+
+    static class InputRecorder implements Simulation<Object>
+    {
+        final List<String> inputs = new ArrayList<String>();
+
+        @Override
+        public void performTimeStep(double elapsedTime)
+        {
+        }
+
+        @Override
+        public Object copyState()
+        {
+            return null;
+        }
+
+        @Override
+        public void applyExternalInput(String key, Object value)
+        {
+            inputs.add(key + "=" + value);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.CollisionPairList;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Prints the integration cost per body of each integrator, with and without packed sphere storage.
+ */
+@Ignore("Benchmark, run manually")
+public class IntegratorBenchmarks
+{
+    @Test
+    public void costPerBody()
+    {
+        int numBodies = 10000;
+        int numSteps = 300;
+        for (int packed = 0; packed < 2; packed++)
+        {
+            for (Integrator integrator : Integrator.values())
+            {
+                PhysicsSystem physicsSystem = IntegratorTests.createSystem(integrator, packed == 1);
+                //No broad phase or collisions, so only integration is timed
+                physicsSystem.setBroadPhase(new BroadPhase()
+                {
+                    @Override
+                    public void findPairs(PhysicalEntity[] staticEntities, int numStaticEntities, PhysicalEntity[] dynamicEntities, int numDynamicEntities, CollisionPairList pairs)
+                    {
+                    }
+
+                    @Override
+                    public void reset()
+                    {
+                    }
+                });
+                Random random = new Random(3);
+                for (int i = 0; i < numBodies; i++)
+                {
+                    physicsSystem.addEntity(new SphereEntity(new Vec3D(random.nextDouble() * 1000, random.nextDouble() * 1000, 0), new Vec3D(random.nextDouble() * 10, 0, 0), 1, 1, 1));
+                }
+                physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, IntegratorTests.GRAVITY, 0)));
+                double bestNanos = Double.POSITIVE_INFINITY;
+                for (int trial = 0; trial < 5; trial++)
+                {
+                    long start = System.nanoTime();
+                    IntegratorTests.runSteps(physicsSystem, numSteps);
+                    bestNanos = Math.min(bestNanos, (double) (System.nanoTime() - start) / numSteps / numBodies);
+                }
+                System.out.println((packed == 1 ? "Packed " : "Unpacked ") + integrator + ": " + bestNanos + "ns per body per step");
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures energy drift of each integrator on a stiff spring and on the demo's BouncingBall and PoolScenario setups, and checks packed and unpacked integration agree.
+ */
+public class IntegratorTests
+{
+    static final double GRAVITY = 500;
+    private static final double SPRING_MASS = 2;
+    private static final double SPRING_STIFFNESS = 800;
+
+    @Test
+    public void springEnergyDrift()
+    {
+        //Over 100 periods, at 63 steps per period and then at larger steps
+        for (int packed = 0; packed < 2; packed++)
+        {
+            boolean isPacked = packed == 1;
+            double constantDrift = calcSpringDrift(Integrator.CONSTANT_ACCELERATION, 0.1, isPacked);
+            double eulerDrift = calcSpringDrift(Integrator.SEMI_IMPLICIT_EULER, 0.1, isPacked);
+            double verletDrift = calcSpringDrift(Integrator.VELOCITY_VERLET, 0.1, isPacked);
+            assertTrue(constantDrift > 100);
+            assertTrue(eulerDrift < 0.06);
+            assertTrue(verletDrift < 0.01);
+
+            for (double omegaStep : new double[]{1.0, 1.5})
+            {
+                eulerDrift = calcSpringDrift(Integrator.SEMI_IMPLICIT_EULER, omegaStep, isPacked);
+                verletDrift = calcSpringDrift(Integrator.VELOCITY_VERLET, omegaStep, isPacked);
+                //Energy oscillates more at larger steps, but is bounded
+                assertTrue(eulerDrift < 2 * omegaStep + 0.1);
+                assertTrue(verletDrift < 1.5 * omegaStep);
+            }
+        }
+    }
+
+    @Test
+    public void bouncingBallEnergyDrift()
+    {
+        //The demo's BouncingBall, made perfectly elastic, at the demo's step over 60 seconds
+        double step = 1 / 60.0;
+        double[] drifts = new double[Integrator.values().length];
+        for (Integrator integrator : Integrator.values())
+        {
+            for (int packed = 0; packed < 2; packed++)
+            {
+                PhysicsSystem physicsSystem = createSystem(integrator, packed == 1);
+                SphereEntity ball = new SphereEntity(new Vec3D(250, 300, 0), new Vec3D(0, 0, 0), 25, 1, 50);
+                physicsSystem.addEntity(ball);
+                physicsSystem.addEntity(new WallEntity(new Vec3D(0, 500, 0), new Vec3D(500, 500, 0), -1, new Vec3D(0, 0, 0), 1));
+                physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, GRAVITY, 0)));
+
+                //Energy is compared at the top of each bounce, where it isn't affected by contact with the wall
+                double energy = calcBallEnergy(ball);
+                double maxDrift = 0;
+                double previousVelocity = 0;
+                for (int i = 0; i < 60 / step; i++)
+                {
+                    physicsSystem.performTimeStep(step);
+                    if (previousVelocity < 0 && ball.velocity.y >= 0)
+                    {
+                        maxDrift = Math.max(maxDrift, Math.abs(calcBallEnergy(ball) - energy) / energy);
+                    }
+                    previousVelocity = ball.velocity.y;
+                }
+                if (packed == 1)
+                {
+                    assertEquals(drifts[integrator.ordinal()], maxDrift, 0);
+                }
+                drifts[integrator.ordinal()] = maxDrift;
+            }
+        }
+        //Gains energy with every bounce
+        assertTrue(drifts[Integrator.CONSTANT_ACCELERATION.ordinal()] > 0.5);
+        assertTrue(drifts[Integrator.SEMI_IMPLICIT_EULER.ordinal()] < 0.05);
+        //Gravity is constant, so velocity Verlet is identical to constant acceleration
+        assertEquals(drifts[Integrator.CONSTANT_ACCELERATION.ordinal()], drifts[Integrator.VELOCITY_VERLET.ordinal()], 0);
+    }
+
+    @Test
+    public void poolEnergyDrift()
+    {
+        //The demo's PoolScenario, made perfectly elastic. No forces act, so every integrator moves the same way.
+        for (double step : new double[]{1 / 240.0, 1 / 60.0})
+        {
+            double[] finalPositions = null;
+            for (Integrator integrator : Integrator.values())
+            {
+                for (int packed = 0; packed < 2; packed++)
+                {
+                    PhysicsSystem physicsSystem = createSystem(integrator, packed == 1);
+                    SphereEntity[] spheres = addPool(physicsSystem, 100, 400, 10, 5);
+                    double energy = calcKineticEnergy(spheres);
+                    double maxDrift = 0;
+                    for (int i = 0; i < 2 / step; i++)
+                    {
+                        physicsSystem.performTimeStep(step);
+                        maxDrift = Math.max(maxDrift, Math.abs(calcKineticEnergy(spheres) - energy) / energy);
+                    }
+                    assertTrue(maxDrift < 1e-4);
+                    double[] positions = capturePositions(spheres);
+                    if (finalPositions == null)
+                    {
+                        finalPositions = positions;
+                    }
+                    for (int i = 0; i < positions.length; i++)
+                    {
+                        assertEquals(finalPositions[i], positions[i], 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void verletRestartsAfterSleep()
+    {
+        //A body's first Verlet step, or first after waking, has no previous acceleration to correct from and so matches constant acceleration
+        for (int packed = 0; packed < 2; packed++)
+        {
+            PhysicsSystem verletSystem = createSystem(Integrator.VELOCITY_VERLET, packed == 1);
+            PhysicsSystem constantSystem = createSystem(Integrator.CONSTANT_ACCELERATION, packed == 1);
+            SphereEntity verletSphere = new SphereEntity(new Vec3D(10, 0, 0), new Vec3D(3, 0, 0), SPRING_MASS, 1, 1);
+            SphereEntity constantSphere = new SphereEntity(new Vec3D(10, 0, 0), new Vec3D(3, 0, 0), SPRING_MASS, 1, 1);
+            verletSystem.addEntity(verletSphere);
+            verletSystem.addEntity(new SpringEntity(verletSphere, SPRING_STIFFNESS));
+            constantSystem.addEntity(constantSphere);
+            constantSystem.addEntity(new SpringEntity(constantSphere, SPRING_STIFFNESS));
+            verletSystem.performTimeStep(0.01);
+            constantSystem.performTimeStep(0.01);
+            assertEquals(constantSphere.getCenter().x, verletSphere.getCenter().x, 0);
+            assertEquals(constantSphere.velocity.x, verletSphere.velocity.x, 0);
+
+            verletSystem.performTimeStep(0.01);
+            constantSystem.performTimeStep(0.01);
+            assertTrue(constantSphere.getCenter().x != verletSphere.getCenter().x);
+
+            //Sleeping stops the sphere, so it restarts like a new sphere at rest
+            verletSphere.sleep();
+            verletSphere.wake();
+            constantSystem = createSystem(Integrator.CONSTANT_ACCELERATION, packed == 1);
+            constantSphere = new SphereEntity(new Vec3D(verletSphere.getCenter()), new Vec3D(0, 0, 0), SPRING_MASS, 1, 1);
+            constantSystem.addEntity(constantSphere);
+            constantSystem.addEntity(new SpringEntity(constantSphere, SPRING_STIFFNESS));
+            verletSystem.performTimeStep(0.01);
+            constantSystem.performTimeStep(0.01);
+            assertEquals(constantSphere.getCenter().x, verletSphere.getCenter().x, 0);
+            assertEquals(constantSphere.velocity.x, verletSphere.velocity.x, 0);
+        }
+    }
+
+    @Test
+    public void verletReplayIsDeterministic()
+    {
+        for (int packed = 0; packed < 2; packed++)
+        {
+            PhysicsSystem physicsSystem = createSystem(Integrator.VELOCITY_VERLET, packed == 1);
+            SphereEntity sphere = new SphereEntity(new Vec3D(10, 0, 0), new Vec3D(0, 0, 0), SPRING_MASS, 1, 1);
+            physicsSystem.addEntity(sphere);
+            physicsSystem.addEntity(new SpringEntity(sphere, SPRING_STIFFNESS));
+            runSteps(physicsSystem, 37);
+            ByteBuffer checkpoint = physicsSystem.saveCheckpoint(null);
+            runSteps(physicsSystem, 50);
+            double x = sphere.getCenter().x;
+            double vx = sphere.velocity.x;
+
+            physicsSystem.restoreCheckpoint(checkpoint);
+            runSteps(physicsSystem, 50);
+            assertEquals(x, sphere.getCenter().x, 0);
+            assertEquals(vx, sphere.velocity.x, 0);
+        }
+    }
+
+    static PhysicsSystem createSystem(Integrator integrator, boolean packed)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        if (packed)
+        {
+            physicsSystem.usePackedSphereStorage();
+        }
+        physicsSystem.setIntegrator(integrator);
+        return physicsSystem;
+    }
+
+    /**
+     * Runs a sphere on a spring for 100 periods, with the given step (as a fraction of 1 / angular frequency).
+     *
+     * @return maximum energy error, relative to the starting energy (or more than 1e6 if unstable)
+     */
+    private static double calcSpringDrift(Integrator integrator, double omegaStep, boolean packed)
+    {
+        double omega = Math.sqrt(SPRING_STIFFNESS / SPRING_MASS);
+        double step = omegaStep / omega;
+        PhysicsSystem physicsSystem = createSystem(integrator, packed);
+        SphereEntity sphere = new SphereEntity(new Vec3D(10, 0, 0), new Vec3D(0, 0, 0), SPRING_MASS, 1, 1);
+        physicsSystem.addEntity(sphere);
+        physicsSystem.addEntity(new SpringEntity(sphere, SPRING_STIFFNESS));
+        double energy = 0.5 * SPRING_STIFFNESS * 10 * 10;
+        double maxDrift = 0;
+        int numSteps = (int) (100 * 2 * Math.PI / omegaStep);
+        for (int i = 0; i < numSteps && maxDrift < 1e6; i++)
+        {
+            physicsSystem.performTimeStep(step);
+            double x = sphere.getCenter().x;
+            double springEnergy = 0.5 * SPRING_MASS * sphere.velocity.magnitudeSquared() + 0.5 * SPRING_STIFFNESS * x * x;
+            maxDrift = Math.max(maxDrift, Math.abs(springEnergy - energy) / energy);
+        }
+        return maxDrift;
+    }
+
+    /**
+     * Kinetic plus potential energy, relative to resting on the BouncingBall floor (y = 500, with radius 50).
+     */
+    private static double calcBallEnergy(SphereEntity ball)
+    {
+        return 0.5 * ball.mass * ball.velocity.magnitudeSquared() + ball.mass * GRAVITY * (450 - ball.getCenter().y);
+    }
+
+    /**
+     * Adds the demo's PoolScenario rack and cue ball.
+     */
+    private static SphereEntity[] addPool(PhysicsSystem physicsSystem, double left, double bottom, double radius, int rows)
+    {
+        SphereEntity[] spheres = new SphereEntity[rows * (rows + 1) / 2 + 1];
+        int numSpheres = 0;
+        Vec3D location = new Vec3D(left + radius, bottom - radius, 0);
+        for (int row = rows; row > 0; row--)
+        {
+            for (int i = 0; i < row; i++)
+            {
+                spheres[numSpheres] = new SphereEntity(new Vec3D(location.x + i * radius * 2, location.y, location.z), new Vec3D(0, 0, 0), 5, 1, radius);
+                physicsSystem.addEntity(spheres[numSpheres++]);
+            }
+            location = Vec3D.add(location, new Vec3D(radius, -radius * Math.sqrt(3), 0));
+        }
+        spheres[numSpheres] = new SphereEntity(new Vec3D(left + 5 * radius + 3, 0, 0), new Vec3D(0, 1000, 0), 5, 1, radius);
+        physicsSystem.addEntity(spheres[numSpheres]);
+        return spheres;
+    }
+
+    private static double calcKineticEnergy(SphereEntity[] spheres)
+    {
+        double energy = 0;
+        for (SphereEntity sphere : spheres)
+        {
+            energy += 0.5 * sphere.mass * sphere.velocity.magnitudeSquared();
+        }
+        return energy;
+    }
+
+    private static double[] capturePositions(SphereEntity[] spheres)
+    {
+        double[] positions = new double[spheres.length * 2];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            positions[i * 2] = spheres[i].getCenter().x;
+            positions[i * 2 + 1] = spheres[i].getCenter().y;
+        }
+        return positions;
+    }
+
+    static void runSteps(PhysicsSystem physicsSystem, int numSteps)
+    {
+        for (int i = 0; i < numSteps; i++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+    }
+
+    /**
+     * Pulls a sphere towards x = 0 with a linear spring.
+     */
+    private static class SpringEntity extends Entity
+    {
+        private final SphereEntity sphere;
+        private final double stiffness;
+        private final Vec3D direction = new Vec3D(1, 0, 0);
+
+        SpringEntity(SphereEntity sphere, double stiffness)
+        {
+            this.sphere = sphere;
+            this.stiffness = stiffness;
+        }
+
+        @Override
+        public void ai(double elapsedTime, PhysicsSystem physicsSystem)
+        {
+            sphere.addForce(direction, -stiffness * sphere.getCenter().x);
+        }
+    }
+}
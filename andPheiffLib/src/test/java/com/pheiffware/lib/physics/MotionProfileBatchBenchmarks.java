@@ -0,0 +1,86 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Prints the time to sample many motion profiles one call at a time and as a batch.
+ */
+@Ignore("Benchmark, run manually")
+public class MotionProfileBatchBenchmarks
+{
+    @Test
+    public void benchmark()
+    {
+        Random random = new Random(11);
+        int numProfiles = 500;
+        AccelerationSimulator[] trapezoids = new AccelerationSimulator[numProfiles];
+        SCurveSimulator[] sCurves = new SCurveSimulator[numProfiles];
+        MotionProfileBatch trapezoidBatch = new MotionProfileBatch(numProfiles);
+        MotionProfileBatch sCurveBatch = new MotionProfileBatch(numProfiles);
+        for (int i = 0; i < numProfiles; i++)
+        {
+            double distance = random.nextDouble() * 100;
+            double velocity = 5 + random.nextDouble() * 20;
+            double acceleration = 5 + random.nextDouble() * 20;
+            trapezoids[i] = new AccelerationSimulator(0, distance, velocity, acceleration, 5 + random.nextDouble() * 20);
+            sCurves[i] = new SCurveSimulator(0, distance, velocity, acceleration, 20 + random.nextDouble() * 50);
+            trapezoidBatch.add(trapezoids[i]);
+            sCurveBatch.add(sCurves[i]);
+        }
+        compare("Trapezoid", trapezoids, null, trapezoidBatch);
+        compare("S-curve", null, sCurves, sCurveBatch);
+    }
+
+    /**
+     * Times evaluating positions and velocities of every profile every frame, per call and batched.
+     */
+    private static void compare(String name, AccelerationSimulator[] trapezoids, SCurveSimulator[] sCurves, MotionProfileBatch batch)
+    {
+        int numProfiles = batch.size();
+        int numFrames = 4000;
+        double[] positions = new double[numProfiles];
+        double[] velocities = new double[numProfiles];
+        double perCallMillis = Double.POSITIVE_INFINITY;
+        double batchMillis = Double.POSITIVE_INFINITY;
+        double checksum = 0;
+        for (int trial = 0; trial < 5; trial++)
+        {
+            long start = System.nanoTime();
+            for (int frame = 0; frame < numFrames; frame++)
+            {
+                double time = frame * 0.005;
+                for (int i = 0; i < numProfiles; i++)
+                {
+                    if (trapezoids != null)
+                    {
+                        positions[i] = trapezoids[i].getPositionAtTime(time);
+                        velocities[i] = trapezoids[i].getVelocityAtTime(time);
+                    }
+                    else
+                    {
+                        positions[i] = sCurves[i].getPositionAtTime(time);
+                        velocities[i] = sCurves[i].getVelocityAtTime(time);
+                    }
+                }
+                checksum += positions[frame % numProfiles];
+            }
+            perCallMillis = Math.min(perCallMillis, (System.nanoTime() - start) / 1000000.0);
+
+            start = System.nanoTime();
+            for (int frame = 0; frame < numFrames; frame++)
+            {
+                batch.getPositionsAtTime(frame * 0.005, positions, velocities);
+                checksum -= positions[frame % numProfiles];
+            }
+            batchMillis = Math.min(batchMillis, (System.nanoTime() - start) / 1000000.0);
+        }
+        System.out.println(name + ", " + numProfiles + " profiles x " + numFrames + " frames, positions and velocities: per call " + perCallMillis + "ms, batch "
+                + batchMillis + "ms");
+        assertEquals(0, checksum, 1e-6);
+    }
+}
@@ -0,0 +1,78 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks batched profile evaluation against the per-call API and compares their speed.
+ */
+public class MotionProfileBatchTests
+{
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    @Test
+    public void matchesPerCall()
+    {
+        Random random = new Random(7);
+        int numProfiles = 200;
+        AccelerationSimulator[] trapezoids = new AccelerationSimulator[numProfiles];
+        SCurveSimulator[] sCurves = new SCurveSimulator[numProfiles];
+        MotionProfileBatch trapezoidBatch = new MotionProfileBatch(4);
+        MotionProfileBatch sCurveBatch = new MotionProfileBatch();
+        double maxTime = 0;
+        for (int i = 0; i < numProfiles; i++)
+        {
+            double start = random.nextDouble() * 100 - 50;
+            double end = i % 17 == 0 ? start : random.nextDouble() * 100 - 50;
+            double acceleration = i % 5 == 0 ? INF : 1 + random.nextDouble() * 20;
+            double deceleration = i % 7 == 0 ? INF : 1 + random.nextDouble() * 20;
+            double jerk = i % 3 == 0 ? INF : 1 + random.nextDouble() * 50;
+            trapezoids[i] = new AccelerationSimulator(start, end, 1 + random.nextDouble() * 20, acceleration, deceleration);
+            sCurves[i] = new SCurveSimulator(start, end, 1 + random.nextDouble() * 20, acceleration, jerk);
+            assertEquals(i, trapezoidBatch.add(trapezoids[i]));
+            assertEquals(i, sCurveBatch.add(sCurves[i]));
+            maxTime = Math.max(maxTime, Math.max(trapezoids[i].getTotalTime(), sCurves[i].getTotalTime()));
+        }
+        double[] positions = new double[numProfiles];
+        double[] velocities = new double[numProfiles];
+        for (int step = -1; step <= 201; step++)
+        {
+            double time = maxTime * step / 200;
+            trapezoidBatch.getPositionsAtTime(time, positions, velocities);
+            for (int i = 0; i < numProfiles; i++)
+            {
+                assertEquals(trapezoids[i].getPositionAtTime(time), positions[i], 1e-9);
+                assertEquals(trapezoids[i].getVelocityAtTime(time), velocities[i], 1e-9);
+            }
+            sCurveBatch.getPositionsAtTime(time, positions, velocities);
+            for (int i = 0; i < numProfiles; i++)
+            {
+                assertEquals(sCurves[i].getPositionAtTime(time), positions[i], 1e-9);
+                assertEquals(sCurves[i].getVelocityAtTime(time), velocities[i], 1e-9);
+            }
+        }
+
+        int numSamples = 300;
+        double[] samplePositions = new double[numSamples];
+        double[] sampleVelocities = new double[numSamples];
+        for (int i = 0; i < numProfiles; i += 13)
+        {
+            double timeStep = sCurves[i].getTotalTime() / (numSamples - 20);
+            sCurveBatch.getPositionsOverTime(i, -timeStep, timeStep, numSamples, samplePositions, sampleVelocities);
+            for (int sample = 0; sample < numSamples; sample++)
+            {
+                double time = -timeStep + sample * timeStep;
+                assertEquals(sCurves[i].getPositionAtTime(time), samplePositions[sample], 1e-9);
+                assertEquals(sCurves[i].getVelocityAtTime(time), sampleVelocities[sample], 1e-9);
+            }
+            trapezoidBatch.getPositionsOverTime(i, 0, 0.01, numSamples, samplePositions, null);
+            for (int sample = 0; sample < numSamples; sample++)
+            {
+                assertEquals(trapezoids[i].getPositionAtTime(sample * 0.01), samplePositions[sample], 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.physics.entity.NBodyGravityEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Prints how Barnes-Hut gravity scales with the number of bodies, with the direct sum for comparison at small sizes.
+ */
+@Ignore("Benchmark, run manually")
+public class NBodyGravityBenchmarks
+{
+    @Test
+    public void scaling()
+    {
+        int[] sizes = {1000, 5000, 10000, 50000};
+        NBodyGravityEntity gravity = new NBodyGravityEntity(NBodyGravityTests.G, 0.5, NBodyGravityTests.SOFTENING, false);
+        for (int size : sizes)
+        {
+            NBodyGravityTests.Bodies bodies = new NBodyGravityTests.Bodies(size, new Random(11), false);
+            double treeMillis = Double.POSITIVE_INFINITY;
+            for (int trial = 0; trial < 3; trial++)
+            {
+                long start = System.nanoTime();
+                gravity.calcAccelerations(bodies.x, bodies.y, bodies.z, bodies.mass, bodies.size, bodies.ax, bodies.ay, bodies.az);
+                treeMillis = Math.min(treeMillis, (System.nanoTime() - start) / 1000000.0);
+            }
+            String directResult = "";
+            if (size <= 10000)
+            {
+                long start = System.nanoTime();
+                bodies.calcDirect();
+                directResult = ", direct sum " + (System.nanoTime() - start) / 1000000.0 + "ms";
+            }
+            System.out.println(size + " bodies: Barnes-Hut " + treeMillis + "ms (" + gravity.getNumNodes() + " nodes)" + directResult);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.NBodyGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares Barnes-Hut gravity against the direct sum.
+ */
+public class NBodyGravityTests
+{
+    static final double G = 1;
+    static final double SOFTENING = 0.01;
+
+    @Test
+    public void matchesDirectSum()
+    {
+        for (int twoDimensional = 0; twoDimensional < 2; twoDimensional++)
+        {
+            Bodies bodies = new Bodies(2000, new Random(3), twoDimensional == 1);
+            double[][] direct = bodies.calcDirect();
+            double exactError = bodies.calcRelativeError(new NBodyGravityEntity(G, 0, SOFTENING, twoDimensional == 1), direct);
+            double error05 = bodies.calcRelativeError(new NBodyGravityEntity(G, 0.5, SOFTENING, twoDimensional == 1), direct);
+            double error10 = bodies.calcRelativeError(new NBodyGravityEntity(G, 1.0, SOFTENING, twoDimensional == 1), direct);
+            assertTrue(exactError < 1e-10);
+            assertTrue(error05 < 0.02);
+            assertTrue(error10 < 0.1);
+            assertTrue(error05 < error10);
+        }
+    }
+
+    @Test
+    public void handlesCoincidentBodies()
+    {
+        Bodies bodies = new Bodies(100, new Random(5), false);
+        for (int i = 0; i < 50; i++)
+        {
+            bodies.x[i] = 1;
+            bodies.y[i] = 2;
+            bodies.z[i] = 3;
+        }
+        NBodyGravityEntity gravity = new NBodyGravityEntity(G, 0.5, SOFTENING, false);
+        gravity.calcAccelerations(bodies.x, bodies.y, bodies.z, bodies.mass, bodies.size, bodies.ax, bodies.ay, bodies.az);
+        for (int i = 0; i < bodies.size; i++)
+        {
+            assertTrue(!Double.isNaN(bodies.ax[i]) && !Double.isInfinite(bodies.ax[i]));
+        }
+    }
+
+    @Test
+    public void attractsEntitiesInSystem()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.addEntity(new NBodyGravityEntity(1000, 0.5, 0, true));
+        SphereEntity sphere1 = new SphereEntity(new Vec3D(0, 0, 0), new Vec3D(0, 0, 0), 2, 1, 1);
+        SphereEntity sphere2 = new SphereEntity(new Vec3D(100, 0, 0), new Vec3D(0, 0, 0), 6, 1, 1);
+        physicsSystem.addEntity(sphere1);
+        physicsSystem.addEntity(sphere2);
+        physicsSystem.performTimeStep(0.01);
+        //a = G * m / r^2 * dt
+        assertEquals(1000 * 6 / 10000.0 * 0.01, sphere1.velocity.x, 1e-9);
+        assertEquals(-1000 * 2 / 10000.0 * 0.01, sphere2.velocity.x, 1e-9);
+        //Momentum is conserved
+        assertEquals(0, sphere1.velocity.x * 2 + sphere2.velocity.x * 6, 1e-12);
+    }
+
+    /**
+     * Random point masses, uniformly distributed in a unit cube (or square).
+     */
+    static class Bodies
+    {
+        final int size;
+        final double[] x, y, z, mass;
+        final double[] ax, ay, az;
+
+        Bodies(int size, Random random, boolean twoDimensional)
+        {
+            this.size = size;
+            x = new double[size];
+            y = new double[size];
+            z = new double[size];
+            mass = new double[size];
+            ax = new double[size];
+            ay = new double[size];
+            az = new double[size];
+            for (int i = 0; i < size; i++)
+            {
+                x[i] = random.nextDouble();
+                y[i] = random.nextDouble();
+                z[i] = twoDimensional ? 0 : random.nextDouble();
+                mass[i] = 0.5 + random.nextDouble();
+            }
+        }
+
+        double[][] calcDirect()
+        {
+            double[][] acceleration = new double[3][size];
+            for (int i = 0; i < size; i++)
+            {
+                for (int j = 0; j < size; j++)
+                {
+                    if (i == j)
+                    {
+                        continue;
+                    }
+                    double dx = x[j] - x[i];
+                    double dy = y[j] - y[i];
+                    double dz = z[j] - z[i];
+                    double distanceSquared = dx * dx + dy * dy + dz * dz + SOFTENING * SOFTENING;
+                    double scale = G * mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    acceleration[0][i] += dx * scale;
+                    acceleration[1][i] += dy * scale;
+                    acceleration[2][i] += dz * scale;
+                }
+            }
+            return acceleration;
+        }
+
+        /**
+         * @return RMS error, relative to the RMS acceleration
+         */
+        double calcRelativeError(NBodyGravityEntity gravity, double[][] direct)
+        {
+            gravity.calcAccelerations(x, y, z, mass, size, ax, ay, az);
+            double totalSquaredError = 0;
+            double totalSquaredMagnitude = 0;
+            for (int i = 0; i < size; i++)
+            {
+                double ex = ax[i] - direct[0][i];
+                double ey = ay[i] - direct[1][i];
+                double ez = az[i] - direct[2][i];
+                totalSquaredError += ex * ex + ey * ey + ez * ez;
+                totalSquaredMagnitude += direct[0][i] * direct[0][i] + direct[1][i] * direct[1][i] + direct[2][i] * direct[2][i];
+            }
+            return Math.sqrt(totalSquaredError / totalSquaredMagnitude);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that, once warmed up (and internal arrays have grown to fit the scene), time steps allocate nothing.  Uses the JVM's per thread allocation counter.
+ */
+public class NarrowPhaseAllocationTests
+{
+    private static final int WARM_UP_STEPS = 2000;
+    private static final int MEASURED_STEPS = 500;
+
+    @Test
+    public void sweepAndPruneStepDoesNotAllocate()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        addScene(physicsSystem);
+        assertEquals(0, measureAllocatedBytes(physicsSystem));
+    }
+
+    @Test
+    public void staticHierarchyPackedSleepingStepDoesNotAllocate()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new StaticHierarchyBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        physicsSystem.enableSleeping(10, 50);
+        addScene(physicsSystem);
+        assertEquals(0, measureAllocatedBytes(physicsSystem));
+    }
+
+    private static long measureAllocatedBytes(PhysicsSystem physicsSystem)
+    {
+        for (int step = 0; step < WARM_UP_STEPS; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        //Calibrate the cost of reading the counter itself
+        long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int step = 0; step < MEASURED_STEPS; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+    }
+
+    /**
+     * Spheres bouncing around a box containing polygon obstacles.
+     */
+    private static void addScene(PhysicsSystem physicsSystem)
+    {
+        double size = 400;
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, size, 0), new Vec3D(size, size, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, size, 0), new Vec3D(0, 0, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(size, size, 0), new Vec3D(size, 0, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6,
+                new Vec3D[]{new Vec3D(100, 250, 0), new Vec3D(150, 300, 0), new Vec3D(200, 250, 0)}));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6,
+                new Vec3D[]{new Vec3D(250, 200, 0), new Vec3D(300, 250, 0), new Vec3D(350, 200, 0)}));
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++)
+        {
+            Vec3D center = new Vec3D(10 + random.nextDouble() * (size - 20), random.nextDouble() * 200, 0);
+            Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+            physicsSystem.addEntity(new SphereEntity(center, velocity, 5, 0.8, 5));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.simulation.PacingStatistics;
+import com.pheiffware.lib.simulation.RealTimeSimulationRunner;
+import com.pheiffware.lib.simulation.Simulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a simulation faster than real time is paced by parking rather than spinning, and that it stays responsive while parked.
+ */
+public class PacingTests
+{
+    @Test
+    public void parksBetweenSteps() throws InterruptedException
+    {
+        StepCounter stepCounter = new StepCounter();
+        //100 cheap steps per second
+        RealTimeSimulationRunner<Integer> runner = new RealTimeSimulationRunner<Integer>(stepCounter, 1.0, 0.01, 0.01);
+        runner.start();
+        Thread.sleep(500);
+        int numSteps = runner.getState();
+        PacingStatistics pacingStatistics = runner.getPacingStatistics();
+        assertTrue(pacingStatistics.getDutyCycle() < 0.5);
+        assertTrue(pacingStatistics.getMeanOversleep() < 0.002);
+        assertTrue(numSteps >= 35 && numSteps <= 52);
+        assertTrue(pacingStatistics.getNumSteps() >= numSteps);
+        assertTrue(pacingStatistics.getStepsPerSecond() > 60 && pacingStatistics.getStepsPerSecond() < 110);
+        assertTrue(pacingStatistics.getTotalWaitTime() > 0.25);
+        runner.stopAndWait();
+    }
+
+    @Test
+    public void parksInFixedStepMode() throws InterruptedException
+    {
+        StepCounter stepCounter = new StepCounter();
+        RealTimeSimulationRunner<Integer> runner = new RealTimeSimulationRunner<Integer>(stepCounter, 1.0, 0.1, 0.001);
+        runner.setFixedTimeStep(1 / 30.0, 5);
+        runner.start();
+        Thread.sleep(500);
+        int numSteps = runner.getState();
+        PacingStatistics pacingStatistics = runner.getPacingStatistics();
+        assertTrue(pacingStatistics.getDutyCycle() < 0.5);
+        assertTrue(numSteps >= 10 && numSteps <= 17);
+        runner.stopAndWait();
+    }
+
+    @Test
+    public void respondsWhileParked() throws InterruptedException
+    {
+        //One step every half second, so the simulation thread is almost always parked
+        RealTimeSimulationRunner<Integer> runner = new RealTimeSimulationRunner<Integer>(new StepCounter(), 1.0, 0.5, 0.5);
+        runner.start();
+        Thread.sleep(50);
+        long maxNanos = 0;
+        for (int i = 0; i < 20; i++)
+        {
+            long start = System.nanoTime();
+            runner.getState();
+            maxNanos = Math.max(maxNanos, System.nanoTime() - start);
+            Thread.sleep(5);
+        }
+        long stopStart = System.nanoTime();
+        runner.stopAndWait();
+        long stopNanos = System.nanoTime() - stopStart;
+        assertTrue(maxNanos < 20000000);
+        assertTrue(stopNanos < 20000000);
+    }
+
+    private static class StepCounter implements Simulation<Integer>
+    {
+        private int numSteps;
+
+        @Override
+        public void performTimeStep(double elapsedTime)
+        {
+            numSteps++;
+        }
+
+        @Override
+        public Integer copyState()
+        {
+            return numSteps;
+        }
+
+        @Override
+        public void applyExternalInput(String key, Object value)
+        {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PackedSphereStore;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Prints the time to integrate spheres stored one object per entity and in packed arrays.
+ */
+@Ignore("Benchmark, run manually")
+public class PackedSphereStoreBenchmarks
+{
+    /**
+     * Compares integrating bodies (gravity + motion update) one object at a time against the packed store.  PhysicsSystem itself is bypassed, so only integration is measured.
+     */
+    @Test
+    public void benchmarkIntegration()
+    {
+        int[] bodyCounts = {1000, 10000, 100000};
+        Vec3D gravity = new Vec3D(0, 9.8, 0);
+        int numSteps = 200;
+        for (int numBodies : bodyCounts)
+        {
+            Random random = new Random(numBodies);
+            SphereEntity[] objectBodies = new SphereEntity[numBodies];
+            PackedSphereStore store = new PackedSphereStore();
+            for (int i = 0; i < numBodies; i++)
+            {
+                Vec3D center = new Vec3D(random.nextDouble() * 1000, random.nextDouble() * 1000, 0);
+                Vec3D velocity = new Vec3D(random.nextDouble(), random.nextDouble(), 0);
+                objectBodies[i] = new SphereEntity(center, velocity, 1, 0.5, 1);
+                store.add(new SphereEntity(new Vec3D(center), velocity, 1, 0.5, 1));
+            }
+
+            long start = System.nanoTime();
+            for (int step = 0; step < numSteps; step++)
+            {
+                for (SphereEntity body : objectBodies)
+                {
+                    body.addForce(gravity, body.mass);
+                }
+                for (SphereEntity body : objectBodies)
+                {
+                    body.updateMotion(0.001);
+                }
+            }
+            double objectMillis = (System.nanoTime() - start) / 1000000.0 / numSteps;
+
+            start = System.nanoTime();
+            for (int step = 0; step < numSteps; step++)
+            {
+                store.addGravity(gravity);
+                store.integrate(0.001);
+            }
+            double packedMillis = (System.nanoTime() - start) / 1000000.0 / numSteps;
+            System.out.println(numBodies + " bodies: object per entity " + objectMillis + " ms/step, packed " + packedMillis + " ms/step");
+            assertEquals(objectBodies[0].getCenter().y, store.getPositionY(0), 1e-6);
+        }
+    }
+}
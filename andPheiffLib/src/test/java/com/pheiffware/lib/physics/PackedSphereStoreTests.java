@@ -0,0 +1,66 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks packed sphere storage matches the object per entity layout.
+ */
+public class PackedSphereStoreTests
+{
+    @Test
+    public void packedMatchesUnpacked()
+    {
+        PhysicsSystem unpacked = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        PhysicsSystem packed = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        packed.usePackedSphereStorage();
+        SphereEntity[] unpackedSpheres = createScene(unpacked);
+        SphereEntity[] packedSpheres = createScene(packed);
+        assertEquals(packedSpheres.length, packed.getPackedSphereStore().size());
+        for (int step = 0; step < 500; step++)
+        {
+            unpacked.performTimeStep(0.002);
+            packed.performTimeStep(0.002);
+        }
+        for (int i = 0; i < unpackedSpheres.length; i++)
+        {
+            assertEquals("Wrong x", unpackedSpheres[i].getCenter().x, packedSpheres[i].getCenter().x, 1e-6);
+            assertEquals("Wrong y", unpackedSpheres[i].getCenter().y, packedSpheres[i].getCenter().y, 1e-6);
+            assertEquals("Wrong vy", unpackedSpheres[i].velocity.y, packedSpheres[i].velocity.y, 1e-6);
+            assertEquals("Store out of sync", packedSpheres[i].getCenter().y, packed.getPackedSphereStore().getPositionY(i), 0);
+        }
+    }
+
+    @Test
+    public void resetDetachesEntities()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.usePackedSphereStorage();
+        SphereEntity[] spheres = createScene(physicsSystem);
+        assertTrue(spheres[0].isPacked());
+        physicsSystem.reset();
+        assertTrue(!spheres[0].isPacked());
+        assertEquals(0, physicsSystem.getPackedSphereStore().size());
+    }
+
+    private static SphereEntity[] createScene(PhysicsSystem physicsSystem)
+    {
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, 500, 0), new Vec3D(500, 500, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        SphereEntity[] spheres = new SphereEntity[10];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            spheres[i] = new SphereEntity(new Vec3D(25 + i * 45, 300 - i * 10, 0), new Vec3D(i * 3, 0, 0), 5, 0.8, 20);
+            physicsSystem.addEntity(spheres[i]);
+        }
+        return spheres;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Prints the time per step with and without physics metrics enabled.
+ */
+@Ignore("Benchmark, run manually")
+public class PhysicsMetricsBenchmarks
+{
+    @Test
+    public void overhead()
+    {
+        int numSteps = 400;
+        double[] withoutMetrics = new double[3];
+        double[] withMetrics = new double[3];
+        for (int trial = 0; trial < 3; trial++)
+        {
+            withoutMetrics[trial] = timeSteps(PhysicsMetricsTests.createSystem(500), numSteps);
+            PhysicsSystem physicsSystem = PhysicsMetricsTests.createSystem(500);
+            physicsSystem.enableMetrics(256);
+            withMetrics[trial] = timeSteps(physicsSystem, numSteps);
+        }
+        System.out.println("Mean step without metrics: " + PhysicsMetricsTests.min(withoutMetrics) + "us, with metrics: " + PhysicsMetricsTests.min(withMetrics) + "us");
+    }
+
+    private static double timeSteps(PhysicsSystem physicsSystem, int numSteps)
+    {
+        long start = System.nanoTime();
+        for (int step = 0; step < numSteps; step++)
+        {
+            physicsSystem.performTimeStep(0.005);
+        }
+        return (System.nanoTime() - start) / 1000.0 / numSteps;
+    }
+}
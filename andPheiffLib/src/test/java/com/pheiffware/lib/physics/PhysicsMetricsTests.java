@@ -0,0 +1,142 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.physics.solver.SequentialImpulseSolver;
+import com.pheiffware.lib.utils.rollingAverage.RollingHistogram;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks physics metrics against values the system reports directly.
+ */
+public class PhysicsMetricsTests
+{
+    private static final double BOTTOM = 500;
+    private static final double WIDTH = 300;
+    private static final double RADIUS = 4;
+
+    @Test
+    public void recordsPhasesAndCollisions()
+    {
+        PhysicsSystem physicsSystem = createSystem(300);
+        PhysicsMetrics metrics = physicsSystem.enableMetrics(64);
+        for (int step = 0; step < 200; step++)
+        {
+            physicsSystem.performTimeStep(0.005);
+            assertEquals(physicsSystem.getNumCollisionPairsTested(), metrics.getLastPairsTested());
+            assertTrue(metrics.getLastCollisions() <= metrics.getLastPairsTested());
+            long phaseTotal = 0;
+            for (int phase = 0; phase < PhysicsMetrics.NUM_PHASES; phase++)
+            {
+                phaseTotal += metrics.getLastPhaseNanos(phase);
+            }
+            assertTrue(phaseTotal <= metrics.getLastStepNanos());
+        }
+        assertEquals(200, metrics.getNumSteps());
+        assertTrue(metrics.getLastCollisions() > 0);
+        assertTrue(metrics.getMaxPenetration() > 0);
+        assertTrue(metrics.getMeanPhaseNanos(PhysicsMetrics.PHASE_NARROW_PHASE) > 0);
+        assertTrue(metrics.getStepPercentileNanos(0.99) >= metrics.getMeanStepNanos() / 2);
+        int histogramTotal = 0;
+        for (int bucket = 0; bucket < RollingHistogram.NUM_BUCKETS; bucket++)
+        {
+            histogramTotal += metrics.getStepHistogramCount(bucket);
+        }
+        assertEquals(64, histogramTotal);
+    }
+
+    @Test
+    public void countsCollisionsWithEverySolver()
+    {
+        long pairwise = countCollisions(createSystem(300));
+        PhysicsSystem islandSystem = createSystem(300);
+        islandSystem.setCollisionPool(new ForkJoinPool(4));
+        long islands = countCollisions(islandSystem);
+        assertEquals(pairwise, islands);
+
+        PhysicsSystem solverSystem = createSystem(300);
+        solverSystem.setContactSolver(new SequentialImpulseSolver(10, 4));
+        assertTrue(countCollisions(solverSystem) > 0);
+    }
+
+    @Test
+    public void snapshotIsIndependent()
+    {
+        PhysicsSystem physicsSystem = createSystem(50);
+        PhysicsMetrics metrics = physicsSystem.enableMetrics(16);
+        physicsSystem.performTimeStep(0.005);
+        PhysicsMetrics snapshot = metrics.snapshot();
+        physicsSystem.performTimeStep(0.005);
+        assertEquals(1, snapshot.getNumSteps());
+        assertEquals(2, metrics.getNumSteps());
+        metrics.reset();
+        assertEquals(0, metrics.getNumSteps());
+        assertEquals(1, snapshot.getNumSteps());
+    }
+
+    @Test
+    public void histogramRolls()
+    {
+        RollingHistogram histogram = new RollingHistogram(4);
+        for (int i = 0; i < 4; i++)
+        {
+            histogram.addValue(1000);
+        }
+        assertEquals(4, histogram.getCount(10));
+        assertEquals(1024, histogram.getPercentile(0.5));
+        for (int i = 0; i < 3; i++)
+        {
+            histogram.addValue(5);
+        }
+        assertEquals(1, histogram.getCount(10));
+        assertEquals(3, histogram.getCount(3));
+        assertEquals(4, histogram.getSize());
+        assertEquals(8, histogram.getPercentile(0.75));
+        assertEquals(1024, histogram.getPercentile(1));
+    }
+
+    private static long countCollisions(PhysicsSystem physicsSystem)
+    {
+        PhysicsMetrics metrics = physicsSystem.enableMetrics(16);
+        for (int step = 0; step < 200; step++)
+        {
+            physicsSystem.performTimeStep(0.005);
+        }
+        return metrics.getTotalCollisions();
+    }
+
+    static double min(double[] values)
+    {
+        double min = Double.POSITIVE_INFINITY;
+        for (double value : values)
+        {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    static PhysicsSystem createSystem(int numSpheres)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(WIDTH, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(0, 0, 0), 1, new Vec3D(0, 0, 0), 0.5));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(WIDTH, BOTTOM, 0), new Vec3D(WIDTH, 0, 0), -1, new Vec3D(0, 0, 0), 0.5));
+        int perRow = (int) (WIDTH / (RADIUS * 3));
+        for (int i = 0; i < numSpheres; i++)
+        {
+            Vec3D center = new Vec3D(RADIUS * 2 + (i % perRow) * RADIUS * 3 + (i / perRow) % 2, BOTTOM - RADIUS * 2 - (i / perRow) * RADIUS * 3, 0);
+            physicsSystem.addEntity(new SphereEntity(center, new Vec3D(0, 0, 0), 1, 0.5, RADIUS));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return physicsSystem;
+    }
+}
@@ -0,0 +1,82 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingSphere;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Prints the time to compute minimal bounding circles with Welzl's algorithm, compared with a brute force farthest pair scan, and the cost of a large scene of
+ * falling crates.
+ */
+@Ignore("Benchmark, run manually")
+public class PolygonCollisionBenchmarks
+{
+    @Test
+    public void boundingSphereBenchmark()
+    {
+        Random random = new Random(4);
+        int[] sizes = {1000, 10000, 100000};
+        for (int size : sizes)
+        {
+            Vec3D[] points = new Vec3D[size];
+            for (int i = 0; i < size; i++)
+            {
+                double angle = random.nextDouble() * Math.PI * 2;
+                double radius = Math.sqrt(random.nextDouble()) * 100;
+                points[i] = new Vec3D(Math.cos(angle) * radius, Math.sin(angle) * radius, 0);
+            }
+            long start = System.nanoTime();
+            BoundingSphere.calcMinimal2D(points);
+            double welzlMillis = (System.nanoTime() - start) / 1000000.0;
+            String farthestPairResult = "";
+            if (size <= 10000)
+            {
+                start = System.nanoTime();
+                double longestDistanceSquared = 0;
+                for (int i = 0; i < size - 1; i++)
+                {
+                    for (int j = i + 1; j < size; j++)
+                    {
+                        longestDistanceSquared = Math.max(longestDistanceSquared, Vec3D.distanceSquared(points[i], points[j]));
+                    }
+                }
+                farthestPairResult = ", farthest pair scan " + (System.nanoTime() - start) / 1000000.0 + "ms";
+            }
+            System.out.println(size + " points: Welzl " + welzlMillis + "ms" + farthestPairResult);
+        }
+    }
+
+    @Test
+    public void crateScene()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new StaticHierarchyBroadPhase(new SweepAndPruneBroadPhase()));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.3, PolygonCollisionTests.box(-50, 500, 700, 20)));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.3, PolygonCollisionTests.box(-50, 0, 20, 500)));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.3, PolygonCollisionTests.box(630, 0, 20, 500)));
+        Random random = new Random(2);
+        int numCrates = 400;
+        for (int i = 0; i < numCrates; i++)
+        {
+            double size = 6 + random.nextDouble() * 6;
+            physicsSystem.addEntity(new PolygonEntity(new Vec3D(random.nextDouble() * 100 - 50, 0, 0), size * size, 0.3,
+                    PolygonCollisionTests.box((i % 40) * 15, 480 - (i / 40) * 20, size, size)));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        PhysicsMetrics metrics = physicsSystem.enableMetrics(256);
+        for (int step = 0; step < 400; step++)
+        {
+            physicsSystem.performTimeStep(0.005);
+        }
+        System.out.println(numCrates + " crates: " + metrics.getMeanStepNanos() / 1000 + "us/step, " + metrics.getLastPairsTested() + " pairs tested, "
+                + metrics.getLastCollisions() + " colliding");
+    }
+}
@@ -0,0 +1,200 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.geometry.intersect.ContactManifold;
+import com.pheiffware.lib.geometry.intersect.IntersectCalc;
+import com.pheiffware.lib.physics.broadPhase.BroadPhase;
+import com.pheiffware.lib.physics.broadPhase.StaticHierarchyBroadPhase;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingSphere;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks polygon against polygon contacts, minimal bounding spheres, and polygons colliding in a running system.
+ */
+public class PolygonCollisionTests
+{
+    @Test
+    public void overlappingBoxesGiveTwoPointManifold()
+    {
+        ContactManifold manifold = new ContactManifold();
+        //Box 2 sits 1 unit into the top of box 1, offset sideways
+        assertTrue(IntersectCalc.calcPolygonIntersect2D(box(0, 0, 10, 10), box(4, 9, 10, 10), manifold));
+        assertEquals(0, manifold.normal.x, 1e-12);
+        assertEquals(1, manifold.normal.y, 1e-12);
+        assertEquals(2, manifold.numPoints);
+        assertEquals(1, manifold.getMaxPenetration(), 1e-12);
+        for (int i = 0; i < manifold.numPoints; i++)
+        {
+            assertEquals(9, manifold.points[i].y, 1e-12);
+            assertTrue(manifold.points[i].x >= 4 - 1e-12 && manifold.points[i].x <= 10 + 1e-12);
+        }
+
+        //Same result when polygon 2 winds the other way, and the normal flips when the polygons are swapped
+        assertTrue(IntersectCalc.calcPolygonIntersect2D(reverse(box(4, 9, 10, 10)), box(0, 0, 10, 10), manifold));
+        assertEquals(-1, manifold.normal.y, 1e-12);
+        assertEquals(1, manifold.getMaxPenetration(), 1e-12);
+    }
+
+    @Test
+    public void cornerContactGivesOnePoint()
+    {
+        ContactManifold manifold = new ContactManifold();
+        //A diamond whose lowest corner dips 0.5 into the top of a box
+        Vec3D[] diamond = {new Vec3D(5, 9.5, 0), new Vec3D(8, 12.5, 0), new Vec3D(5, 15.5, 0), new Vec3D(2, 12.5, 0)};
+        assertTrue(IntersectCalc.calcPolygonIntersect2D(box(0, 0, 10, 10), diamond, manifold));
+        assertEquals(1, manifold.numPoints);
+        assertEquals(0.5, manifold.getMaxPenetration(), 1e-12);
+        assertEquals(1, manifold.normal.y, 1e-12);
+    }
+
+    @Test
+    public void separatedPolygonsDontIntersect()
+    {
+        ContactManifold manifold = new ContactManifold();
+        assertFalse(IntersectCalc.calcPolygonIntersect2D(box(0, 0, 10, 10), box(10.5, 0, 10, 10), manifold));
+        //Bounding boxes overlap, but a diagonal edge separates them
+        Vec3D[] triangle = {new Vec3D(0, 0, 0), new Vec3D(10, 0, 0), new Vec3D(0, 10, 0)};
+        assertFalse(IntersectCalc.calcPolygonIntersect2D(triangle, box(6, 6, 4, 4), manifold));
+    }
+
+    @Test
+    public void boundingSphereIsMinimal()
+    {
+        BoundingSphere square = BoundingSphere.calcMinimal2D(box(0, 0, 2, 2));
+        assertEquals(1, square.getCenter().x, 1e-12);
+        assertEquals(1, square.getCenter().y, 1e-12);
+        assertEquals(Math.sqrt(2), square.getRadius(), 1e-12);
+
+        //Obtuse triangle: the longest side is a diameter
+        BoundingSphere obtuse = BoundingSphere.calcMinimal2D(new Vec3D[]{new Vec3D(0, 0, 0), new Vec3D(10, 0, 0), new Vec3D(5, 1, 0)});
+        assertEquals(5, obtuse.getRadius(), 1e-12);
+
+        //Equilateral triangle: the farthest pair is not a diameter
+        double height = Math.sqrt(3) / 2;
+        BoundingSphere equilateral = BoundingSphere.calcMinimal2D(new Vec3D[]{new Vec3D(0, 0, 0), new Vec3D(1, 0, 0), new Vec3D(0.5, height, 0)});
+        assertEquals(1 / Math.sqrt(3), equilateral.getRadius(), 1e-12);
+
+        Random random = new Random(9);
+        for (int trial = 0; trial < 50; trial++)
+        {
+            Vec3D[] points = new Vec3D[3 + random.nextInt(20)];
+            for (int i = 0; i < points.length; i++)
+            {
+                points[i] = new Vec3D(random.nextDouble() * 100, random.nextDouble() * 100, 0);
+            }
+            BoundingSphere sphere = BoundingSphere.calcMinimal2D(points);
+            for (Vec3D point : points)
+            {
+                assertTrue(Vec3D.distance(point, sphere.getCenter()) <= sphere.getRadius() * (1 + 1e-9));
+            }
+            assertEquals(calcMinimalRadiusBruteForce(points), sphere.getRadius(), 1e-9);
+        }
+    }
+
+    @Test
+    public void dynamicPolygonsCollide()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        PolygonEntity left = new PolygonEntity(new Vec3D(100, 0, 0), 1, 1, box(0, 0, 10, 10));
+        PolygonEntity right = new PolygonEntity(new Vec3D(-100, 0, 0), 1, 1, box(20, 2, 10, 10));
+        physicsSystem.addEntity(left);
+        physicsSystem.addEntity(right);
+        for (int step = 0; step < 30; step++)
+        {
+            physicsSystem.performTimeStep(0.005);
+        }
+        //Elastic collision of equal masses swaps velocities
+        assertEquals(-100, left.velocity.x, 1e-9);
+        assertEquals(100, right.velocity.x, 1e-9);
+        assertTrue(left.getBoundingSphere().getCenter().x < right.getBoundingSphere().getCenter().x);
+    }
+
+    @Test
+    public void cratesRestOnPolygonFloor()
+    {
+        BroadPhase[] broadPhases = {new SweepAndPruneBroadPhase(), new StaticHierarchyBroadPhase(new SweepAndPruneBroadPhase())};
+        for (BroadPhase broadPhase : broadPhases)
+        {
+            PhysicsSystem physicsSystem = new PhysicsSystem(broadPhase);
+            physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.3, box(-50, 500, 300, 20)));
+            PolygonEntity[] crates = new PolygonEntity[10];
+            for (int i = 0; i < crates.length; i++)
+            {
+                crates[i] = new PolygonEntity(new Vec3D(0, 0, 0), 1, 0.3, box(i * 20, 400 - i * 15, 10, 10));
+                physicsSystem.addEntity(crates[i]);
+            }
+            physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+            for (int step = 0; step < 600; step++)
+            {
+                physicsSystem.performTimeStep(0.005);
+            }
+            for (PolygonEntity crate : crates)
+            {
+                //Resting on top of the floor at y = 500, so centered at 495
+                assertEquals(495, crate.getBoundingSphere().getCenter().y, 0.5);
+            }
+        }
+    }
+
+    /**
+     * Smallest circle through 2 or 3 of the points which contains all of them.
+     */
+    private static double calcMinimalRadiusBruteForce(Vec3D[] points)
+    {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < points.length; i++)
+        {
+            for (int j = i + 1; j < points.length; j++)
+            {
+                best = Math.min(best, calcContainingRadius(points, new BoundingSphere(Vec3D.average(points[i], points[j]), Vec3D.distance(points[i], points[j]) / 2)));
+                for (int k = j + 1; k < points.length; k++)
+                {
+                    BoundingSphere circumcircle = BoundingSphere.calcMinimal2D(new Vec3D[]{points[i], points[j], points[k]});
+                    best = Math.min(best, calcContainingRadius(points, circumcircle));
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the sphere's radius if it contains all points, otherwise infinity
+     */
+    private static double calcContainingRadius(Vec3D[] points, BoundingSphere sphere)
+    {
+        for (Vec3D point : points)
+        {
+            if (Vec3D.distance(point, sphere.getCenter()) > sphere.getRadius() * (1 + 1e-9) + 1e-9)
+            {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return sphere.getRadius();
+    }
+
+    static Vec3D[] box(double x, double y, double width, double height)
+    {
+        return new Vec3D[]{new Vec3D(x, y, 0), new Vec3D(x + width, y, 0), new Vec3D(x + width, y + height, 0), new Vec3D(x, y + height, 0)};
+    }
+
+    private static Vec3D[] reverse(Vec3D[] points)
+    {
+        Vec3D[] reversed = new Vec3D[points.length];
+        for (int i = 0; i < points.length; i++)
+        {
+            reversed[i] = points[points.length - 1 - i];
+        }
+        return reversed;
+    }
+}
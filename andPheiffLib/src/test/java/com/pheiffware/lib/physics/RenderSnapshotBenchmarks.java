@@ -0,0 +1,63 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Prints the time and allocation of writing render snapshots, compared with copyState().
+ */
+@Ignore("Benchmark, run manually")
+public class RenderSnapshotBenchmarks
+{
+    @Test
+    public void snapshotCost()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        RenderSnapshotTests.addScene(physicsSystem, 2000);
+        physicsSystem.performTimeStep(0.002);
+        RenderSnapshot snapshot = new RenderSnapshot();
+        int numFrames = 200;
+        double checksum = 0;
+        for (int frame = 0; frame < numFrames; frame++)
+        {
+            physicsSystem.writeRenderSnapshot(snapshot);
+            checksum += snapshot.getInstanceBuffer().get(0);
+            checksum -= physicsSystem.copyState().size();
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int frame = 0; frame < numFrames; frame++)
+        {
+            physicsSystem.writeRenderSnapshot(snapshot);
+            checksum += snapshot.getInstanceBuffer().get(0);
+        }
+        double snapshotMillis = (System.nanoTime() - startNanos) / 1000000.0;
+        long snapshotBytes = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+        start = threadBean.getThreadAllocatedBytes(threadId);
+        startNanos = System.nanoTime();
+        for (int frame = 0; frame < numFrames; frame++)
+        {
+            checksum -= physicsSystem.copyState().size();
+        }
+        double copyMillis = (System.nanoTime() - startNanos) / 1000000.0;
+        long copyBytes = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+        System.out.println(snapshot.size() + " entities x " + numFrames + " frames: render snapshot " + snapshotMillis + "ms, " + snapshotBytes + " bytes; copyState "
+                + copyMillis + "ms, " + copyBytes + " bytes");
+        assertTrue(checksum != 0);
+    }
+}
@@ -0,0 +1,200 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.CollisionDispatcher;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.LineSegmentEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks render snapshots describe every physical entity and compares their cost with copyState().
+ */
+public class RenderSnapshotTests
+{
+    private static final int STRIDE = RenderSnapshot.FLOATS_PER_INSTANCE;
+
+    @Test
+    public void describesEntities()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        addScene(physicsSystem, 100);
+        //A wall pointing down the negative x-axis
+        physicsSystem.addEntity(new WallEntity(new Vec3D(300, 10, 0), new Vec3D(100, 10, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        for (int step = 0; step < 100; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        RenderSnapshot snapshot = new RenderSnapshot();
+        physicsSystem.writeRenderSnapshot(snapshot);
+        assertEquals(0.2, snapshot.getTime(), 1e-9);
+        //Every entity but gravity
+        assertEquals(109, snapshot.size());
+        float[] data = snapshot.getInstanceData();
+        int numSpheres = 0;
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            Entity entity = physicsSystem.getEntity(snapshot.getHandle(i));
+            assertEquals(i, snapshot.findInstance(snapshot.getHandle(i)));
+            int offset = i * STRIDE;
+            if (entity instanceof SphereEntity)
+            {
+                SphereEntity sphere = (SphereEntity) entity;
+                assertEquals(CollisionDispatcher.SHAPE_SPHERE, snapshot.getShapeType(i));
+                assertPosition(sphere.getCenter(), data, offset);
+                assertEquals(sphere.getRadius(), data[offset + RenderSnapshot.RADIUS_OFFSET], 1e-4);
+                assertEquals(1, data[offset + RenderSnapshot.ORIENTATION_OFFSET + 3], 0);
+                numSpheres++;
+            }
+            else if (entity instanceof LineSegmentEntity)
+            {
+                LineSegmentEntity wall = (LineSegmentEntity) entity;
+                assertEquals(CollisionDispatcher.SHAPE_LINE_SEGMENT, snapshot.getShapeType(i));
+                Vec3D p1 = wall.getLineSegment().p1;
+                Vec3D p2 = wall.getLineSegment().p2;
+                assertPosition(Vec3D.scale(Vec3D.add(p1, p2), 0.5), data, offset);
+                double halfLength = Vec3D.distance(p1, p2) * 0.5;
+                assertEquals(halfLength, data[offset + RenderSnapshot.RADIUS_OFFSET], 1e-4);
+
+                //Orientation must take the x-axis onto the segment
+                double qx = data[offset + RenderSnapshot.ORIENTATION_OFFSET];
+                double qy = data[offset + RenderSnapshot.ORIENTATION_OFFSET + 1];
+                double qz = data[offset + RenderSnapshot.ORIENTATION_OFFSET + 2];
+                double qw = data[offset + RenderSnapshot.ORIENTATION_OFFSET + 3];
+                assertEquals(1, qx * qx + qy * qy + qz * qz + qw * qw, 1e-5);
+                assertEquals((p2.x - p1.x) / (halfLength * 2), 1 - 2 * (qy * qy + qz * qz), 1e-5);
+                assertEquals((p2.y - p1.y) / (halfLength * 2), 2 * (qx * qy + qw * qz), 1e-5);
+                assertEquals((p2.z - p1.z) / (halfLength * 2), 2 * (qx * qz - qw * qy), 1e-5);
+            }
+            else
+            {
+                PolygonEntity polygon = (PolygonEntity) entity;
+                assertEquals(CollisionDispatcher.SHAPE_POLYGON, snapshot.getShapeType(i));
+                assertPosition(polygon.getBoundingSphere().getCenter(), data, offset);
+                assertEquals(polygon.getBoundingSphere().getRadius(), data[offset + RenderSnapshot.RADIUS_OFFSET], 1e-4);
+            }
+        }
+        assertEquals(100, numSpheres);
+
+        FloatBuffer buffer = snapshot.getInstanceBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(snapshot.size() * STRIDE, buffer.remaining());
+        for (int i = 0; i < snapshot.size() * STRIDE; i++)
+        {
+            assertEquals(data[i], buffer.get(i), 0);
+        }
+        assertEquals(-1, snapshot.findInstance(PhysicsSystem.INVALID_HANDLE));
+    }
+
+    @Test
+    public void interpolatedMatchesCopyInterpolatedState()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        addScene(physicsSystem, 50);
+        RenderSnapshot snapshot = new RenderSnapshot();
+        physicsSystem.writeInterpolatedRenderSnapshot(snapshot, 0.5);
+        for (int step = 0; step < 20; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        physicsSystem.writeInterpolatedRenderSnapshot(snapshot, 0.25);
+        List<Entity> copy = physicsSystem.copyInterpolatedState(0.25);
+        float[] data = snapshot.getInstanceData();
+        //Copies list non-physical entities first, then physical entities in snapshot order
+        int firstPhysical = copy.size() - snapshot.size();
+        int numChecked = 0;
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            Entity entity = copy.get(firstPhysical + i);
+            if (entity instanceof SphereEntity)
+            {
+                assertPosition(((SphereEntity) entity).getCenter(), data, i * STRIDE);
+                numChecked++;
+            }
+        }
+        assertEquals(50, numChecked);
+    }
+
+    @Test
+    public void snapshotDoesNotAllocate()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        addScene(physicsSystem, 2000);
+        physicsSystem.performTimeStep(0.002);
+        RenderSnapshot snapshot = new RenderSnapshot();
+        int numFrames = 200;
+        double checksum = 0;
+        for (int frame = 0; frame < numFrames; frame++)
+        {
+            physicsSystem.writeRenderSnapshot(snapshot);
+            checksum += snapshot.getInstanceBuffer().get(0);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < numFrames; frame++)
+        {
+            physicsSystem.writeRenderSnapshot(snapshot);
+            checksum += snapshot.getInstanceBuffer().get(0);
+        }
+        long snapshotBytes = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+        assertEquals(0, snapshotBytes);
+        assertTrue(checksum != 0);
+    }
+
+    private static void assertPosition(Vec3D expected, float[] data, int offset)
+    {
+        assertEquals(expected.x, data[offset + RenderSnapshot.POSITION_OFFSET], 1e-3);
+        assertEquals(expected.y, data[offset + RenderSnapshot.POSITION_OFFSET + 1], 1e-3);
+        assertEquals(expected.z, data[offset + RenderSnapshot.POSITION_OFFSET + 2], 1e-3);
+    }
+
+    /**
+     * Spheres and a few polygons falling in a box containing polygon obstacles.
+     */
+    static void addScene(PhysicsSystem physicsSystem, int numSpheres)
+    {
+        double size = 400;
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, size, 0), new Vec3D(size, size, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, size, 0), new Vec3D(0, 0, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(size, size, 0), new Vec3D(size, 0, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6, new Vec3D[]{new Vec3D(100, 250, 0), new Vec3D(150, 300, 0), new Vec3D(200, 250, 0)}));
+        physicsSystem.addEntity(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6, new Vec3D[]{new Vec3D(250, 200, 0), new Vec3D(300, 250, 0), new Vec3D(350, 200, 0)}));
+        for (int i = 0; i < 3; i++)
+        {
+            double x = 50 + i * 120;
+            physicsSystem.addEntity(new PolygonEntity(new Vec3D(0, 0, 0), 20, 0.6,
+                    new Vec3D[]{new Vec3D(x, 20, 0), new Vec3D(x + 20, 20, 0), new Vec3D(x + 20, 40, 0), new Vec3D(x, 40, 0)}));
+        }
+        Random random = new Random(7);
+        double radius = Math.min(5, size / Math.sqrt(numSpheres) * 0.3);
+        for (int i = 0; i < numSpheres; i++)
+        {
+            Vec3D center = new Vec3D(10 + random.nextDouble() * (size - 20), 50 + random.nextDouble() * (size - 70), 0);
+            Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+            physicsSystem.addEntity(new SphereEntity(center, velocity, 5, 0.8, radius));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+    }
+}
@@ -0,0 +1,153 @@
+package com.pheiffware.lib.physics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SCurveSimulatorTests
+{
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    @Test
+    public void reachesAllLimits()
+    {
+        //Jerk ramps take 1s, constant acceleration 1s, reaching 4 after 3s and covering 6
+        SCurveSimulator moveSim = new SCurveSimulator(10, 30, 4, 2, 2);
+        assertEquals(4, moveSim.getPeakVelocity(), 1e-12);
+        assertEquals(2, moveSim.getPeakAcceleration(), 1e-12);
+        assertEquals(1, moveSim.getSegmentDuration(0), 1e-12);
+        assertEquals(1, moveSim.getSegmentDuration(1), 1e-12);
+        //20 - 2 * 6 = 8 coasting at 4
+        assertEquals(2, moveSim.getSegmentDuration(3), 1e-12);
+        assertEquals(8, moveSim.getTotalTime(), 1e-12);
+        assertEquals(10, moveSim.getPositionAtTime(0), 0);
+        assertEquals(10 + 1.0 / 3.0, moveSim.getPositionAtTime(1), 1e-12);
+        assertEquals(16, moveSim.getPositionAtTime(3), 1e-12);
+        assertEquals(20, moveSim.getPositionAtTime(4), 1e-12);
+        assertEquals(30, moveSim.getPositionAtTime(8), 0);
+        assertEquals(1, moveSim.getVelocityAtTime(1), 1e-12);
+        assertEquals(-2, moveSim.getAccelerationAtTime(6.5), 1e-12);
+        checkConsistent(moveSim);
+    }
+
+    @Test
+    public void shortMoves()
+    {
+        //Reaches maximum acceleration but not velocity
+        SCurveSimulator moveSim = new SCurveSimulator(0, 10, 100, 2, 2);
+        assertEquals(2, moveSim.getPeakAcceleration(), 1e-12);
+        assertTrue(moveSim.getPeakVelocity() < 100);
+        assertEquals(0, moveSim.getSegmentDuration(3), 1e-12);
+        checkConsistent(moveSim);
+
+        //Reaches neither: 2 * j * t^3 = 2, t = 1
+        moveSim = new SCurveSimulator(0, 2, 100, 100, 1);
+        assertEquals(0, moveSim.getSegmentDuration(1), 1e-12);
+        assertEquals(1, moveSim.getSegmentDuration(0), 1e-12);
+        assertEquals(1, moveSim.getPeakAcceleration(), 1e-12);
+        assertEquals(4, moveSim.getTotalTime(), 1e-12);
+        checkConsistent(moveSim);
+
+        //Reaches velocity but not acceleration
+        moveSim = new SCurveSimulator(0, 100, 1, 100, 1);
+        assertEquals(1, moveSim.getPeakVelocity(), 1e-12);
+        assertEquals(1, moveSim.getPeakAcceleration(), 1e-12);
+        checkConsistent(moveSim);
+
+        moveSim = new SCurveSimulator(5, 5, 1, 1, 1);
+        assertEquals(0, moveSim.getTotalTime(), 0);
+        assertEquals(5, moveSim.getPositionAtTime(1), 0);
+        assertEquals(0, moveSim.getTimeAtPosition(5), 0);
+    }
+
+    @Test
+    public void negativeMove()
+    {
+        SCurveSimulator positive = new SCurveSimulator(10, 30, 4, 2, 2);
+        SCurveSimulator negative = new SCurveSimulator(30, 10, 4, 2, 2);
+        for (int i = 0; i <= 100; i++)
+        {
+            double time = i * 0.09;
+            assertEquals(40 - positive.getPositionAtTime(time), negative.getPositionAtTime(time), 1e-12);
+            assertEquals(-positive.getVelocityAtTime(time), negative.getVelocityAtTime(time), 1e-12);
+        }
+        checkConsistent(negative);
+    }
+
+    @Test
+    public void infiniteJerkMatchesTrapezoid()
+    {
+        double[][] moves = {{3, 53, 10, 5}, {2, 37, 20, 5}, {5, 15, 5, INF}};
+        for (double[] move : moves)
+        {
+            SCurveSimulator sCurve = new SCurveSimulator(move[0], move[1], move[2], move[3], INF);
+            AccelerationSimulator trapezoid = new AccelerationSimulator(move[0], move[1], move[2], move[3]);
+            assertEquals(trapezoid.getTotalTime(), sCurve.getTotalTime(), 1e-12);
+            //Stops short of the end, where the trapezoid still reports coasting velocity if deceleration is infinite
+            for (int i = 0; i < 100; i++)
+            {
+                double time = trapezoid.getTotalTime() * i / 100;
+                assertEquals(trapezoid.getPositionAtTime(time), sCurve.getPositionAtTime(time), 1e-9);
+                assertEquals(trapezoid.getVelocityAtTime(time), sCurve.getVelocityAtTime(time), 1e-9);
+            }
+        }
+        checkConsistent(new SCurveSimulator(0, 10, 2, INF, 3));
+    }
+
+    @Test
+    public void multiAxisFinishTogether()
+    {
+        double[] start = {0, 0, 10, 5};
+        double[] end = {100, -30, 15, 5};
+        double[] velocity = {20, 20, 10, 10};
+        double[] acceleration = {10, 10, 5, 5};
+        double[] jerk = {20, 20, 5, 5};
+        SCurveSimulator[] sCurves = MultiAxisPlanner.planSCurve(start, end, velocity, acceleration, jerk);
+        SCurveSimulator slowest = new SCurveSimulator(0, 100, 20, 10, 20);
+        for (int axis = 0; axis < 3; axis++)
+        {
+            assertEquals(slowest.getTotalTime(), sCurves[axis].getTotalTime(), 1e-9);
+            assertTrue(sCurves[axis].getPeakVelocity() <= velocity[axis] + 1e-12);
+            assertTrue(sCurves[axis].getPeakAcceleration() <= acceleration[axis] + 1e-12);
+        }
+        assertEquals(0, sCurves[3].getTotalTime(), 0);
+        for (int axis = 0; axis < 3; axis++)
+        {
+            checkConsistent(sCurves[axis]);
+        }
+
+        AccelerationSimulator[] trapezoids = MultiAxisPlanner.planTrapezoidal(start, end, velocity, acceleration, acceleration);
+        for (int axis = 0; axis < 3; axis++)
+        {
+            assertEquals(trapezoids[0].getTotalTime(), trapezoids[axis].getTotalTime(), 1e-9);
+            assertEquals(end[axis], trapezoids[axis].getPositionAtTime(trapezoids[0].getTotalTime() - 1e-12), 1e-6);
+        }
+    }
+
+    /**
+     * Checks that position, velocity and acceleration agree with each other, respect the limits and that time at position inverts position at time.
+     */
+    private static void checkConsistent(SCurveSimulator moveSim)
+    {
+        double totalTime = moveSim.getTotalTime();
+        double step = totalTime / 1000;
+        double direction = moveSim.getDirection();
+        for (int i = 1; i < 1000; i++)
+        {
+            double time = step * i;
+            double h = step * 1e-3;
+            double velocity = (moveSim.getPositionAtTime(time + h) - moveSim.getPositionAtTime(time - h)) / (2 * h);
+            assertEquals(velocity, moveSim.getVelocityAtTime(time), 1e-5 * (1 + moveSim.getPeakVelocity()));
+            assertTrue(moveSim.getVelocityAtTime(time) * direction >= -1e-12);
+            assertTrue(Math.abs(moveSim.getVelocityAtTime(time)) <= moveSim.getMaxVelocity() + 1e-9);
+            if (moveSim.getMaxAcceleration() != INF)
+            {
+                assertTrue(Math.abs(moveSim.getAccelerationAtTime(time)) <= moveSim.getMaxAcceleration() + 1e-9);
+            }
+            double position = moveSim.getPositionAtTime(time);
+            assertEquals(position, moveSim.getPositionAtTime(moveSim.getTimeAtPosition(position)), 1e-9 * (1 + moveSim.getTotalDistance()));
+        }
+        assertEquals(moveSim.getEndPosition(), moveSim.getPositionAtTime(totalTime * (1 - 1e-12)), 1e-6);
+    }
+}
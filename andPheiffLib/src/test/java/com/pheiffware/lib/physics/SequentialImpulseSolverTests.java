@@ -0,0 +1,88 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.physics.solver.SequentialImpulseSolver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the iterative contact solver keeps stacks at rest at large time steps, while still letting objects bounce.
+ */
+public class SequentialImpulseSolverTests
+{
+    private static final int ROWS = 6;
+    private static final double RADIUS = 5;
+    private static final double BOTTOM = 500;
+
+    @Test
+    public void stackRestsAtLargeTimeStep()
+    {
+        double[] timeSteps = {0.002, 0.01, 0.02};
+        for (double timeStep : timeSteps)
+        {
+            double solverJitter = runStack(new SequentialImpulseSolver(10, 4), timeStep);
+            assertTrue(solverJitter < 0.1);
+        }
+    }
+
+    @Test
+    public void ballBounces()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.setContactSolver(new SequentialImpulseSolver(10, 4));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(-100, BOTTOM, 0), new Vec3D(100, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 1));
+        SphereEntity ball = new SphereEntity(new Vec3D(0, BOTTOM - RADIUS - 1, 0), new Vec3D(0, 200, 0), 5, 1, RADIUS);
+        physicsSystem.addEntity(ball);
+        for (int step = 0; step < 10; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+        }
+        assertTrue(ball.velocity.y < -150);
+    }
+
+    /**
+     * Settles a pyramid of spheres in a box and measures the fastest any sphere moves during the second half of the run.
+     */
+    private static double runStack(SequentialImpulseSolver solver, double timeStep)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.setContactSolver(solver);
+        double width = ROWS * RADIUS * 2;
+        physicsSystem.addEntity(new WallEntity(new Vec3D(-100, BOTTOM, 0), new Vec3D(100 + width, BOTTOM, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, BOTTOM, 0), new Vec3D(0, BOTTOM - 200, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(width, BOTTOM, 0), new Vec3D(width, BOTTOM - 200, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        SphereEntity[] spheres = new SphereEntity[ROWS * (ROWS + 1) / 2];
+        int sphereIndex = 0;
+        for (int row = 0; row < ROWS; row++)
+        {
+            for (int i = 0; i < ROWS - row; i++)
+            {
+                Vec3D center = new Vec3D(RADIUS + row * RADIUS + i * RADIUS * 2, BOTTOM - RADIUS - row * RADIUS * Math.sqrt(3), 0);
+                spheres[sphereIndex] = new SphereEntity(center, new Vec3D(0, 0, 0), 5, 0.5, RADIUS);
+                physicsSystem.addEntity(spheres[sphereIndex++]);
+            }
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+
+        int numSteps = (int) (4 / timeStep);
+        double maxSpeed = 0;
+        for (int step = 0; step < numSteps; step++)
+        {
+            physicsSystem.performTimeStep(timeStep);
+            if (step > numSteps / 2)
+            {
+                for (SphereEntity sphere : spheres)
+                {
+                    maxSpeed = Math.max(maxSpeed, sphere.velocity.magnitude());
+                }
+            }
+        }
+        return maxSpeed;
+    }
+}
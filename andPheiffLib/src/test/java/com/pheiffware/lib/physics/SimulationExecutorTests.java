@@ -0,0 +1,175 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.Entity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+import com.pheiffware.lib.simulation.Simulation;
+import com.pheiffware.lib.simulation.SimulationExecutor;
+import com.pheiffware.lib.simulation.SimulationTask;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many physics systems on a shared pool, checking results match running them one after another.
+ */
+public class SimulationExecutorTests
+{
+    private static final int NUM_SIMULATIONS = 32;
+    private static final int NUM_STEPS = 1000;
+    private static final int NUM_SPHERES = 40;
+    private static final double TIME_STEP = 0.005;
+
+    @Test
+    public void matchesSequentialRuns() throws InterruptedException
+    {
+        PhysicsSystem[] sequentialSystems = new PhysicsSystem[NUM_SIMULATIONS];
+        for (int i = 0; i < NUM_SIMULATIONS; i++)
+        {
+            sequentialSystems[i] = createScene(i);
+            for (int step = 0; step < NUM_STEPS; step++)
+            {
+                sequentialSystems[i].performTimeStep(TIME_STEP);
+            }
+        }
+
+        SimulationExecutor simulationExecutor = new SimulationExecutor();
+        PhysicsSystem[] concurrentSystems = new PhysicsSystem[NUM_SIMULATIONS];
+        for (int i = 0; i < NUM_SIMULATIONS; i++)
+        {
+            concurrentSystems[i] = createScene(i);
+            simulationExecutor.submit(concurrentSystems[i], TIME_STEP, NUM_STEPS);
+        }
+        simulationExecutor.awaitAll();
+        simulationExecutor.shutdown();
+
+        for (SimulationTask<?> task : simulationExecutor.getTasks())
+        {
+            assertEquals(NUM_STEPS, task.getStepsCompleted());
+            assertTrue(task.getStepsPerSecond() > 0);
+        }
+        for (int i = 0; i < NUM_SIMULATIONS; i++)
+        {
+            assertSameState(sequentialSystems[i], concurrentSystems[i]);
+        }
+    }
+
+    @Test
+    public void limitsRate() throws InterruptedException
+    {
+        SimulationExecutor simulationExecutor = new SimulationExecutor(2);
+        long start = System.nanoTime();
+        SimulationTask<?> limited = simulationExecutor.submit(createScene(0), 0.01, 21, 1.0);
+        SimulationTask<?> unlimited = simulationExecutor.submit(createScene(1), 0.01, 21);
+        unlimited.awaitCompletion();
+        double unlimitedSeconds = (System.nanoTime() - start) / 1000000000.0;
+        limited.awaitCompletion();
+        double limitedSeconds = (System.nanoTime() - start) / 1000000000.0;
+        simulationExecutor.shutdown();
+        assertEquals(21, limited.getStepsCompleted());
+        assertTrue(unlimitedSeconds < 0.1);
+        assertTrue(limitedSeconds >= 0.19);
+    }
+
+    @Test
+    public void stopsOnFailure() throws InterruptedException
+    {
+        SimulationExecutor simulationExecutor = new SimulationExecutor(2);
+        SimulationTask<?> task = simulationExecutor.submit(new Simulation<Object>()
+        {
+            private int numSteps;
+
+            @Override
+            public void performTimeStep(double elapsedTime)
+            {
+                if (++numSteps == 5)
+                {
+                    throw new IllegalStateException("Step 5");
+                }
+            }
+
+            @Override
+            public Object copyState()
+            {
+                return null;
+            }
+
+            @Override
+            public void applyExternalInput(String key, Object value)
+            {
+            }
+        }, 0.01, 100);
+        task.awaitCompletion();
+        simulationExecutor.shutdown();
+        assertNotNull(task.getFailure());
+        assertEquals(4, task.getStepsCompleted());
+    }
+
+    @Test
+    public void recordsPhysicsSystemFailure() throws InterruptedException
+    {
+        SimulationExecutor simulationExecutor = new SimulationExecutor(2);
+        PhysicsSystem failingSystem = createScene(0);
+        failingSystem.addEntity(new Entity()
+        {
+            private int numSteps;
+
+            @Override
+            public void ai(double elapsedTime, PhysicsSystem physicsSystem)
+            {
+                if (++numSteps == 5)
+                {
+                    throw new IllegalStateException("Step 5");
+                }
+            }
+        });
+        SimulationTask<?> failingTask = simulationExecutor.submit(failingSystem, TIME_STEP, 100);
+        SimulationTask<?> task = simulationExecutor.submit(createScene(1), TIME_STEP, 100);
+        simulationExecutor.awaitAll();
+        simulationExecutor.shutdown();
+        assertNotNull(failingTask.getFailure());
+        //The failed step doesn't count
+        assertEquals(4, failingTask.getStepsCompleted());
+        assertEquals(100, task.getStepsCompleted());
+    }
+
+    /**
+     * Spheres, with random starting velocities, bouncing around in a box.
+     */
+    private static PhysicsSystem createScene(int seed)
+    {
+        Random random = new Random(seed);
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, 500, 0), new Vec3D(400, 500, 0), -1, new Vec3D(0, 0, 0), 0.8));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, 500, 0), new Vec3D(0, 0, 0), 1, new Vec3D(0, 0, 0), 0.8));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(400, 500, 0), new Vec3D(400, 0, 0), -1, new Vec3D(0, 0, 0), 0.8));
+        for (int i = 0; i < NUM_SPHERES; i++)
+        {
+            Vec3D center = new Vec3D(20 + (i % 10) * 38, 100 + (i / 10) * 40, 0);
+            Vec3D velocity = new Vec3D(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100, 0);
+            physicsSystem.addEntity(new SphereEntity(center, velocity, 1, 0.8, 8));
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return physicsSystem;
+    }
+
+    private static void assertSameState(PhysicsSystem expected, PhysicsSystem actual)
+    {
+        assertEquals(expected.getNumPhysicalEntities(), actual.getNumPhysicalEntities());
+        for (int i = 0; i < expected.getNumPhysicalEntities(); i++)
+        {
+            SphereEntity expectedSphere = (SphereEntity) expected.getPhysicalEntities()[i];
+            SphereEntity actualSphere = (SphereEntity) actual.getPhysicalEntities()[i];
+            assertEquals(expectedSphere.getCenter().x, actualSphere.getCenter().x, 0);
+            assertEquals(expectedSphere.getCenter().y, actualSphere.getCenter().y, 0);
+        }
+    }
+}
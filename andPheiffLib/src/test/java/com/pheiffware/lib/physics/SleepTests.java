@@ -0,0 +1,154 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that resting stacks fall asleep and wake again when disturbed.
+ */
+public class SleepTests
+{
+    private static final double TIME_STEP = 0.002;
+
+    @Test
+    public void restingStackSleepsAndWakes()
+    {
+        checkSleepAndWake(false);
+    }
+
+    @Test
+    public void restingPackedStackSleepsAndWakes()
+    {
+        checkSleepAndWake(true);
+    }
+
+    @Test
+    public void fallingEntityWakesSleepingStack()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        SphereEntity[] spheres = createStack(physicsSystem, 4);
+        physicsSystem.enableSleeping(10, 50);
+        runUntilAsleep(physicsSystem);
+
+        SphereEntity dropped = new SphereEntity(new Vec3D(spheres[spheres.length - 1].getCenter().x, 300, 0), new Vec3D(0, 0, 0), 5, 0.5, 5);
+        physicsSystem.addEntity(dropped);
+        boolean stackWoke = false;
+        for (int step = 0; step < 2000 && !stackWoke; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+            stackWoke = !spheres[0].isSleeping();
+        }
+        assertTrue("Stack was never woken by falling entity", stackWoke);
+    }
+
+    @Test
+    public void removingSupportWakesSleepers()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        SphereEntity[] spheres = createStack(physicsSystem, 4);
+        physicsSystem.enableSleeping(10, 50);
+        runUntilAsleep(physicsSystem);
+
+        //Counts stay consistent straight away, without waiting for a step
+        physicsSystem.removeEntity(spheres[0]);
+        assertEquals(spheres.length - 1, physicsSystem.getNumSleepingEntities());
+        assertEquals(0, physicsSystem.getNumAwakeEntities());
+        assertTrue(spheres[spheres.length - 1].isSleeping());
+
+        //The sphere which rested on the removed one is woken by the next step, and falls
+        double restingY = spheres[4].getCenter().y;
+        physicsSystem.performTimeStep(TIME_STEP);
+        assertFalse(spheres[4].isSleeping());
+        for (int step = 0; step < 20; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        assertTrue(spheres[4].getCenter().y > restingY);
+    }
+
+    private static void checkSleepAndWake(boolean packed)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (packed)
+        {
+            physicsSystem.usePackedSphereStorage();
+        }
+        SphereEntity[] spheres = createStack(physicsSystem, 4);
+        physicsSystem.enableSleeping(10, 50);
+        runUntilAsleep(physicsSystem);
+
+        //Sleeping entities should not move at all
+        Vec3D[] centers = new Vec3D[spheres.length];
+        for (int i = 0; i < spheres.length; i++)
+        {
+            centers[i] = new Vec3D(spheres[i].getCenter());
+        }
+        for (int step = 0; step < 100; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        for (int i = 0; i < spheres.length; i++)
+        {
+            assertEquals(centers[i], spheres[i].getCenter());
+        }
+        assertEquals(0, physicsSystem.getNumCollisionPairsTested());
+
+        //An impulse wakes the entity.  Waking then spreads through the stack one layer of contacts per step.
+        SphereEntity top = spheres[spheres.length - 1];
+        top.applyImpulse(new Vec3D(0, 1, 0), 50);
+        assertFalse(top.isSleeping());
+        physicsSystem.performTimeStep(TIME_STEP);
+        assertTrue(physicsSystem.getNumAwakeEntities() > 1);
+        for (int step = 0; step < 4; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        assertEquals(0, physicsSystem.getNumSleepingEntities());
+        assertEquals(spheres.length, physicsSystem.getNumAwakeEntities());
+    }
+
+    private static void runUntilAsleep(PhysicsSystem physicsSystem)
+    {
+        for (int step = 0; step < 20000 && physicsSystem.getNumAwakeEntities() > 0; step++)
+        {
+            physicsSystem.performTimeStep(TIME_STEP);
+        }
+        assertEquals(0, physicsSystem.getNumAwakeEntities());
+        assertEquals(physicsSystem.getNumPhysicalEntities(), physicsSystem.getNumSleepingEntities());
+    }
+
+    /**
+     * Creates a pyramid of spheres resting on a floor, between two side walls.
+     */
+    private static SphereEntity[] createStack(PhysicsSystem physicsSystem, int rows)
+    {
+        double radius = 5;
+        double bottom = 500;
+        SphereEntity[] spheres = new SphereEntity[rows * (rows + 1) / 2];
+        int sphereIndex = 0;
+        double width = rows * radius * 2;
+        physicsSystem.addEntity(new WallEntity(new Vec3D(-100, bottom, 0), new Vec3D(100 + width, bottom, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(0, bottom, 0), new Vec3D(0, bottom - 200, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        physicsSystem.addEntity(new WallEntity(new Vec3D(width, bottom, 0), new Vec3D(width, bottom - 200, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        for (int row = 0; row < rows; row++)
+        {
+            for (int i = 0; i < rows - row; i++)
+            {
+                Vec3D center = new Vec3D(radius + row * radius + i * radius * 2, bottom - radius - row * radius * Math.sqrt(3), 0);
+                spheres[sphereIndex] = new SphereEntity(center, new Vec3D(0, 0, 0), 5, 0.5, radius);
+                physicsSystem.addEntity(spheres[sphereIndex++]);
+            }
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return spheres;
+    }
+}
@@ -0,0 +1,86 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SpatialQueryResults;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Prints the time for raycasts and nearest neighbour searches through the spatial index, compared with a linear scan.
+ */
+@Ignore("Benchmark, run manually")
+public class SpatialQueryBenchmarks
+{
+    @Test
+    public void benchmark()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        List<PhysicalEntity> entities = SpatialQueryTests.addScene(physicsSystem, 5000, new Random(9));
+        physicsSystem.performTimeStep(0.002);
+        SpatialQueryResults results = new SpatialQueryResults();
+        BoundingBox bounds = new BoundingBox();
+        int numQueries = 2000;
+        double[] queries = new double[numQueries * 4];
+        Random random = new Random(13);
+        for (int i = 0; i < numQueries; i++)
+        {
+            double angle = random.nextDouble() * Math.PI * 2;
+            queries[i * 4] = random.nextDouble() * SpatialQueryTests.SIZE;
+            queries[i * 4 + 1] = random.nextDouble() * SpatialQueryTests.SIZE;
+            queries[i * 4 + 2] = Math.cos(angle);
+            queries[i * 4 + 3] = Math.sin(angle);
+        }
+        Vec3D origin = new Vec3D(0, 0, 0);
+        Vec3D direction = new Vec3D(0, 0, 0);
+        double indexedMillis = Double.POSITIVE_INFINITY;
+        double linearMillis = Double.POSITIVE_INFINITY;
+        double checksum = 0;
+        for (int trial = 0; trial < 5; trial++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < numQueries; i++)
+            {
+                SpatialQueryTests.set(origin, queries[i * 4], queries[i * 4 + 1]);
+                SpatialQueryTests.set(direction, queries[i * 4 + 2], queries[i * 4 + 3]);
+                if (physicsSystem.raycast(origin, direction, 1000, results))
+                {
+                    checksum += results.getDistance(0);
+                }
+                physicsSystem.findNearest(origin, 4, 1000, results);
+                checksum += results.getDistance(3);
+            }
+            indexedMillis = Math.min(indexedMillis, (System.nanoTime() - start) / 1000000.0);
+
+            start = System.nanoTime();
+            for (int i = 0; i < numQueries; i++)
+            {
+                double closest = SpatialQueryTests.bruteForceRaycast(entities, bounds, queries[i * 4], queries[i * 4 + 1], 0, queries[i * 4 + 2], queries[i * 4 + 3], 0, 1000);
+                if (!Double.isNaN(closest))
+                {
+                    checksum -= closest;
+                }
+                results.clear();
+                for (PhysicalEntity entity : entities)
+                {
+                    entity.calcBoundingBox(bounds);
+                    results.insertSorted(entity, entity.calcDistance(queries[i * 4], queries[i * 4 + 1], 0, bounds), 4);
+                }
+                checksum -= results.getDistance(3);
+            }
+            linearMillis = Math.min(linearMillis, (System.nanoTime() - start) / 1000000.0);
+        }
+        System.out.println(entities.size() + " entities, " + numQueries + " raycasts and 4-nearest searches: indexed " + indexedMillis + "ms, linear scan " + linearMillis
+                + "ms");
+        assertEquals(0, checksum, 1e-6);
+    }
+}
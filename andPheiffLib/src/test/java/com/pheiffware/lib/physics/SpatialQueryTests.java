@@ -0,0 +1,288 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.geometry.Vec3D;
+import com.pheiffware.lib.physics.broadPhase.SpatialQueryResults;
+import com.pheiffware.lib.physics.broadPhase.SweepAndPruneBroadPhase;
+import com.pheiffware.lib.physics.entity.DirectionalGravityEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.PhysicalEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.boundingVolume.BoundingBox;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.PolygonWallEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.SphereEntity;
+import com.pheiffware.lib.physics.entity.physicalEntity.physicalEntities.WallEntity;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks PhysicsSystem's spatial queries against brute force tests of every entity and checks they don't allocate.
+ */
+public class SpatialQueryTests
+{
+    static final double SIZE = 400;
+
+    @Test
+    public void matchesBruteForce()
+    {
+        checkMatchesBruteForce(false);
+        checkMatchesBruteForce(true);
+    }
+
+    @Test
+    public void tracksAddRemoveAndMotion()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        SpatialQueryResults results = new SpatialQueryResults();
+        Vec3D origin = new Vec3D(0, 0, 0);
+        Vec3D right = new Vec3D(1, 0, 0);
+        assertFalse(physicsSystem.raycast(origin, right, 1000, results));
+        assertEquals(0, results.size());
+
+        SphereEntity sphere = new SphereEntity(new Vec3D(100, 0, 0), new Vec3D(50, 0, 0), 1, 1, 10);
+        long handle = physicsSystem.addEntity(sphere);
+        assertTrue(physicsSystem.raycast(origin, right, 1000, results));
+        assertTrue(results.getEntity(0) == sphere);
+        assertEquals(90, results.getDistance(0), 1e-9);
+        assertFalse(physicsSystem.raycast(origin, right, 80, results));
+
+        //Moves 50 per second
+        for (int step = 0; step < 100; step++)
+        {
+            physicsSystem.performTimeStep(0.01);
+        }
+        assertTrue(physicsSystem.raycast(origin, right, 1000, results));
+        assertEquals(140, results.getDistance(0), 1e-9);
+        assertEquals(1, physicsSystem.findNearest(new Vec3D(150, 20, 0), 5, 1000, results));
+        assertEquals(10, results.getDistance(0), 1e-9);
+
+        //Moved directly, so the index must be told
+        sphere.move(new Vec3D(-100, 0, 0));
+        physicsSystem.invalidateSpatialIndex();
+        assertEquals(1, physicsSystem.overlapSphere(new Vec3D(50, 0, 0), 1, results));
+        assertEquals(0, results.getDistance(0), 1e-9);
+
+        physicsSystem.removeEntity(handle);
+        assertFalse(physicsSystem.raycast(origin, right, 1000, results));
+        assertEquals(0, physicsSystem.overlapSphere(new Vec3D(50, 0, 0), 1, results));
+    }
+
+    @Test
+    public void queriesDoNotAllocate()
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        physicsSystem.usePackedSphereStorage();
+        List<PhysicalEntity> entities = addScene(physicsSystem, 300, new Random(3));
+        SpatialQueryResults results = new SpatialQueryResults(entities.size());
+        Random random = new Random(5);
+        Vec3D point = new Vec3D(0, 0, 0);
+        Vec3D direction = new Vec3D(0, 0, 0);
+
+        //Warm up, including several refits and rebuilds
+        for (int step = 0; step < 500; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+            runQueries(physicsSystem, random, point, direction, results, 20);
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int step = 0; step < 50; step++)
+        {
+            physicsSystem.performTimeStep(0.002);
+            runQueries(physicsSystem, random, point, direction, results, 20);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        assertEquals(0, allocated);
+    }
+
+    private static void checkMatchesBruteForce(boolean packed)
+    {
+        PhysicsSystem physicsSystem = new PhysicsSystem(new SweepAndPruneBroadPhase());
+        if (packed)
+        {
+            physicsSystem.usePackedSphereStorage();
+        }
+        Random random = new Random(packed ? 17 : 19);
+        List<PhysicalEntity> entities = addScene(physicsSystem, 200, random);
+        SpatialQueryResults results = new SpatialQueryResults();
+        SpatialQueryResults expected = new SpatialQueryResults();
+        BoundingBox bounds = new BoundingBox();
+        Vec3D origin = new Vec3D(0, 0, 0);
+        Vec3D direction = new Vec3D(0, 0, 0);
+        //Enough steps to both refit and rebuild the index
+        for (int step = 0; step < 40; step++)
+        {
+            for (int i = 0; i < 25; i++)
+            {
+                double x = random.nextDouble() * SIZE;
+                double y = random.nextDouble() * SIZE;
+                double angle = random.nextDouble() * Math.PI * 2;
+                set(origin, x, y);
+                set(direction, Math.cos(angle), Math.sin(angle));
+                double maxDistance = random.nextDouble() * SIZE;
+
+                double closest = bruteForceRaycast(entities, bounds, x, y, 0, direction.x, direction.y, 0, maxDistance);
+                boolean hit = physicsSystem.raycast(origin, direction, maxDistance, results);
+                assertEquals(!Double.isNaN(closest), hit);
+                if (hit)
+                {
+                    assertEquals(closest, results.getDistance(0), 1e-9);
+                }
+
+                expected.clear();
+                for (PhysicalEntity entity : entities)
+                {
+                    entity.calcBoundingBox(bounds);
+                    double distance = entity.calcRayDistance(x, y, 0, direction.x, direction.y, 0, bounds);
+                    if (distance <= maxDistance)
+                    {
+                        expected.insertSorted(entity, distance, entities.size());
+                    }
+                }
+                assertEquals(expected.size(), physicsSystem.raycastAll(origin, direction, maxDistance, results));
+                for (int j = 0; j < expected.size(); j++)
+                {
+                    assertEquals(expected.getDistance(j), results.getDistance(j), 1e-9);
+                }
+
+                double radius = random.nextDouble() * 50;
+                int expectedOverlaps = 0;
+                for (PhysicalEntity entity : entities)
+                {
+                    entity.calcBoundingBox(bounds);
+                    if (entity.calcDistance(x, y, 0, bounds) <= radius)
+                    {
+                        expectedOverlaps++;
+                    }
+                }
+                assertEquals(expectedOverlaps, physicsSystem.overlapSphere(origin, radius, results));
+                for (int j = 0; j < results.size(); j++)
+                {
+                    assertTrue(results.getDistance(j) <= radius);
+                }
+
+                BoundingBox box = new BoundingBox();
+                box.minX = x - radius;
+                box.minY = y - radius;
+                box.minZ = -1;
+                box.maxX = x + radius * 2;
+                box.maxY = y + radius;
+                box.maxZ = 1;
+                int expectedBoxOverlaps = 0;
+                for (PhysicalEntity entity : entities)
+                {
+                    entity.calcBoundingBox(bounds);
+                    if (bounds.minX <= box.maxX && bounds.maxX >= box.minX && bounds.minY <= box.maxY && bounds.maxY >= box.minY)
+                    {
+                        expectedBoxOverlaps++;
+                    }
+                }
+                assertEquals(expectedBoxOverlaps, physicsSystem.overlapBox(box, results));
+
+                int k = 1 + random.nextInt(8);
+                expected.clear();
+                for (PhysicalEntity entity : entities)
+                {
+                    entity.calcBoundingBox(bounds);
+                    double distance = entity.calcDistance(x, y, 0, bounds);
+                    if (distance <= maxDistance)
+                    {
+                        expected.insertSorted(entity, distance, k);
+                    }
+                }
+                assertEquals(expected.size(), physicsSystem.findNearest(origin, k, maxDistance, results));
+                for (int j = 0; j < expected.size(); j++)
+                {
+                    assertEquals(expected.getDistance(j), results.getDistance(j), 1e-9);
+                }
+            }
+            for (int i = 0; i < 10; i++)
+            {
+                physicsSystem.performTimeStep(0.002);
+            }
+        }
+    }
+
+    static double bruteForceRaycast(List<PhysicalEntity> entities, BoundingBox bounds, double originX, double originY, double originZ, double directionX,
+                                    double directionY, double directionZ, double maxDistance)
+    {
+        double closest = Double.NaN;
+        for (int i = 0; i < entities.size(); i++)
+        {
+            PhysicalEntity entity = entities.get(i);
+            entity.calcBoundingBox(bounds);
+            double distance = entity.calcRayDistance(originX, originY, originZ, directionX, directionY, directionZ, bounds);
+            if (distance <= maxDistance && !(distance >= closest))
+            {
+                closest = distance;
+            }
+        }
+        return closest;
+    }
+
+    private static void runQueries(PhysicsSystem physicsSystem, Random random, Vec3D point, Vec3D direction, SpatialQueryResults results, int numQueries)
+    {
+        for (int i = 0; i < numQueries; i++)
+        {
+            double angle = random.nextDouble() * Math.PI * 2;
+            set(point, random.nextDouble() * SIZE, random.nextDouble() * SIZE);
+            set(direction, Math.cos(angle), Math.sin(angle));
+            physicsSystem.raycast(point, direction, SIZE, results);
+            physicsSystem.raycastAll(point, direction, SIZE, results);
+            physicsSystem.overlapSphere(point, 30, results);
+            physicsSystem.findNearest(point, 5, SIZE, results);
+        }
+    }
+
+    static void set(Vec3D vector, double x, double y)
+    {
+        vector.x = x;
+        vector.y = y;
+        vector.z = 0;
+    }
+
+    /**
+     * Spheres and a few polygons falling around a box containing polygon obstacles.
+     *
+     * @return every physical entity added
+     */
+    static List<PhysicalEntity> addScene(PhysicsSystem physicsSystem, int numSpheres, Random random)
+    {
+        List<PhysicalEntity> entities = new ArrayList<PhysicalEntity>();
+        entities.add(new WallEntity(new Vec3D(0, SIZE, 0), new Vec3D(SIZE, SIZE, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        entities.add(new WallEntity(new Vec3D(0, SIZE, 0), new Vec3D(0, 0, 0), -1, new Vec3D(0, 0, 0), 0.6));
+        entities.add(new WallEntity(new Vec3D(SIZE, SIZE, 0), new Vec3D(SIZE, 0, 0), 1, new Vec3D(0, 0, 0), 0.6));
+        entities.add(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6, new Vec3D[]{new Vec3D(100, 250, 0), new Vec3D(150, 300, 0), new Vec3D(200, 250, 0)}));
+        entities.add(new PolygonWallEntity(new Vec3D(0, 0, 0), 0.6, new Vec3D[]{new Vec3D(250, 200, 0), new Vec3D(300, 250, 0), new Vec3D(350, 200, 0)}));
+        for (int i = 0; i < 3; i++)
+        {
+            double x = 50 + i * 120;
+            entities.add(new PolygonEntity(new Vec3D(0, 0, 0), 20, 0.6,
+                    new Vec3D[]{new Vec3D(x, 20, 0), new Vec3D(x + 20, 20, 0), new Vec3D(x + 20, 40, 0), new Vec3D(x, 40, 0)}));
+        }
+        double radius = Math.min(5, SIZE / Math.sqrt(numSpheres) * 0.3);
+        for (int i = 0; i < numSpheres; i++)
+        {
+            Vec3D center = new Vec3D(10 + random.nextDouble() * (SIZE - 20), random.nextDouble() * (SIZE - 20), 0);
+            Vec3D velocity = new Vec3D(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, 0);
+            entities.add(new SphereEntity(center, velocity, 5, 0.8, radius));
+        }
+        for (PhysicalEntity entity : entities)
+        {
+            physicsSystem.addEntity(entity);
+        }
+        physicsSystem.addEntity(new DirectionalGravityEntity(new Vec3D(0, 500, 0)));
+        return entities;
+    }
+}
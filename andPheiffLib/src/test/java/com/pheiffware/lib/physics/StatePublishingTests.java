@@ -0,0 +1,111 @@
+package com.pheiffware.lib.physics;
+
+import com.pheiffware.lib.simulation.BufferedSimulation;
+import com.pheiffware.lib.simulation.DeterministicSimulationRunner;
+import com.pheiffware.lib.simulation.SimulationRunner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests lock free state publishing against a simulation running flat out, checking for torn snapshots.  Also runs the same check through the locking handshake.
+ */
+public class StatePublishingTests
+{
+    private static final int STATE_SIZE = 256;
+    private static final long RUN_MILLIS = 500;
+    private static final long READ_INTERVAL_MILLIS = 2;
+
+    @Test
+    public void noTornSnapshots() throws InterruptedException
+    {
+        run(false);
+        run(true);
+    }
+
+    /**
+     * Runs the simulation flat out, reading its state at a fixed interval and checking every snapshot is consistent.
+     */
+    private static void run(boolean publishing) throws InterruptedException
+    {
+        CounterSimulation simulation = new CounterSimulation();
+        SimulationRunner<long[]> runner = new DeterministicSimulationRunner<long[]>(simulation, Double.POSITIVE_INFINITY, 0.01, Integer.MAX_VALUE);
+        if (publishing)
+        {
+            runner.enableStatePublishing();
+        }
+        runner.start();
+        long lastStep = 0;
+        int numReads = 0;
+        long endTime = System.currentTimeMillis() + RUN_MILLIS;
+        while (System.currentTimeMillis() < endTime)
+        {
+            long[] state = runner.getState();
+            long step = state[0];
+            for (int i = 1; i < STATE_SIZE; i++)
+            {
+                assertTrue("Torn snapshot", state[i] == step);
+            }
+            assertTrue(step >= lastStep);
+            lastStep = step;
+            numReads++;
+            Thread.sleep(READ_INTERVAL_MILLIS);
+        }
+        runner.stopAndWait();
+        assertTrue(numReads > 10);
+        assertTrue(lastStep > 0);
+        if (publishing)
+        {
+            assertTrue(runner.getNumPublishedStates() >= lastStep);
+        }
+    }
+
+    /**
+     * State is an array filled with the step number.  A snapshot containing mixed values was torn.
+     */
+    private static class CounterSimulation implements BufferedSimulation<long[]>
+    {
+        private volatile long step;
+
+        //Stands in for the work of a real step
+        private final double[] work = new double[STATE_SIZE * 16];
+
+        @Override
+        public void performTimeStep(double elapsedTime)
+        {
+            for (int i = 0; i < work.length; i++)
+            {
+                work[i] = work[i] * 0.5 + elapsedTime;
+            }
+            step++;
+        }
+
+        @Override
+        public long[] copyState()
+        {
+            long[] state = createStateBuffer();
+            copyStateInto(state);
+            return state;
+        }
+
+        @Override
+        public long[] createStateBuffer()
+        {
+            return new long[STATE_SIZE];
+        }
+
+        @Override
+        public void copyStateInto(long[] stateBuffer)
+        {
+            Arrays.fill(stateBuffer, step);
+        }
+
+        @Override
+        public void applyExternalInput(String key, Object value)
+        {
+        }
+    }
+}
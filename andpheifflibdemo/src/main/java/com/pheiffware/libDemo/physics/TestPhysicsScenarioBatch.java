@@ -0,0 +1,51 @@
+package com.pheiffware.libDemo.physics;
+
+import com.pheiffware.lib.physics.PhysicsSystem;
+import com.pheiffware.lib.simulation.SimulationExecutor;
+import com.pheiffware.lib.simulation.SimulationTask;
+import com.pheiffware.lib.utils.log.PLog;
+
+/**
+ * Runs physics scenarios concurrently, each in its own PhysicsSystem, on a SimulationExecutor which uses every core.  Used for batch validation and for measuring throughput,
+ * rather than for display.
+ */
+public class TestPhysicsScenarioBatch
+{
+    /**
+     * Runs the given number of copies of every scenario, as fast as possible, and logs throughput.
+     *
+     * @param physicsScenarios
+     * @param copiesPerScenario
+     * @throws InterruptedException
+     */
+    public static void run(TestPhysicsScenario[] physicsScenarios, int copiesPerScenario) throws InterruptedException
+    {
+        SimulationExecutor simulationExecutor = new SimulationExecutor();
+        try
+        {
+            for (int copy = 0; copy < copiesPerScenario; copy++)
+            {
+                for (TestPhysicsScenario physicsScenario : physicsScenarios)
+                {
+                    PhysicsSystem physicsSystem = new PhysicsSystem();
+                    physicsScenario.setup(physicsSystem);
+                    simulationExecutor.submit(physicsSystem, physicsScenario.getTimeStepDuration(), physicsScenario.getNumSteps());
+                }
+            }
+            simulationExecutor.awaitAll();
+            for (SimulationTask<?> task : simulationExecutor.getTasks())
+            {
+                if (task.getFailure() != null)
+                {
+                    PLog.info("Scenario failed after " + task.getStepsCompleted() + " steps: " + task.getFailure());
+                }
+            }
+            PLog.info("Ran " + simulationExecutor.getTasks().size() + " scenarios on " + simulationExecutor.getNumThreads() + " threads at "
+                    + simulationExecutor.getTotalStepsPerSecond() + " steps/s");
+        }
+        finally
+        {
+            simulationExecutor.shutdown();
+        }
+    }
+}